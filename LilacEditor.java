@@ -5,12 +5,19 @@ import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.File;
 
+import javax.swing.JFileChooser;
 import javax.swing.JFrame;
+import javax.swing.JOptionPane;
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
+import javax.swing.filechooser.FileNameExtensionFilter;
 
+import diagram.CanvasFile;
+import diagram.CanvasSnapshot;
 import editor.Canvas;
+import editor.CanvasAutosave;
 import editor.Const;
 import editor.Tool;
 import window.EditorMenuBar;
@@ -33,6 +40,8 @@ public class LilacEditor {
     private TabManager tabManager;
     private Tool tool;
 
+    private static final long AUTOSAVE_SHUTDOWN_TIMEOUT = 5000;
+
     /**
      * This constructs the editor and the window.
      */
@@ -64,7 +73,7 @@ public class LilacEditor {
         UIManager.put("TextField.inactiveBackground", UIManager.getColor("TextField.background"));
 
         this.frame = new JFrame(Const.TITLE_NAME);
-        this.frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        this.frame.setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
         this.frame.setResizable(true);
         this.frame.setLayout(new BorderLayout());
     }
@@ -80,14 +89,29 @@ public class LilacEditor {
             @Override
             public void actionPerformed(ActionEvent event) {
                 System.out.println(Const.NEW_FILE_COMMAND);
-                tabManager.addCanvas(new Canvas(tool));
+                addCanvas(new Canvas(tool));
             }
         });
 
         this.menuBar.addMenuItem(Const.FILE_MENU_TEXT, Const.OPEN_FILE_COMMAND, Const.OPEN_FILE_KEYSTROKE, new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent event) {
-                System.out.println(Const.OPEN_FILE_COMMAND);
+                openFile();
+            }
+        });
+
+        this.menuBar.addMenuItem(Const.FILE_MENU_TEXT, Const.SAVE_FILE_COMMAND, Const.SAVE_FILE_KEYSTROKE, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent event) {
+                Canvas canvas = getSelectedCanvas();
+                canvas.save();
+            }
+        });
+
+        this.menuBar.addMenuItem(Const.FILE_MENU_TEXT, Const.SAVE_AS_COMMAND, Const.SAVE_AS_KEYSTROKE, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent event) {
+                saveFileAs();
             }
         });
 
@@ -142,6 +166,38 @@ public class LilacEditor {
             }
         });
 
+        this.menuBar.addMenuItem(Const.EDIT_MENU_TEXT, Const.SELECT_ALL_COMMAND, Const.SELECT_ALL_KEYSTROKE, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent event) {
+                Canvas canvas = getSelectedCanvas();
+                canvas.selectAll();
+            }
+        });
+
+        this.menuBar.addMenuItem(Const.EDIT_MENU_TEXT, Const.ARRANGE_COMMAND, Const.ARRANGE_KEYSTROKE, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent event) {
+                Canvas canvas = getSelectedCanvas();
+                canvas.arrangeDiagrams();
+            }
+        });
+
+        this.menuBar.addMenuItem(Const.EDIT_MENU_TEXT, Const.ARRANGE_BY_LINKS_COMMAND, Const.ARRANGE_BY_LINKS_KEYSTROKE, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent event) {
+                Canvas canvas = getSelectedCanvas();
+                canvas.arrangeByLinks();
+            }
+        });
+
+        this.menuBar.addMenuItem(Const.EDIT_MENU_TEXT, Const.CANCEL_ARRANGE_COMMAND, Const.CANCEL_ARRANGE_KEYSTROKE, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent event) {
+                Canvas canvas = getSelectedCanvas();
+                canvas.cancelLayout();
+            }
+        });
+
         this.menuBar.addMenuItem(Const.VIEW_MENU_TEXT, Const.ZOOM_IN_COMMAND, Const.ZOOM_IN_KEYSTROKE, new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent event) {
@@ -265,7 +321,7 @@ public class LilacEditor {
     private void setupTabManager() {
         this.tabManager = new TabManager();
 
-        this.tabManager.addCanvas(new Canvas(this.tool));
+        this.addCanvas(new Canvas(this.tool));
         this.frame.add(this.tabManager, BorderLayout.CENTER);
     }
 
@@ -314,7 +370,18 @@ public class LilacEditor {
 
         this.frame.addWindowListener(new WindowAdapter() {
             public void windowClosing(WindowEvent event) {
-                settings.save();
+                // The window goes away right away, then the settings are written and the autosave is waited for on
+                // another thread so the event dispatch thread is never blocked.
+                frame.dispose();
+                Thread shutdownThread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        settings.save();
+                        CanvasAutosave.shutdown(AUTOSAVE_SHUTDOWN_TIMEOUT);
+                        System.exit(0);
+                    }
+                }, "Editor shutdown");
+                shutdownThread.start();
             }
         });
 
@@ -323,6 +390,89 @@ public class LilacEditor {
         }
     }
 
+    /**
+     * This asks for a .canvas file and opens it in a new tab.
+     */
+    public void openFile() {
+        JFileChooser chooser = new JFileChooser(".");
+        chooser.setFileFilter(new FileNameExtensionFilter("Canvas files", CanvasFile.EXTENSION, CanvasSnapshot.EXTENSION));
+        if (chooser.showOpenDialog(this.frame) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+
+        Canvas canvas = new Canvas(chooser.getSelectedFile().getPath(), this.tool);
+        if (canvas.load()) {
+            this.addCanvas(canvas);
+        }
+    }
+
+    /**
+     * This shows a canvas in a new tab. If the editor did not exit cleanly last time, it first offers to recover the
+     * changes to the canvas that were not saved. If several canvases were open on its file, the changes of each of the
+     * others are offered too, and the ones recovered are shown in tabs of their own.
+     * @param canvas The canvas to add.
+     */
+    private void addCanvas(Canvas canvas) {
+        this.offerRecovery(canvas);
+        this.tabManager.addCanvas(canvas);
+        this.tabManager.setSelectedComponent(canvas);
+
+        boolean isSaved = new File(canvas.getFilePath()).exists();
+        while (canvas.hasRecovery()) {
+            Canvas recoveredCanvas = new Canvas(canvas.getFilePath(), this.tool);
+            if (isSaved && !recoveredCanvas.load()) {
+                break;
+            }
+
+            if (this.offerRecovery(recoveredCanvas)) {
+                this.tabManager.addCanvas(recoveredCanvas);
+                this.tabManager.setSelectedComponent(recoveredCanvas);
+            }
+        }
+    }
+
+    /**
+     * This offers to recover the changes to a canvas that were not saved, if there are any, and deletes them if they
+     * are not recovered.
+     * @param canvas The canvas.
+     * @return True if changes were recovered, false if not.
+     */
+    private boolean offerRecovery(Canvas canvas) {
+        if (!canvas.hasRecovery()) {
+            return false;
+        }
+
+        int choice = JOptionPane.showConfirmDialog(this.frame,
+            "Recover unsaved changes to " + canvas.getFileName() + "?", Const.TITLE_NAME, JOptionPane.YES_NO_OPTION);
+        if (choice == JOptionPane.YES_OPTION && canvas.recover()) {
+            return true;
+        }
+
+        canvas.discardRecovery();
+        return false;
+    }
+
+    /**
+     * This asks for a new file to save the currently visible canvas to and saves it there.
+     */
+    public void saveFileAs() {
+        Canvas canvas = this.getSelectedCanvas();
+        JFileChooser chooser = new JFileChooser(".");
+        chooser.setFileFilter(new FileNameExtensionFilter("Canvas files", CanvasFile.EXTENSION, CanvasSnapshot.EXTENSION));
+        chooser.setSelectedFile(new File(canvas.getFilePath()));
+        if (chooser.showSaveDialog(this.frame) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+
+        String filePath = chooser.getSelectedFile().getPath();
+        if (!filePath.endsWith("." + CanvasFile.EXTENSION) && !filePath.endsWith("." + CanvasSnapshot.EXTENSION)) {
+            filePath += "." + CanvasFile.EXTENSION;
+        }
+
+        canvas.saveAs(filePath);
+        this.tabManager.setTitleAt(this.tabManager.indexOfComponent(canvas), canvas.getTitle());
+    }
+
     /**
      * This undoes the last action on the currently visible canvas.
      * @return True if there is still an action that can be undone afterwards, false otherwise.
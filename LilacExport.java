@@ -0,0 +1,285 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import diagram.CanvasFile;
+import diagram.CanvasSnapshot;
+import diagram.DiagramDocument;
+import diagram.DiagramExporter;
+import diagram.DiagramRenderer;
+import diagram.PdfExporter;
+import diagram.SvgExporter;
+
+/**
+ * This program exports canvas files as images without opening a window, so it can run on a server without a display.
+ * <p>
+ * Usage: java LilacExport [-format png|jpg|svg|pdf] [-scale factor] [-threads count] [-output directory]
+ * file-or-directory...
+ * <p>
+ * Directories are searched for .canvas and .canvasb files, including in their subdirectories. The files are exported
+ * in parallel, and each image is written next to its file unless an output directory is given. In the output
+ * directory, files found in a directory keep their path relative to it, so files with the same name in different
+ * subdirectories do not overwrite each other. Files that would still be exported to the same image are skipped.
+ * @author Andrew Chu
+ * @version June 2023
+ */
+public class LilacExport {
+    private static final String DEFAULT_FORMAT = DiagramExporter.PNG_FORMAT;
+    private static final String[] FORMATS = { DiagramExporter.PNG_FORMAT, "jpg", SvgExporter.EXTENSION,
+        PdfExporter.EXTENSION };
+
+    private String format;
+    private double scale;
+    private int numThreads;
+    private File outputDirectory;
+    private ArrayList<File> files;
+    private ArrayList<String> outputPaths;
+
+    /**
+     * This constructs an export with the default settings and no files.
+     */
+    public LilacExport() {
+        this.format = DEFAULT_FORMAT;
+        this.scale = 1;
+        this.numThreads = Runtime.getRuntime().availableProcessors();
+        this.outputDirectory = null;
+        this.files = new ArrayList<File>();
+        this.outputPaths = new ArrayList<String>();
+    }
+
+    /**
+     * This reads the command line arguments.
+     * @param args The arguments.
+     * @return True if they are valid, false if not.
+     */
+    public boolean parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            boolean hasValue = i + 1 < args.length;
+
+            if (arg.equals("-format") && hasValue) {
+                this.format = args[++i].toLowerCase();
+                if (!Arrays.asList(FORMATS).contains(this.format)) {
+                    System.err.println("Unknown format. [" + args[i] + "]");
+                    return false;
+                }
+            } else if (arg.equals("-scale") && hasValue) {
+                try {
+                    this.scale = Double.parseDouble(args[++i]);
+                } catch (NumberFormatException exception) {
+                    this.scale = 0;
+                }
+                if (!(this.scale > 0) || Double.isInfinite(this.scale)) {
+                    System.err.println("Invalid scale. [" + args[i] + "]");
+                    return false;
+                }
+            } else if (arg.equals("-threads") && hasValue) {
+                try {
+                    this.numThreads = Math.max(1, Integer.parseInt(args[++i]));
+                } catch (NumberFormatException exception) {
+                    System.err.println("Invalid thread count. [" + args[i] + "]");
+                    return false;
+                }
+            } else if (arg.equals("-output") && hasValue) {
+                this.outputDirectory = new File(args[++i]);
+            } else if (arg.startsWith("-")) {
+                System.err.println("Unknown option. [" + arg + "]");
+                return false;
+            } else if (!this.addFiles(new File(arg))) {
+                return false;
+            }
+        }
+
+        if (this.files.isEmpty()) {
+            System.err.println("No canvas files to export.");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * This adds a canvas file, or the canvas files in a directory and its subdirectories.
+     * @param file The file or directory.
+     * @return True if it was found, false if not.
+     */
+    private boolean addFiles(File file) {
+        if (!file.exists()) {
+            System.err.println("File not found. [" + file.getPath() + "]");
+            return false;
+        }
+
+        if (!file.isDirectory()) {
+            this.files.add(file);
+            this.outputPaths.add(file.getName());
+            return true;
+        }
+
+        return this.addDirectory(file, "");
+    }
+
+    /**
+     * This adds the canvas files in a directory and its subdirectories, in order of their names.
+     * @param directory The directory.
+     * @param outputPath The path of the directory under the output directory, empty for the one that was given.
+     * @return True if every directory could be searched, false if not.
+     */
+    private boolean addDirectory(File directory, String outputPath) {
+        File[] children = directory.listFiles();
+        if (children == null) {
+            System.err.println("Cannot search directory. [" + directory.getPath() + "]");
+            return false;
+        }
+
+        Arrays.sort(children);
+        boolean isSearched = true;
+        for (File child: children) {
+            String childPath = outputPath.isEmpty() ? child.getName() : outputPath + File.separator + child.getName();
+            if (child.isDirectory()) {
+                isSearched &= this.addDirectory(child, childPath);
+            } else if (child.isFile() && isCanvasFile(child)) {
+                this.files.add(child);
+                this.outputPaths.add(childPath);
+            }
+        }
+        return isSearched;
+    }
+
+    /**
+     * This checks if a file has the extension of a canvas file.
+     * @param file The file.
+     * @return True if it is a canvas file, false if not.
+     */
+    private static boolean isCanvasFile(File file) {
+        String name = file.getName();
+        return name.endsWith("." + CanvasFile.EXTENSION) || name.endsWith("." + CanvasSnapshot.EXTENSION);
+    }
+
+    /**
+     * This exports every file, spread across the threads.
+     * @return The number of files that could not be exported.
+     */
+    public int run() {
+        if (this.outputDirectory != null && !this.outputDirectory.isDirectory() && !this.outputDirectory.mkdirs()) {
+            System.err.println("Cannot create output directory. [" + this.outputDirectory.getPath() + "]");
+            return this.files.size();
+        }
+
+        // Renderers hold Swing components, so each thread gets its own.
+        final ThreadLocal<DiagramRenderer> renderers = new ThreadLocal<DiagramRenderer>() {
+            @Override
+            protected DiagramRenderer initialValue() {
+                return new DiagramRenderer();
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.numThreads, this.files.size()));
+
+        // Two threads must never write the same image, so files that would are not exported.
+        int numFailed = 0;
+        HashSet<String> imagePaths = new HashSet<String>();
+        ArrayList<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+        for (int i = 0; i < this.files.size(); i++) {
+            final File file = this.files.get(i);
+            final File imageFile = this.getImageFile(i);
+            if (!imagePaths.add(imageFile.getAbsolutePath())) {
+                System.err.println("Another file is exported to the same image. [" + file.getPath() + "]");
+                numFailed++;
+                results.add(null);
+                continue;
+            }
+            results.add(executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return export(file, imageFile, renderers.get());
+                }
+            }));
+        }
+        executor.shutdown();
+
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i) == null) {
+                continue;
+            }
+
+            try {
+                if (!results.get(i).get()) {
+                    numFailed++;
+                }
+            } catch (InterruptedException | ExecutionException exception) {
+                System.err.println("Error exporting file. [" + this.files.get(i).getPath() + "]");
+                numFailed++;
+            }
+        }
+
+        return numFailed;
+    }
+
+    /**
+     * This gets the image a file is exported to: next to the file, or under the output directory at the file's path
+     * relative to the directory it was found in.
+     * @param index The index of the file.
+     * @return The image file.
+     */
+    private File getImageFile(int index) {
+        File file = this.files.get(index);
+        if (this.outputDirectory == null) {
+            return new File(file.getAbsoluteFile().getParentFile(), file.getName() + "." + this.format);
+        }
+        return new File(this.outputDirectory, this.outputPaths.get(index) + "." + this.format);
+    }
+
+    /**
+     * This exports a single file.
+     * @param file The canvas file.
+     * @param imageFile The image file to write.
+     * @param renderer The renderer of the current thread.
+     * @return True if it was exported, false if not.
+     */
+    private boolean export(File file, File imageFile, DiagramRenderer renderer) {
+        DiagramDocument document;
+        if (file.getName().endsWith("." + CanvasSnapshot.EXTENSION)) {
+            document = CanvasSnapshot.load(file);
+        } else {
+            document = CanvasFile.load(file);
+        }
+
+        if (document == null) {
+            return false;
+        }
+
+        File directory = imageFile.getParentFile();
+        if (directory != null && !directory.mkdirs() && !directory.isDirectory()) {
+            System.err.println("Cannot create output directory. [" + directory.getPath() + "]");
+            return false;
+        }
+
+        if (!DiagramExporter.exportImage(document, renderer, imageFile, this.format, this.scale, null)) {
+            return false;
+        }
+
+        System.out.println(file.getPath() + " -> " + imageFile.getPath());
+        return true;
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        LilacExport export = new LilacExport();
+        if (!export.parseArgs(args)) {
+            System.err.println("Usage: java LilacExport [-format png|jpg|svg|pdf] [-scale factor] "
+                + "[-threads count] [-output directory] file-or-directory...");
+            System.exit(2);
+        }
+
+        int numFailed = export.run();
+        if (numFailed > 0) {
+            System.err.println(numFailed + " file(s) could not be exported.");
+            System.exit(1);
+        }
+    }
+}
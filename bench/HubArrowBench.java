@@ -0,0 +1,85 @@
+package bench;
+
+import java.awt.Point;
+import java.lang.management.ManagementFactory;
+
+import javax.swing.SwingUtilities;
+
+import diagram.Arrow;
+import diagram.ClassDiagram;
+import diagram.Diagram;
+import diagram.DiagramDocument;
+import utility.Vector;
+
+/**
+ * This program measures the time and memory it takes to move a hub diagram with many arrows. The hub is moved many
+ * times and the arrows are recalculated every few moves, like a drag that is painted once per frame. Routing around
+ * other diagrams is deferred as it is during a drag, so the arrows are drawn as direct lines.
+ * <p>
+ * Usage: java bench.HubArrowBench [arrows] [moves] [moves per frame]
+ * @author Andrew Chu
+ * @version June 2023
+ */
+public class HubArrowBench {
+    private static final int ROUNDS = 5;
+    private static final int RING_RADIUS = 4000;
+
+    public static void main(String[] args) throws Exception {
+        final int numArrows = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        final int numMoves = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        final int movesPerFrame = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+
+        // The document is only meant to be used on the event dispatch thread.
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                moveHub(numArrows, numMoves, movesPerFrame);
+            }
+        });
+    }
+
+    /**
+     * This builds the hub and moves it, printing the time and memory taken by each round of moves.
+     * @param numArrows The number of arrows attached to the hub.
+     * @param numMoves The number of moves per round.
+     * @param movesPerFrame The number of moves between recalculating the arrows.
+     */
+    private static void moveHub(int numArrows, int numMoves, int movesPerFrame) {
+        DiagramDocument document = new DiagramDocument();
+        Diagram hub = new ClassDiagram("Hub", new Point(0, 0));
+        document.addDiagram(hub);
+        for (int i = 0; i < numArrows; i++) {
+            double angle = 2 * Math.PI * i / numArrows;
+            Point position = new Point((int) (RING_RADIUS * Math.cos(angle)), (int) (RING_RADIUS * Math.sin(angle)));
+            Diagram diagram = new ClassDiagram("Class" + i, position);
+            document.addDiagram(diagram);
+
+            Arrow arrow = new Arrow(hub, diagram);
+            document.addArrow(arrow);
+            hub.addArrow(arrow);
+            diagram.addArrow(arrow);
+        }
+
+        document.deferRouting();
+        document.validateArrows();
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int round = 1; round <= ROUNDS; round++) {
+            long startBytes = threads.getThreadAllocatedBytes(threadId);
+            long startTime = System.nanoTime();
+            for (int move = 1; move <= numMoves; move++) {
+                hub.shiftPos(new Vector(move % 2 == 0 ? 3 : -2, move % 3 == 0 ? 2 : -1));
+                if (move % movesPerFrame == 0) {
+                    document.validateArrows();
+                }
+            }
+            document.validateArrows();
+
+            long millis = (System.nanoTime() - startTime) / 1000000;
+            long megabytes = (threads.getThreadAllocatedBytes(threadId) - startBytes) >> 20;
+            System.out.println("Round " + round + ": " + numMoves + " moves of a hub with " + numArrows + " arrows, "
+                + millis + " ms, " + megabytes + " MB allocated");
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package bench;
+
+import java.awt.Component;
+import java.awt.Point;
+import java.awt.event.MouseEvent;
+
+import javax.swing.JFrame;
+import javax.swing.JLayer;
+import javax.swing.SwingUtilities;
+
+import diagram.ClassDiagram;
+import editor.Canvas;
+import editor.Const;
+import editor.Tool;
+
+/**
+ * This program checks that hovering the mouse over a canvas without changing anything paints nothing. It fills a
+ * canvas with diagrams, shows it, then moves the mouse across it and counts how many times the canvas was painted
+ * meanwhile. It needs a display.
+ * <p>
+ * Usage: java bench.IdleHoverBench [diagrams] [moves]
+ * @author Andrew Chu
+ * @version June 2023
+ */
+public class IdleHoverBench {
+    private static final int DIAGRAM_GAP = 200;
+    private static final int SETTLE_MILLIS = 500;
+
+    private static Canvas canvas;
+    private static Component view;
+
+    public static void main(String[] args) throws Exception {
+        final int numDiagrams = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        final int numMoves = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                canvas = new Canvas(new Tool(Const.SELECT_TOOL_TYPE));
+                int numColumns = (int) Math.ceil(Math.sqrt(numDiagrams));
+                for (int i = 0; i < numDiagrams; i++) {
+                    Point position = new Point((i % numColumns) * DIAGRAM_GAP, (i / numColumns) * DIAGRAM_GAP);
+                    canvas.addDiagram(new ClassDiagram("Class" + i, position));
+                }
+
+                JFrame frame = new JFrame("Idle hover");
+                frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+                frame.add(canvas);
+                frame.setSize(1200, 800);
+                frame.setVisible(true);
+                view = ((JLayer<?>) canvas.getViewport().getView()).getView();
+            }
+        });
+
+        // Let the first paints finish before counting.
+        Thread.sleep(SETTLE_MILLIS);
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+
+        final long[] repaintCounts = new long[2];
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                repaintCounts[0] = canvas.getRepaintCount();
+                for (int i = 0; i < numMoves; i++) {
+                    int x = (i * 7) % Math.max(1, view.getWidth());
+                    int y = (i * 13) % Math.max(1, view.getHeight());
+                    view.dispatchEvent(new MouseEvent(view, MouseEvent.MOUSE_MOVED, System.currentTimeMillis(), 0,
+                        x, y, 0, false));
+                }
+            }
+        });
+
+        Thread.sleep(SETTLE_MILLIS);
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                repaintCounts[1] = canvas.getRepaintCount();
+            }
+        });
+
+        long numPaints = repaintCounts[1] - repaintCounts[0];
+        System.out.println(numMoves + " mouse moves over " + numDiagrams + " diagrams: " + numPaints + " paints");
+        System.exit(numPaints == 0 ? 0 : 1);
+    }
+}
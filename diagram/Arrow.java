@@ -1,42 +1,45 @@
 package diagram;
 
 import java.awt.BasicStroke;
-import java.awt.Dimension;
-import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.Stroke;
-import java.util.ArrayList;
 import java.util.Arrays;
 
-import javax.swing.JComponent;
-import javax.swing.SwingUtilities;
-
-import utility.Vector;
-
 /**
  * This represents an arrow between diagrams.
  * @author Andrew Chu
  * @version June 2023
  */
-public class Arrow extends JComponent {
+public class Arrow {
     private Diagram startDiagram;
     private Diagram endDiagram;
-    private ArrayList<Point> points;
-    private Point pos;
-    private Dimension size;
+    private int[] xPoints;
+    private int[] yPoints;
+    private int numPoints;
+    private boolean isRouteValid;
+    private Rectangle bounds;
+    private Rectangle lastBounds;
+    private DiagramDocument document;
     private Stroke stroke;
     private int endStyle;
 
     public static final int DEFAULT_LINE_THICKNESS = 2;
     public static final Stroke SOLID = new BasicStroke(DEFAULT_LINE_THICKNESS);
-    public static final Stroke DASHED = new BasicStroke(DEFAULT_LINE_THICKNESS, 
+    public static final Stroke DASHED = new BasicStroke(DEFAULT_LINE_THICKNESS,
         BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 0, new float[]{6}, 0);
+    public static final Stroke OUTLINE = new BasicStroke(0);
 
     public static final int ARROW_END = 1;
     public static final int TRIANGLE_END = 2;
     public static final int FILL_DIAMOND_END = 3;
     public static final int LINE_DIAMOND_END = 4;
+    public static final int MAX_END_POINTS = 4;
+
+    private static final int SELECT_THRESHOLD = 40;
+    private static final int BOUNDS_PADDING = 50;
+    private static final int INITIAL_POINT_CAPACITY = 4;
 
     /**
      * This constructs a new arrow.
@@ -46,15 +49,17 @@ public class Arrow extends JComponent {
      * @param endStyle The end style for this arrow.
      */
     public Arrow(Diagram startDiagram, Diagram endDiagram, Stroke stroke, int endStyle) {
-        super();
         this.startDiagram = startDiagram;
         this.endDiagram = endDiagram;
         this.stroke = stroke;
         this.endStyle = endStyle;
-        this.points = new ArrayList<Point>();
-        this.pos = new Point();
-        this.size = new Dimension();
-        this.setLayout(null);
+        this.xPoints = new int[INITIAL_POINT_CAPACITY];
+        this.yPoints = new int[INITIAL_POINT_CAPACITY];
+        this.numPoints = 0;
+        this.isRouteValid = false;
+        this.bounds = new Rectangle();
+        this.lastBounds = new Rectangle();
+        this.document = null;
         this.calculatePoints();
     }
 
@@ -67,32 +72,71 @@ public class Arrow extends JComponent {
         this(startDiagram, endDiagram, SOLID, ARROW_END);
     }
 
-    @Override
-    public void paintComponent(Graphics graphics) {
-        super.paintComponent(graphics);
-        if (this.points.size() == 0) {
+    /**
+     * This paints the arrow. The graphics should be in the coordinates of the canvas.
+     * @param graphics The graphics to paint on.
+     */
+    public void paint(Graphics2D graphics) {
+        this.validateRoute();
+        if (this.numPoints == 0) {
             return;
         }
 
         // Draw the line.
         Graphics2D g2 = (Graphics2D) graphics.create();
         g2.setStroke(this.stroke);
-        for (int i = 1; i < this.points.size(); i++) {
-            Point startPoint = SwingUtilities.convertPoint(this.getParent(), this.points.get(i - 1), this);
-            Point endPoint = SwingUtilities.convertPoint(this.getParent(), this.points.get(i), this);
-            g2.drawLine(startPoint.x, startPoint.y, endPoint.x, endPoint.y);
-        }
+        g2.drawPolyline(this.xPoints, this.yPoints, this.numPoints);
 
         this.drawEndArrow(g2);
 
         g2.dispose();
     }
 
+    /**
+     * This paints the arrow as a thin solid line without its end, for when it is too small to make out its style.
+     * The graphics should be in the coordinates of the canvas.
+     * @param graphics The graphics to paint on.
+     */
+    public void paintOutline(Graphics2D graphics) {
+        this.validateRoute();
+        if (this.numPoints == 0) {
+            return;
+        }
+
+        Stroke lastStroke = graphics.getStroke();
+        graphics.setStroke(OUTLINE);
+        graphics.drawPolyline(this.xPoints, this.yPoints, this.numPoints);
+        graphics.setStroke(lastStroke);
+    }
+
     /**
      * This draws the end of the arrow.
      * @param g2 The graphics to draw on.
      */
     public void drawEndArrow(Graphics2D g2) {
+        int[] xPoints = new int[MAX_END_POINTS];
+        int[] yPoints = new int[MAX_END_POINTS];
+        int numEndPoints = this.getEndPoints(xPoints, yPoints);
+
+        // Draw the end arrow.
+        g2.setStroke(SOLID);
+        if (this.endStyle == ARROW_END) {
+            g2.drawPolyline(xPoints, yPoints, numEndPoints);
+        } else if (this.endStyle == TRIANGLE_END || this.endStyle == LINE_DIAMOND_END) {
+            g2.drawPolygon(xPoints, yPoints, numEndPoints);
+        } else {
+            g2.fillPolygon(xPoints, yPoints, numEndPoints);
+        }
+    }
+
+    /**
+     * This gets the points of the shape at the end of the arrow, rotated to follow the last segment. An arrow end is
+     * an open line through the points, a triangle or line diamond is an outline and a fill diamond is filled.
+     * @param xPoints The array to put the x-coordinates in, with room for MAX_END_POINTS points.
+     * @param yPoints The array to put the y-coordinates in, with room for MAX_END_POINTS points.
+     * @return The number of points, 0 if the end has no shape.
+     */
+    public int getEndPoints(int[] xPoints, int[] yPoints) {
         // Get the points of the end arrow.
         Point[] arrowPoints = new Point[0];
         switch (this.endStyle) {
@@ -114,54 +158,49 @@ public class Arrow extends JComponent {
         }
 
         // Rotate the end arrow.
-        Point beforeEndPoint = SwingUtilities.convertPoint(this.getParent(), this.points.get(this.points.size() - 2), this);
-        Point endPoint = SwingUtilities.convertPoint(this.getParent(), this.points.get(this.points.size() - 1), this);
+        Point beforeEndPoint = new Point(this.xPoints[this.numPoints - 2], this.yPoints[this.numPoints - 2]);
+        Point endPoint = new Point(this.xPoints[this.numPoints - 1], this.yPoints[this.numPoints - 1]);
         double angle = -Math.atan2(endPoint.y - beforeEndPoint.y, endPoint.x - beforeEndPoint.x);
-        
+
         for (int i = 0; i < arrowPoints.length; i++) {
             Point tempPoint = new Point(arrowPoints[i]);
             arrowPoints[i].x = (int) Math.round(tempPoint.x * Math.cos(angle) - tempPoint.y * Math.sin(angle));
             arrowPoints[i].y = (int) Math.round(tempPoint.y * Math.cos(angle) - tempPoint.x * Math.sin(angle));
         }
 
-        // Draw the end arrow.
-        g2.setStroke(SOLID);
-        int[] xPoints = new int[arrowPoints.length];
-        int[] yPoints = new int[arrowPoints.length];
         for (int i = 0; i < arrowPoints.length; i++) {
             xPoints[i] = endPoint.x + arrowPoints[i].x;
             yPoints[i] = endPoint.y + arrowPoints[i].y;
         }
-
-        if (this.endStyle == ARROW_END) {
-            g2.drawPolyline(xPoints, yPoints, arrowPoints.length);
-        } else if (this.endStyle == TRIANGLE_END || this.endStyle == LINE_DIAMOND_END) {
-            g2.drawPolygon(xPoints, yPoints, arrowPoints.length);
-        } else {
-            g2.fillPolygon(xPoints, yPoints, arrowPoints.length);
-        }
+        return arrowPoints.length;
     }
 
-    @Override
+    /**
+     * This checks if a point on the canvas is close enough to this arrow to select it.
+     * @param x The x-coordinate of the point.
+     * @param y The y-coordinate of the point.
+     * @return True if the point is on this arrow, false if it is not.
+     */
     public boolean contains(int x, int y) {
-        final int THRESHOLD = 40;
-
-        for (int i = 1; i < this.points.size(); i++) {
-            Point startPoint = SwingUtilities.convertPoint(this.getParent(), this.points.get(i - 1), this);
-            Point endPoint = SwingUtilities.convertPoint(this.getParent(), this.points.get(i), this);
+        this.validateRoute();
+        for (int i = 1; i < this.numPoints; i++) {
+            int startX = this.xPoints[i - 1];
+            int startY = this.yPoints[i - 1];
+            int endX = this.xPoints[i];
+            int endY = this.yPoints[i];
 
             boolean withinX = false;
             boolean withinY = false;
-            if (startPoint.x == endPoint.x) {
+            if (startX == endX) {
                 // Vertical line segment.
-                withinX = Math.abs(x - startPoint.x) <= DEFAULT_LINE_THICKNESS + THRESHOLD;
-                withinY = (startPoint.y - THRESHOLD <= y && y <= endPoint.y + THRESHOLD) ||
-                        (endPoint.y - THRESHOLD <= y && y <= startPoint.y + THRESHOLD);
+                withinX = Math.abs(x - startX) <= DEFAULT_LINE_THICKNESS + SELECT_THRESHOLD;
+                withinY = (startY - SELECT_THRESHOLD <= y && y <= endY + SELECT_THRESHOLD) ||
+                        (endY - SELECT_THRESHOLD <= y && y <= startY + SELECT_THRESHOLD);
             } else {
                 // Horizontal line segment.
-                withinX = (startPoint.x - THRESHOLD <= x && x <= endPoint.x + THRESHOLD) ||
-                        (endPoint.x - THRESHOLD <= x && x <= startPoint.x + THRESHOLD);
-                withinY = Math.abs(y - startPoint.y) <= DEFAULT_LINE_THICKNESS + THRESHOLD;
+                withinX = (startX - SELECT_THRESHOLD <= x && x <= endX + SELECT_THRESHOLD) ||
+                        (endX - SELECT_THRESHOLD <= x && x <= startX + SELECT_THRESHOLD);
+                withinY = Math.abs(y - startY) <= DEFAULT_LINE_THICKNESS + SELECT_THRESHOLD;
             }
 
             if (withinX && withinY) {
@@ -173,91 +212,233 @@ public class Arrow extends JComponent {
     }
 
     /**
-     * This calculates the points to connect the two diagrams together.
+     * This marks this arrow to be rerouted because one of its diagrams moved. If it belongs to a document, the document
+     * reroutes it later together with every other marked arrow; otherwise it is rerouted right away.
+     */
+    public void invalidateRoute() {
+        if (!this.isRouteValid) {
+            return;
+        }
+
+        this.isRouteValid = false;
+        if (this.document != null) {
+            this.document.invalidateArrow(this);
+        } else {
+            this.calculatePoints();
+        }
+    }
+
+    /**
+     * This reroutes this arrow if it was marked to be rerouted.
+     */
+    public void validateRoute() {
+        if (!this.isRouteValid) {
+            this.calculatePoints();
+        }
+    }
+
+    /**
+     * This calculates the points to connect the two diagrams together. In a document, the arrow goes around the
+     * diagrams in its way; otherwise, or if there is no way around them, it goes straight through. The points are
+     * written into buffers that are reused between calls.
      */
     public void calculatePoints() {
-        // Determine the starting and ending point of the arrow that gives the smallest distance.
-        Point[] startMountPoints = this.startDiagram.getArrowMountPoints();
-        Point[] endMountPoints = this.endDiagram.getArrowMountPoints();
+        this.setRoute(this.document != null ? this.document.findRoute(this) : null);
+    }
 
-        int bestStartPointIndex = 0;
-        int bestEndPointIndex = 0;
+    /**
+     * This sets the points of this arrow to a route found for it, or to a direct line if no way around the diagrams
+     * was found.
+     * @param route The route, null or without points to go straight through.
+     */
+    void setRoute(ArrowRouter.Route route) {
+        this.numPoints = 0;
+        if (route != null && route.getNumPoints() > 0) {
+            for (int i = 0; i < route.getNumPoints(); i++) {
+                this.addPoint(route.getPointX(i), route.getPointY(i));
+            }
+        } else {
+            this.calculateDirectPoints();
+        }
+
+        this.isRouteValid = true;
+        this.calculateBounds();
+    }
+
+    /**
+     * This calculates the points of an L or Z shaped line between the closest sides of the two diagrams, ignoring
+     * any diagrams in between.
+     */
+    private void calculateDirectPoints() {
+        // Determine the starting and ending point of the arrow that gives the smallest distance.
+        int bestStartSide = 0;
+        int bestEndSide = 0;
         int bestDistance = Integer.MAX_VALUE;
-        for (int startPointIndex = 0; startPointIndex < startMountPoints.length; startPointIndex++) {
-            for (int endPointIndex = 0; endPointIndex < endMountPoints.length; endPointIndex++) {
-                int curDistance = getDistance(startMountPoints[startPointIndex], endMountPoints[endPointIndex]);
-                
+        for (int startSide = 0; startSide < Diagram.NUM_SIDES; startSide++) {
+            int startX = this.startDiagram.getArrowMountX(startSide);
+            int startY = this.startDiagram.getArrowMountY(startSide);
+
+            for (int endSide = 0; endSide < Diagram.NUM_SIDES; endSide++) {
+                int curDistance = Math.abs(startX - this.endDiagram.getArrowMountX(endSide)) +
+                        Math.abs(startY - this.endDiagram.getArrowMountY(endSide));
+
                 if (curDistance <= bestDistance) {
-                    bestStartPointIndex = startPointIndex;
-                    bestEndPointIndex = endPointIndex;
+                    bestStartSide = startSide;
+                    bestEndSide = endSide;
                     bestDistance = curDistance;
                 }
             }
         }
-        
-        Point startMountPoint = startMountPoints[bestStartPointIndex];
-        Point endMountPoint = endMountPoints[bestEndPointIndex];
 
-        this.points.clear();
-        this.points.add(startMountPoint);
+        int startX = this.startDiagram.getArrowMountX(bestStartSide);
+        int startY = this.startDiagram.getArrowMountY(bestStartSide);
+        int endX = this.endDiagram.getArrowMountX(bestEndSide);
+        int endY = this.endDiagram.getArrowMountY(bestEndSide);
+
+        this.addPoint(startX, startY);
         // Create intermediate points.
-        if (bestStartPointIndex % 2 == bestEndPointIndex % 2) {
+        if (bestStartSide % 2 == bestEndSide % 2) {
             // Create a 2-point Z-shaped line when going to opposite sides.
-            if (bestStartPointIndex == 0 || bestEndPointIndex == 0) {
+            if (bestStartSide == Diagram.TOP_SIDE || bestEndSide == Diagram.TOP_SIDE) {
                 // top to bottom line.
-                int y = (startMountPoint.y + endMountPoint.y) / 2;
-                this.points.add(new Point(startMountPoint.x, y));
-                this.points.add(new Point(endMountPoint.x, y));
+                int y = (startY + endY) / 2;
+                this.addPoint(startX, y);
+                this.addPoint(endX, y);
             } else {
                 // left to right line.
-                int x = (startMountPoint.x + endMountPoint.x) / 2;
-                this.points.add(new Point(x, startMountPoint.y));
-                this.points.add(new Point(x, endMountPoint.y));
+                int x = (startX + endX) / 2;
+                this.addPoint(x, startY);
+                this.addPoint(x, endY);
             }
         } else {
             // Create a 1-point L-shaped line when going to adjacent sides.
-            if (bestStartPointIndex % 2 == 0) {
+            if (bestStartSide % 2 == 0) {
                 // Vertical to horizontal.
-                this.points.add(new Point(startMountPoint.x, endMountPoint.y));
+                this.addPoint(startX, endY);
             } else {
                 // Horizontal to vertical.
-                this.points.add(new Point(endMountPoint.x, startMountPoint.y));
+                this.addPoint(endX, startY);
             }
         }
-        this.points.add(endMountPoint);
+        this.addPoint(endX, endY);
+    }
 
-        this.calculateBounds();
+    /**
+     * This adds a point to the end of the point buffers, growing them if they are full.
+     * @param x The x-coordinate of the point.
+     * @param y The y-coordinate of the point.
+     */
+    private void addPoint(int x, int y) {
+        if (this.numPoints == this.xPoints.length) {
+            this.xPoints = Arrays.copyOf(this.xPoints, this.numPoints * 2);
+            this.yPoints = Arrays.copyOf(this.yPoints, this.numPoints * 2);
+        }
+
+        this.xPoints[this.numPoints] = x;
+        this.yPoints[this.numPoints] = y;
+        this.numPoints++;
     }
 
     /**
-     * This calculates the position and size of this arrow.
+     * This calculates the area of the canvas covered by this arrow, including its end and selection area.
      */
     private void calculateBounds() {
-        this.pos = new Point(this.points.get(0).x - 50, this.points.get(0).y - 50);
-        Point corner = new Point(this.points.get(0).x + 50, this.points.get(0).y + 50);
-
-        for (int i = 1; i < this.points.size(); i++) {
-            Point curPoint = this.points.get(i);
-            this.pos.x = Math.min(this.pos.x, curPoint.x - 50);
-            this.pos.y = Math.min(this.pos.y, curPoint.y - 50);
-            corner.x = Math.max(corner.x + 50, curPoint.x);
-            corner.y = Math.max(corner.y + 50, curPoint.y);
+        this.lastBounds.setBounds(this.bounds);
+
+        int minX = this.xPoints[0];
+        int minY = this.yPoints[0];
+        int maxX = minX;
+        int maxY = minY;
+        for (int i = 1; i < this.numPoints; i++) {
+            minX = Math.min(minX, this.xPoints[i]);
+            minY = Math.min(minY, this.yPoints[i]);
+            maxX = Math.max(maxX, this.xPoints[i]);
+            maxY = Math.max(maxY, this.yPoints[i]);
+        }
+
+        this.bounds.setBounds(minX - BOUNDS_PADDING, minY - BOUNDS_PADDING,
+            maxX - minX + 2 * BOUNDS_PADDING, maxY - minY + 2 * BOUNDS_PADDING);
+
+        if (this.document != null) {
+            this.document.arrowMoved(this, this.lastBounds);
         }
+    }
 
-        this.size.setSize(corner.x - this.pos.x + 50, corner.y - this.pos.y + 50);
-        this.setSize(this.size);
-        this.setPreferredSize(this.size);
-        this.setBounds(this.pos.x, this.pos.y, (int) this.size.getWidth(), (int) this.size.getHeight());
+    /**
+     * This marks this arrow to be rerouted without telling its document, for when the document already knows.
+     */
+    void markRouteInvalid() {
+        this.isRouteValid = false;
     }
 
     /**
-     * This is a utility function that gets the distance between two points.
-     * @param point1 The first point.
-     * @param point2 The second point.
-     * @return The Manhattan distance between them.
+     * This checks if this arrow is routed, or has to be rerouted before it is next used.
+     * @return True if the route is up to date, false if not.
      */
-    private static int getDistance(Point point1, Point point2) {
-        return (int) Vector.getManhattanDistance(new Vector(point1), new Vector(point2));
+    boolean isRouteValid() {
+        return this.isRouteValid;
+    }
+
+    /**
+     * This sets the document this arrow belongs to. The document is told whenever this arrow moves.
+     * @param document The document, null if it was removed from one.
+     */
+    void setDocument(DiagramDocument document) {
+        this.document = document;
+    }
+
+    /**
+     * This gets the document this arrow belongs to.
+     * @return The document, null if it is not in one.
+     */
+    DiagramDocument getDocument() {
+        return this.document;
+    }
+
+    /**
+     * This gets the area of the canvas covered by this arrow.
+     * @return A copy of the bounds.
+     */
+    public Rectangle getBounds() {
+        return new Rectangle(this.bounds);
+    }
+
+    /**
+     * This checks if this arrow overlaps an area of the canvas.
+     * @param area The area to check.
+     * @return True if they overlap, false if they do not.
+     */
+    public boolean intersects(Rectangle area) {
+        return this.bounds.intersects(area);
+    }
+
+    /**
+     * This gets the number of points of this arrow.
+     * @return The number of points.
+     */
+    public int getNumPoints() {
+        this.validateRoute();
+        return this.numPoints;
+    }
+
+    /**
+     * This gets the x-coordinate of the nth point of this arrow, counting from the start diagram.
+     * @param index The index of the point.
+     * @return The x-coordinate.
+     */
+    public int getPointX(int index) {
+        this.validateRoute();
+        return this.xPoints[index];
+    }
+
+    /**
+     * This gets the y-coordinate of the nth point of this arrow, counting from the start diagram.
+     * @param index The index of the point.
+     * @return The y-coordinate.
+     */
+    public int getPointY(int index) {
+        this.validateRoute();
+        return this.yPoints[index];
     }
 
     /**
@@ -276,6 +457,22 @@ public class Arrow extends JComponent {
         return this.endDiagram;
     }
 
+    /**
+     * This gets the line stroke of this arrow.
+     * @return The stroke.
+     */
+    public Stroke getStroke() {
+        return this.stroke;
+    }
+
+    /**
+     * This gets the end style of this arrow.
+     * @return The end style.
+     */
+    public int getEndStyle() {
+        return this.endStyle;
+    }
+
     @Override
     public boolean equals(Object other) {
         if (other instanceof Arrow) {
@@ -285,4 +482,9 @@ public class Arrow extends JComponent {
 
         return false;
     }
+
+    @Override
+    public int hashCode() {
+        return 31 * System.identityHashCode(this.startDiagram) + System.identityHashCode(this.endDiagram);
+    }
 }
@@ -0,0 +1,784 @@
+package diagram;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import utility.SpatialIndex;
+
+/**
+ * This finds paths for arrows made of horizontal and vertical lines that go around the diagrams in their way. The
+ * diagrams are obstacles with a margin around them. The lines a path can follow are the ones through the edges of
+ * those margins and through the points where arrows leave their diagrams, so a few obstacles only make a small grid,
+ * and the shortest path on it with the fewest bends is found with A*.
+ * <p>
+ * Only the obstacles in a corridor around the two diagrams are considered, found through the spatial index of the
+ * document. If there is no way through the corridor, it is widened a few times before giving up. The route only
+ * depends on the diagrams in the corridor it was found in, so it only has to be found again when one of them moves.
+ * <p>
+ * The grid has a point for every pair of lines, so it grows with the square of the number of obstacles. A corridor
+ * that would make too large a grid is given up on, and the arrow goes straight through instead. Only the states the
+ * search reaches are stored, so the memory a search takes grows with the part of the grid it explores.
+ * @author Andrew Chu
+ * @version June 2023
+ */
+public class ArrowRouter {
+    public static final int MARGIN = 16;
+
+    private static final int CORRIDOR_MARGIN = 64;
+    private static final int CORRIDOR_GROWTH = 4;
+    private static final int MAX_CORRIDOR_GROWTHS = 2;
+    private static final int BEND_COST = 40;
+    private static final long MAX_GRID_POINTS = 250000;
+
+    // Directions are numbered like the sides of a diagram: up, right, down and left.
+    private static final int[] DIRECTION_X = { 0, 1, 0, -1 };
+    private static final int[] DIRECTION_Y = { -1, 0, 1, 0 };
+
+    private SpatialIndex<Diagram> diagramIndex;
+
+    /**
+     * This constructs a router that avoids the diagrams in an index.
+     * @param diagramIndex The index of the diagrams, which is only read.
+     */
+    public ArrowRouter(SpatialIndex<Diagram> diagramIndex) {
+        this.diagramIndex = diagramIndex;
+    }
+
+    /**
+     * This finds a path from one diagram to another that goes around the diagrams in between. It leaves and enters the
+     * diagrams through the middle of whichever sides make the best path. This only reads the index, so routes can be
+     * found on several threads at once as long as nothing moves meanwhile.
+     * @param startDiagram The diagram the path starts at.
+     * @param endDiagram The diagram the path ends at.
+     * @return The route, which has no points if there is no way around the diagrams in its corridor.
+     */
+    public Route findRoute(Diagram startDiagram, Diagram endDiagram) {
+        Rectangle corridor = startDiagram.getBounds();
+        corridor.add(endDiagram.getBounds());
+
+        int corridorMargin = CORRIDOR_MARGIN;
+        Rectangle searchedArea = null;
+        for (int growth = 0; growth <= MAX_CORRIDOR_GROWTHS; growth++) {
+            searchedArea = new Rectangle(corridor);
+            searchedArea.grow(MARGIN + corridorMargin, MARGIN + corridorMargin);
+
+            RouteSearch search = new RouteSearch(startDiagram, endDiagram, searchedArea);
+            Route route = search.search();
+            if (route != null) {
+                return route;
+            } else if (search.isGridTooLarge() || !search.canLeaveAndEnter()) {
+                // A wider corridor does not help when it is already too crowded or the diagrams are covered by others.
+                break;
+            }
+            corridorMargin *= CORRIDOR_GROWTH;
+        }
+        return new Route(new int[0], new int[0], searchedArea);
+    }
+
+    /**
+     * This class represents a path found for an arrow.
+     */
+    public static class Route {
+        private int[] xPoints;
+        private int[] yPoints;
+        private Rectangle corridor;
+
+        /**
+         * This constructs a route.
+         * @param xPoints The x-coordinates of the points, from the start diagram to the end diagram.
+         * @param yPoints The y-coordinates of the points.
+         * @param corridor The area the route was searched in.
+         */
+        public Route(int[] xPoints, int[] yPoints, Rectangle corridor) {
+            this.xPoints = xPoints;
+            this.yPoints = yPoints;
+            this.corridor = corridor;
+        }
+
+        /**
+         * This gets the number of points of this route.
+         * @return The number of points, 0 if no way was found.
+         */
+        public int getNumPoints() {
+            return this.xPoints.length;
+        }
+
+        /**
+         * This gets the x-coordinate of a point of this route.
+         * @param index The index of the point.
+         * @return The x-coordinate.
+         */
+        public int getPointX(int index) {
+            return this.xPoints[index];
+        }
+
+        /**
+         * This gets the y-coordinate of a point of this route.
+         * @param index The index of the point.
+         * @return The y-coordinate.
+         */
+        public int getPointY(int index) {
+            return this.yPoints[index];
+        }
+
+        /**
+         * This gets the area this route was searched in. Only diagrams moving in or out of it can change the route.
+         * @return The area.
+         */
+        public Rectangle getCorridor() {
+            return this.corridor;
+        }
+    }
+
+    /**
+     * This class represents one search for a path through a corridor. The grid is made of the lines through the
+     * edges of the obstacles' margins, and a state of the search is a point on the grid with the direction it was
+     * reached from, since turning costs more than going straight.
+     */
+    private class RouteSearch {
+        private Diagram startDiagram;
+        private Diagram endDiagram;
+        private Rectangle corridor;
+
+        private int[] xs;
+        private int[] ys;
+        private int numXs;
+        private int numYs;
+        private boolean[] isPointBlocked;
+        private boolean[] isRightBlocked;
+        private boolean[] isDownBlocked;
+        private boolean isGridTooLarge;
+
+        private int[] targetStates;
+        private boolean canLeave;
+        private boolean canEnter;
+
+        /**
+         * This prepares a search between two diagrams.
+         * @param startDiagram The diagram the path starts at.
+         * @param endDiagram The diagram the path ends at.
+         * @param corridor The area to search in.
+         */
+        public RouteSearch(Diagram startDiagram, Diagram endDiagram, Rectangle corridor) {
+            this.startDiagram = startDiagram;
+            this.endDiagram = endDiagram;
+            this.corridor = corridor;
+        }
+
+        /**
+         * This searches for the path.
+         * @return The route, null if there is no way through the corridor.
+         */
+        public Route search() {
+            Rectangle[] obstacles = this.getObstacles();
+            this.buildGrid(obstacles);
+            if (this.isGridTooLarge) {
+                return null;
+            }
+
+            StateTable reached = new StateTable();
+            StateQueue queue = new StateQueue();
+
+            // The path enters the end diagram straight into one of its sides, turning first if it arrives another way.
+            this.targetStates = new int[Diagram.NUM_SIDES];
+            for (int side = 0; side < Diagram.NUM_SIDES; side++) {
+                int point = this.getStubPoint(this.endDiagram, side);
+                this.targetStates[side] = point >= 0 && !this.isPointBlocked[point] ? 4 * point + (side + 2) % 4 : -1;
+                this.canEnter |= this.targetStates[side] >= 0;
+            }
+
+            // It leaves the start diagram straight out of one of its sides, after going through the margin.
+            for (int side = 0; side < Diagram.NUM_SIDES; side++) {
+                int point = this.getStubPoint(this.startDiagram, side);
+                if (point >= 0 && !this.isPointBlocked[point]) {
+                    int state = 4 * point + side;
+                    reached.put(state, 0, -1);
+                    queue.add(state, getPriority(0, this.estimateCost(state)));
+                    this.canLeave = true;
+                }
+            }
+
+            // Without both there is no path, and nothing to estimate the cost of one by.
+            if (!this.canLeaveAndEnter()) {
+                return null;
+            }
+
+            int bestCost = Integer.MAX_VALUE;
+            int bestState = -1;
+            while (!queue.isEmpty()) {
+                long estimate = queue.peekPriority() >> 31;
+                int state = queue.poll();
+                if (estimate >= bestCost) {
+                    break;
+                }
+
+                int point = state / 4;
+                int direction = state % 4;
+                int cost = reached.getCost(state);
+                if (estimate > (long) cost + this.estimateCost(state)) {
+                    // A cheaper way here was found after this one was queued.
+                    continue;
+                }
+
+                for (int side = 0; side < Diagram.NUM_SIDES; side++) {
+                    int targetState = this.targetStates[side];
+                    if (targetState >= 0 && targetState / 4 == point) {
+                        int totalCost = cost + (targetState % 4 == direction ? 0 : BEND_COST);
+                        if (totalCost < bestCost) {
+                            bestCost = totalCost;
+                            bestState = state;
+                        }
+                    }
+                }
+
+                int column = point % this.numXs;
+                int row = point / this.numXs;
+                for (int nextDirection = 0; nextDirection < 4; nextDirection++) {
+                    if (nextDirection == (direction + 2) % 4) {
+                        continue;
+                    }
+
+                    int nextColumn = column + DIRECTION_X[nextDirection];
+                    int nextRow = row + DIRECTION_Y[nextDirection];
+                    if (nextColumn < 0 || nextColumn >= this.numXs || nextRow < 0 || nextRow >= this.numYs) {
+                        continue;
+                    }
+
+                    int nextPoint = nextRow * this.numXs + nextColumn;
+                    if (this.isPointBlocked[nextPoint] || this.isStepBlocked(point, nextPoint, nextDirection)) {
+                        continue;
+                    }
+
+                    int nextCost = cost + Math.abs(this.xs[nextColumn] - this.xs[column]) +
+                        Math.abs(this.ys[nextRow] - this.ys[row]) + (nextDirection == direction ? 0 : BEND_COST);
+                    int nextState = 4 * nextPoint + nextDirection;
+                    if (nextCost < reached.getCost(nextState)) {
+                        reached.put(nextState, nextCost, state);
+                        queue.add(nextState, getPriority(nextCost, this.estimateCost(nextState)));
+                    }
+                }
+            }
+
+            if (bestState < 0) {
+                return null;
+            }
+            return this.makeRoute(bestState, reached);
+        }
+
+        /**
+         * This checks if the search was given up on because the corridor has too many obstacles in it.
+         * @return True if it was, false if not.
+         */
+        public boolean isGridTooLarge() {
+            return this.isGridTooLarge;
+        }
+
+        /**
+         * This checks if the search had anywhere to leave the start diagram from and to enter the end diagram from.
+         * Otherwise other diagrams cover all of their sides.
+         * @return True if it did, false if not.
+         */
+        public boolean canLeaveAndEnter() {
+            return this.canLeave && this.canEnter;
+        }
+
+        /**
+         * This gets the diagrams in the corridor, grown by the margin kept around them.
+         * @return The areas arrows should not go through.
+         */
+        private Rectangle[] getObstacles() {
+            Rectangle searchArea = new Rectangle(this.corridor);
+            searchArea.grow(MARGIN, MARGIN);
+
+            ArrayList<Rectangle> obstacles = new ArrayList<Rectangle>();
+            for (Diagram diagram: diagramIndex.query(searchArea)) {
+                Rectangle obstacle = diagram.getBounds();
+                obstacle.grow(MARGIN, MARGIN);
+                if (obstacle.intersects(this.corridor)) {
+                    obstacles.add(obstacle);
+                }
+            }
+
+            // The two diagrams are obstacles too, even if they are not in the document.
+            for (Diagram diagram: new Diagram[] { this.startDiagram, this.endDiagram }) {
+                Rectangle obstacle = diagram.getBounds();
+                obstacle.grow(MARGIN, MARGIN);
+                obstacles.add(obstacle);
+            }
+            return obstacles.toArray(new Rectangle[0]);
+        }
+
+        /**
+         * This makes the grid of lines through the edges of the obstacles and the points where arrows leave and enter
+         * diagrams, then marks the points inside obstacles and the steps between points that go through them. The grid
+         * stays inside the corridor, so the path does too.
+         * @param obstacles The obstacles.
+         */
+        private void buildGrid(Rectangle[] obstacles) {
+            int maxCoordinates = 2 * obstacles.length + 2 + 2 * Diagram.NUM_SIDES;
+            this.xs = new int[maxCoordinates];
+            this.ys = new int[maxCoordinates];
+            this.numXs = 0;
+            this.numYs = 0;
+            this.addCoordinates(this.corridor.x, this.corridor.y);
+            this.addCoordinates(this.corridor.x + this.corridor.width, this.corridor.y + this.corridor.height);
+            for (Rectangle obstacle: obstacles) {
+                Rectangle clipped = obstacle.intersection(this.corridor);
+                this.addCoordinates(clipped.x, clipped.y);
+                this.addCoordinates(clipped.x + clipped.width, clipped.y + clipped.height);
+            }
+            for (int side = 0; side < Diagram.NUM_SIDES; side++) {
+                this.addCoordinates(getStubX(this.startDiagram, side), getStubY(this.startDiagram, side));
+                this.addCoordinates(getStubX(this.endDiagram, side), getStubY(this.endDiagram, side));
+            }
+
+            this.numXs = sortUnique(this.xs, this.numXs);
+            this.numYs = sortUnique(this.ys, this.numYs);
+            if ((long) this.numXs * this.numYs > MAX_GRID_POINTS) {
+                this.isGridTooLarge = true;
+                return;
+            }
+
+            int numPoints = this.numXs * this.numYs;
+            this.isPointBlocked = new boolean[numPoints];
+            this.isRightBlocked = new boolean[numPoints];
+            this.isDownBlocked = new boolean[numPoints];
+            for (Rectangle obstacle: obstacles) {
+                int left = obstacle.x;
+                int top = obstacle.y;
+                int right = obstacle.x + obstacle.width;
+                int bottom = obstacle.y + obstacle.height;
+
+                // Points and steps along the edge of an obstacle are free, only the inside is blocked.
+                int firstInsideColumn = firstAbove(this.xs, this.numXs, left);
+                int lastInsideColumn = firstAtOrAbove(this.xs, this.numXs, right) - 1;
+                int firstInsideRow = firstAbove(this.ys, this.numYs, top);
+                int lastInsideRow = firstAtOrAbove(this.ys, this.numYs, bottom) - 1;
+                int firstEdgeColumn = firstAtOrAbove(this.xs, this.numXs, left);
+                int lastEdgeColumn = firstAbove(this.xs, this.numXs, right) - 1;
+                int firstEdgeRow = firstAtOrAbove(this.ys, this.numYs, top);
+                int lastEdgeRow = firstAbove(this.ys, this.numYs, bottom) - 1;
+
+                for (int row = firstInsideRow; row <= lastInsideRow; row++) {
+                    for (int column = firstEdgeColumn; column <= lastEdgeColumn; column++) {
+                        int point = row * this.numXs + column;
+                        if (column >= firstInsideColumn && column <= lastInsideColumn) {
+                            this.isPointBlocked[point] = true;
+                        }
+                        if (column < lastEdgeColumn) {
+                            this.isRightBlocked[point] = true;
+                        }
+                    }
+                }
+                for (int column = firstInsideColumn; column <= lastInsideColumn; column++) {
+                    for (int row = firstEdgeRow; row < lastEdgeRow; row++) {
+                        this.isDownBlocked[row * this.numXs + column] = true;
+                    }
+                }
+            }
+        }
+
+        /**
+         * This adds a line in each direction to the grid.
+         * @param x The x-coordinate of the vertical line.
+         * @param y The y-coordinate of the horizontal line.
+         */
+        private void addCoordinates(int x, int y) {
+            this.xs[this.numXs++] = x;
+            this.ys[this.numYs++] = y;
+        }
+
+        /**
+         * This checks if a step between two points next to each other on the grid goes through an obstacle.
+         * @param point The point the step starts at.
+         * @param nextPoint The point the step ends at.
+         * @param direction The direction of the step.
+         * @return True if it is blocked, false if it is free.
+         */
+        private boolean isStepBlocked(int point, int nextPoint, int direction) {
+            switch (direction) {
+                case Diagram.RIGHT_SIDE:
+                    return this.isRightBlocked[point];
+                case Diagram.LEFT_SIDE:
+                    return this.isRightBlocked[nextPoint];
+                case Diagram.BOTTOM_SIDE:
+                    return this.isDownBlocked[point];
+                default:
+                    return this.isDownBlocked[nextPoint];
+            }
+        }
+
+        /**
+         * This gets the point on the grid a path leaves or enters a side of a diagram from.
+         * @param diagram The diagram.
+         * @param side The side.
+         * @return The point, -1 if it is outside the corridor.
+         */
+        private int getStubPoint(Diagram diagram, int side) {
+            int column = Arrays.binarySearch(this.xs, 0, this.numXs, getStubX(diagram, side));
+            int row = Arrays.binarySearch(this.ys, 0, this.numYs, getStubY(diagram, side));
+            if (column < 0 || row < 0) {
+                return -1;
+            }
+            return row * this.numXs + column;
+        }
+
+        /**
+         * This estimates the cost of the rest of the path from a state, never more than it really is. Unless a point
+         * the path can enter the end diagram from is straight ahead and entered going the same way, the path has to
+         * turn at least once to get there.
+         * @param state The state.
+         * @return The estimated cost.
+         */
+        private int estimateCost(int state) {
+            int point = state / 4;
+            int direction = state % 4;
+            int x = this.xs[point % this.numXs];
+            int y = this.ys[point / this.numXs];
+            int estimate = Integer.MAX_VALUE;
+            for (int side = 0; side < Diagram.NUM_SIDES; side++) {
+                int targetState = this.targetStates[side];
+                if (targetState < 0) {
+                    continue;
+                }
+
+                int dx = this.xs[(targetState / 4) % this.numXs] - x;
+                int dy = this.ys[(targetState / 4) / this.numXs] - y;
+                boolean isStraightAhead = targetState % 4 == direction &&
+                    dx * DIRECTION_Y[direction] == dy * DIRECTION_X[direction] &&
+                    dx * DIRECTION_X[direction] + dy * DIRECTION_Y[direction] >= 0;
+                estimate = Math.min(estimate, Math.abs(dx) + Math.abs(dy) + (isStraightAhead ? 0 : BEND_COST));
+            }
+            return estimate;
+        }
+
+        /**
+         * This makes the route by following the path back from where it enters the end diagram, keeping only the
+         * points where it turns.
+         * @param lastState The state the path enters the end diagram from.
+         * @param reached The states reached and the states they were reached from.
+         * @return The route.
+         */
+        private Route makeRoute(int lastState, StateTable reached) {
+            int numStates = 0;
+            for (int state = lastState; state >= 0; state = reached.getPreviousState(state)) {
+                numStates++;
+            }
+
+            int[] pathXs = new int[numStates + 2];
+            int[] pathYs = new int[numStates + 2];
+            int index = numStates;
+            for (int state = lastState; state >= 0; state = reached.getPreviousState(state)) {
+                pathXs[index] = this.xs[(state / 4) % this.numXs];
+                pathYs[index] = this.ys[(state / 4) / this.numXs];
+                index--;
+            }
+
+            int firstPoint = lastState;
+            while (reached.getPreviousState(firstPoint) >= 0) {
+                firstPoint = reached.getPreviousState(firstPoint);
+            }
+            int startSide = firstPoint % 4;
+            int endSide = -1;
+            for (int side = 0; side < Diagram.NUM_SIDES; side++) {
+                if (this.targetStates[side] >= 0 && this.targetStates[side] / 4 == lastState / 4 &&
+                        (endSide < 0 || this.targetStates[side] % 4 == lastState % 4)) {
+                    endSide = side;
+                }
+            }
+
+            pathXs[0] = this.startDiagram.getArrowMountX(startSide);
+            pathYs[0] = this.startDiagram.getArrowMountY(startSide);
+            pathXs[numStates + 1] = this.endDiagram.getArrowMountX(endSide);
+            pathYs[numStates + 1] = this.endDiagram.getArrowMountY(endSide);
+
+            int numKept = 0;
+            int[] keptXs = new int[pathXs.length];
+            int[] keptYs = new int[pathYs.length];
+            for (int i = 0; i < pathXs.length; i++) {
+                boolean isStraight = numKept >= 2 && i + 1 < pathXs.length &&
+                    ((keptXs[numKept - 1] == pathXs[i] && pathXs[i] == pathXs[i + 1]) ||
+                    (keptYs[numKept - 1] == pathYs[i] && pathYs[i] == pathYs[i + 1]));
+                boolean isRepeated = numKept >= 1 && keptXs[numKept - 1] == pathXs[i] &&
+                    keptYs[numKept - 1] == pathYs[i];
+                if (!isStraight && !isRepeated) {
+                    keptXs[numKept] = pathXs[i];
+                    keptYs[numKept] = pathYs[i];
+                    numKept++;
+                }
+            }
+            return new Route(Arrays.copyOf(keptXs, numKept), Arrays.copyOf(keptYs, numKept), this.corridor);
+        }
+    }
+
+    /**
+     * This gets the priority of a search state in the queue. States are ordered by the estimated cost of a path
+     * through them, then by how far they are along it, so among equally good paths one is followed to the end instead
+     * of trying all of them side by side. The estimated cost is summed as a long so it cannot overflow.
+     * @param cost The cost of the path to the state.
+     * @param estimate The estimated cost of the rest of the path.
+     * @return The priority, lower first.
+     */
+    private static long getPriority(int cost, int estimate) {
+        return (((long) cost + estimate) << 31) | (Integer.MAX_VALUE - cost);
+    }
+
+    /**
+     * This class represents a queue of search states ordered by their priority, as a binary heap of parallel arrays.
+     * A state can be in it more than once; the later copies are left for the search to skip.
+     */
+    private static class StateQueue {
+        private static final int INITIAL_CAPACITY = 64;
+
+        private int[] states;
+        private long[] priorities;
+        private int size;
+
+        /**
+         * This constructs an empty queue.
+         */
+        public StateQueue() {
+            this.states = new int[INITIAL_CAPACITY];
+            this.priorities = new long[INITIAL_CAPACITY];
+            this.size = 0;
+        }
+
+        /**
+         * This adds a state to this queue.
+         * @param state The state.
+         * @param priority The priority of the state.
+         */
+        public void add(int state, long priority) {
+            if (this.size == this.states.length) {
+                this.states = Arrays.copyOf(this.states, 2 * this.size);
+                this.priorities = Arrays.copyOf(this.priorities, 2 * this.size);
+            }
+
+            int index = this.size++;
+            while (index > 0) {
+                int parent = (index - 1) / 2;
+                if (this.priorities[parent] <= priority) {
+                    break;
+                }
+                this.states[index] = this.states[parent];
+                this.priorities[index] = this.priorities[parent];
+                index = parent;
+            }
+            this.states[index] = state;
+            this.priorities[index] = priority;
+        }
+
+        /**
+         * This gets the priority of the first state without removing it.
+         * @return The priority.
+         */
+        public long peekPriority() {
+            return this.priorities[0];
+        }
+
+        /**
+         * This removes the state with the lowest priority.
+         * @return The state.
+         */
+        public int poll() {
+            int first = this.states[0];
+            this.size--;
+            int lastState = this.states[this.size];
+            long lastPriority = this.priorities[this.size];
+
+            int index = 0;
+            while (2 * index + 1 < this.size) {
+                int child = 2 * index + 1;
+                if (child + 1 < this.size && this.priorities[child + 1] < this.priorities[child]) {
+                    child++;
+                }
+                if (this.priorities[child] >= lastPriority) {
+                    break;
+                }
+                this.states[index] = this.states[child];
+                this.priorities[index] = this.priorities[child];
+                index = child;
+            }
+            this.states[index] = lastState;
+            this.priorities[index] = lastPriority;
+            return first;
+        }
+
+        /**
+         * This checks if this queue is empty.
+         * @return True if it is empty, false if not.
+         */
+        public boolean isEmpty() {
+            return this.size == 0;
+        }
+    }
+
+    /**
+     * This class represents the states a search has reached, with the cost of the cheapest path found to each and the
+     * state before it on that path, as a hash table of parallel arrays.
+     */
+    private static class StateTable {
+        private static final int INITIAL_CAPACITY = 256;
+        private static final int EMPTY = -1;
+
+        private int[] states;
+        private int[] costs;
+        private int[] previousStates;
+        private int size;
+
+        /**
+         * This constructs an empty table.
+         */
+        public StateTable() {
+            this.states = new int[INITIAL_CAPACITY];
+            this.costs = new int[INITIAL_CAPACITY];
+            this.previousStates = new int[INITIAL_CAPACITY];
+            Arrays.fill(this.states, EMPTY);
+            this.size = 0;
+        }
+
+        /**
+         * This gets the cost of the cheapest path found to a state.
+         * @param state The state.
+         * @return The cost, Integer.MAX_VALUE if the state was not reached.
+         */
+        public int getCost(int state) {
+            int index = this.find(state);
+            return this.states[index] == EMPTY ? Integer.MAX_VALUE : this.costs[index];
+        }
+
+        /**
+         * This gets the state before a state on the cheapest path found to it.
+         * @param state The state, which must have been reached.
+         * @return The previous state, -1 if the path starts at it.
+         */
+        public int getPreviousState(int state) {
+            return this.previousStates[this.find(state)];
+        }
+
+        /**
+         * This records a cheaper path to a state.
+         * @param state The state.
+         * @param cost The cost of the path.
+         * @param previousState The state before it on the path, -1 if the path starts at it.
+         */
+        public void put(int state, int cost, int previousState) {
+            int index = this.find(state);
+            if (this.states[index] == EMPTY) {
+                if (2 * (this.size + 1) > this.states.length) {
+                    this.grow();
+                    index = this.find(state);
+                }
+                this.states[index] = state;
+                this.size++;
+            }
+            this.costs[index] = cost;
+            this.previousStates[index] = previousState;
+        }
+
+        /**
+         * This finds where a state is in the table, or where it would go.
+         * @param state The state.
+         * @return The index of the state, or of the empty slot it would go in.
+         */
+        private int find(int state) {
+            int mask = this.states.length - 1;
+            int hash = state * 0x9E3779B9;
+            int index = (hash ^ (hash >>> 16)) & mask;
+            while (this.states[index] != EMPTY && this.states[index] != state) {
+                index = (index + 1) & mask;
+            }
+            return index;
+        }
+
+        /**
+         * This doubles the capacity of the table, putting every state in its new place.
+         */
+        private void grow() {
+            int[] oldStates = this.states;
+            int[] oldCosts = this.costs;
+            int[] oldPreviousStates = this.previousStates;
+            this.states = new int[2 * oldStates.length];
+            this.costs = new int[2 * oldStates.length];
+            this.previousStates = new int[2 * oldStates.length];
+            Arrays.fill(this.states, EMPTY);
+            for (int i = 0; i < oldStates.length; i++) {
+                if (oldStates[i] != EMPTY) {
+                    int index = this.find(oldStates[i]);
+                    this.states[index] = oldStates[i];
+                    this.costs[index] = oldCosts[i];
+                    this.previousStates[index] = oldPreviousStates[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * This gets the x-coordinate of where a path leaves or enters a side of a diagram, out past the margin.
+     * @param diagram The diagram.
+     * @param side The side.
+     * @return The x-coordinate.
+     */
+    private static int getStubX(Diagram diagram, int side) {
+        return diagram.getArrowMountX(side) + DIRECTION_X[side] * MARGIN;
+    }
+
+    /**
+     * This gets the y-coordinate of where a path leaves or enters a side of a diagram, out past the margin.
+     * @param diagram The diagram.
+     * @param side The side.
+     * @return The y-coordinate.
+     */
+    private static int getStubY(Diagram diagram, int side) {
+        return diagram.getArrowMountY(side) + DIRECTION_Y[side] * MARGIN;
+    }
+
+    /**
+     * This sorts part of an array and removes repeated values.
+     * @param values The array.
+     * @param length The length of the part.
+     * @return The number of different values, which are at the start of the array.
+     */
+    private static int sortUnique(int[] values, int length) {
+        Arrays.sort(values, 0, length);
+        int numUnique = 0;
+        for (int i = 0; i < length; i++) {
+            if (numUnique == 0 || values[numUnique - 1] != values[i]) {
+                values[numUnique++] = values[i];
+            }
+        }
+        return numUnique;
+    }
+
+    /**
+     * This finds the first value in a sorted array that is at least a number.
+     * @param values The sorted values.
+     * @param length The number of values.
+     * @param number The number.
+     * @return The index of the value, or the length if there is none.
+     */
+    private static int firstAtOrAbove(int[] values, int length, int number) {
+        int low = 0;
+        int high = length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] < number) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * This finds the first value in a sorted array that is more than a number.
+     * @param values The sorted values.
+     * @param length The number of values.
+     * @param number The number.
+     * @return The index of the value, or the length if there is none.
+     */
+    private static int firstAbove(int[] values, int length, int number) {
+        return number == Integer.MAX_VALUE ? length : firstAtOrAbove(values, length, number + 1);
+    }
+}
@@ -0,0 +1,517 @@
+package diagram;
+
+import java.awt.Point;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import utility.Vector;
+
+/**
+ * This class reads and writes documents in the .canvas file format. The format is plain text with one record per
+ * line, written and read a line at a time so no copy of the whole file is kept in memory:
+ * <pre>
+ * lilac-canvas 1
+ * C id x y width height title properties methods
+ * I id x y width height title methods
+ * A startId endId stroke endStyle
+ * </pre>
+ * A journal of changes uses the same records without the header, plus "-D id" and "-A startId endId" for diagrams
+ * and arrows that were removed.
+ * Fields are separated by tabs. Backslashes, tabs and line breaks in the text are escaped with a backslash. Every
+ * diagram is written before the arrows so an arrow can always find the diagrams it connects.
+ * @author Andrew Chu
+ * @version June 2023
+ */
+public final class CanvasFile {
+    public static final String EXTENSION = "canvas";
+
+    private static final String HEADER = "lilac-canvas";
+    private static final int VERSION = 1;
+
+    private static final char SEPARATOR = '\t';
+    private static final char ESCAPE = '\\';
+    private static final String CLASS_RECORD = "C";
+    private static final String INTERFACE_RECORD = "I";
+    private static final String ARROW_RECORD = "A";
+    private static final String REMOVED_DIAGRAM_RECORD = "-D";
+    private static final String REMOVED_ARROW_RECORD = "-A";
+    private static final String SOLID_STROKE = "solid";
+    private static final String DASHED_STROKE = "dashed";
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private CanvasFile() {
+    }
+
+    /**
+     * This writes a document to a file, replacing it if it exists.
+     * @param document The document to write.
+     * @param file The file to write to.
+     * @return True if it was written, false if there was an error.
+     */
+    public static boolean save(DiagramDocument document, File file) {
+        try {
+            Writer writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE);
+            try {
+                write(document, writer);
+            } finally {
+                writer.close();
+            }
+        } catch (IOException exception) {
+            System.err.println("Cannot write canvas file. [" + file.getPath() + "]");
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * This writes a document in the .canvas format.
+     * @param document The document to write.
+     * @param writer The writer to write to. It is not closed.
+     * @throws IOException If the writer fails.
+     */
+    public static void write(DiagramDocument document, Writer writer) throws IOException {
+        StringBuilder line = new StringBuilder();
+
+        writer.write(getHeader());
+
+        for (Diagram diagram: document.getDiagrams()) {
+            line.setLength(0);
+            appendDiagramRecord(line, diagram);
+            writer.append(line);
+        }
+
+        for (Arrow arrow: document.getArrows()) {
+            line.setLength(0);
+            appendArrowRecord(line, arrow);
+            writer.append(line);
+        }
+    }
+
+    /**
+     * This gets the header line that starts every .canvas file.
+     * @return The header line, with its line break.
+     */
+    public static String getHeader() {
+        return HEADER + " " + VERSION + "\n";
+    }
+
+    /**
+     * This appends the records for the changes recorded by a document since they were last cleared. Diagrams that
+     * were added or changed are written first, then the arrows, then the diagrams that were removed, so the records can
+     * be applied in order with replay.
+     * @param text The text to append the records to.
+     * @param document The document with the changes.
+     */
+    public static void appendChanges(StringBuilder text, DiagramDocument document) {
+        for (Diagram diagram: document.getChangedDiagrams()) {
+            if (document.hasDiagram(diagram)) {
+                appendDiagramRecord(text, diagram);
+            }
+        }
+
+        for (Arrow arrow: document.getChangedArrows()) {
+            if (document.hasArrow(arrow)) {
+                appendArrowRecord(text, arrow);
+            } else {
+                text.append(REMOVED_ARROW_RECORD);
+                appendField(text, arrow.getStartDiagram().getId());
+                appendField(text, arrow.getEndDiagram().getId());
+                text.append('\n');
+            }
+        }
+
+        for (Diagram diagram: document.getChangedDiagrams()) {
+            if (!document.hasDiagram(diagram)) {
+                text.append(REMOVED_DIAGRAM_RECORD);
+                appendField(text, diagram.getId());
+                text.append('\n');
+            }
+        }
+    }
+
+    /**
+     * This appends the record for a diagram.
+     * @param text The text to append the record to.
+     * @param diagram The diagram.
+     */
+    public static void appendDiagramRecord(StringBuilder text, Diagram diagram) {
+        text.append(diagram instanceof ClassDiagram ? CLASS_RECORD : INTERFACE_RECORD);
+        appendField(text, diagram.getId());
+        appendField(text, diagram.getX());
+        appendField(text, diagram.getY());
+        appendField(text, diagram.getWidth());
+        appendField(text, diagram.getHeight());
+        appendField(text, diagram.getTitle());
+
+        if (diagram instanceof InterfaceDiagram) {
+            InterfaceDiagram interfaceDiagram = (InterfaceDiagram) diagram;
+            for (int i = 0; i < interfaceDiagram.getNumBodies(); i++) {
+                appendField(text, interfaceDiagram.getBodyText(i));
+            }
+        }
+
+        text.append('\n');
+    }
+
+    /**
+     * This appends the record for an arrow.
+     * @param text The text to append the record to.
+     * @param arrow The arrow.
+     */
+    public static void appendArrowRecord(StringBuilder text, Arrow arrow) {
+        text.append(ARROW_RECORD);
+        appendField(text, arrow.getStartDiagram().getId());
+        appendField(text, arrow.getEndDiagram().getId());
+        text.append(SEPARATOR).append(arrow.getStroke() == Arrow.DASHED ? DASHED_STROKE : SOLID_STROKE);
+        appendField(text, arrow.getEndStyle());
+        text.append('\n');
+    }
+
+    /**
+     * This creates a diagram from its record. It is not added to any document.
+     * @param line The record, without its line break.
+     * @return The diagram, null if the record is not a diagram or is not properly formatted.
+     */
+    public static Diagram parseDiagramRecord(String line) {
+        ArrayList<String> fields = new ArrayList<String>();
+        splitFields(line, fields);
+        String record = fields.get(0);
+
+        try {
+            Point pos = new Point(Integer.parseInt(fields.get(2)), Integer.parseInt(fields.get(3)));
+            InterfaceDiagram diagram;
+            if (record.equals(CLASS_RECORD)) {
+                diagram = new ClassDiagram(fields.get(6), pos);
+            } else if (record.equals(INTERFACE_RECORD)) {
+                diagram = new InterfaceDiagram(fields.get(6), pos);
+            } else {
+                return null;
+            }
+
+            for (int i = 0; i < diagram.getNumBodies() && 7 + i < fields.size(); i++) {
+                diagram.setLoadedBodyText(i, fields.get(7 + i));
+            }
+
+            diagram.setId(Integer.parseInt(fields.get(1)));
+            diagram.setSize(Integer.parseInt(fields.get(4)), Integer.parseInt(fields.get(5)));
+            return diagram;
+        } catch (NumberFormatException | IndexOutOfBoundsException exception) {
+            return null;
+        }
+    }
+
+    /**
+     * This gets what a record is about. A later record with the same key replaces an earlier one, so a file made of
+     * only the latest record for each key is the same document.
+     * @param line The record.
+     * @return The key: "D" and the id for diagrams, "A" and the two ids for arrows.
+     */
+    public static String getRecordKey(String line) {
+        int start = line.indexOf(SEPARATOR) + 1;
+        int end = line.indexOf(SEPARATOR, start);
+        if (line.startsWith(ARROW_RECORD) || line.startsWith(REMOVED_ARROW_RECORD)) {
+            end = line.indexOf(SEPARATOR, end + 1);
+        }
+        if (end == -1) {
+            end = line.length();
+        }
+
+        String kind = line.startsWith(ARROW_RECORD) || line.startsWith(REMOVED_ARROW_RECORD) ? "A" : "D";
+        return kind + line.substring(start, end);
+    }
+
+    /**
+     * This checks if a record removes a diagram or an arrow.
+     * @param line The record.
+     * @return True if it removes something, false if it adds or changes something.
+     */
+    public static boolean isRemovalRecord(String line) {
+        return line.startsWith(REMOVED_DIAGRAM_RECORD) || line.startsWith(REMOVED_ARROW_RECORD);
+    }
+
+    /**
+     * This reads a document from a file.
+     * @param file The file to read.
+     * @return The document, null if the file cannot be read or is not a .canvas file.
+     */
+    public static DiagramDocument load(File file) {
+        try {
+            BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE);
+            try {
+                return read(reader, file.getPath());
+            } finally {
+                reader.close();
+            }
+        } catch (IOException exception) {
+            System.err.println("Cannot read canvas file. [" + file.getPath() + "]");
+            return null;
+        }
+    }
+
+    /**
+     * This reads a document in the .canvas format.
+     * @param reader The reader to read from. It is not closed.
+     * @param name The name of the source, used in error messages.
+     * @return The document, null if it is not properly formatted.
+     * @throws IOException If the reader fails.
+     */
+    public static DiagramDocument read(BufferedReader reader, String name) throws IOException {
+        String line = reader.readLine();
+        if (line == null || !line.startsWith(HEADER + " ")) {
+            System.err.println("Canvas file missing header. [" + name + "]");
+            return null;
+        }
+
+        int version;
+        try {
+            version = Integer.parseInt(line.substring(HEADER.length() + 1).trim());
+        } catch (NumberFormatException exception) {
+            System.err.println("Canvas file improperly formatted header. ['" + line + "']");
+            return null;
+        }
+
+        if (version > VERSION) {
+            System.err.println("Canvas file is from a newer version. [" + name + "]");
+            return null;
+        }
+
+        DiagramDocument document = new DiagramDocument();
+        if (!applyRecords(document, reader, name)) {
+            return null;
+        }
+        return document;
+    }
+
+    /**
+     * This applies the records in a file, such as a journal of changes, to a document. Records for diagrams and arrows
+     * that are already in the document replace them. A record that cannot be parsed stops the replay, since a journal
+     * can end with a record that was only partly written.
+     * @param document The document to change.
+     * @param file The file with the records. It has no header.
+     * @return True if every record was applied, false if there was an error.
+     */
+    public static boolean replay(DiagramDocument document, File file) {
+        try {
+            BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE);
+            try {
+                return applyRecords(document, reader, file.getPath());
+            } finally {
+                reader.close();
+            }
+        } catch (IOException exception) {
+            System.err.println("Cannot read canvas journal. [" + file.getPath() + "]");
+            return false;
+        }
+    }
+
+    /**
+     * This applies records to a document until the reader runs out.
+     * @param document The document to change.
+     * @param reader The reader to read the records from. It is not closed.
+     * @param name The name of the source, used in error messages.
+     * @return True if every record was applied, false if one is not properly formatted.
+     * @throws IOException If the reader fails.
+     */
+    private static boolean applyRecords(DiagramDocument document, BufferedReader reader, String name)
+            throws IOException {
+        ArrayList<String> fields = new ArrayList<String>();
+        Point pos = new Point();
+        int lineNumber = 1;
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            splitFields(line, fields);
+            String record = fields.get(0);
+
+            try {
+                if (record.equals(CLASS_RECORD) || record.equals(INTERFACE_RECORD)) {
+                    int id = Integer.parseInt(fields.get(1));
+                    pos.setLocation(Integer.parseInt(fields.get(2)), Integer.parseInt(fields.get(3)));
+                    int width = Integer.parseInt(fields.get(4));
+                    int height = Integer.parseInt(fields.get(5));
+
+                    Diagram existingDiagram = document.getDiagram(id);
+                    InterfaceDiagram diagram;
+                    if (existingDiagram instanceof InterfaceDiagram) {
+                        diagram = (InterfaceDiagram) existingDiagram;
+                        diagram.setPos(new Vector(pos));
+                    } else if (record.equals(CLASS_RECORD)) {
+                        diagram = new ClassDiagram(fields.get(6), pos);
+                    } else {
+                        diagram = new InterfaceDiagram(fields.get(6), pos);
+                    }
+
+                    diagram.setLoadedTitle(fields.get(6));
+                    for (int i = 0; i < diagram.getNumBodies() && 7 + i < fields.size(); i++) {
+                        diagram.setLoadedBodyText(i, fields.get(7 + i));
+                    }
+
+                    diagram.setSize(width, height);
+                    if (existingDiagram == null) {
+                        diagram.setId(id);
+                        document.addDiagram(diagram);
+                    }
+                } else if (record.equals(ARROW_RECORD)) {
+                    Diagram startDiagram = document.getDiagram(Integer.parseInt(fields.get(1)));
+                    Diagram endDiagram = document.getDiagram(Integer.parseInt(fields.get(2)));
+                    if (startDiagram == null || endDiagram == null) {
+                        System.err.println("Canvas file arrow to a missing diagram. [" + name + ":" + lineNumber + "]");
+                        return false;
+                    }
+
+                    Arrow arrow = new Arrow(startDiagram, endDiagram,
+                        fields.get(3).equals(DASHED_STROKE) ? Arrow.DASHED : Arrow.SOLID,
+                        Integer.parseInt(fields.get(4)));
+                    removeArrow(document, arrow);
+                    document.addArrow(arrow);
+                    startDiagram.addArrow(arrow);
+                    endDiagram.addArrow(arrow);
+                } else if (record.equals(REMOVED_ARROW_RECORD)) {
+                    Diagram startDiagram = document.getDiagram(Integer.parseInt(fields.get(1)));
+                    Diagram endDiagram = document.getDiagram(Integer.parseInt(fields.get(2)));
+                    if (startDiagram != null && endDiagram != null) {
+                        removeArrow(document, new Arrow(startDiagram, endDiagram));
+                    }
+                } else if (record.equals(REMOVED_DIAGRAM_RECORD)) {
+                    Diagram diagram = document.getDiagram(Integer.parseInt(fields.get(1)));
+                    if (diagram != null) {
+                        for (Arrow arrow: new ArrayList<Arrow>(diagram.getArrows())) {
+                            removeArrow(document, arrow);
+                        }
+                        document.removeDiagram(diagram);
+                    }
+                } else {
+                    System.err.println("Canvas file unknown record '" + record + "'. [" + name + ":" + lineNumber + "]");
+                }
+            } catch (NumberFormatException | IndexOutOfBoundsException exception) {
+                System.err.println("Canvas file improperly formatted line. [" + name + ":" + lineNumber + "]");
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * This removes the arrow between the same two diagrams as another arrow, if there is one.
+     * @param document The document with the arrow.
+     * @param arrow An arrow equal to the one to remove.
+     */
+    private static void removeArrow(DiagramDocument document, Arrow arrow) {
+        Diagram startDiagram = arrow.getStartDiagram();
+        int index = startDiagram.getArrows().indexOf(arrow);
+        if (index == -1) {
+            return;
+        }
+
+        Arrow existingArrow = startDiagram.getArrows().get(index);
+        startDiagram.removeArrow(existingArrow);
+        existingArrow.getEndDiagram().removeArrow(existingArrow);
+        document.removeArrow(existingArrow);
+    }
+
+    /**
+     * This appends a separator and a number to a line.
+     * @param line The line being built.
+     * @param value The number.
+     */
+    private static void appendField(StringBuilder line, int value) {
+        line.append(SEPARATOR).append(value);
+    }
+
+    /**
+     * This appends a separator and escaped text to a line.
+     * @param line The line being built.
+     * @param text The text.
+     */
+    private static void appendField(StringBuilder line, String text) {
+        line.append(SEPARATOR);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case ESCAPE:
+                    line.append(ESCAPE).append(ESCAPE);
+                    break;
+                case SEPARATOR:
+                    line.append(ESCAPE).append('t');
+                    break;
+                case '\n':
+                    line.append(ESCAPE).append('n');
+                    break;
+                case '\r':
+                    line.append(ESCAPE).append('r');
+                    break;
+                default:
+                    line.append(c);
+            }
+        }
+    }
+
+    /**
+     * This splits a line into its fields and unescapes them.
+     * @param line The line to split.
+     * @param fields The list to put the fields in. It is cleared first.
+     */
+    private static void splitFields(String line, ArrayList<String> fields) {
+        fields.clear();
+        int start = 0;
+        int end;
+        while ((end = line.indexOf(SEPARATOR, start)) != -1) {
+            fields.add(unescape(line, start, end));
+            start = end + 1;
+        }
+        fields.add(unescape(line, start, line.length()));
+    }
+
+    /**
+     * This unescapes part of a line.
+     * @param line The line.
+     * @param start The index of the first character of the field.
+     * @param end The index after the last character of the field.
+     * @return The unescaped text.
+     */
+    private static String unescape(String line, int start, int end) {
+        int escapeIndex = line.indexOf(ESCAPE, start);
+        if (escapeIndex == -1 || escapeIndex >= end) {
+            return line.substring(start, end);
+        }
+
+        StringBuilder text = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = line.charAt(i);
+            if (c == ESCAPE && i + 1 < end) {
+                i++;
+                c = line.charAt(i);
+                if (c == 't') {
+                    c = SEPARATOR;
+                } else if (c == 'n') {
+                    c = '\n';
+                } else if (c == 'r') {
+                    c = '\r';
+                }
+            }
+            text.append(c);
+        }
+
+        return text.toString();
+    }
+}
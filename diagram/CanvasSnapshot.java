@@ -0,0 +1,293 @@
+package diagram;
+
+import java.awt.Point;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * This class reads and writes documents in the binary snapshot format. A snapshot is memory-mapped when it is opened
+ * and only the fixed-width records are read up front. The text of each diagram stays in the mapped string table until
+ * it is first used, so opening a huge generated diagram only costs as much as its positions and arrows.
+ * <pre>
+ * header:  magic, version, number of diagrams, number of arrows, number of strings
+ * diagram: type, id, x, y, width, height, title, first body, second body  (9 ints)
+ * arrow:   start id, end id, stroke, end style                           (4 ints)
+ * strings: the end offset of each string (1 int each), then the UTF-8 bytes
+ * </pre>
+ * Text fields are indexes into the string table, -1 for no text. Equal strings are only stored once.
+ * @author Andrew Chu
+ * @version June 2023
+ */
+public final class CanvasSnapshot {
+    public static final String EXTENSION = "canvasb";
+
+    private static final int MAGIC = 0x4c435342;
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 5 * Integer.BYTES;
+    private static final int DIAGRAM_RECORD_FIELDS = 9;
+    private static final int DIAGRAM_RECORD_SIZE = DIAGRAM_RECORD_FIELDS * Integer.BYTES;
+    private static final int ARROW_RECORD_SIZE = 4 * Integer.BYTES;
+    private static final int NUM_BODY_FIELDS = 2;
+
+    private static final int CLASS_TYPE = 0;
+    private static final int INTERFACE_TYPE = 1;
+    private static final int SOLID_STROKE = 0;
+    private static final int DASHED_STROKE = 1;
+    private static final int NO_TEXT = -1;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private ByteBuffer buffer;
+    private int numStrings;
+    private int stringOffsetsStart;
+    private int stringBytesStart;
+
+    /**
+     * This constructs a snapshot reading from a mapped file.
+     * @param buffer The contents of the file.
+     */
+    private CanvasSnapshot(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * This writes a document to a snapshot file, replacing it if it exists. It is written to a temporary file first so
+     * a snapshot that is still mapped is not truncated while its text is being read.
+     * @param document The document to write.
+     * @param file The file to write to.
+     * @return True if it was written, false if there was an error.
+     */
+    public static boolean save(DiagramDocument document, File file) {
+        ArrayList<String> strings = new ArrayList<String>();
+        HashMap<String, Integer> stringIndexes = new HashMap<String, Integer>();
+        ArrayList<Diagram> diagrams = document.getDiagrams();
+        ArrayList<Arrow> arrows = document.getArrows();
+
+        File tempFile = new File(file.getPath() + ".tmp");
+        try {
+            DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile), BUFFER_SIZE));
+            try {
+                // The records refer to the string table by index, so the table is built before anything is written.
+                int[] diagramFields = new int[diagrams.size() * DIAGRAM_RECORD_FIELDS];
+                for (int i = 0; i < diagrams.size(); i++) {
+                    Diagram diagram = diagrams.get(i);
+                    int field = i * DIAGRAM_RECORD_FIELDS;
+                    diagramFields[field] = diagram instanceof ClassDiagram ? CLASS_TYPE : INTERFACE_TYPE;
+                    diagramFields[field + 1] = diagram.getId();
+                    diagramFields[field + 2] = diagram.getX();
+                    diagramFields[field + 3] = diagram.getY();
+                    diagramFields[field + 4] = diagram.getWidth();
+                    diagramFields[field + 5] = diagram.getHeight();
+                    diagramFields[field + 6] = getStringIndex(diagram.getTitle(), strings, stringIndexes);
+
+                    for (int body = 0; body < NUM_BODY_FIELDS; body++) {
+                        int stringIndex = NO_TEXT;
+                        if (diagram instanceof InterfaceDiagram && body < ((InterfaceDiagram) diagram).getNumBodies()) {
+                            String bodyText = ((InterfaceDiagram) diagram).getBodyText(body);
+                            stringIndex = getStringIndex(bodyText, strings, stringIndexes);
+                        }
+                        diagramFields[field + 7 + body] = stringIndex;
+                    }
+                }
+
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeInt(diagrams.size());
+                output.writeInt(arrows.size());
+                output.writeInt(strings.size());
+
+                for (int field: diagramFields) {
+                    output.writeInt(field);
+                }
+
+                for (Arrow arrow: arrows) {
+                    output.writeInt(arrow.getStartDiagram().getId());
+                    output.writeInt(arrow.getEndDiagram().getId());
+                    output.writeInt(arrow.getStroke() == Arrow.DASHED ? DASHED_STROKE : SOLID_STROKE);
+                    output.writeInt(arrow.getEndStyle());
+                }
+
+                ArrayList<byte[]> stringBytes = new ArrayList<byte[]>(strings.size());
+                int endOffset = 0;
+                for (String string: strings) {
+                    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                    stringBytes.add(bytes);
+                    endOffset += bytes.length;
+                    output.writeInt(endOffset);
+                }
+
+                for (byte[] bytes: stringBytes) {
+                    output.write(bytes);
+                }
+            } finally {
+                output.close();
+            }
+
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException exception) {
+            System.err.println("Cannot write snapshot file. [" + file.getPath() + "]");
+            tempFile.delete();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * This opens a snapshot file. The diagrams and arrows are created right away, but the text of each diagram is only
+     * decoded when it is first used.
+     * @param file The file to open.
+     * @return The document, null if the file cannot be read or is not a snapshot.
+     */
+    public static DiagramDocument load(File file) {
+        MappedByteBuffer buffer;
+        try {
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            try {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                channel.close();
+            }
+        } catch (IOException exception) {
+            System.err.println("Cannot read snapshot file. [" + file.getPath() + "]");
+            return null;
+        }
+
+        CanvasSnapshot snapshot = new CanvasSnapshot(buffer);
+        try {
+            return snapshot.read(file.getPath());
+        } catch (IndexOutOfBoundsException exception) {
+            System.err.println("Snapshot file is truncated. [" + file.getPath() + "]");
+            return null;
+        }
+    }
+
+    /**
+     * This reads the header and the records of this snapshot.
+     * @param name The name of the source, used in error messages.
+     * @return The document, null if it is not properly formatted.
+     */
+    private DiagramDocument read(String name) {
+        if (this.buffer.limit() < HEADER_SIZE || this.buffer.getInt(0) != MAGIC) {
+            System.err.println("Snapshot file missing header. [" + name + "]");
+            return null;
+        }
+
+        if (this.buffer.getInt(Integer.BYTES) > VERSION) {
+            System.err.println("Snapshot file is from a newer version. [" + name + "]");
+            return null;
+        }
+
+        int numDiagrams = this.buffer.getInt(2 * Integer.BYTES);
+        int numArrows = this.buffer.getInt(3 * Integer.BYTES);
+        this.numStrings = this.buffer.getInt(4 * Integer.BYTES);
+        this.stringOffsetsStart = HEADER_SIZE + numDiagrams * DIAGRAM_RECORD_SIZE + numArrows * ARROW_RECORD_SIZE;
+        this.stringBytesStart = this.stringOffsetsStart + this.numStrings * Integer.BYTES;
+
+        DiagramDocument document = new DiagramDocument();
+        Point pos = new Point();
+
+        for (int record = 0; record < numDiagrams; record++) {
+            int offset = HEADER_SIZE + record * DIAGRAM_RECORD_SIZE;
+            pos.setLocation(this.buffer.getInt(offset + 2 * Integer.BYTES), this.buffer.getInt(offset + 3 * Integer.BYTES));
+
+            Diagram diagram;
+            if (this.buffer.getInt(offset) == CLASS_TYPE) {
+                diagram = new ClassDiagram("", pos);
+            } else {
+                diagram = new InterfaceDiagram("", pos);
+            }
+
+            diagram.setId(this.buffer.getInt(offset + Integer.BYTES));
+            diagram.setSize(this.buffer.getInt(offset + 4 * Integer.BYTES), this.buffer.getInt(offset + 5 * Integer.BYTES));
+            diagram.setSnapshot(this, record);
+            document.addDiagram(diagram);
+        }
+
+        for (int record = 0; record < numArrows; record++) {
+            int offset = HEADER_SIZE + numDiagrams * DIAGRAM_RECORD_SIZE + record * ARROW_RECORD_SIZE;
+            Diagram startDiagram = document.getDiagram(this.buffer.getInt(offset));
+            Diagram endDiagram = document.getDiagram(this.buffer.getInt(offset + Integer.BYTES));
+            if (startDiagram == null || endDiagram == null) {
+                System.err.println("Snapshot file arrow to a missing diagram. [" + name + "]");
+                return null;
+            }
+
+            int stroke = this.buffer.getInt(offset + 2 * Integer.BYTES);
+            Arrow arrow = new Arrow(startDiagram, endDiagram, stroke == DASHED_STROKE ? Arrow.DASHED : Arrow.SOLID,
+                this.buffer.getInt(offset + 3 * Integer.BYTES));
+            document.addArrow(arrow);
+            startDiagram.addArrow(arrow);
+            endDiagram.addArrow(arrow);
+        }
+
+        return document;
+    }
+
+    /**
+     * This decodes the text of a diagram from its record.
+     * @param diagram The diagram to give the text to.
+     * @param record The index of the diagram's record.
+     */
+    void loadText(Diagram diagram, int record) {
+        int offset = HEADER_SIZE + record * DIAGRAM_RECORD_SIZE;
+        String title = this.getString(this.buffer.getInt(offset + 6 * Integer.BYTES));
+        diagram.setLoadedTitle(title);
+
+        if (diagram instanceof InterfaceDiagram) {
+            InterfaceDiagram interfaceDiagram = (InterfaceDiagram) diagram;
+            for (int body = 0; body < NUM_BODY_FIELDS && body < interfaceDiagram.getNumBodies(); body++) {
+                String bodyText = this.getString(this.buffer.getInt(offset + (7 + body) * Integer.BYTES));
+                interfaceDiagram.setLoadedBodyText(body, bodyText);
+            }
+        }
+    }
+
+    /**
+     * This decodes a string from the string table.
+     * @param index The index of the string, or NO_TEXT.
+     * @return The string, empty if there is none.
+     */
+    private String getString(int index) {
+        if (index < 0 || index >= this.numStrings) {
+            return "";
+        }
+
+        int start = index == 0 ? 0 : this.buffer.getInt(this.stringOffsetsStart + (index - 1) * Integer.BYTES);
+        int end = this.buffer.getInt(this.stringOffsetsStart + index * Integer.BYTES);
+        byte[] bytes = new byte[end - start];
+        this.buffer.get(this.stringBytesStart + start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * This gets the index of a string in the string table being built, adding it if it is not there yet.
+     * @param string The string.
+     * @param strings The strings in the table.
+     * @param stringIndexes The index of each string in the table.
+     * @return The index.
+     */
+    private static int getStringIndex(String string, ArrayList<String> strings, HashMap<String, Integer> stringIndexes) {
+        Integer index = stringIndexes.get(string);
+        if (index == null) {
+            index = strings.size();
+            strings.add(string);
+            stringIndexes.put(string, index);
+        }
+        return index;
+    }
+}
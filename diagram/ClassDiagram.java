@@ -1,34 +1,21 @@
 package diagram;
 
-import java.awt.GridBagConstraints;
-import java.awt.Insets;
 import java.awt.Point;
-import java.awt.event.FocusListener;
-import java.awt.event.MouseListener;
 
 /**
- * This represents a diagram component that stores a class.
+ * This represents a diagram that stores a class.
  * @author Andrew Chu
  * @version June 2023
  */
 public class ClassDiagram extends InterfaceDiagram {
     /**
-     * This constructs a new Class Diagram component.
+     * This constructs a new Class Diagram.
      * @param titleText The title of this diagram.
      * @param pos The position of this diagram.
      */
     public ClassDiagram(String titleText, Point pos) {
         super(titleText, pos);
-        
-        GridBagConstraints constraints = new GridBagConstraints();
-        constraints.gridx = 0;
-        constraints.weightx = 1;
-        constraints.weighty = 1;
-        constraints.fill = GridBagConstraints.BOTH;
-        constraints.insets = new Insets(2, 2, 2, 2);
-
-        this.add(new DiagramBody(), constraints);
-        this.resizeDiagramToFit();
+        this.addBody();
     }
 
     /**
@@ -36,7 +23,7 @@ public class ClassDiagram extends InterfaceDiagram {
      * @param propertiesText The new properties text.
      */
     public void setPropertiesText(String propertiesText) {
-        this.getPropertiesBody().setText(propertiesText);
+        this.setBodyText(this.getPropertiesBodyIndex(), propertiesText);
     }
 
     /**
@@ -44,7 +31,7 @@ public class ClassDiagram extends InterfaceDiagram {
      * @return The properties text.
      */
     public String getPropertiesText() {
-        return this.getPropertiesBody().getText();
+        return this.getBodyText(this.getPropertiesBodyIndex());
     }
 
     /**
@@ -52,73 +39,31 @@ public class ClassDiagram extends InterfaceDiagram {
      * @return The last properties text.
      */
     public String getLastPropertiesText() {
-        return this.getPropertiesBody().getLastText();
+        return this.getLastBodyText(this.getPropertiesBodyIndex());
     }
 
     /**
-     * This gets the DiagramBody component for the properties.
-     * @return The properties DiagramBody component.
+     * This gets the index of the body section that stores the properties.
+     * @return The index of the properties body.
      */
-    public DiagramBody getPropertiesBody() {
-        return this.getBody(0);
-    }
-
-    @Override
-    public DiagramBody getMethodBody() {
-        return this.getBody(1);
-    }
-
-    @Override
-    public void setEnabled(boolean isEnabled) {
-        super.setEnabled(isEnabled);
-        this.getPropertiesBody().setEnabled(isEnabled);
+    public int getPropertiesBodyIndex() {
+        return 0;
     }
 
     @Override
-    public boolean isEnabled() {
-        return super.isEnabled() || this.getPropertiesBody().isEnabled();
-    }
-    
-    @Override
-    public void addFocusListener(FocusListener focusListener) {
-        super.addFocusListener(focusListener);
-        this.getPropertiesBody().addFocusListener(focusListener);
+    public int getMethodBodyIndex() {
+        return 1;
     }
 
     @Override
-    public void addMouseListener(MouseListener mouseListener) {
-        super.addMouseListener(mouseListener);
-        this.getPropertiesBody().addMouseListener(mouseListener);
-    }
-
-    @Override
-    public boolean isFocusOwner() {
-        return super.isFocusOwner() || this.getPropertiesBody().isFocusOwner();
+    public Diagram copy() {
+        ClassDiagram copy = new ClassDiagram("", new Point(this.getX(), this.getY()));
+        this.copyInto(copy);
+        return copy;
     }
 
     @Override
     public boolean textChanged() {
         return super.textChanged() || !this.getPropertiesText().equals(this.getLastPropertiesText());
     }
-
-    @Override
-    public void resizeDiagramToFit() {
-        if (this.getNumBodies() != 2) {
-            return;
-        }
-
-        DiagramTitle diagramTitle = this.getDiagramTitle();
-
-        int newWidth = Math.max(diagramTitle.getPreferredWidth(), MIN_WIDTH);
-        newWidth = Math.max(newWidth, this.getPropertiesBody().getPreferredWidth());
-        newWidth = Math.max(newWidth, this.getMethodBody().getPreferredWidth());
-
-        int newHeight = diagramTitle.getPreferredHeight() + 
-                this.getPropertiesBody().getPreferredHeight() + 
-                this.getMethodBody().getPreferredHeight();
-        newHeight = Math.max(newHeight, MIN_HEIGHT);
-
-        this.setSize(newWidth + 2, newHeight + 4);
-        this.revalidate();
-    }
 }
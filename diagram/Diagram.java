@@ -1,58 +1,71 @@
 package diagram;
-import java.awt.Color;
-import java.awt.Component;
-import java.awt.GridBagConstraints;
-import java.awt.GridBagLayout;
 import java.awt.Point;
-import java.awt.event.FocusAdapter;
-import java.awt.event.FocusEvent;
-import java.awt.event.FocusListener;
-import java.awt.event.MouseAdapter;
-import java.awt.event.MouseEvent;
-import java.awt.event.MouseListener;
+import java.awt.Rectangle;
 import java.util.ArrayList;
 
-import javax.swing.BorderFactory;
-import javax.swing.JPanel;
-import javax.swing.JTextArea;
-import javax.swing.JTextField;
-import javax.swing.event.DocumentEvent;
-import javax.swing.event.DocumentListener;
-
 import utility.Vector;
 
 /**
- * This class represents a Diagram in the UML editor.
+ * This class represents a Diagram in the UML editor. It only stores the data of the diagram (its id, text, bounds and
+ * attached arrows). It is displayed and edited through a DiagramView.
  * @author Andrew Chu
  * @version June 2023
  */
-abstract public class Diagram extends JPanel {
+abstract public class Diagram {
     public static final int MIN_WIDTH = 150;
     public static final int MIN_HEIGHT = 70;
-    private DiagramTitle title;
+
+    public static final int TOP_SIDE = 0;
+    public static final int RIGHT_SIDE = 1;
+    public static final int BOTTOM_SIDE = 2;
+    public static final int LEFT_SIDE = 3;
+    public static final int NUM_SIDES = 4;
+
+    private int id;
+    private String title;
+    private String lastTitle;
+    private Rectangle bounds;
+    private Rectangle lastBounds;
     private ArrayList<Arrow> arrows;
-    
+    private DiagramDocument document;
+    private int zOrder;
+    private CanvasSnapshot snapshot;
+    private int snapshotRecord;
+    private int textVersion;
+
     /**
      * This constructs a new Diagram object.
      * @param titleText The title of this Diagram.
      * @param pos The top-left corner of this Diagram.
      */
     public Diagram(String titleText, Point pos) {
-        super();
-        this.setLayout(new GridBagLayout());
-        this.setBounds(pos.x, pos.y, MIN_WIDTH, MIN_HEIGHT);
-        this.setBorder(BorderFactory.createLineBorder(Color.BLACK, 1));
-        this.setBackground(Color.WHITE);
+        this.id = 0;
+        this.title = titleText;
+        this.lastTitle = titleText;
+        this.bounds = new Rectangle(pos.x, pos.y, MIN_WIDTH, MIN_HEIGHT);
+        this.lastBounds = new Rectangle();
         this.arrows = new ArrayList<Arrow>();
+        this.document = null;
+        this.zOrder = 0;
+        this.snapshot = null;
+        this.snapshotRecord = 0;
+        this.textVersion = 0;
+    }
+
+    /**
+     * This gets the id of this Diagram. It is unique within the document it belongs to.
+     * @return The id, 0 if it has not been added to a document yet.
+     */
+    public int getId() {
+        return this.id;
+    }
 
-        GridBagConstraints constraints = new GridBagConstraints();
-        constraints.gridx = 0;
-        constraints.weightx = 1;
-        constraints.weighty = 1;
-        constraints.fill = GridBagConstraints.BOTH;
-        
-        this.title = new DiagramTitle(titleText);
-        this.add(this.title, constraints);
+    /**
+     * This sets the id of this Diagram.
+     * @param id The new id.
+     */
+    public void setId(int id) {
+        this.id = id;
     }
 
     /**
@@ -60,7 +73,37 @@ abstract public class Diagram extends JPanel {
      * @return The position.
      */
     public Vector getPos() {
-        return new Vector(this.getLocation());
+        return new Vector(this.bounds.getLocation());
+    }
+
+    /**
+     * This makes a copy of this Diagram with the same id, bounds and text that does not belong to any document.
+     * @return The copy.
+     */
+    public abstract Diagram copy();
+
+    /**
+     * This copies the id, size and title of this Diagram into a copy of it. Text not decoded from a snapshot yet is
+     * left that way: the copy shares the snapshot and decodes the text itself when it is used, so copying a large
+     * document does not decode all of it. The snapshot is only read, so the copy can be used on another thread.
+     * @param copy The copy, already at the same position.
+     */
+    protected void copyInto(Diagram copy) {
+        copy.setId(this.id);
+        copy.setSize(this.bounds.width, this.bounds.height);
+        if (this.snapshot != null) {
+            copy.setSnapshot(this.snapshot, this.snapshotRecord);
+        } else {
+            copy.setLoadedTitle(this.title);
+        }
+    }
+
+    /**
+     * This checks if the text of this Diagram has been decoded from its snapshot, or never came from one.
+     * @return True if the text is loaded, false if it is still waiting in a snapshot.
+     */
+    protected boolean isTextLoaded() {
+        return this.snapshot == null;
     }
 
     /**
@@ -68,10 +111,9 @@ abstract public class Diagram extends JPanel {
      * @param pos The new position.
      */
     public void setPos(Vector pos) {
-        this.setLocation(pos.toPoint());
-        for (Arrow arrow: this.arrows) {
-            arrow.calculatePoints();
-        }
+        this.lastBounds.setBounds(this.bounds);
+        this.bounds.setLocation(pos.toPoint());
+        this.boundsChanged();
     }
 
     /**
@@ -79,83 +121,119 @@ abstract public class Diagram extends JPanel {
      * @param changeInPos The amount to shift this Diagram.
      */
     public void shiftPos(Vector changeInPos) {
-        this.setLocation(this.getX() + (int) changeInPos.getX(), this.getY() + (int) changeInPos.getY());
-        for (Arrow arrow: this.arrows) {
-            arrow.calculatePoints();
-        }
+        this.lastBounds.setBounds(this.bounds);
+        this.bounds.translate((int) changeInPos.getX(), (int) changeInPos.getY());
+        this.boundsChanged();
     }
 
     /**
-     * This sets the title.
-     * @param titleText The new title.
+     * This sets the size of this Diagram.
+     * @param width The new width.
+     * @param height The new height.
      */
-    public void setTitle(String titleText) {
-        this.title.setTitle(titleText);
+    public void setSize(int width, int height) {
+        this.lastBounds.setBounds(this.bounds);
+        this.bounds.setSize(width, height);
+        this.boundsChanged();
     }
 
     /**
-     * This gets the title.
-     * @return The title.
+     * This gets the x-coordinate of the top-left corner of this Diagram.
+     * @return The x-coordinate.
      */
-    public String getTitle() {
-        return this.title.getTitle();
+    public int getX() {
+        return this.bounds.x;
     }
 
     /**
-     * This gets the last title of this Diagram if it was changed.
-     * @return The previous title.
+     * This gets the y-coordinate of the top-left corner of this Diagram.
+     * @return The y-coordinate.
      */
-    public String getLastTitle() {
-        return this.title.getLastTitle();
+    public int getY() {
+        return this.bounds.y;
     }
 
     /**
-     * This resizes the Diagram to perfectly fit the text within it.
+     * This gets the width of this Diagram.
+     * @return The width.
      */
-    public void resizeDiagramToFit() {
-        int newWidth = (int) Math.max(this.title.getPreferredWidth(), MIN_WIDTH);
-        int newHeight = (int) Math.max(this.title.getPreferredHeight(), MIN_HEIGHT);
+    public int getWidth() {
+        return this.bounds.width;
+    }
 
-        this.setSize(newWidth + 2, newHeight + 2);
-        this.revalidate();
+    /**
+     * This gets the height of this Diagram.
+     * @return The height.
+     */
+    public int getHeight() {
+        return this.bounds.height;
+    }
 
-        for (Arrow arrow: this.arrows) {
-            arrow.calculatePoints();
-        }
+    /**
+     * This gets the bounds of this Diagram.
+     * @return A copy of the bounds.
+     */
+    public Rectangle getBounds() {
+        return new Rectangle(this.bounds);
     }
 
     /**
-     * This gets the DiagramTitle component. 
-     * @return The DiagramTitle component.
+     * This checks if a point is inside this Diagram.
+     * @param point The point to check.
+     * @return True if it is inside, false if it is not.
      */
-    public DiagramTitle getDiagramTitle() {
-        return this.title;
+    public boolean contains(Point point) {
+        return this.bounds.contains(point);
     }
 
-    @Override
-    public void setEnabled(boolean isEnabled) {
-        super.setEnabled(isEnabled);
-        this.title.setEnabled(isEnabled);
+    /**
+     * This checks if this Diagram overlaps an area of the canvas.
+     * @param area The area to check.
+     * @return True if they overlap, false if they do not.
+     */
+    public boolean intersects(Rectangle area) {
+        return this.bounds.intersects(area);
     }
 
-    @Override
-    public boolean isEnabled() {
-        return this.title.isEnabled();
+    /**
+     * This sets the title.
+     * @param titleText The new title.
+     */
+    public void setTitle(String titleText) {
+        this.loadText();
+        this.lastTitle = this.title;
+        this.title = titleText;
+        this.textEdited();
     }
 
-    @Override
-    public void addFocusListener(FocusListener focusListener) {
-        this.title.addFocusListener(focusListener);
+    /**
+     * This sets the title as it was read from a file, so it does not count as an edit. Any text still waiting to be
+     * decoded from a snapshot is dropped, so the bodies should be set the same way right after.
+     * @param titleText The title.
+     */
+    void setLoadedTitle(String titleText) {
+        this.snapshot = null;
+        this.title = titleText;
+        this.lastTitle = titleText;
+        this.textReplaced();
     }
 
-    @Override
-    public void addMouseListener(MouseListener mouseListener) {
-        this.title.addMouseListener(mouseListener);
+    /**
+     * This gets the title.
+     * @return The title.
+     */
+    public String getTitle() {
+        this.loadText();
+        return this.title;
     }
 
-    @Override
-    public boolean isFocusOwner() {
-        return super.isFocusOwner() || this.title.isFocusOwner();
+    /**
+     * This gets the last title of this Diagram if it was changed.
+     * @return The previous title.
+     */
+    public String getLastTitle() {
+        this.loadText();
+        return this.lastTitle;
     }
 
     /**
@@ -163,16 +241,46 @@ abstract public class Diagram extends JPanel {
      * @return An array containing the mount points.
      */
     public Point[] getArrowMountPoints() {
-        Point[] mountPoints = {
-            new Point(this.getX() + this.getWidth() / 2, this.getY()), // Top
-            new Point(this.getX() + this.getWidth(), this.getY() + this.getHeight() / 2), // Right
-            new Point(this.getX() + this.getWidth() / 2, this.getY() + this.getHeight()), // Bottom
-            new Point(this.getX(), this.getY() + this.getHeight() / 2) // Left
-        };
+        Point[] mountPoints = new Point[NUM_SIDES];
+        for (int side = 0; side < NUM_SIDES; side++) {
+            mountPoints[side] = new Point(this.getArrowMountX(side), this.getArrowMountY(side));
+        }
 
         return mountPoints;
     }
 
+    /**
+     * This gets the x-coordinate of the arrow mount point in the middle of a side of this diagram.
+     * @param side The side: TOP_SIDE, RIGHT_SIDE, BOTTOM_SIDE or LEFT_SIDE.
+     * @return The x-coordinate.
+     */
+    public int getArrowMountX(int side) {
+        switch (side) {
+            case RIGHT_SIDE:
+                return this.bounds.x + this.bounds.width;
+            case LEFT_SIDE:
+                return this.bounds.x;
+            default:
+                return this.bounds.x + this.bounds.width / 2;
+        }
+    }
+
+    /**
+     * This gets the y-coordinate of the arrow mount point in the middle of a side of this diagram.
+     * @param side The side: TOP_SIDE, RIGHT_SIDE, BOTTOM_SIDE or LEFT_SIDE.
+     * @return The y-coordinate.
+     */
+    public int getArrowMountY(int side) {
+        switch (side) {
+            case TOP_SIDE:
+                return this.bounds.y;
+            case BOTTOM_SIDE:
+                return this.bounds.y + this.bounds.height;
+            default:
+                return this.bounds.y + this.bounds.height / 2;
+        }
+    }
+
     /**
      * This adds an arrow that is attached to this diagram.
      * @param arrow The attached arrow to add.
@@ -198,6 +306,14 @@ abstract public class Diagram extends JPanel {
         return this.arrows.contains(arrow);
     }
 
+    /**
+     * This gets the arrows attached to this diagram.
+     * @return The attached arrows.
+     */
+    public ArrayList<Arrow> getArrows() {
+        return this.arrows;
+    }
+
     /**
      * This checks if any text on this diagram was changed.
      * @return True if it has changed, false if it has not.
@@ -207,163 +323,83 @@ abstract public class Diagram extends JPanel {
     }
 
     /**
-     * This class represents the title component of this diagram. It can be edited.
+     * This sets the document this Diagram belongs to. The document is told whenever this Diagram moves.
+     * @param document The document, null if it was removed from one.
+     * @param zOrder The stacking order of this Diagram in the document. Higher ones are on top.
      */
-    public class DiagramTitle extends JTextField {
-        String lastTitleText;
-
-        /**
-         * This constructs a DiagramTitle component.
-         * @param titleText The title.
-         */
-        public DiagramTitle(String titleText) {
-            super(titleText);
-            this.lastTitleText = titleText;
-            this.setHorizontalAlignment(JTextField.CENTER);
-            this.addFocusListener(STOP_EDIT_ON_UNFOCUS);
-            this.addMouseListener(EDIT_ON_DOUBLECLICK);
-            this.getDocument().addDocumentListener(RESIZE_ON_EDIT);
-            this.setBackground(Color.WHITE);
-            this.setDisabledTextColor(Color.BLACK);
-            this.setEnabled(false);
-            this.setBorder(BorderFactory.createEmptyBorder());
-        }
-
-        /**
-         * This sets the title displayed by this component.
-         * @param titleText The new title.
-         */
-        public void setTitle(String titleText) {
-            this.lastTitleText = this.getTitle();
-            this.setText(titleText);
-        }
-
-        /** 
-         * This gets the title stored and displayed by this component.
-         */
-        public String getTitle() {
-            return this.getText();
-        }
-
-        /**
-         * This gets the last title stored and displayed by this component before this one was set.
-         * @return The last title.
-         */
-        public String getLastTitle() {
-            return this.lastTitleText;
-        }
-
-        /**
-         * This gets the preferred width of this title.
-         * @return The width.
-         */
-        public int getPreferredWidth() {
-            return (int) this.getPreferredSize().getWidth();
-        }
-
-        /**
-         * This gets the preferred height of this title.
-         * @return The height.
-         */
-        public int getPreferredHeight() {
-            return (int) this.getPreferredSize().getHeight();
-        }
+    void setDocument(DiagramDocument document, int zOrder) {
+        this.document = document;
+        this.zOrder = zOrder;
     }
 
     /**
-     * This represents a body section in this diagram. It can store and edit multiple lines of text.
+     * This gets the stacking order of this Diagram in its document. Higher ones are on top.
+     * @return The stacking order.
      */
-    public class DiagramBody extends JTextArea {
-        String lastText;
-
-        /**
-         * This constructs a DiagramBody component.
-         */
-        public DiagramBody() {
-            super();
-            this.lastText = "";
-            this.addFocusListener(STOP_EDIT_ON_UNFOCUS);
-            this.addMouseListener(EDIT_ON_DOUBLECLICK);
-            this.getDocument().addDocumentListener(RESIZE_ON_EDIT);
-            this.setDisabledTextColor(Color.BLACK);
-            this.setBorder(BorderFactory.createMatteBorder(1, 0, 0, 0, Color.LIGHT_GRAY));
-            this.setEnabled(false);
-        }
-
-        /**
-         * This sets the text displayed by this DiagramBody.
-         * @param text The text to set.
-         */
-        public void setText(String text) {
-            this.lastText = this.getText();
-            super.setText(text);
-        }
+    int getZOrder() {
+        return this.zOrder;
+    }
 
-        /**
-         *This gets the last text set before this one.
-         * @return The last text set.
-         */
-        public String getLastText() {
-            return this.lastText;
-        }
+    /**
+     * This makes the text of this Diagram come from a snapshot file. The text is only decoded the first time it is
+     * used, which is usually when this Diagram is first painted.
+     * @param snapshot The snapshot holding the text.
+     * @param record The index of this Diagram's record in the snapshot.
+     */
+    void setSnapshot(CanvasSnapshot snapshot, int record) {
+        this.snapshot = snapshot;
+        this.snapshotRecord = record;
+    }
 
-        /**
-         * This gets the width of this body.
-         * @return The width.
-         */
-        public int getPreferredWidth() {
-            return (int) this.getPreferredSize().getWidth();
+    /**
+     * This decodes the text of this Diagram from its snapshot file if it has not been decoded yet. Anything that reads
+     * or changes the text should call this first.
+     */
+    protected void loadText() {
+        if (this.snapshot != null) {
+            CanvasSnapshot textSnapshot = this.snapshot;
+            this.snapshot = null;
+            textSnapshot.loadText(this, this.snapshotRecord);
         }
+    }
 
-        /**
-         * This gets the height of this body.
-         * @return The height.
-         */
-        public int getPreferredHeight() {
-            return (int) this.getPreferredSize().getHeight();
-        }
+    /**
+     * This gets a number that changes whenever the text of this Diagram changes, so anything drawn from the text can
+     * tell when it is out of date.
+     * @return The text version.
+     */
+    public int getTextVersion() {
+        return this.textVersion;
     }
 
     /**
-     * This represents a focus event listener that disables this component when it loses focus.
+     * This marks the text of this Diagram as changed without counting it as an edit.
      */
-    public final FocusListener STOP_EDIT_ON_UNFOCUS = new FocusAdapter() {
-        @Override
-        public void focusLost(FocusEvent event) {
-            Component component = event.getComponent();
-            component.setEnabled(false);
-        }
-    };
+    void textReplaced() {
+        this.textVersion++;
+    }
 
     /**
-     * This represents a mouse listener that enables this component on double click.
+     * This tells the document that some text of this Diagram was edited.
      */
-    public final MouseListener EDIT_ON_DOUBLECLICK = new MouseAdapter() {
-        @Override
-        public void mouseClicked(MouseEvent event) {
-            Component component = event.getComponent();
-            component.requestFocus();
-            if (event.getClickCount() >= 2) {
-                component.setEnabled(true);
-            }
+    protected void textEdited() {
+        this.textReplaced();
+        if (this.document != null) {
+            this.document.diagramChanged(this);
         }
-    };
+    }
 
     /**
-     * This resizes the component to fit the text whenever the text gets edited.
+     * This tells the document and every attached arrow that the bounds of this diagram changed. The arrows are only
+     * marked to be rerouted, so moving this diagram many times before the next repaint only reroutes them once.
      */
-    public final DocumentListener RESIZE_ON_EDIT = new DocumentListener() {
-        @Override
-        public void insertUpdate(DocumentEvent event) {
-            resizeDiagramToFit();
+    private void boundsChanged() {
+        if (this.document != null) {
+            this.document.diagramMoved(this, this.lastBounds);
         }
 
-        @Override
-        public void removeUpdate(DocumentEvent event) {
-            resizeDiagramToFit();
+        for (Arrow arrow: this.arrows) {
+            arrow.invalidateRoute();
         }
-
-        @Override
-        public void changedUpdate(DocumentEvent event) {}   
-    };
+    }
 }
@@ -0,0 +1,607 @@
+package diagram;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javax.swing.SwingUtilities;
+
+import utility.SpatialIndex;
+
+/**
+ * This represents the contents of a canvas: its diagrams and the arrows between them. It does not hold any Swing
+ * components, so a model only costs as much as its text, positions and arrows. The diagrams and arrows are kept in a
+ * spatial index so the ones at a point or in an area can be found without checking all of them.
+ * <p>
+ * Arrows are routed around the diagrams in their way. The area each route was searched in is kept in another index,
+ * so when a diagram is added, removed or moved, only the arrows whose routes it could change are rerouted. When many
+ * arrows are rerouted at once, their routes are found on the threads of a fork-join pool, then set one by one.
+ * While diagrams are being dragged or a layout is being shown settling, routing can be deferred: arrows are drawn as
+ * direct lines until then, and routed around the diagrams once it is resumed.
+ * @author Andrew Chu
+ * @version June 2023
+ */
+public class DiagramDocument {
+    private ArrayList<Diagram> diagrams;
+    private ArrayList<Arrow> arrows;
+    private HashMap<Integer, Diagram> diagramsById;
+    private SpatialIndex<Diagram> diagramIndex;
+    private SpatialIndex<Arrow> arrowIndex;
+    private ArrowRouter router;
+    private SpatialIndex<Arrow> corridorIndex;
+    private HashMap<Arrow, Rectangle> corridors;
+    private LinkedHashSet<Arrow> dirtyArrows;
+    private boolean isRoutingScheduled;
+    private int numRoutingDeferrals;
+    private LinkedHashSet<Arrow> directArrows;
+    private boolean isTrackingChanges;
+    private LinkedHashSet<Diagram> changedDiagrams;
+    private LinkedHashSet<Arrow> changedArrows;
+    private int nextId;
+    private int nextZOrder;
+
+    private static final int ROUTES_PER_TASK = 16;
+
+    /**
+     * This compares diagrams by their stacking order, from the bottom-most to the top-most.
+     */
+    private static final Comparator<Diagram> Z_ORDER_COMPARATOR = new Comparator<Diagram>() {
+        @Override
+        public int compare(Diagram diagram1, Diagram diagram2) {
+            return Integer.compare(diagram1.getZOrder(), diagram2.getZOrder());
+        }
+    };
+
+    /**
+     * This constructs an empty document.
+     */
+    public DiagramDocument() {
+        this.diagrams = new ArrayList<Diagram>();
+        this.arrows = new ArrayList<Arrow>();
+        this.diagramsById = new HashMap<Integer, Diagram>();
+        this.diagramIndex = new SpatialIndex<Diagram>();
+        this.arrowIndex = new SpatialIndex<Arrow>();
+        this.router = new ArrowRouter(this.diagramIndex);
+        this.corridorIndex = new SpatialIndex<Arrow>();
+        this.corridors = new HashMap<Arrow, Rectangle>();
+        this.dirtyArrows = new LinkedHashSet<Arrow>();
+        this.isRoutingScheduled = false;
+        this.numRoutingDeferrals = 0;
+        this.directArrows = new LinkedHashSet<Arrow>();
+        this.isTrackingChanges = false;
+        this.changedDiagrams = new LinkedHashSet<Diagram>();
+        this.changedArrows = new LinkedHashSet<Arrow>();
+        this.nextId = 1;
+        this.nextZOrder = 1;
+    }
+
+    /**
+     * This adds a diagram on top of the others in this document. It is given a new id if it does not have one yet.
+     * @param diagram The diagram to add.
+     */
+    public void addDiagram(Diagram diagram) {
+        if (diagram.getId() == 0) {
+            diagram.setId(this.nextId);
+        }
+        this.nextId = Math.max(this.nextId, diagram.getId() + 1);
+
+        this.diagrams.add(diagram);
+        this.diagramsById.put(diagram.getId(), diagram);
+        this.diagramIndex.insert(diagram, diagram.getBounds());
+        diagram.setDocument(this, this.nextZOrder);
+        this.nextZOrder++;
+        this.diagramChanged(diagram);
+        this.invalidateRoutesAround(diagram.getBounds());
+    }
+
+    /**
+     * This removes a diagram from this document. Arrows attached to it are not removed.
+     * @param diagram The diagram to remove.
+     */
+    public void removeDiagram(Diagram diagram) {
+        if (this.diagramsById.remove(diagram.getId()) != null) {
+            this.diagrams.remove(diagram);
+            this.diagramIndex.remove(diagram, diagram.getBounds());
+            diagram.setDocument(null, 0);
+            this.diagramChanged(diagram);
+            this.invalidateRoutesAround(diagram.getBounds());
+        }
+    }
+
+    /**
+     * This adds an arrow to this document. It is routed around the diagrams in its way before it is next looked up.
+     * @param arrow The arrow to add.
+     */
+    public void addArrow(Arrow arrow) {
+        this.arrows.add(arrow);
+        this.arrowIndex.insert(arrow, arrow.getBounds());
+        arrow.setDocument(this);
+        arrow.markRouteInvalid();
+        this.dirtyArrows.add(arrow);
+        this.arrowChanged(arrow);
+    }
+
+    /**
+     * This removes an arrow from this document.
+     * @param arrow The arrow to remove.
+     */
+    public void removeArrow(Arrow arrow) {
+        if (this.arrows.remove(arrow)) {
+            this.dirtyArrows.remove(arrow);
+            this.directArrows.remove(arrow);
+            this.arrowIndex.remove(arrow, arrow.getBounds());
+            Rectangle corridor = this.corridors.remove(arrow);
+            if (corridor != null) {
+                this.corridorIndex.remove(arrow, corridor);
+            }
+            arrow.setDocument(null);
+            this.arrowChanged(arrow);
+        }
+    }
+
+    /**
+     * This updates the spatial index after a diagram in this document moved or was resized.
+     * @param diagram The diagram that moved.
+     * @param oldBounds The bounds of the diagram before it moved.
+     */
+    void diagramMoved(Diagram diagram, Rectangle oldBounds) {
+        this.diagramIndex.update(diagram, oldBounds, diagram.getBounds());
+        this.diagramChanged(diagram);
+        this.invalidateRoutesAround(oldBounds);
+        this.invalidateRoutesAround(diagram.getBounds());
+    }
+
+    /**
+     * This marks the arrows whose routes were searched for in an area where a diagram appeared or disappeared to be
+     * rerouted, since they may now have to go around it or may no longer have to.
+     * @param bounds The bounds of the diagram.
+     */
+    private void invalidateRoutesAround(Rectangle bounds) {
+        Rectangle obstacle = new Rectangle(bounds);
+        obstacle.grow(ArrowRouter.MARGIN, ArrowRouter.MARGIN);
+        for (Arrow arrow: this.corridorIndex.query(obstacle)) {
+            if (this.corridors.get(arrow).intersects(obstacle)) {
+                arrow.invalidateRoute();
+            }
+        }
+    }
+
+    /**
+     * This finds a route for an arrow in this document around the diagrams in its way, and remembers the area it was
+     * searched in.
+     * @param arrow The arrow.
+     * @return The route, which has no points if there is no way around the diagrams.
+     */
+    ArrowRouter.Route findRoute(Arrow arrow) {
+        ArrowRouter.Route route = this.router.findRoute(arrow.getStartDiagram(), arrow.getEndDiagram());
+        this.setCorridor(arrow, route.getCorridor());
+        return route;
+    }
+
+    /**
+     * This remembers the area the route of an arrow was searched in.
+     * @param arrow The arrow.
+     * @param corridor The area.
+     */
+    private void setCorridor(Arrow arrow, Rectangle corridor) {
+        Rectangle oldCorridor = this.corridors.put(arrow, corridor);
+        if (oldCorridor == null) {
+            this.corridorIndex.insert(arrow, corridor);
+        } else {
+            this.corridorIndex.update(arrow, oldCorridor, corridor);
+        }
+    }
+
+    /**
+     * This records that a diagram was added, removed, moved or edited, if changes are being tracked.
+     * @param diagram The diagram that changed.
+     */
+    void diagramChanged(Diagram diagram) {
+        if (this.isTrackingChanges) {
+            this.changedDiagrams.add(diagram);
+        }
+    }
+
+    /**
+     * This records that an arrow was added or removed, if changes are being tracked.
+     * @param arrow The arrow that changed.
+     */
+    private void arrowChanged(Arrow arrow) {
+        if (this.isTrackingChanges) {
+            this.changedArrows.add(arrow);
+        }
+    }
+
+    /**
+     * This sets whether the diagrams and arrows that are added, removed, moved or edited are recorded, so only the
+     * changes can be written out instead of the whole document.
+     * @param isTrackingChanges True to record changes, false to stop and forget the recorded ones.
+     */
+    public void setTrackingChanges(boolean isTrackingChanges) {
+        this.isTrackingChanges = isTrackingChanges;
+        if (!isTrackingChanges) {
+            this.clearChanges();
+        }
+    }
+
+    /**
+     * This gets the diagrams that were added, removed, moved or edited since the changes were last cleared. Whether
+     * one was removed can be checked with hasDiagram.
+     * @return The changed diagrams, in the order they first changed.
+     */
+    public LinkedHashSet<Diagram> getChangedDiagrams() {
+        return this.changedDiagrams;
+    }
+
+    /**
+     * This gets the arrows that were added or removed since the changes were last cleared. Whether one was removed can
+     * be checked with hasArrow.
+     * @return The changed arrows, in the order they first changed.
+     */
+    public LinkedHashSet<Arrow> getChangedArrows() {
+        return this.changedArrows;
+    }
+
+    /**
+     * This forgets the recorded changes.
+     */
+    public void clearChanges() {
+        this.changedDiagrams.clear();
+        this.changedArrows.clear();
+    }
+
+    /**
+     * This updates the spatial index after an arrow in this document was recalculated.
+     * @param arrow The arrow that moved.
+     * @param oldBounds The bounds of the arrow before it moved.
+     */
+    void arrowMoved(Arrow arrow, Rectangle oldBounds) {
+        this.arrowIndex.update(arrow, oldBounds, arrow.getBounds());
+    }
+
+    /**
+     * This marks an arrow in this document to be rerouted. Rerouting is coalesced: the marked arrows are rerouted once
+     * on the next pass of the event dispatch thread, or earlier if they are painted or hit-tested before then.
+     * @param arrow The arrow to reroute.
+     */
+    void invalidateArrow(Arrow arrow) {
+        this.dirtyArrows.add(arrow);
+
+        if (!this.isRoutingScheduled) {
+            this.isRoutingScheduled = true;
+            SwingUtilities.invokeLater(ROUTE_DIRTY_ARROWS);
+        }
+    }
+
+    /**
+     * This holds off routing arrows around diagrams until resumeRouting is called as many times as this. Arrows marked
+     * to be rerouted meanwhile are drawn as direct lines, which is cheap enough to do every frame while diagrams move.
+     */
+    public void deferRouting() {
+        this.numRoutingDeferrals++;
+    }
+
+    /**
+     * This undoes one call to deferRouting. Once routing is no longer deferred, the arrows drawn as direct lines
+     * meanwhile are marked to be rerouted around the diagrams.
+     */
+    public void resumeRouting() {
+        this.numRoutingDeferrals--;
+        if (this.numRoutingDeferrals > 0) {
+            return;
+        }
+
+        for (Arrow arrow: this.directArrows) {
+            arrow.markRouteInvalid();
+            this.invalidateArrow(arrow);
+        }
+        this.directArrows.clear();
+    }
+
+    /**
+     * This reroutes every arrow marked to be rerouted. If routing is deferred, they are drawn as direct lines instead
+     * and remembered to be routed later. Otherwise the routes are found first, split among threads if there are many,
+     * while nothing else can move the diagrams since this runs on the event dispatch thread. Then the arrows and the
+     * indexes are updated on this thread alone.
+     * @return The area covered by the rerouted arrows before and after, null if none were rerouted.
+     */
+    public Rectangle validateArrows() {
+        if (this.dirtyArrows.isEmpty()) {
+            return null;
+        }
+
+        ArrayList<Arrow> arrows = new ArrayList<Arrow>(this.dirtyArrows.size());
+        for (Arrow arrow: this.dirtyArrows) {
+            if (!arrow.isRouteValid()) {
+                arrows.add(arrow);
+            }
+        }
+        this.dirtyArrows.clear();
+
+        if (this.numRoutingDeferrals > 0) {
+            Rectangle changedArea = null;
+            for (Arrow arrow: arrows) {
+                changedArea = addBounds(changedArea, arrow.getBounds());
+                arrow.setRoute(null);
+                changedArea.add(arrow.getBounds());
+                this.directArrows.add(arrow);
+            }
+            return changedArea;
+        }
+
+        ArrowRouter.Route[] routes = new ArrowRouter.Route[arrows.size()];
+        if (arrows.size() > ROUTES_PER_TASK) {
+            ForkJoinPool.commonPool().invoke(new RouteTask(arrows, routes, 0, arrows.size()));
+        } else {
+            this.findRoutes(arrows, routes, 0, arrows.size());
+        }
+
+        Rectangle changedArea = null;
+        for (int i = 0; i < arrows.size(); i++) {
+            Arrow arrow = arrows.get(i);
+            changedArea = addBounds(changedArea, arrow.getBounds());
+            this.setCorridor(arrow, routes[i].getCorridor());
+            arrow.setRoute(routes[i]);
+            changedArea.add(arrow.getBounds());
+        }
+        return changedArea;
+    }
+
+    /**
+     * This finds the routes of a range of arrows without changing anything, so it can run on any thread while the
+     * diagrams stay where they are.
+     * @param arrows The arrows.
+     * @param routes The array to put the route of each arrow in.
+     * @param start The first arrow.
+     * @param end The arrow after the last.
+     */
+    private void findRoutes(ArrayList<Arrow> arrows, ArrowRouter.Route[] routes, int start, int end) {
+        for (int i = start; i < end; i++) {
+            Arrow arrow = arrows.get(i);
+            routes[i] = this.router.findRoute(arrow.getStartDiagram(), arrow.getEndDiagram());
+        }
+    }
+
+    /**
+     * This class finds the routes of a range of arrows, splitting the range between threads.
+     */
+    private class RouteTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private ArrayList<Arrow> arrows;
+        private ArrowRouter.Route[] routes;
+        private int start;
+        private int end;
+
+        /**
+         * This constructs a task for a range of arrows.
+         * @param arrows The arrows.
+         * @param routes The array to put the route of each arrow in.
+         * @param start The first arrow.
+         * @param end The arrow after the last.
+         */
+        public RouteTask(ArrayList<Arrow> arrows, ArrowRouter.Route[] routes, int start, int end) {
+            this.arrows = arrows;
+            this.routes = routes;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.end - this.start > ROUTES_PER_TASK) {
+                int middle = (this.start + this.end) >>> 1;
+                invokeAll(new RouteTask(this.arrows, this.routes, this.start, middle),
+                    new RouteTask(this.arrows, this.routes, middle, this.end));
+            } else {
+                findRoutes(this.arrows, this.routes, this.start, this.end);
+            }
+        }
+    }
+
+    /**
+     * This reroutes the marked arrows once per pass of the event dispatch thread.
+     */
+    private final Runnable ROUTE_DIRTY_ARROWS = new Runnable() {
+        @Override
+        public void run() {
+            isRoutingScheduled = false;
+            validateArrows();
+        }
+    };
+
+    /**
+     * This checks if a diagram is in this document.
+     * @param diagram The diagram to check.
+     * @return True if it is in this document, false if not.
+     */
+    public boolean hasDiagram(Diagram diagram) {
+        return this.diagramsById.get(diagram.getId()) == diagram;
+    }
+
+    /**
+     * This checks if an arrow is in this document.
+     * @param arrow The arrow to check.
+     * @return True if it is in this document, false if not.
+     */
+    public boolean hasArrow(Arrow arrow) {
+        return arrow.getDocument() == this;
+    }
+
+    /**
+     * This gets a diagram by its id.
+     * @param id The id of the diagram.
+     * @return The diagram, null if there is none with the id.
+     */
+    public Diagram getDiagram(int id) {
+        return this.diagramsById.get(id);
+    }
+
+    /**
+     * This gets the diagrams in this document, from the bottom-most to the top-most.
+     * @return The diagrams.
+     */
+    public ArrayList<Diagram> getDiagrams() {
+        return this.diagrams;
+    }
+
+    /**
+     * This gets the arrows in this document.
+     * @return The arrows.
+     */
+    public ArrayList<Arrow> getArrows() {
+        return this.arrows;
+    }
+
+    /**
+     * This makes a copy of this document, with copies of its diagrams and arrows. The copy shares nothing with this
+     * document but the read-only snapshot its text may still be decoded from, so it can be handed to another thread
+     * while this one keeps being edited. Copying does not decode the text of this document's diagrams.
+     * @return The copy.
+     */
+    public DiagramDocument copy() {
+        DiagramDocument copy = new DiagramDocument();
+        ArrayList<Diagram> sortedDiagrams = new ArrayList<Diagram>(this.diagrams);
+        Collections.sort(sortedDiagrams, Z_ORDER_COMPARATOR);
+        for (Diagram diagram: sortedDiagrams) {
+            copy.addDiagram(diagram.copy());
+        }
+
+        for (Arrow arrow: this.arrows) {
+            Diagram startDiagram = copy.getDiagram(arrow.getStartDiagram().getId());
+            Diagram endDiagram = copy.getDiagram(arrow.getEndDiagram().getId());
+            Arrow arrowCopy = new Arrow(startDiagram, endDiagram, arrow.getStroke(), arrow.getEndStyle());
+            copy.addArrow(arrowCopy);
+            startDiagram.addArrow(arrowCopy);
+            endDiagram.addArrow(arrowCopy);
+        }
+
+        copy.nextId = this.nextId;
+        return copy;
+    }
+
+    /**
+     * This gets the smallest area of the canvas that covers every diagram and arrow in this document. The spatial
+     * indexes keep track of the cells covered by all of them, so only the ones in the outermost cells are checked.
+     * @return The area, empty if the document is empty.
+     */
+    public Rectangle getContentBounds() {
+        this.validateArrows();
+        Rectangle cellBounds = this.diagramIndex.getCellBounds();
+        Rectangle arrowCellBounds = this.arrowIndex.getCellBounds();
+        if (cellBounds == null) {
+            cellBounds = arrowCellBounds;
+        } else if (arrowCellBounds != null) {
+            cellBounds.add(arrowCellBounds);
+        }
+
+        if (cellBounds == null) {
+            return new Rectangle();
+        }
+
+        // The areas queried stop a pixel short of the next cell so they only cover the outermost cells.
+        int edgeSize = this.diagramIndex.getCellSize() - 1;
+        Rectangle[] edges = {
+            new Rectangle(cellBounds.x, cellBounds.y, edgeSize, cellBounds.height - 1),
+            new Rectangle(cellBounds.x + cellBounds.width - 1 - edgeSize, cellBounds.y, edgeSize, cellBounds.height - 1),
+            new Rectangle(cellBounds.x, cellBounds.y, cellBounds.width - 1, edgeSize),
+            new Rectangle(cellBounds.x, cellBounds.y + cellBounds.height - 1 - edgeSize, cellBounds.width - 1, edgeSize)
+        };
+
+        Rectangle bounds = null;
+        for (Rectangle edge: edges) {
+            for (Diagram diagram: this.diagramIndex.query(edge)) {
+                bounds = addBounds(bounds, diagram.getBounds());
+            }
+            for (Arrow arrow: this.arrowIndex.query(edge)) {
+                bounds = addBounds(bounds, arrow.getBounds());
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * This adds an area to the area covering others.
+     * @param bounds The area covering the others, null if there are none yet.
+     * @param area The area to add.
+     * @return The area covering all of them.
+     */
+    private static Rectangle addBounds(Rectangle bounds, Rectangle area) {
+        if (bounds == null) {
+            return new Rectangle(area);
+        }
+        bounds.add(area);
+        return bounds;
+    }
+
+    /**
+     * This gets the diagrams overlapping an area, from the bottom-most to the top-most.
+     * @param area The area on the canvas.
+     * @return The diagrams.
+     */
+    public ArrayList<Diagram> getDiagramsIn(Rectangle area) {
+        ArrayList<Diagram> results = new ArrayList<Diagram>();
+        for (Diagram diagram: this.diagramIndex.query(area)) {
+            if (diagram.intersects(area)) {
+                results.add(diagram);
+            }
+        }
+
+        Collections.sort(results, Z_ORDER_COMPARATOR);
+        return results;
+    }
+
+    /**
+     * This gets the arrows overlapping an area.
+     * @param area The area on the canvas.
+     * @return The arrows.
+     */
+    public ArrayList<Arrow> getArrowsIn(Rectangle area) {
+        this.validateArrows();
+        ArrayList<Arrow> results = new ArrayList<Arrow>();
+        for (Arrow arrow: this.arrowIndex.query(area)) {
+            if (arrow.intersects(area)) {
+                results.add(arrow);
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * This gets the top-most diagram at a point.
+     * @param point The point on the canvas.
+     * @return The diagram, null if there is none.
+     */
+    public Diagram getDiagramAt(Point point) {
+        Diagram topDiagram = null;
+        for (Diagram diagram: this.diagramIndex.query(point)) {
+            if (diagram.contains(point) && (topDiagram == null || diagram.getZOrder() > topDiagram.getZOrder())) {
+                topDiagram = diagram;
+            }
+        }
+
+        return topDiagram;
+    }
+
+    /**
+     * This gets an arrow close enough to a point to select it.
+     * @param point The point on the canvas.
+     * @return The arrow, null if there is none.
+     */
+    public Arrow getArrowAt(Point point) {
+        this.validateArrows();
+        for (Arrow arrow: this.arrowIndex.query(point)) {
+            if (arrow.contains(point.x, point.y)) {
+                return arrow;
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,240 @@
+package diagram;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import utility.PngWriter;
+
+/**
+ * This exports the contents of a document as an image. It paints from the document itself, so it does not need a
+ * canvas on screen and works in a headless environment. A renderer can only be used by one thread at a time, so each
+ * thread exporting at once should have its own.
+ * <p>
+ * PNG images are painted in tiles and streamed to the file a band of rows at a time, so only one band is in memory no
+ * matter how big the canvas or the scale is. SVG and PDF are written as vector markup by a VectorExporter, ignoring the
+ * scale. Other formats are painted into one image first.
+ * @author Andrew Chu
+ * @version June 2023
+ */
+public class DiagramExporter {
+    public static final int MARGIN = 20;
+    public static final int TILE_SIZE = 256;
+    public static final Color BACKGROUND_COLOR = Color.WHITE;
+    public static final Color FOREGROUND_COLOR = Color.BLACK;
+    public static final String PNG_FORMAT = "png";
+
+    /**
+     * This gets the area of the canvas that is exported: the contents of the document with a margin around them.
+     * @param document The document.
+     * @return The area.
+     */
+    public static Rectangle getExportBounds(DiagramDocument document) {
+        Rectangle bounds = document.getContentBounds();
+        bounds.grow(MARGIN, MARGIN);
+        return bounds;
+    }
+
+    /**
+     * This gets the size of a side of the exported image.
+     * @param length The length of the side on the canvas.
+     * @param scale The scale of the image.
+     * @return The length in pixels, at least 1.
+     */
+    private static long getScaledLength(int length, double scale) {
+        return Math.max(1, (long) Math.ceil(length * scale));
+    }
+
+    /**
+     * This paints the whole document into a new image.
+     * @param document The document to paint.
+     * @param renderer The renderer to paint the diagrams with.
+     * @param scale The number of pixels per unit on the canvas.
+     * @return The image, or null if it would be too big to fit in one image.
+     */
+    public static BufferedImage renderImage(DiagramDocument document, DiagramRenderer renderer, double scale) {
+        Rectangle bounds = getExportBounds(document);
+        long width = getScaledLength(bounds.width, scale);
+        long height = getScaledLength(bounds.height, scale);
+        if (width * height > Integer.MAX_VALUE) {
+            return null;
+        }
+
+        BufferedImage image = new BufferedImage((int) width, (int) height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        paintTile(graphics, document, renderer, bounds, scale, 0, 0, image.getWidth(), image.getHeight());
+        graphics.dispose();
+
+        return image;
+    }
+
+    /**
+     * This paints part of the exported image.
+     * @param graphics The graphics to paint on. The tile is painted at its top-left corner.
+     * @param document The document to paint.
+     * @param renderer The renderer to paint the diagrams with.
+     * @param bounds The area of the canvas that is exported.
+     * @param scale The number of pixels per unit on the canvas.
+     * @param tileX The left of the tile in the exported image.
+     * @param tileY The top of the tile in the exported image.
+     * @param tileWidth The width of the tile in pixels.
+     * @param tileHeight The height of the tile in pixels.
+     */
+    private static void paintTile(Graphics2D graphics, DiagramDocument document, DiagramRenderer renderer,
+            Rectangle bounds, double scale, int tileX, int tileY, int tileWidth, int tileHeight) {
+        graphics.setColor(BACKGROUND_COLOR);
+        graphics.fillRect(0, 0, tileWidth, tileHeight);
+        graphics.setColor(FOREGROUND_COLOR);
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+
+        Graphics2D g2 = (Graphics2D) graphics.create();
+        g2.clipRect(0, 0, tileWidth, tileHeight);
+        g2.scale(scale, scale);
+        g2.translate(-(bounds.x + tileX / scale), -(bounds.y + tileY / scale));
+
+        // The area of the canvas under the tile, widened by a unit to cover the pixels it only partly covers.
+        int areaX = (int) Math.floor(bounds.x + tileX / scale) - 1;
+        int areaY = (int) Math.floor(bounds.y + tileY / scale) - 1;
+        Rectangle area = new Rectangle(areaX, areaY,
+            (int) Math.ceil(tileWidth / scale) + 2, (int) Math.ceil(tileHeight / scale) + 2);
+        paintArea(g2, document, renderer, area);
+        g2.dispose();
+    }
+
+    /**
+     * This paints the arrows and then the diagrams of a document that overlap an area.
+     * @param graphics The graphics to paint on, in the coordinates of the canvas.
+     * @param document The document to paint.
+     * @param renderer The renderer to paint the diagrams with.
+     * @param area The area of the canvas to paint.
+     */
+    public static void paintArea(Graphics2D graphics, DiagramDocument document, DiagramRenderer renderer,
+            Rectangle area) {
+        for (Arrow arrow: document.getArrowsIn(area)) {
+            arrow.paint(graphics);
+        }
+
+        for (Diagram diagram: document.getDiagramsIn(area)) {
+            renderer.paintDiagram(graphics, diagram, false);
+        }
+    }
+
+    /**
+     * This exports the whole document as an image file.
+     * @param document The document to export.
+     * @param renderer The renderer to paint the diagrams with.
+     * @param file The image file to write.
+     * @param format The informal name of the image format, such as png, jpg, svg or pdf.
+     * @param scale The number of pixels per unit on the canvas, unused by vector formats.
+     * @param monitor The monitor to report progress to, or null.
+     * @return True if it was exported, false if not or if it was cancelled.
+     */
+    public static boolean exportImage(DiagramDocument document, DiagramRenderer renderer, File file, String format,
+            double scale, ExportMonitor monitor) {
+        if (format.equalsIgnoreCase(PNG_FORMAT)) {
+            return exportTiledPng(document, renderer, file, scale, monitor);
+        } else if (format.equalsIgnoreCase(SvgExporter.EXTENSION)) {
+            return new SvgExporter().export(document, file, monitor);
+        } else if (format.equalsIgnoreCase(PdfExporter.EXTENSION)) {
+            return new PdfExporter().export(document, file, monitor);
+        }
+
+        BufferedImage image = renderImage(document, renderer, scale);
+        if (image == null) {
+            System.err.println("Image is too big for the format, export it as PNG instead. [" + format + "]");
+            return false;
+        }
+
+        if (monitor != null) {
+            if (monitor.isExportCancelled()) {
+                return false;
+            }
+            monitor.exportProgressed(0.5);
+        }
+
+        try {
+            if (!ImageIO.write(image, format, file)) {
+                System.err.println("Cannot write image format. [" + format + "]");
+                return false;
+            }
+            return true;
+        } catch (IOException exception) {
+            System.err.println("Cannot write image file. [" + file.getPath() + "]");
+            return false;
+        }
+    }
+
+    /**
+     * This exports the whole document as a PNG image, painting it in tiles and writing each band of tiles to the file
+     * before painting the next.
+     * @param document The document to export.
+     * @param renderer The renderer to paint the diagrams with.
+     * @param file The image file to write.
+     * @param scale The number of pixels per unit on the canvas.
+     * @param monitor The monitor to report progress to after every tile, or null.
+     * @return True if it was exported, false if not or if it was cancelled.
+     */
+    public static boolean exportTiledPng(DiagramDocument document, DiagramRenderer renderer, File file,
+            double scale, ExportMonitor monitor) {
+        Rectangle bounds = getExportBounds(document);
+        long width = getScaledLength(bounds.width, scale);
+        long height = getScaledLength(bounds.height, scale);
+        if (width * TILE_SIZE > Integer.MAX_VALUE || height > Integer.MAX_VALUE) {
+            System.err.println("Image is too big to export. [" + width + "x" + height + "]");
+            return false;
+        }
+
+        BufferedImage tile = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+        int[] band = new int[(int) width * TILE_SIZE];
+        long numTilesAcross = (width + TILE_SIZE - 1) / TILE_SIZE;
+        long numTiles = numTilesAcross * ((height + TILE_SIZE - 1) / TILE_SIZE);
+        long numTilesDone = 0;
+
+        try {
+            PngWriter writer = new PngWriter(new BufferedOutputStream(new FileOutputStream(file)),
+                (int) width, (int) height);
+            try {
+                for (int bandY = 0; bandY < height; bandY += TILE_SIZE) {
+                    int bandHeight = (int) Math.min(TILE_SIZE, height - bandY);
+
+                    for (int tileX = 0; tileX < width; tileX += TILE_SIZE) {
+                        int tileWidth = (int) Math.min(TILE_SIZE, width - tileX);
+                        Graphics2D graphics = tile.createGraphics();
+                        paintTile(graphics, document, renderer, bounds, scale, tileX, bandY, tileWidth, bandHeight);
+                        graphics.dispose();
+                        tile.getRGB(0, 0, tileWidth, bandHeight, band, tileX, (int) width);
+
+                        numTilesDone++;
+                        if (monitor != null) {
+                            if (monitor.isExportCancelled()) {
+                                writer.abort();
+                                file.delete();
+                                return false;
+                            }
+                            monitor.exportProgressed((double) numTilesDone / numTiles);
+                        }
+                    }
+
+                    for (int y = 0; y < bandHeight; y++) {
+                        writer.writeRow(band, y * (int) width);
+                    }
+                }
+            } finally {
+                writer.close();
+            }
+            return true;
+        } catch (IOException exception) {
+            System.err.println("Cannot write image file. [" + file.getPath() + "]");
+            file.delete();
+            return false;
+        }
+    }
+}
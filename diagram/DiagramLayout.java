@@ -0,0 +1,19 @@
+package diagram;
+
+import java.awt.Point;
+import java.util.HashMap;
+
+/**
+ * This interface represents a way of arranging the diagrams of a document. A layout records what it needs from the
+ * document when it is made, so it can be run off the event dispatch thread while the document goes on being edited.
+ * @author Andrew Chu
+ * @version June 2023
+ */
+public interface DiagramLayout {
+    /**
+     * Works out the layout.
+     * @param monitor What to tell of the positions found so far, or null.
+     * @return The new position of each arranged diagram, by id, or null if the monitor cancelled the layout.
+     */
+    public HashMap<Integer, Point> run(LayoutMonitor monitor);
+}
@@ -0,0 +1,387 @@
+package diagram;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Stroke;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import javax.swing.CellRendererPane;
+import javax.swing.UIManager;
+
+/**
+ * This paints diagrams without giving each of them their own Swing components. A single DiagramView is used as a
+ * stamp: it is loaded with the text of each diagram, painted, then reused for the next one.
+ * <p>
+ * The renderer can also keep an image of each diagram it paints, called a sprite, so painting a diagram that has not
+ * changed is a single image copy. A sprite is drawn again when the text, size, selection or scale of its diagram
+ * changes. The sprites used least recently are dropped once they pass the cache size.
+ * <p>
+ * When painted small enough that the text of the bodies cannot be read, diagrams can be drawn as outlines instead: a
+ * box with the title in the middle. Once even the title is too small to read, it is drawn as a grey bar. Arrows are
+ * drawn as thin lines at the same scales.
+ * @author Andrew Chu
+ * @version June 2023
+ */
+public class DiagramRenderer {
+    public static final long DEFAULT_CACHE_SIZE = 32L << 20;
+    public static final double DEFAULT_OUTLINE_SCALE = 0.5;
+
+    private static final int MIN_TEXT_HEIGHT = 5;
+    private static final int DEFAULT_FONT_SIZE = 12;
+    private static final Color SELECTED_COLOR = Color.CYAN;
+    private static final Color TEXT_BAR_COLOR = new Color(0, 0, 0, 64);
+    private static final Stroke BORDER = new BasicStroke(1);
+    private static final Stroke SELECTED_BORDER = new BasicStroke(2);
+
+    private static final int ROTATING_TRANSFORMS = AffineTransform.TYPE_FLIP | AffineTransform.TYPE_MASK_ROTATION
+        | AffineTransform.TYPE_GENERAL_TRANSFORM;
+
+    private DiagramView stamp;
+    private CellRendererPane rendererPane;
+    private LinkedHashMap<Diagram, Sprite> sprites;
+    private long cacheSize;
+    private long maxCacheSize;
+    private double outlineScale;
+    private Font titleFont;
+
+    /**
+     * This constructs a new DiagramRenderer that does not cache sprites.
+     */
+    public DiagramRenderer() {
+        this(0);
+    }
+
+    /**
+     * This constructs a new DiagramRenderer.
+     * @param maxCacheSize The number of bytes of sprites to keep, 0 to paint every diagram from its text each time.
+     */
+    public DiagramRenderer(long maxCacheSize) {
+        this.stamp = new DiagramView();
+        this.rendererPane = new CellRendererPane();
+        this.sprites = new LinkedHashMap<Diagram, Sprite>(16, 0.75f, true);
+        this.cacheSize = 0;
+        this.maxCacheSize = maxCacheSize;
+        this.outlineScale = 0;
+        this.titleFont = UIManager.getFont("TextField.font");
+        if (this.titleFont == null) {
+            this.titleFont = new Font(Font.SANS_SERIF, Font.PLAIN, DEFAULT_FONT_SIZE);
+        }
+    }
+
+    /**
+     * This sets the scale at and below which diagrams are drawn as outlines instead of in full.
+     * @param outlineScale The number of device pixels per canvas unit, 0 to always draw diagrams in full.
+     */
+    public void setOutlineScale(double outlineScale) {
+        this.outlineScale = outlineScale;
+    }
+
+    /**
+     * This gets the pane the stamp is painted through. It should be added to the component the diagrams are painted on.
+     * @return The renderer pane.
+     */
+    public CellRendererPane getRendererPane() {
+        return this.rendererPane;
+    }
+
+    /**
+     * This paints a diagram. The graphics should be in the coordinates of the canvas.
+     * @param graphics The graphics to paint on.
+     * @param diagram The diagram to paint.
+     * @param isSelected True if the diagram should be highlighted as selected, false if not.
+     */
+    public void paintDiagram(Graphics graphics, Diagram diagram, boolean isSelected) {
+        AffineTransform transform = ((Graphics2D) graphics).getTransform();
+        double scale = transform.getScaleX();
+
+        // Sprites are only used when they can be copied straight onto the device pixels.
+        if (this.maxCacheSize <= 0 || (transform.getType() & ROTATING_TRANSFORMS) != 0
+                || scale != transform.getScaleY() || scale <= 0) {
+            this.paintDirectly(graphics, diagram, isSelected, diagram.getX(), diagram.getY(), getScale(transform));
+            return;
+        }
+
+        Sprite sprite = this.sprites.get(diagram);
+        if (sprite == null || !sprite.isDrawnFrom(diagram, isSelected, scale)) {
+            if (sprite != null) {
+                this.removeSprite(diagram);
+            }
+
+            sprite = this.createSprite(((Graphics2D) graphics).getDeviceConfiguration(), diagram, isSelected, scale);
+            if (sprite.getSize() > this.maxCacheSize) {
+                sprite.image.flush();
+                this.paintDirectly(graphics, diagram, isSelected, diagram.getX(), diagram.getY(), scale);
+                return;
+            }
+
+            this.sprites.put(diagram, sprite);
+            this.cacheSize += sprite.getSize();
+            this.trimCache();
+        }
+
+        Graphics2D deviceGraphics = (Graphics2D) graphics.create();
+        deviceGraphics.setTransform(new AffineTransform());
+        int x = (int) Math.round(transform.getTranslateX() + diagram.getX() * scale);
+        int y = (int) Math.round(transform.getTranslateY() + diagram.getY() * scale);
+        deviceGraphics.drawImage(sprite.image, x, y, null);
+        deviceGraphics.dispose();
+    }
+
+    /**
+     * This paints an arrow, as a thin line if diagrams are drawn as outlines at the scale of the graphics. The graphics
+     * should be in the coordinates of the canvas.
+     * @param graphics The graphics to paint on.
+     * @param arrow The arrow to paint.
+     */
+    public void paintArrow(Graphics2D graphics, Arrow arrow) {
+        if (getScale(graphics.getTransform()) <= this.outlineScale) {
+            arrow.paintOutline(graphics);
+        } else {
+            arrow.paint(graphics);
+        }
+    }
+
+    /**
+     * This drops the sprite of a diagram, for example when it is removed from the document.
+     * @param diagram The diagram.
+     */
+    public void forgetDiagram(Diagram diagram) {
+        if (this.sprites.containsKey(diagram)) {
+            this.removeSprite(diagram);
+        }
+    }
+
+    /**
+     * This drops every sprite.
+     */
+    public void clearCache() {
+        for (Sprite sprite: this.sprites.values()) {
+            sprite.image.flush();
+        }
+        this.sprites.clear();
+        this.cacheSize = 0;
+    }
+
+    /**
+     * This gets the number of bytes used by the sprites kept.
+     * @return The size of the cache.
+     */
+    public long getCacheSize() {
+        return this.cacheSize;
+    }
+
+    /**
+     * This gets the size that perfectly fits the text of a diagram.
+     * @param diagram The diagram to measure.
+     * @return The fitted size.
+     */
+    public Dimension getFittedSize(Diagram diagram) {
+        this.stamp.setDiagram(diagram);
+        return this.stamp.getFittedSize();
+    }
+
+    /**
+     * This resizes a diagram to perfectly fit its text.
+     * @param diagram The diagram to resize.
+     */
+    public void resizeDiagramToFit(Diagram diagram) {
+        Dimension size = this.getFittedSize(diagram);
+        diagram.setSize(size.width, size.height);
+    }
+
+    /**
+     * This gets the number of device pixels per canvas unit along the axis a transform stretches the most.
+     * @param transform The transform from the canvas to the device.
+     * @return The scale.
+     */
+    private static double getScale(AffineTransform transform) {
+        double scaleX = Math.hypot(transform.getScaleX(), transform.getShearY());
+        double scaleY = Math.hypot(transform.getShearX(), transform.getScaleY());
+        return Math.max(scaleX, scaleY);
+    }
+
+    /**
+     * This paints a diagram without a sprite, as an outline if it is too small to read at the scale.
+     * @param graphics The graphics to paint on.
+     * @param diagram The diagram to paint.
+     * @param isSelected True if the diagram should be highlighted as selected, false if not.
+     * @param x The x-coordinate to paint the diagram at.
+     * @param y The y-coordinate to paint the diagram at.
+     * @param scale The number of device pixels per canvas unit.
+     */
+    private void paintDirectly(Graphics graphics, Diagram diagram, boolean isSelected, int x, int y, double scale) {
+        if (scale <= this.outlineScale) {
+            this.paintOutline(graphics, diagram, isSelected, x, y, scale);
+        } else {
+            this.paintStamp(graphics, diagram, isSelected, x, y);
+        }
+    }
+
+    /**
+     * This paints a diagram with the stamp.
+     * @param graphics The graphics to paint on.
+     * @param diagram The diagram to paint.
+     * @param isSelected True if the diagram should be highlighted as selected, false if not.
+     * @param x The x-coordinate to paint the diagram at.
+     * @param y The y-coordinate to paint the diagram at.
+     */
+    private void paintStamp(Graphics graphics, Diagram diagram, boolean isSelected, int x, int y) {
+        this.stamp.setDiagram(diagram);
+        this.stamp.setSelected(isSelected);
+        this.rendererPane.paintComponent(graphics, this.stamp, null, x, y, diagram.getWidth(), diagram.getHeight(), true);
+    }
+
+    /**
+     * This paints a diagram as a box with its title in the middle.
+     * @param graphics The graphics to paint on.
+     * @param diagram The diagram to paint.
+     * @param isSelected True if the diagram should be highlighted as selected, false if not.
+     * @param x The x-coordinate to paint the diagram at.
+     * @param y The y-coordinate to paint the diagram at.
+     * @param scale The number of device pixels per canvas unit.
+     */
+    private void paintOutline(Graphics graphics, Diagram diagram, boolean isSelected, int x, int y, double scale) {
+        int width = diagram.getWidth();
+        int height = diagram.getHeight();
+        Color lastColor = graphics.getColor();
+        Font lastFont = graphics.getFont();
+
+        // The border is drawn as a line rather than filled so it stays at least a pixel wide however small it gets.
+        Graphics2D g2 = (Graphics2D) graphics;
+        Stroke lastStroke = g2.getStroke();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(x, y, width, height);
+        g2.setStroke(isSelected ? SELECTED_BORDER : BORDER);
+        graphics.setColor(isSelected ? SELECTED_COLOR : Color.BLACK);
+        graphics.drawRect(x, y, width - 1, height - 1);
+        g2.setStroke(lastStroke);
+
+        String title = diagram.getTitle();
+        if (!title.isEmpty()) {
+            graphics.setFont(this.titleFont);
+            FontMetrics metrics = graphics.getFontMetrics();
+            int textWidth = Math.min(metrics.stringWidth(title), width - 8);
+            int textX = x + (width - textWidth) / 2;
+            if (metrics.getHeight() * scale < MIN_TEXT_HEIGHT) {
+                int barHeight = metrics.getAscent() / 2;
+                graphics.setColor(TEXT_BAR_COLOR);
+                graphics.fillRect(textX, y + (height - barHeight) / 2, textWidth, barHeight);
+            } else {
+                Graphics textGraphics = graphics.create(textX, y, textWidth, height);
+                textGraphics.setColor(Color.BLACK);
+                textGraphics.drawString(title, 0, (height - metrics.getHeight()) / 2 + metrics.getAscent());
+                textGraphics.dispose();
+            }
+        }
+
+        graphics.setColor(lastColor);
+        graphics.setFont(lastFont);
+    }
+
+    /**
+     * This paints a diagram onto a new sprite.
+     * @param configuration The configuration of the device the sprite will be copied to.
+     * @param diagram The diagram to paint.
+     * @param isSelected True if the diagram should be highlighted as selected, false if not.
+     * @param scale The number of device pixels per canvas unit.
+     * @return The sprite.
+     */
+    private Sprite createSprite(GraphicsConfiguration configuration, Diagram diagram, boolean isSelected, double scale) {
+        int width = Math.max(1, (int) Math.ceil(diagram.getWidth() * scale));
+        int height = Math.max(1, (int) Math.ceil(diagram.getHeight() * scale));
+        BufferedImage image;
+        if (configuration != null) {
+            image = configuration.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+        } else {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+
+        Graphics2D graphics = image.createGraphics();
+        graphics.scale(scale, scale);
+        this.paintDirectly(graphics, diagram, isSelected, 0, 0, scale);
+        graphics.dispose();
+
+        // Painting decodes text that was not loaded yet, so the version is read afterwards.
+        return new Sprite(image, diagram, isSelected, scale);
+    }
+
+    /**
+     * This removes the sprite of a diagram from the cache.
+     * @param diagram The diagram, which must have a sprite.
+     */
+    private void removeSprite(Diagram diagram) {
+        Sprite sprite = this.sprites.remove(diagram);
+        this.cacheSize -= sprite.getSize();
+        sprite.image.flush();
+    }
+
+    /**
+     * This drops the sprites used least recently until the rest fit in the cache size.
+     */
+    private void trimCache() {
+        Iterator<Sprite> iterator = this.sprites.values().iterator();
+        while (this.cacheSize > this.maxCacheSize && iterator.hasNext()) {
+            Sprite sprite = iterator.next();
+            iterator.remove();
+            this.cacheSize -= sprite.getSize();
+            sprite.image.flush();
+        }
+    }
+
+    /**
+     * This represents an image of a diagram and what it was drawn from.
+     */
+    private static class Sprite {
+        private BufferedImage image;
+        private int textVersion;
+        private int width;
+        private int height;
+        private boolean isSelected;
+        private double scale;
+
+        /**
+         * This constructs a new Sprite.
+         * @param image The image of the diagram.
+         * @param diagram The diagram it was drawn from.
+         * @param isSelected True if the diagram was drawn as selected, false if not.
+         * @param scale The number of image pixels per canvas unit.
+         */
+        public Sprite(BufferedImage image, Diagram diagram, boolean isSelected, double scale) {
+            this.image = image;
+            this.textVersion = diagram.getTextVersion();
+            this.width = diagram.getWidth();
+            this.height = diagram.getHeight();
+            this.isSelected = isSelected;
+            this.scale = scale;
+        }
+
+        /**
+         * This checks if this Sprite still shows a diagram as it would be painted now.
+         * @param diagram The diagram.
+         * @param isSelected True if the diagram is selected, false if not.
+         * @param scale The number of device pixels per canvas unit.
+         * @return True if it is up to date, false if it has to be drawn again.
+         */
+        public boolean isDrawnFrom(Diagram diagram, boolean isSelected, double scale) {
+            return this.textVersion == diagram.getTextVersion() && this.width == diagram.getWidth()
+                && this.height == diagram.getHeight() && this.isSelected == isSelected && this.scale == scale;
+        }
+
+        /**
+         * This gets the number of bytes used by the image.
+         * @return The size.
+         */
+        public long getSize() {
+            return (long) this.image.getWidth() * this.image.getHeight() * Integer.BYTES;
+        }
+    }
+}
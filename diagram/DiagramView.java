@@ -0,0 +1,380 @@
+package diagram;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.Dimension;
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
+import java.awt.Insets;
+import java.awt.Point;
+import java.awt.event.FocusAdapter;
+import java.awt.event.FocusEvent;
+import java.awt.event.FocusListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseListener;
+import java.util.ArrayList;
+
+import javax.swing.BorderFactory;
+import javax.swing.JPanel;
+import javax.swing.JTextArea;
+import javax.swing.JTextField;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+/**
+ * This represents the Swing component that displays and edits a Diagram. A canvas only materializes one of these for
+ * the diagram being edited; every other diagram is painted by a DiagramRenderer.
+ * @author Andrew Chu
+ * @version June 2023
+ */
+public class DiagramView extends JPanel {
+    private Diagram diagram;
+    private DiagramTitle title;
+    private ArrayList<DiagramBody> bodies;
+    private boolean isEditing;
+
+    /**
+     * This constructs a new DiagramView that is not displaying any diagram yet.
+     */
+    public DiagramView() {
+        super();
+        this.setLayout(new GridBagLayout());
+        this.setBorder(BorderFactory.createLineBorder(Color.BLACK, 1));
+        this.setBackground(Color.WHITE);
+        this.bodies = new ArrayList<DiagramBody>();
+        this.isEditing = false;
+
+        GridBagConstraints constraints = new GridBagConstraints();
+        constraints.gridx = 0;
+        constraints.weightx = 1;
+        constraints.weighty = 1;
+        constraints.fill = GridBagConstraints.BOTH;
+
+        this.title = new DiagramTitle("");
+        this.add(this.title, constraints);
+    }
+
+    /**
+     * This constructs a new DiagramView displaying a diagram.
+     * @param diagram The diagram to display.
+     */
+    public DiagramView(Diagram diagram) {
+        this();
+        this.setDiagram(diagram);
+    }
+
+    /**
+     * This sets the diagram displayed by this view and copies its text and bounds into the components.
+     * @param diagram The diagram to display.
+     */
+    public void setDiagram(Diagram diagram) {
+        this.diagram = diagram;
+
+        int numBodies = 0;
+        if (diagram instanceof InterfaceDiagram) {
+            numBodies = ((InterfaceDiagram) diagram).getNumBodies();
+        }
+
+        while (this.bodies.size() < numBodies) {
+            this.addBody();
+        }
+
+        while (this.bodies.size() > numBodies) {
+            this.remove(this.bodies.remove(this.bodies.size() - 1));
+        }
+
+        this.title.setTextIfChanged(diagram.getTitle());
+        for (int i = 0; i < numBodies; i++) {
+            this.bodies.get(i).setTextIfChanged(((InterfaceDiagram) diagram).getBodyText(i));
+        }
+
+        // Lay out the components directly since a stamp is never displayable and will not validate on its own.
+        this.setBounds(diagram.getBounds());
+        this.doLayout();
+    }
+
+    /**
+     * This gets the diagram displayed by this view.
+     * @return The diagram.
+     */
+    public Diagram getDiagram() {
+        return this.diagram;
+    }
+
+    /**
+     * This adds a diagram body component to the bottom of this view.
+     */
+    private void addBody() {
+        GridBagConstraints constraints = new GridBagConstraints();
+        constraints.gridx = 0;
+        constraints.weightx = 1;
+        constraints.weighty = 1;
+        constraints.fill = GridBagConstraints.BOTH;
+        constraints.insets = new Insets(2, 2, 2, 2);
+
+        DiagramBody body = new DiagramBody();
+        this.add(body, constraints);
+        this.bodies.add(body);
+    }
+
+    /**
+     * This sets whether the diagram is highlighted as selected.
+     * @param isSelected True if the diagram is selected, false if it is not.
+     */
+    public void setSelected(boolean isSelected) {
+        if (isSelected) {
+            this.setBorder(BorderFactory.createLineBorder(Color.CYAN, 2));
+        } else {
+            this.setBorder(BorderFactory.createLineBorder(Color.BLACK, 1));
+        }
+    }
+
+    /**
+     * This gets the size that perfectly fits the text within this view.
+     * @return The fitted size.
+     */
+    public Dimension getFittedSize() {
+        int newWidth = Math.max(this.title.getPreferredWidth(), Diagram.MIN_WIDTH);
+        int newHeight = this.title.getPreferredHeight();
+
+        for (DiagramBody body: this.bodies) {
+            newWidth = Math.max(newWidth, body.getPreferredWidth());
+            newHeight += body.getPreferredHeight();
+        }
+        newHeight = Math.max(newHeight, Diagram.MIN_HEIGHT);
+
+        return new Dimension(newWidth + 2, newHeight + 2 * Math.max(this.bodies.size(), 1));
+    }
+
+    /**
+     * This starts editing the part of this view at a point.
+     * @param point The point relative to this view.
+     */
+    public void startEditing(Point point) {
+        this.isEditing = true;
+
+        Component component = this.getComponentAt(point);
+        if (component == this.title || this.bodies.contains(component)) {
+            component.setEnabled(true);
+            component.requestFocus();
+        } else {
+            this.title.requestFocus();
+        }
+    }
+
+    /**
+     * This checks if any part of this view is still being edited.
+     * @return True if a part is being edited, false if not.
+     */
+    @Override
+    public boolean isEnabled() {
+        if (this.title.isEnabled()) {
+            return true;
+        }
+
+        for (DiagramBody body: this.bodies) {
+            if (body.isEnabled()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * This copies the text in this view back into the displayed diagram.
+     */
+    public void commitText() {
+        this.isEditing = false;
+        this.diagram.setTitle(this.title.getText());
+
+        for (int i = 0; i < this.bodies.size(); i++) {
+            ((InterfaceDiagram) this.diagram).setBodyText(i, this.bodies.get(i).getText());
+        }
+    }
+
+    @Override
+    public void addFocusListener(FocusListener focusListener) {
+        this.title.addFocusListener(focusListener);
+        for (DiagramBody body: this.bodies) {
+            body.addFocusListener(focusListener);
+        }
+    }
+
+    @Override
+    public void addMouseListener(MouseListener mouseListener) {
+        this.title.addMouseListener(mouseListener);
+        for (DiagramBody body: this.bodies) {
+            body.addMouseListener(mouseListener);
+        }
+    }
+
+    @Override
+    public boolean isFocusOwner() {
+        if (super.isFocusOwner() || this.title.isFocusOwner()) {
+            return true;
+        }
+
+        for (DiagramBody body: this.bodies) {
+            if (body.isFocusOwner()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * This resizes this view and its diagram to perfectly fit the text while it is being edited.
+     */
+    private void resizeDiagramToFit() {
+        if (!this.isEditing) {
+            return;
+        }
+
+        Dimension size = this.getFittedSize();
+        this.setSize(size);
+        this.revalidate();
+        this.diagram.setSize(size.width, size.height);
+
+        Container parent = this.getParent();
+        if (parent != null) {
+            parent.repaint();
+        }
+    }
+
+    /**
+     * This class represents the title component of a diagram. It can be edited.
+     */
+    public class DiagramTitle extends JTextField {
+        /**
+         * This constructs a DiagramTitle component.
+         * @param titleText The title.
+         */
+        public DiagramTitle(String titleText) {
+            super(titleText);
+            this.setHorizontalAlignment(JTextField.CENTER);
+            this.addFocusListener(STOP_EDIT_ON_UNFOCUS);
+            this.addMouseListener(EDIT_ON_DOUBLECLICK);
+            this.getDocument().addDocumentListener(RESIZE_ON_EDIT);
+            this.setBackground(Color.WHITE);
+            this.setDisabledTextColor(Color.BLACK);
+            this.setEnabled(false);
+            this.setBorder(BorderFactory.createEmptyBorder());
+        }
+
+        /**
+         * This sets the text displayed by this component if it is different from the current text.
+         * @param text The text to display.
+         */
+        public void setTextIfChanged(String text) {
+            if (!this.getText().equals(text)) {
+                this.setText(text);
+            }
+        }
+
+        /**
+         * This gets the preferred width of this title.
+         * @return The width.
+         */
+        public int getPreferredWidth() {
+            return (int) this.getPreferredSize().getWidth();
+        }
+
+        /**
+         * This gets the preferred height of this title.
+         * @return The height.
+         */
+        public int getPreferredHeight() {
+            return (int) this.getPreferredSize().getHeight();
+        }
+    }
+
+    /**
+     * This represents a body section in a diagram. It can store and edit multiple lines of text.
+     */
+    public class DiagramBody extends JTextArea {
+        /**
+         * This constructs a DiagramBody component.
+         */
+        public DiagramBody() {
+            super();
+            this.addFocusListener(STOP_EDIT_ON_UNFOCUS);
+            this.addMouseListener(EDIT_ON_DOUBLECLICK);
+            this.getDocument().addDocumentListener(RESIZE_ON_EDIT);
+            this.setDisabledTextColor(Color.BLACK);
+            this.setBorder(BorderFactory.createMatteBorder(1, 0, 0, 0, Color.LIGHT_GRAY));
+            this.setEnabled(false);
+        }
+
+        /**
+         * This sets the text displayed by this component if it is different from the current text.
+         * @param text The text to display.
+         */
+        public void setTextIfChanged(String text) {
+            if (!this.getText().equals(text)) {
+                this.setText(text);
+            }
+        }
+
+        /**
+         * This gets the width of this body.
+         * @return The width.
+         */
+        public int getPreferredWidth() {
+            return (int) this.getPreferredSize().getWidth();
+        }
+
+        /**
+         * This gets the height of this body.
+         * @return The height.
+         */
+        public int getPreferredHeight() {
+            return (int) this.getPreferredSize().getHeight();
+        }
+    }
+
+    /**
+     * This represents a focus event listener that disables this component when it loses focus.
+     */
+    public final FocusListener STOP_EDIT_ON_UNFOCUS = new FocusAdapter() {
+        @Override
+        public void focusLost(FocusEvent event) {
+            Component component = event.getComponent();
+            component.setEnabled(false);
+        }
+    };
+
+    /**
+     * This represents a mouse listener that enables this component on double click.
+     */
+    public final MouseListener EDIT_ON_DOUBLECLICK = new MouseAdapter() {
+        @Override
+        public void mouseClicked(MouseEvent event) {
+            Component component = event.getComponent();
+            component.requestFocus();
+            if (event.getClickCount() >= 2) {
+                component.setEnabled(true);
+            }
+        }
+    };
+
+    /**
+     * This resizes the component to fit the text whenever the text gets edited.
+     */
+    public final DocumentListener RESIZE_ON_EDIT = new DocumentListener() {
+        @Override
+        public void insertUpdate(DocumentEvent event) {
+            resizeDiagramToFit();
+        }
+
+        @Override
+        public void removeUpdate(DocumentEvent event) {
+            resizeDiagramToFit();
+        }
+
+        @Override
+        public void changedUpdate(DocumentEvent event) {}
+    };
+}
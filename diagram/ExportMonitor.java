@@ -0,0 +1,21 @@
+package diagram;
+
+/**
+ * This interface represents an object that follows the progress of an export and can cancel it. The export calls it
+ * from the thread it runs on.
+ * @author Andrew Chu
+ * @version June 2023
+ */
+public interface ExportMonitor {
+    /**
+     * Tells how far the export has gotten.
+     * @param fraction The fraction of the export done, from 0 to 1.
+     */
+    public void exportProgressed(double fraction);
+
+    /**
+     * Checks if the export should stop. A cancelled export deletes what it wrote and reports that it failed.
+     * @return True if it should stop, false if it should go on.
+     */
+    public boolean isExportCancelled();
+}
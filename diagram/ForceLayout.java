@@ -0,0 +1,522 @@
+package diagram;
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This arranges diagrams by treating the arrows between them as springs and the diagrams as charges that push each
+ * other apart, then letting them settle. It suits models made mostly of associations, aggregations and compositions,
+ * where there is no top or bottom to put diagrams in layers by.
+ * <p>
+ * Every arrow is followed, whatever its ends. The diagrams start where they are, so arranging again only tidies up.
+ * The push between every pair of diagrams is approximated by grouping far away diagrams in the cells of a quadtree,
+ * so each step takes O(n log n) time, and the diagrams are split among the threads of a fork-join pool to work it
+ * out. Only the sizes and positions of the diagrams and the arrows between them are kept when a layout is made, so it
+ * can be run off the event dispatch thread while the document goes on being edited.
+ * @author Andrew Chu
+ * @version June 2023
+ */
+public class ForceLayout implements DiagramLayout {
+    public static final int NODE_GAP = 60;
+
+    private static final int MAX_STEPS = 300;
+    private static final double SETTLED_DISTANCE = 0.5;
+    private static final double START_TEMPERATURE = 10;
+    private static final double GRAVITY = 1;
+    private static final int MIN_GAP = 20;
+    private static final int MAX_OVERLAP_PASSES = 100;
+
+    // Cells smaller than this fraction of their distance are treated as one charge at their centre of mass.
+    private static final double THETA = 0.8;
+    private static final int LEAF_SIZE = 4;
+    private static final int MAX_DEPTH = 24;
+    private static final int PARALLEL_THRESHOLD = 512;
+    private static final int PROGRESS_INTERVAL_MILLIS = 50;
+
+    private int[] ids;
+    private int[] widths;
+    private int[] heights;
+    private double[] radii;
+    private int numNodes;
+    private int[] edgeStarts;
+    private int[] edgeEnds;
+    private int numEdges;
+    private int originX;
+    private int originY;
+
+    private double[] x;
+    private double[] y;
+    private double[] forceX;
+    private double[] forceY;
+    private double idealDistance;
+
+    // The quadtree, as arrays indexed by cell. A cell that is split has four children stored one after another.
+    private int[] order;
+    private int numCells;
+    private double[] cellMassX;
+    private double[] cellMassY;
+    private int[] cellMasses;
+    private double[] cellSizes;
+    private int[] cellFirstChildren;
+    private int[] cellStarts;
+    private int[] cellEnds;
+
+    /**
+     * This prepares a layout of diagrams in a document, recording what it needs from them.
+     * @param document The document, which is not changed.
+     * @param diagramIds The ids of the diagrams to arrange, or null to arrange all of them.
+     */
+    public ForceLayout(DiagramDocument document, Collection<Integer> diagramIds) {
+        HashMap<Diagram, Integer> indexes = new HashMap<Diagram, Integer>();
+        HashSet<Integer> selectedIds = diagramIds != null ? new HashSet<Integer>(diagramIds) : null;
+        ArrayList<Diagram> arrangedDiagrams = new ArrayList<Diagram>();
+        for (Diagram diagram: document.getDiagrams()) {
+            if (selectedIds == null || selectedIds.contains(diagram.getId())) {
+                indexes.put(diagram, arrangedDiagrams.size());
+                arrangedDiagrams.add(diagram);
+            }
+        }
+
+        this.numNodes = arrangedDiagrams.size();
+        this.ids = new int[this.numNodes];
+        this.widths = new int[this.numNodes];
+        this.heights = new int[this.numNodes];
+        this.radii = new double[this.numNodes];
+        this.x = new double[this.numNodes];
+        this.y = new double[this.numNodes];
+        this.originX = this.numNodes > 0 ? Integer.MAX_VALUE : 0;
+        this.originY = this.numNodes > 0 ? Integer.MAX_VALUE : 0;
+        double totalSize = 0;
+        for (int i = 0; i < this.numNodes; i++) {
+            Diagram diagram = arrangedDiagrams.get(i);
+            this.ids[i] = diagram.getId();
+            this.widths[i] = diagram.getWidth();
+            this.heights[i] = diagram.getHeight();
+            this.radii[i] = Math.hypot(this.widths[i], this.heights[i]) / 2;
+            this.x[i] = diagram.getX() + this.widths[i] / 2.0;
+            this.y[i] = diagram.getY() + this.heights[i] / 2.0;
+            this.originX = Math.min(this.originX, diagram.getX());
+            this.originY = Math.min(this.originY, diagram.getY());
+            totalSize += 2 * this.radii[i];
+        }
+
+        // Connected diagrams settle about as far apart as a typical diagram is wide, plus a gap.
+        this.idealDistance = (this.numNodes > 0 ? totalSize / this.numNodes : 0) + NODE_GAP;
+
+        ArrayList<Arrow> arrows = document.getArrows();
+        this.edgeStarts = new int[arrows.size()];
+        this.edgeEnds = new int[arrows.size()];
+        this.numEdges = 0;
+        for (Arrow arrow: arrows) {
+            Integer start = indexes.get(arrow.getStartDiagram());
+            Integer end = indexes.get(arrow.getEndDiagram());
+            if (start != null && end != null && !start.equals(end)) {
+                this.edgeStarts[this.numEdges] = start;
+                this.edgeEnds[this.numEdges] = end;
+                this.numEdges++;
+            }
+        }
+    }
+
+    /**
+     * This works out the layout by letting the diagrams settle, moving them less each step. The arranged diagrams
+     * keep their top-left corner where the top-left corner of all of them was.
+     * @param monitor What to tell of the positions found so far, or null. It is told at most every 50 milliseconds,
+     *                and asked every step whether to stop.
+     * @return The new position of each arranged diagram, by id, or null if the monitor cancelled the layout.
+     */
+    @Override
+    public HashMap<Integer, Point> run(LayoutMonitor monitor) {
+        if (this.numNodes < 2) {
+            return this.getPositions();
+        }
+
+        this.forceX = new double[this.numNodes];
+        this.forceY = new double[this.numNodes];
+        this.order = new int[this.numNodes];
+        this.allocateCells(2 * this.numNodes);
+
+        long lastProgressTime = System.currentTimeMillis();
+        for (int step = 0; step < MAX_STEPS; step++) {
+            if (monitor != null && monitor.isLayoutCancelled()) {
+                return null;
+            }
+
+            this.buildQuadtree();
+            ForkJoinPool.commonPool().invoke(new RepulsionTask(0, this.numNodes));
+            this.addAttraction();
+
+            // The diagrams may move less each step, so they settle instead of swinging about.
+            double temperature = this.idealDistance * START_TEMPERATURE * (1 - (double) step / MAX_STEPS);
+            double maxMove = 0;
+            for (int i = 0; i < this.numNodes; i++) {
+                double force = Math.sqrt(this.forceX[i] * this.forceX[i] + this.forceY[i] * this.forceY[i]);
+                if (force > 0) {
+                    double move = Math.min(force, temperature);
+                    this.x[i] += this.forceX[i] / force * move;
+                    this.y[i] += this.forceY[i] / force * move;
+                    maxMove = Math.max(maxMove, move);
+                }
+            }
+            if (maxMove < SETTLED_DISTANCE) {
+                break;
+            }
+
+            if (monitor != null && System.currentTimeMillis() - lastProgressTime >= PROGRESS_INTERVAL_MILLIS) {
+                monitor.layoutProgressed(this.getPositions());
+                lastProgressTime = System.currentTimeMillis();
+            }
+        }
+
+        this.removeOverlaps();
+        return this.getPositions();
+    }
+
+    /**
+     * This pushes apart diagrams that still overlap once the layout has settled, since far away diagrams are only
+     * seen as points. Each pair is pushed apart along whichever axis they overlap less on, which can make other
+     * pairs overlap, so it is repeated until no pairs overlap or it gives up.
+     */
+    private void removeOverlaps() {
+        Integer[] byLeft = new Integer[this.numNodes];
+        for (int i = 0; i < this.numNodes; i++) {
+            byLeft[i] = i;
+        }
+
+        for (int pass = 0; pass < MAX_OVERLAP_PASSES; pass++) {
+            Arrays.sort(byLeft, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer node1, Integer node2) {
+                    return Double.compare(x[node1] - widths[node1] / 2.0, x[node2] - widths[node2] / 2.0);
+                }
+            });
+
+            boolean isOverlapping = false;
+            for (int i = 0; i < this.numNodes; i++) {
+                int node = byLeft[i];
+                double right = this.x[node] + this.widths[node] / 2.0 + MIN_GAP;
+                for (int j = i + 1; j < this.numNodes; j++) {
+                    int other = byLeft[j];
+                    if (this.x[other] - this.widths[other] / 2.0 >= right) {
+                        break;
+                    }
+
+                    double dx = this.x[other] - this.x[node];
+                    double dy = this.y[other] - this.y[node];
+                    double overlapX = (this.widths[node] + this.widths[other]) / 2.0 + MIN_GAP - Math.abs(dx);
+                    double overlapY = (this.heights[node] + this.heights[other]) / 2.0 + MIN_GAP - Math.abs(dy);
+                    if (overlapX <= 0 || overlapY <= 0) {
+                        continue;
+                    }
+
+                    isOverlapping = true;
+                    if (overlapX < overlapY) {
+                        double shift = (dx < 0 || (dx == 0 && other < node) ? -overlapX : overlapX) / 2;
+                        this.x[node] -= shift;
+                        this.x[other] += shift;
+                    } else {
+                        double shift = (dy < 0 || (dy == 0 && other < node) ? -overlapY : overlapY) / 2;
+                        this.y[node] -= shift;
+                        this.y[other] += shift;
+                    }
+                }
+            }
+
+            if (!isOverlapping) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * This gets where the diagrams are now, moved so the top-left corner of all of them is where it was.
+     * @return The position of each diagram, by id.
+     */
+    private HashMap<Integer, Point> getPositions() {
+        double minX = Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        for (int i = 0; i < this.numNodes; i++) {
+            minX = Math.min(minX, this.x[i] - this.widths[i] / 2.0);
+            minY = Math.min(minY, this.y[i] - this.heights[i] / 2.0);
+        }
+
+        HashMap<Integer, Point> positions = new HashMap<Integer, Point>();
+        for (int i = 0; i < this.numNodes; i++) {
+            int left = (int) Math.round(this.x[i] - this.widths[i] / 2.0 - minX) + this.originX;
+            int top = (int) Math.round(this.y[i] - this.heights[i] / 2.0 - minY) + this.originY;
+            positions.put(this.ids[i], new Point(left, top));
+        }
+        return positions;
+    }
+
+    /**
+     * This pulls the diagrams at the ends of each arrow towards each other, and every diagram towards the middle so
+     * the layout stays compact and diagrams that are not connected do not drift away. It is added to the push already
+     * worked out.
+     */
+    private void addAttraction() {
+        double centerX = 0;
+        double centerY = 0;
+        for (int i = 0; i < this.numNodes; i++) {
+            centerX += this.x[i];
+            centerY += this.y[i];
+        }
+        centerX /= this.numNodes;
+        centerY /= this.numNodes;
+
+        for (int i = 0; i < this.numNodes; i++) {
+            this.forceX[i] += (centerX - this.x[i]) * GRAVITY;
+            this.forceY[i] += (centerY - this.y[i]) * GRAVITY;
+        }
+
+        for (int i = 0; i < this.numEdges; i++) {
+            int start = this.edgeStarts[i];
+            int end = this.edgeEnds[i];
+            double dx = this.x[end] - this.x[start];
+            double dy = this.y[end] - this.y[start];
+            double scale = Math.sqrt(dx * dx + dy * dy) / this.idealDistance;
+            this.forceX[start] += dx * scale;
+            this.forceY[start] += dy * scale;
+            this.forceX[end] -= dx * scale;
+            this.forceY[end] -= dy * scale;
+        }
+    }
+
+    /**
+     * This makes room for a number of quadtree cells, keeping the cells already built.
+     * @param capacity The number of cells.
+     */
+    private void allocateCells(int capacity) {
+        this.cellMassX = copyOf(this.cellMassX, capacity);
+        this.cellMassY = copyOf(this.cellMassY, capacity);
+        this.cellSizes = copyOf(this.cellSizes, capacity);
+        this.cellMasses = copyOf(this.cellMasses, capacity);
+        this.cellFirstChildren = copyOf(this.cellFirstChildren, capacity);
+        this.cellStarts = copyOf(this.cellStarts, capacity);
+        this.cellEnds = copyOf(this.cellEnds, capacity);
+    }
+
+    /**
+     * This builds the quadtree over where the diagrams are now.
+     */
+    private void buildQuadtree() {
+        double minX = Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < this.numNodes; i++) {
+            this.order[i] = i;
+            minX = Math.min(minX, this.x[i]);
+            minY = Math.min(minY, this.y[i]);
+            maxX = Math.max(maxX, this.x[i]);
+            maxY = Math.max(maxY, this.y[i]);
+        }
+
+        this.numCells = 1;
+        this.buildCell(0, 0, this.numNodes, minX, minY, Math.max(1, Math.max(maxX - minX, maxY - minY)), 0);
+    }
+
+    /**
+     * This fills in a quadtree cell, splitting it into four if it holds too many diagrams.
+     * @param cell The cell.
+     * @param start The first position in the order of the diagrams in the cell.
+     * @param end The position after the last diagram in the cell.
+     * @param left The left edge of the cell.
+     * @param top The top edge of the cell.
+     * @param size The width and height of the cell.
+     * @param depth How many times the cells have been split to get this one.
+     */
+    private void buildCell(int cell, int start, int end, double left, double top, double size, int depth) {
+        double sumX = 0;
+        double sumY = 0;
+        for (int i = start; i < end; i++) {
+            sumX += this.x[this.order[i]];
+            sumY += this.y[this.order[i]];
+        }
+
+        int mass = end - start;
+        this.cellMasses[cell] = mass;
+        this.cellMassX[cell] = mass > 0 ? sumX / mass : 0;
+        this.cellMassY[cell] = mass > 0 ? sumY / mass : 0;
+        this.cellSizes[cell] = size;
+        this.cellStarts[cell] = start;
+        this.cellEnds[cell] = end;
+        this.cellFirstChildren[cell] = -1;
+
+        // Diagrams on top of each other cannot be told apart by splitting, so the depth is limited.
+        if (mass <= LEAF_SIZE || depth == MAX_DEPTH) {
+            return;
+        }
+
+        double half = size / 2;
+        double middleX = left + half;
+        double middleY = top + half;
+        int middle = this.partition(start, end, true, middleX);
+        int topMiddle = this.partition(start, middle, false, middleY);
+        int bottomMiddle = this.partition(middle, end, false, middleY);
+
+        if (this.numCells + 4 > this.cellMasses.length) {
+            this.allocateCells(2 * this.cellMasses.length);
+        }
+        int firstChild = this.numCells;
+        this.numCells += 4;
+        this.cellFirstChildren[cell] = firstChild;
+        this.buildCell(firstChild, start, topMiddle, left, top, half, depth + 1);
+        this.buildCell(firstChild + 1, topMiddle, middle, left, middleY, half, depth + 1);
+        this.buildCell(firstChild + 2, middle, bottomMiddle, middleX, top, half, depth + 1);
+        this.buildCell(firstChild + 3, bottomMiddle, end, middleX, middleY, half, depth + 1);
+    }
+
+    /**
+     * This moves the diagrams in part of the order that are before a line to the front of it.
+     * @param start The first position.
+     * @param end The position after the last.
+     * @param isAlongX True to split by x-coordinate, false to split by y-coordinate.
+     * @param line The coordinate to split at.
+     * @return The position of the first diagram after the line.
+     */
+    private int partition(int start, int end, boolean isAlongX, double line) {
+        int i = start;
+        int j = end - 1;
+        while (i <= j) {
+            double coordinate = isAlongX ? this.x[this.order[i]] : this.y[this.order[i]];
+            if (coordinate < line) {
+                i++;
+            } else {
+                int swapped = this.order[i];
+                this.order[i] = this.order[j];
+                this.order[j] = swapped;
+                j--;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * This works out the push on a diagram from all the others, using the quadtree. Diagrams close enough to touch
+     * push harder the more they overlap, so they end up side by side instead of on top of each other.
+     * @param node The diagram.
+     * @param stack Scratch space for the cells left to look at.
+     * @return The stack, which may have grown.
+     */
+    private int[] addRepulsion(int node, int[] stack) {
+        double nodeX = this.x[node];
+        double nodeY = this.y[node];
+        double strength = this.idealDistance * this.idealDistance;
+        double sumX = 0;
+        double sumY = 0;
+
+        int depth = 0;
+        stack[depth++] = 0;
+        while (depth > 0) {
+            int cell = stack[--depth];
+            if (this.cellMasses[cell] == 0) {
+                continue;
+            }
+
+            double dx = nodeX - this.cellMassX[cell];
+            double dy = nodeY - this.cellMassY[cell];
+            double distanceSquared = dx * dx + dy * dy;
+            int firstChild = this.cellFirstChildren[cell];
+            if (firstChild >= 0 && this.cellSizes[cell] * this.cellSizes[cell] < THETA * THETA * distanceSquared) {
+                double scale = strength * this.cellMasses[cell] / distanceSquared;
+                sumX += dx * scale;
+                sumY += dy * scale;
+            } else if (firstChild >= 0) {
+                if (depth + 4 > stack.length) {
+                    stack = copyOf(stack, 2 * stack.length);
+                }
+                for (int i = 0; i < 4; i++) {
+                    stack[depth++] = firstChild + i;
+                }
+            } else {
+                for (int i = this.cellStarts[cell]; i < this.cellEnds[cell]; i++) {
+                    int other = this.order[i];
+                    if (other == node) {
+                        continue;
+                    }
+
+                    double otherDx = nodeX - this.x[other];
+                    double otherDy = nodeY - this.y[other];
+                    double distance = Math.sqrt(otherDx * otherDx + otherDy * otherDy);
+                    if (distance == 0) {
+                        // Diagrams in the same place are pushed apart in a direction that depends on which is which.
+                        double angle = (node - other) * 2.399963;
+                        otherDx = Math.cos(angle);
+                        otherDy = Math.sin(angle);
+                        distance = 1;
+                    }
+
+                    double gap = Math.max(1, distance - this.radii[node] - this.radii[other] + this.idealDistance);
+                    double scale = strength / (gap * distance);
+                    sumX += otherDx * scale;
+                    sumY += otherDy * scale;
+                }
+            }
+        }
+
+        this.forceX[node] = sumX;
+        this.forceY[node] = sumY;
+        return stack;
+    }
+
+    /**
+     * This class works out the push on a range of diagrams, splitting the range between threads.
+     */
+    private class RepulsionTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private int start;
+        private int end;
+
+        /**
+         * This constructs a task for a range of diagrams.
+         * @param start The first diagram.
+         * @param end The diagram after the last.
+         */
+        public RepulsionTask(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.end - this.start > PARALLEL_THRESHOLD) {
+                int middle = (this.start + this.end) >>> 1;
+                invokeAll(new RepulsionTask(this.start, middle), new RepulsionTask(middle, this.end));
+                return;
+            }
+
+            int[] stack = new int[4 * MAX_DEPTH + 4];
+            for (int node = this.start; node < this.end; node++) {
+                stack = addRepulsion(node, stack);
+            }
+        }
+    }
+
+    /**
+     * This copies an array into a longer one.
+     * @param array The array, or null.
+     * @param length The length of the copy.
+     * @return The copy.
+     */
+    private static double[] copyOf(double[] array, int length) {
+        return array != null ? Arrays.copyOf(array, length) : new double[length];
+    }
+
+    /**
+     * This copies an array into a longer one.
+     * @param array The array, or null.
+     * @param length The length of the copy.
+     * @return The copy.
+     */
+    private static int[] copyOf(int[] array, int length) {
+        return array != null ? Arrays.copyOf(array, length) : new int[length];
+    }
+}
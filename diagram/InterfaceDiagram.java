@@ -1,38 +1,27 @@
 package diagram;
 
-import java.awt.GridBagConstraints;
-import java.awt.Insets;
 import java.awt.Point;
-import java.awt.event.FocusListener;
-import java.awt.event.MouseListener;
 import java.util.ArrayList;
 
 /**
- * This represents a diagram component that stores an interface.
+ * This represents a diagram that stores an interface.
  * @author Andrew Chu
  * @version June 2023
  */
 public class InterfaceDiagram extends Diagram {
-    private ArrayList<DiagramBody> bodies;
+    private ArrayList<String> bodyTexts;
+    private ArrayList<String> lastBodyTexts;
 
     /**
-     * This constructs a new InterfaceDiagram component.
+     * This constructs a new InterfaceDiagram.
      * @param titleText The title of this diagram.
      * @param pos The position of this diagram.
      */
     public InterfaceDiagram(String titleText, Point pos) {
         super(titleText, pos);
-        
-        GridBagConstraints constraints = new GridBagConstraints();
-        constraints.gridx = 0;
-        constraints.weightx = 1;
-        constraints.weighty = 1;
-        constraints.fill = GridBagConstraints.BOTH;
-        constraints.insets = new Insets(2, 2, 2, 2);
-
-        this.bodies = new ArrayList<DiagramBody>();
-        this.add(new DiagramBody(), constraints);
-        this.resizeDiagramToFit();
+        this.bodyTexts = new ArrayList<String>();
+        this.lastBodyTexts = new ArrayList<String>();
+        this.addBody();
     }
 
     /**
@@ -40,7 +29,7 @@ public class InterfaceDiagram extends Diagram {
      * @param methodText The method text.
      */
     public void setMethodText(String methodText) {
-        this.getMethodBody().setText(methodText);
+        this.setBodyText(this.getMethodBodyIndex(), methodText);
     }
 
     /**
@@ -48,100 +37,105 @@ public class InterfaceDiagram extends Diagram {
      * @return The method text.
      */
     public String getMethodText() {
-        return this.getMethodBody().getText();
+        return this.getBodyText(this.getMethodBodyIndex());
     }
 
     /**
      * This gets the last set method text stored by this diagram before the current one.
-     * @return
+     * @return The last method text.
      */
     public String getLastMethodText() {
-        return this.getMethodBody().getLastText();
+        return this.getLastBodyText(this.getMethodBodyIndex());
     }
 
     /**
-     * This adds a diagram body to the bottom of this diagram.
-     * @param diagramBody The diagram body component to add
-     * @param constraints The constraints on this component.
+     * This adds an empty body section to the bottom of this diagram.
      */
-    public void add(DiagramBody diagramBody, Object constraints) {
-        super.add(diagramBody, constraints);
-        this.bodies.add(diagramBody);
+    protected void addBody() {
+        this.bodyTexts.add("");
+        this.lastBodyTexts.add("");
     }
 
     /**
-     * This gets the method body diagram component.
-     * @return The method body diagram component.
+     * This gets the index of the body section that stores the methods.
+     * @return The index of the method body.
      */
-    public DiagramBody getMethodBody() {
-        return this.getBody(0);
+    public int getMethodBodyIndex() {
+        return 0;
     }
 
     /**
-     * This gets the nth diagram body component in this diagram.
-     * @param index The index of the diagram body to get.
-     * @return The diagram body component.
+     * This gets the text of the nth body section in this diagram.
+     * @param index The index of the body section.
+     * @return The text of the body section.
      */
-    public DiagramBody getBody(int index) {
-        return this.bodies.get(index);
+    public String getBodyText(int index) {
+        this.loadText();
+        return this.bodyTexts.get(index);
     }
 
     /**
-     * This gets the number of diagram body components in this diagram.
-     * @return The number of diagram bodies.
+     * This gets the last text set on the nth body section in this diagram before the current one.
+     * @param index The index of the body section.
+     * @return The last text of the body section.
      */
-    public int getNumBodies() {
-        return this.bodies.size();
-    }
-
-    @Override
-    public void setEnabled(boolean isEnabled) {
-        super.setEnabled(isEnabled);
-        this.getMethodBody().setEnabled(isEnabled);
+    public String getLastBodyText(int index) {
+        this.loadText();
+        return this.lastBodyTexts.get(index);
     }
 
-    @Override
-    public boolean isEnabled() {
-        return super.isEnabled() || this.getMethodBody().isEnabled();
+    /**
+     * This sets the text of the nth body section in this diagram.
+     * @param index The index of the body section.
+     * @param text The new text.
+     */
+    public void setBodyText(int index, String text) {
+        this.loadText();
+        this.lastBodyTexts.set(index, this.bodyTexts.get(index));
+        this.bodyTexts.set(index, text);
+        this.textEdited();
     }
 
-    @Override
-    public void addFocusListener(FocusListener focusListener) {
-        super.addFocusListener(focusListener);
-        this.getMethodBody().addFocusListener(focusListener);
+    /**
+     * This sets the text of the nth body section as it was read from a file, so it does not count as an edit.
+     * @param index The index of the body section.
+     * @param text The text.
+     */
+    void setLoadedBodyText(int index, String text) {
+        this.bodyTexts.set(index, text);
+        this.lastBodyTexts.set(index, text);
+        this.textReplaced();
     }
 
-    @Override
-    public void addMouseListener(MouseListener mouseListener) {
-        super.addMouseListener(mouseListener);
-        this.getMethodBody().addMouseListener(mouseListener);
-    }
-    
-    @Override
-    public boolean isFocusOwner() {
-        return super.isFocusOwner() || this.getMethodBody().isFocusOwner();
+    /**
+     * This gets the number of body sections in this diagram.
+     * @return The number of body sections.
+     */
+    public int getNumBodies() {
+        return this.bodyTexts.size();
     }
 
     @Override
-    public boolean textChanged() {
-        return super.textChanged() || !this.getMethodText().equals(this.getLastMethodText());
+    public Diagram copy() {
+        InterfaceDiagram copy = new InterfaceDiagram("", new Point(this.getX(), this.getY()));
+        this.copyInto(copy);
+        return copy;
     }
 
     @Override
-    public void resizeDiagramToFit() {
-        if (this.getNumBodies() != 1) {
+    protected void copyInto(Diagram copy) {
+        super.copyInto(copy);
+        if (!this.isTextLoaded()) {
             return;
         }
-        
-        DiagramTitle diagramTitle = this.getDiagramTitle();
 
-        int newWidth = Math.max(diagramTitle.getPreferredWidth(), MIN_WIDTH);
-        newWidth = Math.max(newWidth, this.getMethodBody().getPreferredWidth());
-
-        int newHeight = diagramTitle.getPreferredHeight() + this.getMethodBody().getPreferredHeight();
-        newHeight = Math.max(newHeight, MIN_HEIGHT);
+        for (int i = 0; i < this.getNumBodies(); i++) {
+            ((InterfaceDiagram) copy).setLoadedBodyText(i, this.bodyTexts.get(i));
+        }
+    }
 
-        this.setSize(newWidth + 2, newHeight + 2);
-        this.revalidate();
+    @Override
+    public boolean textChanged() {
+        return super.textChanged() || !this.getMethodText().equals(this.getLastMethodText());
     }
 }
@@ -0,0 +1,755 @@
+package diagram;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * This arranges diagrams in layers by what they inherit from, in the style of Sugiyama: every class or interface is
+ * put on a layer below the ones it extends or implements, the diagrams on each layer are ordered so few arrows cross,
+ * then they are spread out under the middle of the diagrams they are connected to.
+ * <p>
+ * Only arrows with triangle ends are followed. Each group of diagrams connected by them is laid out on its own, and
+ * the groups, including diagrams connected to nothing, are packed in rows. Every step takes close to linear time in
+ * the number of diagrams and arrows, so thousands of diagrams are arranged in a few seconds. Only the sizes and
+ * positions of the diagrams and the arrows between them are kept when a layout is made, so it can be run off the
+ * event dispatch thread while the document goes on being edited.
+ * @author Andrew Chu
+ * @version June 2023
+ */
+public class LayeredLayout implements DiagramLayout {
+    public static final int LAYER_GAP = 80;
+    public static final int NODE_GAP = 40;
+    public static final int GROUP_GAP = 120;
+
+    // Long arrows are routed through thin placeholders on the layers they pass, kept closer together.
+    private static final int DUMMY_WIDTH = 10;
+    private static final int DUMMY_GAP = 10;
+    private static final double DUMMY_WEIGHT = 2;
+
+    private static final int ORDERING_SWEEPS = 8;
+    private static final int PLACEMENT_SWEEPS = 8;
+    private static final double ROW_ASPECT_RATIO = 1.6;
+
+    private int[] ids;
+    private int[] nodeWidths;
+    private int[] nodeHeights;
+    private int originX;
+    private int originY;
+    private int numNodes;
+    private int[] edgeParents;
+    private int[] edgeChildren;
+    private int numEdges;
+    private int[] incidentStarts;
+    private int[] incidentEdges;
+
+    private int[] nodeX;
+    private int[] nodeY;
+
+    /**
+     * This prepares a layout of diagrams in a document, recording what it needs from them.
+     * @param document The document, which is not changed.
+     * @param diagramIds The ids of the diagrams to arrange, or null to arrange all of them.
+     */
+    public LayeredLayout(DiagramDocument document, Collection<Integer> diagramIds) {
+        ArrayList<Diagram> arrangedDiagrams = new ArrayList<Diagram>();
+        HashMap<Diagram, Integer> indexes = new HashMap<Diagram, Integer>();
+        HashSet<Integer> ids = diagramIds != null ? new HashSet<Integer>(diagramIds) : null;
+        for (Diagram diagram: document.getDiagrams()) {
+            if (ids == null || ids.contains(diagram.getId())) {
+                indexes.put(diagram, arrangedDiagrams.size());
+                arrangedDiagrams.add(diagram);
+            }
+        }
+
+        this.numNodes = arrangedDiagrams.size();
+        this.ids = new int[this.numNodes];
+        this.nodeWidths = new int[this.numNodes];
+        this.nodeHeights = new int[this.numNodes];
+        this.originX = this.numNodes > 0 ? Integer.MAX_VALUE : 0;
+        this.originY = this.numNodes > 0 ? Integer.MAX_VALUE : 0;
+        for (int i = 0; i < this.numNodes; i++) {
+            Diagram diagram = arrangedDiagrams.get(i);
+            this.ids[i] = diagram.getId();
+            this.nodeWidths[i] = diagram.getWidth();
+            this.nodeHeights[i] = diagram.getHeight();
+            this.originX = Math.min(this.originX, diagram.getX());
+            this.originY = Math.min(this.originY, diagram.getY());
+        }
+
+        // An arrow points from the diagram that inherits to the one inherited from, which goes on the layer above.
+        ArrayList<Arrow> arrows = document.getArrows();
+        this.edgeParents = new int[arrows.size()];
+        this.edgeChildren = new int[arrows.size()];
+        this.numEdges = 0;
+        for (Arrow arrow: arrows) {
+            Integer child = indexes.get(arrow.getStartDiagram());
+            Integer parent = indexes.get(arrow.getEndDiagram());
+            if (arrow.getEndStyle() == Arrow.TRIANGLE_END && child != null && parent != null && !child.equals(parent)) {
+                this.edgeParents[this.numEdges] = parent;
+                this.edgeChildren[this.numEdges] = child;
+                this.numEdges++;
+            }
+        }
+
+        this.incidentStarts = new int[this.numNodes + 1];
+        for (int i = 0; i < this.numEdges; i++) {
+            this.incidentStarts[this.edgeParents[i] + 1]++;
+            this.incidentStarts[this.edgeChildren[i] + 1]++;
+        }
+        for (int i = 0; i < this.numNodes; i++) {
+            this.incidentStarts[i + 1] += this.incidentStarts[i];
+        }
+
+        this.incidentEdges = new int[2 * this.numEdges];
+        int[] fill = Arrays.copyOf(this.incidentStarts, this.numNodes);
+        for (int i = 0; i < this.numEdges; i++) {
+            this.incidentEdges[fill[this.edgeParents[i]]++] = i;
+            this.incidentEdges[fill[this.edgeChildren[i]]++] = i;
+        }
+    }
+
+    /**
+     * This works out the layout. The arranged diagrams keep their top-left corner where the top-left corner of all of
+     * them was. The layout is only worked out once, so the monitor is not told of anything before it is done.
+     * @param monitor What to tell of the positions found so far, or null.
+     * @return The new position of each arranged diagram, by id.
+     */
+    @Override
+    public HashMap<Integer, Point> run(LayoutMonitor monitor) {
+        this.nodeX = new int[this.numNodes];
+        this.nodeY = new int[this.numNodes];
+
+        ArrayList<int[]> groups = this.findGroups();
+        ArrayList<Rectangle> groupBounds = new ArrayList<Rectangle>();
+        long totalArea = 0;
+        int maxGroupWidth = 0;
+        for (int[] group: groups) {
+            Rectangle bounds = this.layoutGroup(group);
+            groupBounds.add(bounds);
+            totalArea += (long) (bounds.width + GROUP_GAP) * (bounds.height + GROUP_GAP);
+            maxGroupWidth = Math.max(maxGroupWidth, bounds.width);
+        }
+
+        // Pack the groups in rows, biggest first, wrapping so the whole layout is a bit wider than it is tall.
+        Integer[] order = new Integer[groups.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        final ArrayList<int[]> sortedGroups = groups;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer group1, Integer group2) {
+                return Integer.compare(sortedGroups.get(group2).length, sortedGroups.get(group1).length);
+            }
+        });
+
+        int rowWidth = Math.max(maxGroupWidth, (int) Math.sqrt(totalArea * ROW_ASPECT_RATIO));
+        int x = 0;
+        int y = 0;
+        int rowHeight = 0;
+        for (int groupIndex: order) {
+            Rectangle bounds = groupBounds.get(groupIndex);
+            if (x > 0 && x + bounds.width > rowWidth) {
+                x = 0;
+                y += rowHeight + GROUP_GAP;
+                rowHeight = 0;
+            }
+
+            for (int node: groups.get(groupIndex)) {
+                this.nodeX[node] += x;
+                this.nodeY[node] += y;
+            }
+            x += bounds.width + GROUP_GAP;
+            rowHeight = Math.max(rowHeight, bounds.height);
+        }
+
+        HashMap<Integer, Point> positions = new HashMap<Integer, Point>();
+        for (int i = 0; i < this.numNodes; i++) {
+            positions.put(this.ids[i], new Point(this.originX + this.nodeX[i], this.originY + this.nodeY[i]));
+        }
+        return positions;
+    }
+
+    /**
+     * This splits the diagrams into groups connected by arrows.
+     * @return The diagrams in each group.
+     */
+    private ArrayList<int[]> findGroups() {
+        ArrayList<int[]> groups = new ArrayList<int[]>();
+        boolean[] isFound = new boolean[this.numNodes];
+        int[] queue = new int[this.numNodes];
+        for (int start = 0; start < this.numNodes; start++) {
+            if (isFound[start]) {
+                continue;
+            }
+
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = start;
+            isFound[start] = true;
+            while (head < tail) {
+                int node = queue[head++];
+                for (int i = this.incidentStarts[node]; i < this.incidentStarts[node + 1]; i++) {
+                    int edge = this.incidentEdges[i];
+                    int other = this.edgeParents[edge] == node ? this.edgeChildren[edge] : this.edgeParents[edge];
+                    if (!isFound[other]) {
+                        isFound[other] = true;
+                        queue[tail++] = other;
+                    }
+                }
+            }
+            groups.add(Arrays.copyOf(queue, tail));
+        }
+        return groups;
+    }
+
+    /**
+     * This lays out a group of connected diagrams with its top-left corner at (0, 0).
+     * @param group The diagrams in the group.
+     * @return The area covered by the group.
+     */
+    private Rectangle layoutGroup(int[] group) {
+        if (group.length == 1) {
+            this.nodeX[group[0]] = 0;
+            this.nodeY[group[0]] = 0;
+            return new Rectangle(0, 0, this.nodeWidths[group[0]], this.nodeHeights[group[0]]);
+        }
+
+        GroupGraph graph = new GroupGraph(group);
+        graph.assignLayers();
+        graph.addDummies();
+        graph.orderLayers();
+        graph.placeNodes();
+
+        for (int i = 0; i < group.length; i++) {
+            this.nodeX[group[i]] = graph.x[i];
+            this.nodeY[group[i]] = graph.y[i];
+        }
+        return new Rectangle(0, 0, graph.width, graph.height);
+    }
+
+    /**
+     * This represents one group of connected diagrams while it is laid out. The diagrams are numbered from 0 in the
+     * order of the group, and the placeholders for long arrows are numbered after them.
+     */
+    private class GroupGraph {
+        private int numReal;
+        private int numAll;
+        private int[] parents;
+        private int[] children;
+        private int[] layers;
+        private int numLayers;
+        private int[] widths;
+        private int[] heights;
+
+        // The neighbours of each node on the layers above and below, once every arrow spans one layer.
+        private int[] upStarts;
+        private int[] ups;
+        private int[] downStarts;
+        private int[] downs;
+
+        private int[][] layerNodes;
+        private int[] positions;
+        private long bestCrossings;
+        private int[] x;
+        private int[] y;
+        private int width;
+        private int height;
+
+        /**
+         * This collects the arrows between the diagrams of a group.
+         * @param group The diagrams in the group.
+         */
+        public GroupGraph(int[] group) {
+            HashMap<Integer, Integer> localIndexes = new HashMap<Integer, Integer>();
+            for (int i = 0; i < group.length; i++) {
+                localIndexes.put(group[i], i);
+            }
+
+            ArrayList<int[]> edges = new ArrayList<int[]>();
+            for (int node: group) {
+                for (int i = incidentStarts[node]; i < incidentStarts[node + 1]; i++) {
+                    int edge = incidentEdges[i];
+                    if (edgeParents[edge] == node) {
+                        edges.add(new int[] { localIndexes.get(node), localIndexes.get(edgeChildren[edge]) });
+                    }
+                }
+            }
+
+            this.numReal = group.length;
+            this.parents = new int[edges.size()];
+            this.children = new int[edges.size()];
+            for (int i = 0; i < edges.size(); i++) {
+                this.parents[i] = edges.get(i)[0];
+                this.children[i] = edges.get(i)[1];
+            }
+
+            this.widths = new int[group.length];
+            this.heights = new int[group.length];
+            for (int i = 0; i < group.length; i++) {
+                this.widths[i] = nodeWidths[group[i]];
+                this.heights[i] = nodeHeights[group[i]];
+            }
+        }
+
+        /**
+         * This puts every diagram on a layer below all of its parents. Arrows that would close a cycle of inheritance
+         * are turned around first, then each diagram goes on the layer after the lowest of its parents.
+         */
+        public void assignLayers() {
+            int numEdges = this.parents.length;
+            int[] outStarts = new int[this.numReal + 1];
+            for (int i = 0; i < numEdges; i++) {
+                outStarts[this.parents[i] + 1]++;
+            }
+            for (int i = 0; i < this.numReal; i++) {
+                outStarts[i + 1] += outStarts[i];
+            }
+            int[] outEdges = new int[numEdges];
+            int[] fill = Arrays.copyOf(outStarts, this.numReal);
+            for (int i = 0; i < numEdges; i++) {
+                outEdges[fill[this.parents[i]]++] = i;
+            }
+
+            // Depth-first search without recursion, since inheritance chains can be deep. An arrow back to a diagram
+            // still being searched closes a cycle.
+            int[] states = new int[this.numReal];
+            int[] stack = new int[this.numReal];
+            int[] nextEdges = new int[this.numReal];
+            for (int start = 0; start < this.numReal; start++) {
+                if (states[start] != 0) {
+                    continue;
+                }
+
+                int depth = 0;
+                stack[depth++] = start;
+                states[start] = 1;
+                nextEdges[start] = outStarts[start];
+                while (depth > 0) {
+                    int node = stack[depth - 1];
+                    if (nextEdges[node] == outStarts[node + 1]) {
+                        states[node] = 2;
+                        depth--;
+                        continue;
+                    }
+
+                    int edge = outEdges[nextEdges[node]++];
+                    int child = this.children[edge];
+                    if (states[child] == 1) {
+                        this.children[edge] = this.parents[edge];
+                        this.parents[edge] = child;
+                    } else if (states[child] == 0) {
+                        states[child] = 1;
+                        nextEdges[child] = outStarts[child];
+                        stack[depth++] = child;
+                    }
+                }
+            }
+
+            // Arrows turned around no longer start where they are listed, so the lists are built again.
+            Arrays.fill(outStarts, 0);
+            int[] inDegrees = new int[this.numReal];
+            for (int i = 0; i < numEdges; i++) {
+                outStarts[this.parents[i] + 1]++;
+                inDegrees[this.children[i]]++;
+            }
+            for (int i = 0; i < this.numReal; i++) {
+                outStarts[i + 1] += outStarts[i];
+            }
+            fill = Arrays.copyOf(outStarts, this.numReal);
+            for (int i = 0; i < numEdges; i++) {
+                outEdges[fill[this.parents[i]]++] = i;
+            }
+
+            this.layers = new int[this.numReal];
+            int[] queue = new int[this.numReal];
+            int head = 0;
+            int tail = 0;
+            for (int i = 0; i < this.numReal; i++) {
+                if (inDegrees[i] == 0) {
+                    queue[tail++] = i;
+                }
+            }
+            while (head < tail) {
+                int node = queue[head++];
+                for (int i = outStarts[node]; i < outStarts[node + 1]; i++) {
+                    int child = this.children[outEdges[i]];
+                    this.layers[child] = Math.max(this.layers[child], this.layers[node] + 1);
+                    if (--inDegrees[child] == 0) {
+                        queue[tail++] = child;
+                    }
+                }
+            }
+
+            this.numLayers = 0;
+            for (int layer: this.layers) {
+                this.numLayers = Math.max(this.numLayers, layer + 1);
+            }
+        }
+
+        /**
+         * This splits every arrow spanning more than one layer with placeholders on the layers it passes, then finds
+         * the neighbours of every node on the layers above and below it.
+         */
+        public void addDummies() {
+            int numEdges = this.parents.length;
+            int numDummies = 0;
+            for (int i = 0; i < numEdges; i++) {
+                numDummies += this.layers[this.children[i]] - this.layers[this.parents[i]] - 1;
+            }
+
+            this.numAll = this.numReal + numDummies;
+            this.layers = Arrays.copyOf(this.layers, this.numAll);
+            this.widths = Arrays.copyOf(this.widths, this.numAll);
+            this.heights = Arrays.copyOf(this.heights, this.numAll);
+
+            int numSegments = numEdges + numDummies;
+            int[] segmentUppers = new int[numSegments];
+            int[] segmentLowers = new int[numSegments];
+            int numSegmentsAdded = 0;
+            int nextDummy = this.numReal;
+            for (int i = 0; i < numEdges; i++) {
+                int upper = this.parents[i];
+                for (int layer = this.layers[upper] + 1; layer < this.layers[this.children[i]]; layer++) {
+                    this.layers[nextDummy] = layer;
+                    this.widths[nextDummy] = DUMMY_WIDTH;
+                    segmentUppers[numSegmentsAdded] = upper;
+                    segmentLowers[numSegmentsAdded] = nextDummy;
+                    numSegmentsAdded++;
+                    upper = nextDummy;
+                    nextDummy++;
+                }
+                segmentUppers[numSegmentsAdded] = upper;
+                segmentLowers[numSegmentsAdded] = this.children[i];
+                numSegmentsAdded++;
+            }
+
+            this.upStarts = new int[this.numAll + 1];
+            this.downStarts = new int[this.numAll + 1];
+            for (int i = 0; i < numSegments; i++) {
+                this.downStarts[segmentUppers[i] + 1]++;
+                this.upStarts[segmentLowers[i] + 1]++;
+            }
+            for (int i = 0; i < this.numAll; i++) {
+                this.downStarts[i + 1] += this.downStarts[i];
+                this.upStarts[i + 1] += this.upStarts[i];
+            }
+
+            this.downs = new int[numSegments];
+            this.ups = new int[numSegments];
+            int[] downFill = Arrays.copyOf(this.downStarts, this.numAll);
+            int[] upFill = Arrays.copyOf(this.upStarts, this.numAll);
+            for (int i = 0; i < numSegments; i++) {
+                this.downs[downFill[segmentUppers[i]]++] = segmentLowers[i];
+                this.ups[upFill[segmentLowers[i]]++] = segmentUppers[i];
+            }
+        }
+
+        /**
+         * This orders the nodes on each layer. They start in the order a depth-first search from the top reaches
+         * them, which keeps subtrees together, then are sorted by the average position of their neighbours on the
+         * layer above, then on the layer below, and so on, keeping the order with the fewest crossings.
+         */
+        public void orderLayers() {
+            int[] layerSizes = new int[this.numLayers];
+            for (int i = 0; i < this.numAll; i++) {
+                layerSizes[this.layers[i]]++;
+            }
+            this.layerNodes = new int[this.numLayers][];
+            for (int layer = 0; layer < this.numLayers; layer++) {
+                this.layerNodes[layer] = new int[layerSizes[layer]];
+            }
+
+            int[] filled = new int[this.numLayers];
+            boolean[] isPlaced = new boolean[this.numAll];
+            int[] stack = new int[this.numAll];
+            for (int start = 0; start < this.numAll; start++) {
+                if (isPlaced[start] || this.upStarts[start] != this.upStarts[start + 1]) {
+                    continue;
+                }
+
+                int depth = 0;
+                stack[depth++] = start;
+                isPlaced[start] = true;
+                while (depth > 0) {
+                    int node = stack[--depth];
+                    this.layerNodes[this.layers[node]][filled[this.layers[node]]++] = node;
+                    for (int i = this.downStarts[node + 1] - 1; i >= this.downStarts[node]; i--) {
+                        if (!isPlaced[this.downs[i]]) {
+                            isPlaced[this.downs[i]] = true;
+                            stack[depth++] = this.downs[i];
+                        }
+                    }
+                }
+            }
+
+            this.positions = new int[this.numAll];
+            this.updatePositions();
+            this.bestCrossings = this.countCrossings();
+            int[][] bestOrder = copyLayers(this.layerNodes);
+
+            double[] barycenters = new double[this.numAll];
+            for (int sweep = 0; sweep < ORDERING_SWEEPS && this.bestCrossings > 0; sweep++) {
+                boolean isDown = sweep % 2 == 0;
+                for (int i = 1; i < this.numLayers; i++) {
+                    int layer = isDown ? i : this.numLayers - 1 - i;
+                    if (isDown) {
+                        this.sortLayer(layer, this.upStarts, this.ups, barycenters);
+                    } else {
+                        this.sortLayer(layer, this.downStarts, this.downs, barycenters);
+                    }
+                }
+
+                long crossings = this.countCrossings();
+                if (crossings < this.bestCrossings) {
+                    this.bestCrossings = crossings;
+                    bestOrder = copyLayers(this.layerNodes);
+                }
+            }
+
+            this.layerNodes = bestOrder;
+            this.updatePositions();
+        }
+
+        /**
+         * This sorts the nodes on a layer by the average position of their neighbours on the next layer. Nodes with
+         * no neighbours there keep their position.
+         * @param layer The layer to sort.
+         * @param starts Where the neighbours of each node start.
+         * @param neighbours The neighbours.
+         * @param barycenters Scratch space for the average positions.
+         */
+        private void sortLayer(int layer, int[] starts, int[] neighbours, final double[] barycenters) {
+            int[] nodes = this.layerNodes[layer];
+            Integer[] sortedNodes = new Integer[nodes.length];
+            for (int i = 0; i < nodes.length; i++) {
+                int node = nodes[i];
+                int numNeighbours = starts[node + 1] - starts[node];
+                if (numNeighbours == 0) {
+                    barycenters[node] = i;
+                } else {
+                    double sum = 0;
+                    for (int j = starts[node]; j < starts[node + 1]; j++) {
+                        sum += this.positions[neighbours[j]];
+                    }
+                    barycenters[node] = sum / numNeighbours;
+                }
+                sortedNodes[i] = node;
+            }
+
+            Arrays.sort(sortedNodes, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer node1, Integer node2) {
+                    return Double.compare(barycenters[node1], barycenters[node2]);
+                }
+            });
+
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i] = sortedNodes[i];
+                this.positions[nodes[i]] = i;
+            }
+        }
+
+        /**
+         * This records the position of every node within its layer.
+         */
+        private void updatePositions() {
+            for (int[] nodes: this.layerNodes) {
+                for (int i = 0; i < nodes.length; i++) {
+                    this.positions[nodes[i]] = i;
+                }
+            }
+        }
+
+        /**
+         * This counts the crossings between every pair of adjacent layers. The lines between two layers, in the order
+         * of their upper ends, cross once for every pair whose lower ends are the other way around, which a tree of
+         * counts finds without comparing every pair.
+         * @return The number of crossings.
+         */
+        private long countCrossings() {
+            long crossings = 0;
+            for (int layer = 0; layer + 1 < this.numLayers; layer++) {
+                int numLower = this.layerNodes[layer + 1].length;
+                int[] counts = new int[numLower + 1];
+                int numLines = 0;
+                int[] lowerEnds = new int[numLower];
+
+                for (int upper: this.layerNodes[layer]) {
+                    int numDowns = this.downStarts[upper + 1] - this.downStarts[upper];
+                    if (lowerEnds.length < numDowns) {
+                        lowerEnds = new int[numDowns];
+                    }
+                    for (int i = 0; i < numDowns; i++) {
+                        lowerEnds[i] = this.positions[this.downs[this.downStarts[upper] + i]];
+                    }
+                    Arrays.sort(lowerEnds, 0, numDowns);
+
+                    for (int i = 0; i < numDowns; i++) {
+                        // Count the lines already added that end further right.
+                        int numAtOrLeft = 0;
+                        for (int index = lowerEnds[i] + 1; index > 0; index -= index & -index) {
+                            numAtOrLeft += counts[index];
+                        }
+                        crossings += numLines - numAtOrLeft;
+                    }
+                    for (int i = 0; i < numDowns; i++) {
+                        for (int index = lowerEnds[i] + 1; index <= numLower; index += index & -index) {
+                            counts[index]++;
+                        }
+                        numLines++;
+                    }
+                }
+            }
+            return crossings;
+        }
+
+        /**
+         * This works out where every node goes. Each node is pulled towards the middle of its neighbours, and the
+         * nodes on a layer are placed as close to where they are pulled as they can be while keeping their order and
+         * the gaps between them. The layers are taken from the top, then from the bottom, and so on.
+         */
+        public void placeNodes() {
+            double[] lefts = new double[this.numAll];
+            for (int[] nodes: this.layerNodes) {
+                double left = 0;
+                for (int i = 0; i < nodes.length; i++) {
+                    if (i > 0) {
+                        left += this.getSeparation(nodes[i - 1], nodes[i]);
+                    }
+                    lefts[nodes[i]] = left;
+                }
+            }
+
+            double[] targets = new double[this.numAll];
+            double[] weights = new double[this.numAll];
+            for (int sweep = 0; sweep < PLACEMENT_SWEEPS; sweep++) {
+                boolean isDown = sweep % 2 == 0;
+                for (int i = 0; i < this.numLayers; i++) {
+                    int[] nodes = this.layerNodes[isDown ? i : this.numLayers - 1 - i];
+                    for (int node: nodes) {
+                        double sum = 0;
+                        int numNeighbours = 0;
+                        for (int j = this.upStarts[node]; j < this.upStarts[node + 1]; j++) {
+                            sum += lefts[this.ups[j]] + this.widths[this.ups[j]] / 2.0;
+                            numNeighbours++;
+                        }
+                        for (int j = this.downStarts[node]; j < this.downStarts[node + 1]; j++) {
+                            sum += lefts[this.downs[j]] + this.widths[this.downs[j]] / 2.0;
+                            numNeighbours++;
+                        }
+
+                        double center = numNeighbours > 0 ? sum / numNeighbours : lefts[node] + this.widths[node] / 2.0;
+                        targets[node] = center - this.widths[node] / 2.0;
+                        weights[node] = node >= this.numReal ? DUMMY_WEIGHT : 1;
+                    }
+                    this.placeLayer(nodes, targets, weights, lefts);
+                }
+            }
+
+            double minLeft = Double.MAX_VALUE;
+            for (int i = 0; i < this.numAll; i++) {
+                minLeft = Math.min(minLeft, lefts[i]);
+            }
+
+            int[] layerTops = new int[this.numLayers];
+            int top = 0;
+            for (int layer = 0; layer < this.numLayers; layer++) {
+                int layerHeight = 0;
+                for (int node: this.layerNodes[layer]) {
+                    layerHeight = Math.max(layerHeight, this.heights[node]);
+                }
+                layerTops[layer] = top;
+                top += layerHeight + LAYER_GAP;
+            }
+
+            this.x = new int[this.numReal];
+            this.y = new int[this.numReal];
+            this.width = 0;
+            this.height = 0;
+            for (int i = 0; i < this.numAll; i++) {
+                int left = (int) Math.round(lefts[i] - minLeft);
+                this.width = Math.max(this.width, left + this.widths[i]);
+                if (i < this.numReal) {
+                    this.x[i] = left;
+                    this.y[i] = layerTops[this.layers[i]];
+                    this.height = Math.max(this.height, this.y[i] + this.heights[i]);
+                }
+            }
+        }
+
+        /**
+         * This places the nodes on a layer as close to their targets as they can be, weighted, while keeping their
+         * order and the gaps between them. Taking away the gaps before each node turns this into finding the closest
+         * sequence that never decreases, which is solved exactly by pooling neighbouring nodes that are out of order.
+         * @param nodes The nodes on the layer, in order.
+         * @param targets Where the left edge of each node is pulled to.
+         * @param weights How strongly each node is pulled.
+         * @param lefts The left edge of each node, which are set.
+         */
+        private void placeLayer(int[] nodes, double[] targets, double[] weights, double[] lefts) {
+            int numNodes = nodes.length;
+            double[] offsets = new double[numNodes];
+            for (int i = 1; i < numNodes; i++) {
+                offsets[i] = offsets[i - 1] + this.getSeparation(nodes[i - 1], nodes[i]);
+            }
+
+            double[] blockValues = new double[numNodes];
+            double[] blockWeights = new double[numNodes];
+            int[] blockSizes = new int[numNodes];
+            int numBlocks = 0;
+            for (int i = 0; i < numNodes; i++) {
+                blockValues[numBlocks] = targets[nodes[i]] - offsets[i];
+                blockWeights[numBlocks] = weights[nodes[i]];
+                blockSizes[numBlocks] = 1;
+                numBlocks++;
+
+                while (numBlocks > 1 && blockValues[numBlocks - 2] > blockValues[numBlocks - 1]) {
+                    double weight = blockWeights[numBlocks - 2] + blockWeights[numBlocks - 1];
+                    blockValues[numBlocks - 2] = (blockValues[numBlocks - 2] * blockWeights[numBlocks - 2] +
+                        blockValues[numBlocks - 1] * blockWeights[numBlocks - 1]) / weight;
+                    blockWeights[numBlocks - 2] = weight;
+                    blockSizes[numBlocks - 2] += blockSizes[numBlocks - 1];
+                    numBlocks--;
+                }
+            }
+
+            int i = 0;
+            for (int block = 0; block < numBlocks; block++) {
+                for (int j = 0; j < blockSizes[block]; j++) {
+                    lefts[nodes[i]] = blockValues[block] + offsets[i];
+                    i++;
+                }
+            }
+        }
+
+        /**
+         * This gets how far apart the left edges of two nodes next to each other on a layer must be.
+         * @param left The node on the left.
+         * @param right The node on the right.
+         * @return The distance.
+         */
+        private int getSeparation(int left, int right) {
+            boolean isDummy = left >= this.numReal || right >= this.numReal;
+            return this.widths[left] + (isDummy ? DUMMY_GAP : NODE_GAP);
+        }
+    }
+
+    /**
+     * This copies the order of the nodes on every layer.
+     * @param layerNodes The nodes on each layer.
+     * @return The copy.
+     */
+    private static int[][] copyLayers(int[][] layerNodes) {
+        int[][] copy = new int[layerNodes.length][];
+        for (int i = 0; i < layerNodes.length; i++) {
+            copy[i] = layerNodes[i].clone();
+        }
+        return copy;
+    }
+}
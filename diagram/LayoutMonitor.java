@@ -0,0 +1,24 @@
+package diagram;
+
+import java.awt.Point;
+import java.util.HashMap;
+
+/**
+ * This interface represents an object that follows a layout as it is worked out, so the diagrams can be shown moving
+ * into place. The layout calls it from the thread it runs on.
+ * @author Andrew Chu
+ * @version June 2023
+ */
+public interface LayoutMonitor {
+    /**
+     * Tells where the layout has put the diagrams so far.
+     * @param positions The position of each arranged diagram by id, which the layout does not touch again.
+     */
+    public void layoutProgressed(HashMap<Integer, Point> positions);
+
+    /**
+     * Checks if the layout should stop. A cancelled layout gives up without any positions.
+     * @return True if it should stop, false if it should go on.
+     */
+    public boolean isLayoutCancelled();
+}
@@ -0,0 +1,239 @@
+package diagram;
+import java.awt.Font;
+import java.awt.Rectangle;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * This exports a document as a single page PDF. The page content is compressed as it is written, and its length is
+ * written after it as a separate object, so the page never has to be held in memory. Text uses the standard Helvetica
+ * font, which every PDF reader has, so no font is embedded.
+ * @author Andrew Chu
+ * @version June 2023
+ */
+public class PdfExporter extends VectorExporter {
+    public static final String EXTENSION = "pdf";
+
+    // Readers commonly refuse pages larger than this many units on a side, so larger canvases are scaled down to it.
+    private static final double MAX_PAGE_SIZE = 14400;
+    private static final double SEPARATOR_GRAY = 0.75;
+
+    private static final int CATALOG_OBJECT = 1;
+    private static final int PAGES_OBJECT = 2;
+    private static final int PAGE_OBJECT = 3;
+    private static final int FONT_OBJECT = 4;
+    private static final int CONTENT_OBJECT = 5;
+    private static final int LENGTH_OBJECT = 6;
+    private static final int NUM_OBJECTS = 6;
+
+    private CountingOutputStream output;
+    private long[] objectOffsets;
+    private long contentStart;
+    private DeflaterOutputStream content;
+    private Deflater deflater;
+
+    @Override
+    protected void beginDocument(OutputStream output, Rectangle bounds) throws IOException {
+        this.output = new CountingOutputStream(output);
+        this.objectOffsets = new long[NUM_OBJECTS + 1];
+
+        double scale = Math.min(1, MAX_PAGE_SIZE / Math.max(bounds.width, bounds.height));
+        String pageWidth = formatNumber(bounds.width * scale);
+        String pageHeight = formatNumber(bounds.height * scale);
+
+        this.write("%PDF-1.4\n%\u00e2\u00e3\u00cf\u00d3\n");
+        this.beginObject(CATALOG_OBJECT);
+        this.write("<< /Type /Catalog /Pages " + PAGES_OBJECT + " 0 R >>\nendobj\n");
+        this.beginObject(PAGES_OBJECT);
+        this.write("<< /Type /Pages /Kids [" + PAGE_OBJECT + " 0 R] /Count 1 >>\nendobj\n");
+        this.beginObject(PAGE_OBJECT);
+        this.write("<< /Type /Page /Parent " + PAGES_OBJECT + " 0 R /MediaBox [0 0 " + pageWidth + " " + pageHeight
+            + "] /Resources << /Font << /F1 " + FONT_OBJECT + " 0 R >> >> /Contents " + CONTENT_OBJECT
+            + " 0 R >>\nendobj\n");
+        this.beginObject(FONT_OBJECT);
+        this.write("<< /Type /Font /Subtype /Type1 /BaseFont /Helvetica /Encoding /WinAnsiEncoding >>\nendobj\n");
+        this.beginObject(CONTENT_OBJECT);
+        this.write("<< /Length " + LENGTH_OBJECT + " 0 R /Filter /FlateDecode >>\nstream\n");
+
+        this.contentStart = this.output.getCount();
+        this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        this.content = new DeflaterOutputStream(this.output, this.deflater);
+
+        // Flip the page so y grows downwards like on the canvas, with the exported area at the origin.
+        this.writeContent(formatNumber(scale) + " 0 0 " + formatNumber(-scale) + " "
+            + formatNumber(-bounds.x * scale) + " " + formatNumber((bounds.y + bounds.height) * scale) + " cm\n");
+        this.writeContent("1 g 0 0 0 RG " + bounds.x + " " + bounds.y + " " + bounds.width + " " + bounds.height
+            + " re f 0 g\n");
+    }
+
+    @Override
+    protected void endDocument() throws IOException {
+        this.content.finish();
+        this.deflater.end();
+        long contentLength = this.output.getCount() - this.contentStart;
+        this.write("\nendstream\nendobj\n");
+
+        this.beginObject(LENGTH_OBJECT);
+        this.write(contentLength + "\nendobj\n");
+
+        long xrefOffset = this.output.getCount();
+        StringBuilder xref = new StringBuilder();
+        xref.append("xref\n0 ").append(NUM_OBJECTS + 1).append("\n0000000000 65535 f \n");
+        for (int i = 1; i <= NUM_OBJECTS; i++) {
+            String offset = Long.toString(this.objectOffsets[i]);
+            for (int j = offset.length(); j < 10; j++) {
+                xref.append('0');
+            }
+            xref.append(offset).append(" 00000 n \n");
+        }
+        xref.append("trailer\n<< /Size ").append(NUM_OBJECTS + 1).append(" /Root ").append(CATALOG_OBJECT)
+            .append(" 0 R >>\nstartxref\n").append(xrefOffset).append("\n%%EOF\n");
+        this.write(xref.toString());
+        this.output.flush();
+    }
+
+    @Override
+    protected void drawLine(int[] xPoints, int[] yPoints, int numPoints, boolean isClosed, boolean isDashed)
+            throws IOException {
+        StringBuilder operators = new StringBuilder();
+        operators.append(Arrow.DEFAULT_LINE_THICKNESS).append(isDashed ? " w [6] 0 d " : " w [] 0 d ");
+        appendPath(operators, xPoints, yPoints, numPoints);
+        operators.append(isClosed ? "s\n" : "S\n");
+        this.writeContent(operators.toString());
+    }
+
+    @Override
+    protected void fillShape(int[] xPoints, int[] yPoints, int numPoints) throws IOException {
+        StringBuilder operators = new StringBuilder();
+        appendPath(operators, xPoints, yPoints, numPoints);
+        operators.append("f\n");
+        this.writeContent(operators.toString());
+    }
+
+    /**
+     * This appends the operators that trace a path through points.
+     * @param operators The operators to append to.
+     * @param xPoints The x-coordinates.
+     * @param yPoints The y-coordinates.
+     * @param numPoints The number of points.
+     */
+    private static void appendPath(StringBuilder operators, int[] xPoints, int[] yPoints, int numPoints) {
+        for (int i = 0; i < numPoints; i++) {
+            operators.append(xPoints[i]).append(' ').append(yPoints[i]).append(i == 0 ? " m " : " l ");
+        }
+    }
+
+    @Override
+    protected void drawBox(int x, int y, int width, int height) throws IOException {
+        this.writeContent("1 g 1 w [] 0 d " + formatNumber(x + 0.5) + " " + formatNumber(y + 0.5) + " "
+            + (width - 1) + " " + (height - 1) + " re B 0 g\n");
+    }
+
+    @Override
+    protected void drawSeparator(double startX, double endX, double y) throws IOException {
+        this.writeContent(SEPARATOR_GRAY + " G 1 w [] 0 d " + formatNumber(startX) + " " + formatNumber(y) + " m "
+            + formatNumber(endX) + " " + formatNumber(y) + " l S 0 G\n");
+    }
+
+    @Override
+    protected void drawText(String text, Font font, double x, double baseline, boolean isCentered)
+            throws IOException {
+        if (isCentered) {
+            x -= this.getTextWidth(text, font) / 2;
+        }
+
+        // The text matrix flips the text back upright on the flipped page.
+        this.writeContent("BT /F1 " + font.getSize() + " Tf 1 0 0 -1 " + formatNumber(x) + " "
+            + formatNumber(baseline) + " Tm (" + escape(text) + ") Tj ET\n");
+    }
+
+    /**
+     * This escapes text for a PDF string. Characters the font's encoding does not have are replaced.
+     * @param text The text.
+     * @return The escaped text.
+     */
+    private static String escape(String text) {
+        StringBuilder escaped = new StringBuilder(text.length() + 8);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '(' || c == ')' || c == '\\') {
+                escaped.append('\\').append(c);
+            } else if (c == '\t') {
+                escaped.append("    ");
+            } else if (c < ' ' || c > 0xff) {
+                escaped.append('?');
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * This records where an object starts and writes its header.
+     * @param number The object number.
+     * @throws IOException If the output fails.
+     */
+    private void beginObject(int number) throws IOException {
+        this.objectOffsets[number] = this.output.getCount();
+        this.write(number + " 0 obj\n");
+    }
+
+    /**
+     * This writes text outside of the page content.
+     * @param text The text, made of characters up to 0xff.
+     * @throws IOException If the output fails.
+     */
+    private void write(String text) throws IOException {
+        this.output.write(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * This writes operators to the compressed page content.
+     * @param operators The operators, made of characters up to 0xff.
+     * @throws IOException If the output fails.
+     */
+    private void writeContent(String operators) throws IOException {
+        this.content.write(operators.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * This class counts the bytes written through it, to find the offsets of objects.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        /**
+         * This constructs a counting stream.
+         * @param output The stream to write to.
+         */
+        public CountingOutputStream(OutputStream output) {
+            super(output);
+            this.count = 0;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.out.write(b);
+            this.count++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            this.out.write(bytes, offset, length);
+            this.count += length;
+        }
+
+        /**
+         * This gets the number of bytes written so far.
+         * @return The number of bytes.
+         */
+        public long getCount() {
+            return this.count;
+        }
+    }
+}
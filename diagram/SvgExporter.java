@@ -0,0 +1,166 @@
+package diagram;
+import java.awt.Font;
+import java.awt.Rectangle;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This exports a document as an SVG image. The shared styles are declared once in a style sheet so each element only
+ * needs its geometry.
+ * @author Andrew Chu
+ * @version June 2023
+ */
+public class SvgExporter extends VectorExporter {
+    public static final String EXTENSION = "svg";
+
+    private Writer writer;
+
+    @Override
+    protected void beginDocument(OutputStream output, Rectangle bounds) throws IOException {
+        this.writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+
+        this.writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        this.writer.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + bounds.width
+            + "\" height=\"" + bounds.height + "\" viewBox=\"" + bounds.x + " " + bounds.y + " " + bounds.width
+            + " " + bounds.height + "\">\n");
+        this.writer.write("<style>\n"
+            + ".l{fill:none;stroke:#000;stroke-width:" + Arrow.DEFAULT_LINE_THICKNESS + "}\n"
+            + ".d{stroke-dasharray:6}\n"
+            + ".f{fill:#000}\n"
+            + ".b{fill:#fff;stroke:#000;stroke-width:1}\n"
+            + ".s{stroke:#c0c0c0;stroke-width:1}\n"
+            + "text{fill:#000;white-space:pre}\n"
+            + ".t{" + getFontStyle(this.getTitleFont()) + "}\n"
+            + ".x{" + getFontStyle(this.getBodyFont()) + "}\n"
+            + ".c{text-anchor:middle}\n"
+            + "</style>\n");
+        this.writer.write("<rect x=\"" + bounds.x + "\" y=\"" + bounds.y + "\" width=\"" + bounds.width
+            + "\" height=\"" + bounds.height + "\" fill=\"#fff\"/>\n");
+    }
+
+    @Override
+    protected void endDocument() throws IOException {
+        this.writer.write("</svg>\n");
+        this.writer.flush();
+    }
+
+    @Override
+    protected void drawLine(int[] xPoints, int[] yPoints, int numPoints, boolean isClosed, boolean isDashed)
+            throws IOException {
+        this.writer.write(isClosed ? "<polygon" : "<polyline");
+        this.writer.write(isDashed ? " class=\"l d\"" : " class=\"l\"");
+        this.writePoints(xPoints, yPoints, numPoints);
+    }
+
+    @Override
+    protected void fillShape(int[] xPoints, int[] yPoints, int numPoints) throws IOException {
+        this.writer.write("<polygon class=\"f\"");
+        this.writePoints(xPoints, yPoints, numPoints);
+    }
+
+    /**
+     * This writes the points attribute and ends the element.
+     * @param xPoints The x-coordinates.
+     * @param yPoints The y-coordinates.
+     * @param numPoints The number of points.
+     * @throws IOException If the output fails.
+     */
+    private void writePoints(int[] xPoints, int[] yPoints, int numPoints) throws IOException {
+        this.writer.write(" points=\"");
+        for (int i = 0; i < numPoints; i++) {
+            if (i > 0) {
+                this.writer.write(' ');
+            }
+            this.writer.write(xPoints[i] + "," + yPoints[i]);
+        }
+        this.writer.write("\"/>\n");
+    }
+
+    @Override
+    protected void drawBox(int x, int y, int width, int height) throws IOException {
+        this.writer.write("<rect class=\"b\" x=\"" + formatNumber(x + 0.5) + "\" y=\"" + formatNumber(y + 0.5)
+            + "\" width=\"" + (width - 1) + "\" height=\"" + (height - 1) + "\"/>\n");
+    }
+
+    @Override
+    protected void drawSeparator(double startX, double endX, double y) throws IOException {
+        this.writer.write("<line class=\"s\" x1=\"" + formatNumber(startX) + "\" y1=\"" + formatNumber(y)
+            + "\" x2=\"" + formatNumber(endX) + "\" y2=\"" + formatNumber(y) + "\"/>\n");
+    }
+
+    @Override
+    protected void drawText(String text, Font font, double x, double baseline, boolean isCentered)
+            throws IOException {
+        this.writer.write(font == this.getTitleFont() ? "<text class=\"t" : "<text class=\"x");
+        this.writer.write(isCentered ? " c\" x=\"" : "\" x=\"");
+        this.writer.write(formatNumber(x) + "\" y=\"" + formatNumber(baseline) + "\">");
+        this.writer.write(escape(text));
+        this.writer.write("</text>\n");
+    }
+
+    /**
+     * This gets the style properties that set a font.
+     * @param font The font.
+     * @return The properties.
+     */
+    private static String getFontStyle(Font font) {
+        // Java's logical fonts only exist in Java, so they are swapped for the generic family they stand for.
+        String family = font.getFamily();
+        String genericFamily = "sans-serif";
+        if (family.equals(Font.SERIF)) {
+            genericFamily = "serif";
+        } else if (family.equals(Font.MONOSPACED)) {
+            genericFamily = "monospace";
+        }
+
+        String fontFamily = genericFamily;
+        if (!family.equals(Font.DIALOG) && !family.equals(Font.DIALOG_INPUT) && !family.equals(Font.SANS_SERIF)
+                && !family.equals(Font.SERIF) && !family.equals(Font.MONOSPACED)) {
+            fontFamily = "'" + escape(family) + "'," + genericFamily;
+        }
+
+        return "font-family:" + fontFamily + ";font-size:" + font.getSize() + "px"
+            + (font.isBold() ? ";font-weight:bold" : "") + (font.isItalic() ? ";font-style:italic" : "");
+    }
+
+    /**
+     * This escapes the characters that cannot appear as they are in XML text or attributes.
+     * @param text The text.
+     * @return The escaped text.
+     */
+    private static String escape(String text) {
+        StringBuilder escaped = null;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            String replacement;
+            if (c == '&') {
+                replacement = "&amp;";
+            } else if (c == '<') {
+                replacement = "&lt;";
+            } else if (c == '>') {
+                replacement = "&gt;";
+            } else if (c == '"') {
+                replacement = "&quot;";
+            } else if (c < ' ' && c != '\t') {
+                replacement = "";
+            } else {
+                if (escaped != null) {
+                    escaped.append(c);
+                }
+                continue;
+            }
+
+            if (escaped == null) {
+                escaped = new StringBuilder(text.length() + 16);
+                escaped.append(text, 0, i);
+            }
+            escaped.append(replacement);
+        }
+
+        return escaped == null ? text : escaped.toString();
+    }
+}
@@ -0,0 +1,318 @@
+package diagram;
+import java.awt.Font;
+import java.awt.Rectangle;
+import java.awt.font.FontRenderContext;
+import java.awt.font.LineMetrics;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+
+import javax.swing.UIManager;
+
+/**
+ * This exports a document to a vector format. It walks the arrows and diagrams of the document and describes each of
+ * them as lines, shapes and text, which subclasses write out as markup as they go. Nothing is painted and no Swing
+ * components are made, so the memory used does not grow with the size of the document.
+ * <p>
+ * The diagrams are laid out the same way a DiagramView lays them out: a title on top and the bodies below it, each
+ * separated by a light line.
+ * @author Andrew Chu
+ * @version June 2023
+ */
+public abstract class VectorExporter {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int BODY_INSET = 2;
+    private static final int DEFAULT_FONT_SIZE = 12;
+    private static final int PROGRESS_INTERVAL = 256;
+
+    private Font titleFont;
+    private Font bodyFont;
+    private FontRenderContext fontContext;
+    private int[] xPoints;
+    private int[] yPoints;
+
+    /**
+     * This constructs an exporter using the fonts of the diagram views.
+     */
+    public VectorExporter() {
+        this.titleFont = getFont("TextField.font");
+        this.bodyFont = getFont("TextArea.font");
+        this.fontContext = new FontRenderContext(null, true, true);
+        this.xPoints = new int[Arrow.MAX_END_POINTS];
+        this.yPoints = new int[Arrow.MAX_END_POINTS];
+    }
+
+    /**
+     * This gets a font of the look and feel.
+     * @param key The key of the font.
+     * @return The font, or a plain sans serif font if the look and feel does not have it.
+     */
+    private static Font getFont(String key) {
+        Font font = UIManager.getFont(key);
+        if (font == null) {
+            font = new Font(Font.SANS_SERIF, Font.PLAIN, DEFAULT_FONT_SIZE);
+        }
+        return font;
+    }
+
+    /**
+     * This exports the whole document to a file.
+     * @param document The document to export.
+     * @param file The file to write.
+     * @param monitor The monitor to report progress to, or null.
+     * @return True if it was exported, false if not or if it was cancelled.
+     */
+    public boolean export(DiagramDocument document, File file, ExportMonitor monitor) {
+        Rectangle bounds = DiagramExporter.getExportBounds(document);
+        ArrayList<Arrow> arrows = document.getArrowsIn(bounds);
+        ArrayList<Diagram> diagrams = document.getDiagramsIn(bounds);
+        int numElements = arrows.size() + diagrams.size();
+
+        try {
+            OutputStream output = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+            try {
+                this.beginDocument(output, bounds);
+                for (int i = 0; i < numElements; i++) {
+                    if (i < arrows.size()) {
+                        this.writeArrow(arrows.get(i));
+                    } else {
+                        this.writeDiagram(diagrams.get(i - arrows.size()));
+                    }
+
+                    if (monitor != null && (i + 1) % PROGRESS_INTERVAL == 0) {
+                        if (monitor.isExportCancelled()) {
+                            throw new CancellationException();
+                        }
+                        monitor.exportProgressed((double) (i + 1) / numElements);
+                    }
+                }
+                this.endDocument();
+            } finally {
+                output.close();
+            }
+            return true;
+        } catch (CancellationException exception) {
+            file.delete();
+            return false;
+        } catch (IOException exception) {
+            System.err.println("Cannot write vector file. [" + file.getPath() + "]");
+            file.delete();
+            return false;
+        }
+    }
+
+    /**
+     * This describes an arrow: its line, then the shape at its end.
+     * @param arrow The arrow.
+     * @throws IOException If the output fails.
+     */
+    private void writeArrow(Arrow arrow) throws IOException {
+        arrow.validateRoute();
+        int numPoints = arrow.getNumPoints();
+        if (numPoints == 0) {
+            return;
+        }
+
+        int[] lineXPoints = new int[numPoints];
+        int[] lineYPoints = new int[numPoints];
+        for (int i = 0; i < numPoints; i++) {
+            lineXPoints[i] = arrow.getPointX(i);
+            lineYPoints[i] = arrow.getPointY(i);
+        }
+        this.drawLine(lineXPoints, lineYPoints, numPoints, false, arrow.getStroke() == Arrow.DASHED);
+
+        int numEndPoints = arrow.getEndPoints(this.xPoints, this.yPoints);
+        if (numEndPoints == 0) {
+            return;
+        }
+
+        int endStyle = arrow.getEndStyle();
+        if (endStyle == Arrow.ARROW_END) {
+            this.drawLine(this.xPoints, this.yPoints, numEndPoints, false, false);
+        } else if (endStyle == Arrow.FILL_DIAMOND_END) {
+            this.fillShape(this.xPoints, this.yPoints, numEndPoints);
+        } else {
+            this.drawLine(this.xPoints, this.yPoints, numEndPoints, true, false);
+        }
+    }
+
+    /**
+     * This describes a diagram: its box, then its title and bodies.
+     * @param diagram The diagram.
+     * @throws IOException If the output fails.
+     */
+    private void writeDiagram(Diagram diagram) throws IOException {
+        int x = diagram.getX();
+        int y = diagram.getY();
+        int width = diagram.getWidth();
+        this.drawBox(x, y, width, diagram.getHeight());
+
+        String[][] bodies = new String[0][];
+        if (diagram instanceof InterfaceDiagram) {
+            InterfaceDiagram interfaceDiagram = (InterfaceDiagram) diagram;
+            bodies = new String[interfaceDiagram.getNumBodies()][];
+            for (int i = 0; i < bodies.length; i++) {
+                bodies[i] = interfaceDiagram.getBodyText(i).split("\n", -1);
+            }
+        }
+
+        // Share out the space left over after the preferred heights evenly, like the grid bag layout of a view does.
+        LineMetrics titleMetrics = this.titleFont.getLineMetrics(diagram.getTitle(), this.fontContext);
+        LineMetrics bodyMetrics = this.bodyFont.getLineMetrics("", this.fontContext);
+        double titleLineHeight = getLineHeight(titleMetrics);
+        double bodyLineHeight = getLineHeight(bodyMetrics);
+
+        double preferredHeight = titleLineHeight;
+        for (String[] lines: bodies) {
+            preferredHeight += lines.length * bodyLineHeight + 1 + 2 * BODY_INSET;
+        }
+        double extraHeight = (diagram.getHeight() - 2 - preferredHeight) / (bodies.length + 1);
+
+        double titleHeight = titleLineHeight + extraHeight;
+        double top = y + 1;
+        if (!diagram.getTitle().isEmpty()) {
+            this.drawText(diagram.getTitle(), this.titleFont, x + width / 2.0,
+                top + (titleHeight - titleLineHeight) / 2 + titleMetrics.getAscent(), true);
+        }
+        top += titleHeight;
+
+        for (String[] lines: bodies) {
+            top += BODY_INSET;
+            this.drawSeparator(x + 1 + BODY_INSET, x + width - 1 - BODY_INSET, top + 0.5);
+            for (int i = 0; i < lines.length; i++) {
+                if (lines[i].isEmpty()) {
+                    continue;
+                }
+                this.drawText(lines[i], this.bodyFont, x + 1 + BODY_INSET,
+                    top + 1 + i * bodyLineHeight + bodyMetrics.getAscent(), false);
+            }
+            top += lines.length * bodyLineHeight + 1 + extraHeight + BODY_INSET;
+        }
+    }
+
+    /**
+     * This gets the distance between the baselines of two lines of text.
+     * @param metrics The metrics of the font.
+     * @return The line height.
+     */
+    private static double getLineHeight(LineMetrics metrics) {
+        return Math.ceil(metrics.getAscent() + metrics.getDescent() + metrics.getLeading());
+    }
+
+    /**
+     * This gets the font of the titles of diagrams.
+     * @return The font.
+     */
+    protected Font getTitleFont() {
+        return this.titleFont;
+    }
+
+    /**
+     * This gets the font of the bodies of diagrams.
+     * @return The font.
+     */
+    protected Font getBodyFont() {
+        return this.bodyFont;
+    }
+
+    /**
+     * This measures how wide a line of text is.
+     * @param text The text.
+     * @param font The font of the text.
+     * @return The width.
+     */
+    protected double getTextWidth(String text, Font font) {
+        return font.getStringBounds(text, this.fontContext).getWidth();
+    }
+
+    /**
+     * This formats a coordinate or size with up to two decimals, without an exponent.
+     * @param value The number.
+     * @return The formatted number.
+     */
+    protected static String formatNumber(double value) {
+        long hundredths = Math.round(value * 100);
+        String sign = hundredths < 0 ? "-" : "";
+        hundredths = Math.abs(hundredths);
+
+        long whole = hundredths / 100;
+        int fraction = (int) (hundredths % 100);
+        if (fraction == 0) {
+            return sign + whole;
+        } else if (fraction % 10 == 0) {
+            return sign + whole + "." + (fraction / 10);
+        } else {
+            return sign + whole + "." + (fraction < 10 ? "0" : "") + fraction;
+        }
+    }
+
+    /**
+     * Starts the output.
+     * @param output The stream to write to.
+     * @param bounds The area of the canvas being exported.
+     * @throws IOException If the output fails.
+     */
+    protected abstract void beginDocument(OutputStream output, Rectangle bounds) throws IOException;
+
+    /**
+     * Finishes the output. The stream is closed afterwards.
+     * @throws IOException If the output fails.
+     */
+    protected abstract void endDocument() throws IOException;
+
+    /**
+     * Draws a black line through points, as thick as an arrow.
+     * @param xPoints The x-coordinates.
+     * @param yPoints The y-coordinates.
+     * @param numPoints The number of points.
+     * @param isClosed True if the line goes back to the first point, false if not.
+     * @param isDashed True if the line is dashed, false if it is solid.
+     * @throws IOException If the output fails.
+     */
+    protected abstract void drawLine(int[] xPoints, int[] yPoints, int numPoints, boolean isClosed, boolean isDashed)
+        throws IOException;
+
+    /**
+     * Fills a black shape.
+     * @param xPoints The x-coordinates of the corners.
+     * @param yPoints The y-coordinates of the corners.
+     * @param numPoints The number of corners.
+     * @throws IOException If the output fails.
+     */
+    protected abstract void fillShape(int[] xPoints, int[] yPoints, int numPoints) throws IOException;
+
+    /**
+     * Draws the white box of a diagram with a thin black border along the inside of its edges.
+     * @param x The left of the box.
+     * @param y The top of the box.
+     * @param width The width of the box.
+     * @param height The height of the box.
+     * @throws IOException If the output fails.
+     */
+    protected abstract void drawBox(int x, int y, int width, int height) throws IOException;
+
+    /**
+     * Draws the thin light line above a body of a diagram.
+     * @param startX The left end of the line.
+     * @param endX The right end of the line.
+     * @param y The height of the line.
+     * @throws IOException If the output fails.
+     */
+    protected abstract void drawSeparator(double startX, double endX, double y) throws IOException;
+
+    /**
+     * Draws a line of black text.
+     * @param text The text.
+     * @param font The font of the text.
+     * @param x The left of the text, or its middle if it is centered.
+     * @param baseline The height of the baseline of the text.
+     * @param isCentered True if the text is centered on x, false if it starts there.
+     * @throws IOException If the output fails.
+     */
+    protected abstract void drawText(String text, Font font, double x, double baseline, boolean isCentered)
+        throws IOException;
+}
@@ -1,33 +1,56 @@
 package editor;
 
+import java.awt.BasicStroke;
 import java.awt.Color;
-import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.Stroke;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
-import java.awt.event.MouseListener;
-import java.awt.image.BufferedImage;
 import java.awt.event.FocusEvent;
 import java.awt.event.FocusListener;
 import java.awt.event.MouseAdapter;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.util.Arrays;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 
-import javax.imageio.ImageIO;
-import javax.swing.BorderFactory;
 import javax.swing.JComponent;
 import javax.swing.JLayer;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JViewport;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 
 import diagram.Arrow;
+import diagram.CanvasFile;
+import diagram.CanvasSnapshot;
 import diagram.ClassDiagram;
 import diagram.Diagram;
+import diagram.DiagramDocument;
+import diagram.DiagramExporter;
+import diagram.DiagramLayout;
+import diagram.DiagramRenderer;
+import diagram.DiagramView;
+import diagram.ForceLayout;
 import diagram.InterfaceDiagram;
+import diagram.LayeredLayout;
 import utility.Vector;
 
 /**
@@ -42,17 +65,62 @@ public class Canvas extends JScrollPane {
     private JPanel innerPanel;
     private JLayer<JComponent> layer;
     private ZoomUI layerUI;
+    private Point origin;
+
+    private DiagramDocument document;
+    private DiagramRenderer renderer;
+    private DiagramView editor;
 
     private EditorActionHistory actionHistory;
-    private Diagram selectedDiagram;
+    private CanvasAutosave autosave;
+    private boolean isSaved;
+    private LinkedHashSet<Diagram> selectedDiagrams;
     private Arrow selectedArrow;
     private Tool tool;
 
-    private int zoomLevelIndex;
-
-    private static final double[] ZOOM_LEVELS = { 0.5, 0.75, 0.9, 1.0, 1.15, 1.5, 2.0 };
+    private double zoomLevel;
+    private Timer zoomSettleTimer;
+    private ArrayList<Diagram> draggedDiagrams;
+    private Point dragOffset;
+    private Point appliedDragOffset;
+    private Timer dragTimer;
+    private Rectangle marquee;
+    private LayoutTask layoutTask;
+    private boolean isFollowingLayout;
+    private HashMap<Diagram, Point> layoutStartPositions;
+    private int numDeferredUpdates;
+    private boolean isUpdatePending;
+
+    private HashMap<Integer, WeakReference<Diagram>> writtenDiagrams;
+    private HashMap<Long, WeakReference<Arrow>> writtenArrows;
+    private int writtenPruneSize;
+
+    private static final double[] ZOOM_LEVELS = { 0.1, 0.25, 0.5, 0.75, 0.9, 1.0, 1.15, 1.5, 2.0 };
+    private static final double WHEEL_ZOOM_FACTOR = 1.1;
+    private static final int ZOOM_SETTLE_MILLIS = 200;
+    private static final int DRAG_FRAME_MILLIS = 16;
+    private static final int MIN_WRITTEN_PRUNE_SIZE = 64;
+    private static final Color GHOST_COLOR = Color.DARK_GRAY;
+    private static final Stroke GHOST_STROKE = new BasicStroke(1, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10,
+        new float[]{4}, 0);
+    private static final Color MARQUEE_COLOR = new Color(0, 120, 215, 40);
     private static final String DEFAULT_CANVAS_NAME = "./untitled.canvas";
     private static final Dimension DEFAULT_CANVAS_SIZE = new Dimension(2100, 2100);
+    private static final int CANVAS_MARGIN = 1000;
+
+    // Estimated sizes in bytes, used to keep the undo history within its memory budget.
+    private static final int ACTION_SIZE = 32;
+    private static final int DIAGRAM_SIZE = 400;
+    private static final int ARROW_SIZE = 200;
+    private static final int STRING_SIZE = 40;
+
+    // Tags for the kinds of actions written by the action codec.
+    private static final int DELETE_ACTION = 1;
+    private static final int CREATE_ARROW_ACTION = 2;
+    private static final int CREATE_DIAGRAM_ACTION = 3;
+    private static final int MOVE_DIAGRAM_ACTION = 4;
+    private static final int EDIT_DIAGRAM_TEXT_ACTION = 5;
+    private static final int COMPOUND_ACTION = 6;
 
     /**
      * This constructs a new empty canvas.
@@ -71,20 +139,45 @@ public class Canvas extends JScrollPane {
         super(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED, JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
         this.file = new File(filePath);
         this.title = this.getFileName();
-        this.actionHistory = new EditorActionHistory();
-        this.selectedDiagram = null;
+        this.document = new DiagramDocument();
+        this.renderer = new DiagramRenderer(DiagramRenderer.DEFAULT_CACHE_SIZE);
+        this.renderer.setOutlineScale(DiagramRenderer.DEFAULT_OUTLINE_SCALE);
+        this.editor = null;
+        this.actionHistory = new EditorActionHistory(ACTION_CODEC, EditorActionHistory.DEFAULT_MEMORY_BUDGET);
+        this.actionHistory.addChangeListener(JOURNAL_ON_CHANGE);
+        this.writtenDiagrams = new HashMap<Integer, WeakReference<Diagram>>();
+        this.writtenArrows = new HashMap<Long, WeakReference<Arrow>>();
+        this.writtenPruneSize = MIN_WRITTEN_PRUNE_SIZE;
+        this.autosave = null;
+        this.isSaved = false;
+        this.selectedDiagrams = new LinkedHashSet<Diagram>();
         this.selectedArrow = null;
         this.tool = tool;
-        this.zoomLevelIndex = Arrays.binarySearch(ZOOM_LEVELS, 1.0);
-        
+        this.document.setTrackingChanges(true);
+        this.zoomLevel = 1.0;
+        this.zoomSettleTimer = new Timer(ZOOM_SETTLE_MILLIS, SETTLE_ZOOM);
+        this.zoomSettleTimer.setRepeats(false);
+        this.draggedDiagrams = new ArrayList<Diagram>();
+        this.dragOffset = new Point();
+        this.appliedDragOffset = new Point();
+        this.dragTimer = new Timer(DRAG_FRAME_MILLIS, FOLLOW_DRAG);
+        this.marquee = null;
+        this.layoutTask = null;
+        this.isFollowingLayout = false;
+        this.layoutStartPositions = new HashMap<Diagram, Point>();
+        this.numDeferredUpdates = 0;
+        this.isUpdatePending = false;
+
         this.getHorizontalScrollBar().setUnitIncrement(4);
         this.getVerticalScrollBar().setUnitIncrement(4);
-        
+
         this.layerUI = new ZoomUI();
-        this.innerPanel = new JPanel();
+        this.origin = new Point();
+        this.innerPanel = new CanvasPanel();
         this.innerPanel.setPreferredSize(DEFAULT_CANVAS_SIZE);
         this.innerPanel.setLayout(null);
         this.innerPanel.setBackground(new Color(243, 243, 243));
+        this.innerPanel.add(this.renderer.getRendererPane());
         this.layer = new JLayer<JComponent>(this.innerPanel, this.layerUI);
 
         this.viewport = new JViewport();
@@ -93,6 +186,8 @@ public class Canvas extends JScrollPane {
 
         // Event Listeners
         this.innerPanel.addMouseListener(CANVAS_MOUSE_LISTENER);
+        this.innerPanel.addMouseMotionListener(CANVAS_MOUSE_LISTENER);
+        this.layer.addMouseWheelListener(ZOOM_ON_WHEEL);
     }
 
     /**
@@ -127,6 +222,150 @@ public class Canvas extends JScrollPane {
         this.title = title;
     }
 
+    /**
+     * This gets the document storing the diagrams and arrows on this canvas.
+     * @return The document.
+     */
+    public DiagramDocument getDocument() {
+        return this.document;
+    }
+
+    /**
+     * This saves the diagrams and arrows on this canvas to its file. It is written in the background, so this returns
+     * right away, and an error is shown once the write fails. Files with the snapshot extension are saved as binary
+     * snapshots, anything else as a .canvas text file.
+     */
+    public void save() {
+        this.stopEditing();
+        this.getAutosave().save(this.file, SHOW_SAVE_RESULT);
+    }
+
+    /**
+     * This saves the diagrams and arrows on this canvas to a new file, which it is saved to from then on.
+     * @param filePath The path to the new file.
+     */
+    public void saveAs(String filePath) {
+        this.file = new File(filePath);
+        this.title = this.getFileName();
+        this.save();
+    }
+
+    /**
+     * This replaces the diagrams and arrows on this canvas with the ones saved in its file. The undo history is
+     * cleared, along with any changes not saved yet.
+     * @return True if it was loaded, false if the file cannot be read.
+     */
+    public boolean load() {
+        DiagramDocument loadedDocument;
+        if (this.getFileName().endsWith("." + CanvasSnapshot.EXTENSION)) {
+            loadedDocument = CanvasSnapshot.load(this.file);
+        } else {
+            loadedDocument = CanvasFile.load(this.file);
+        }
+        if (loadedDocument == null) {
+            return false;
+        }
+
+        if (this.autosave != null) {
+            this.autosave.discard();
+            this.autosave = null;
+        }
+
+        this.isSaved = true;
+        this.setDocument(loadedDocument);
+        return true;
+    }
+
+    /**
+     * This checks if changes to this canvas were left unsaved by an editor that did not exit cleanly.
+     * @return True if there are changes that can be recovered, false if not.
+     */
+    public boolean hasRecovery() {
+        return CanvasAutosave.findRecovery(this.file) != null;
+    }
+
+    /**
+     * This replaces the diagrams and arrows on this canvas with the ones left unsaved by an editor that did not exit
+     * cleanly. If several canvases were open on the file, the changes of one of them are recovered. The undo history
+     * is cleared, and the changes made from then on are journaled after the recovered ones.
+     * @return True if they were recovered, false if they cannot be read.
+     */
+    public boolean recover() {
+        String journalPath = CanvasAutosave.findRecovery(this.file);
+        DiagramDocument recoveredDocument = CanvasAutosave.recover(this.document, journalPath);
+        if (recoveredDocument == null) {
+            return false;
+        }
+
+        if (this.autosave != null) {
+            this.autosave.discard();
+        }
+        this.setDocument(recoveredDocument);
+        this.autosave = new CanvasAutosave(this.document, this.file, this.isSaved, journalPath);
+        return true;
+    }
+
+    /**
+     * This deletes the changes to this canvas left unsaved by an editor that did not exit cleanly. If several canvases
+     * were open on the file, only the changes of one of them are deleted.
+     */
+    public void discardRecovery() {
+        CanvasAutosave.discardRecovery(CanvasAutosave.findRecovery(this.file));
+    }
+
+    /**
+     * This lets go of the resources held by this canvas when its tab is closed. The files holding undo and redo
+     * actions that did not fit in memory are deleted. Unsaved changes are kept in the journal, so they are offered for
+     * recovery when the file is opened again.
+     */
+    public void close() {
+        this.cancelLayout();
+        this.stopEditing();
+        if (this.autosave != null) {
+            this.autosave.close();
+            this.autosave = null;
+        }
+        this.actionHistory.close();
+        this.writtenDiagrams.clear();
+        this.writtenArrows.clear();
+    }
+
+    /**
+     * This shows a different document on this canvas and clears the undo history.
+     * @param newDocument The document to show.
+     */
+    private void setDocument(DiagramDocument newDocument) {
+        this.cancelLayout();
+        this.stopEditing();
+        this.document = newDocument;
+        this.document.setTrackingChanges(true);
+        this.document.clearChanges();
+        this.actionHistory.clear();
+        this.renderer.clearCache();
+        this.writtenDiagrams.clear();
+        this.writtenArrows.clear();
+        this.selectedDiagrams.clear();
+        this.selectedArrow = null;
+        this.updateCanvas();
+
+        // Show the top-left of the canvas, or of the diagrams if they go past it.
+        Rectangle contentBounds = this.document.getContentBounds();
+        int x = Math.min(0, contentBounds.x) - this.origin.x;
+        int y = Math.min(0, contentBounds.y) - this.origin.y;
+        this.scrollLayerTo((int) Math.round(x * this.zoomLevel), (int) Math.round(y * this.zoomLevel));
+    }
+
+    /**
+     * This gets the object writing the changes to this canvas to disk, creating it on the first change.
+     * @return The autosave.
+     */
+    private CanvasAutosave getAutosave() {
+        if (this.autosave == null) {
+            this.autosave = new CanvasAutosave(this.document, this.file, this.isSaved);
+        }
+        return this.autosave;
+    }
+
     /**
      * This checks if an action can be undone.
      * @return True if an action can be undone, false otherwise.
@@ -148,16 +387,24 @@ public class Canvas extends JScrollPane {
      * @return True if there is another action left to undo after this one, false if there is not.
      */
     public boolean undo() {
+        this.cancelLayout();
+        this.stopEditing();
+        this.deferUpdates();
         this.actionHistory.undo();
+        this.resumeUpdates();
         return this.actionHistory.canUndo();
     }
 
     /**
-     * This redoes an action. 
+     * This redoes an action.
      * @return True if there is another action left to redo after thiso ne, false if there is not.
      */
     public boolean redo() {
+        this.cancelLayout();
+        this.stopEditing();
+        this.deferUpdates();
         this.actionHistory.redo();
+        this.resumeUpdates();
         return this.actionHistory.canRedo();
     }
 
@@ -166,7 +413,7 @@ public class Canvas extends JScrollPane {
      * @return True if it can, false if it cannot.
      */
     public boolean canZoomIn() {
-        return this.zoomLevelIndex < ZOOM_LEVELS.length - 1;
+        return this.zoomLevel < ZOOM_LEVELS[ZOOM_LEVELS.length - 1];
     }
 
     /**
@@ -174,122 +421,961 @@ public class Canvas extends JScrollPane {
      * @return True if it can, false if it cannot.
      */
     public boolean canZoomOut() {
-        return this.zoomLevelIndex > 0;
+        return this.zoomLevel > ZOOM_LEVELS[0];
+    }
+
+    /**
+     * This zooms in on the canvas to the next zoom level, around the middle of the viewport.
+     */
+    public void zoomIn() {
+        for (double level: ZOOM_LEVELS) {
+            if (level > this.zoomLevel) {
+                this.setZoomLevel(level, this.getViewportCenter());
+                return;
+            }
+        }
+    }
+
+    /**
+     * This zooms out on the canvas to the previous zoom level, around the middle of the viewport.
+     */
+    public void zoomOut() {
+        for (int i = ZOOM_LEVELS.length - 1; i >= 0; i--) {
+            if (ZOOM_LEVELS[i] < this.zoomLevel) {
+                this.setZoomLevel(ZOOM_LEVELS[i], this.getViewportCenter());
+                return;
+            }
+        }
+    }
+
+    /**
+     * This changes the zoom level, keeping the point of the canvas under an anchor at the same place in the viewport.
+     * The zoom level is kept between the lowest and highest of the zoom levels.
+     * @param zoomLevel The new zoom level.
+     * @param anchor The anchor, relative to the viewport.
+     */
+    private void setZoomLevel(double zoomLevel, Point anchor) {
+        zoomLevel = Math.max(ZOOM_LEVELS[0], Math.min(zoomLevel, ZOOM_LEVELS[ZOOM_LEVELS.length - 1]));
+        Point viewPosition = this.viewport.getViewPosition();
+        double anchorX = (viewPosition.x + anchor.x) / this.zoomLevel;
+        double anchorY = (viewPosition.y + anchor.y) / this.zoomLevel;
+
+        this.zoomLevel = zoomLevel;
+        this.layerUI.setZoom(zoomLevel);
+        this.scrollLayerTo((int) Math.round(anchorX * zoomLevel) - anchor.x,
+            (int) Math.round(anchorY * zoomLevel) - anchor.y);
+        this.updateCanvas();
+    }
+
+    /**
+     * This scrolls the viewport to a position on the JLayer, kept inside of the JLayer. The JLayer is resized now
+     * instead of on the next layout, so the viewport can be moved to a position it only reaches at its new size.
+     * @param x The x-coordinate of the position.
+     * @param y The y-coordinate of the position.
+     */
+    private void scrollLayerTo(int x, int y) {
+        Dimension size = this.layer.getPreferredSize();
+        Dimension extentSize = this.viewport.getExtentSize();
+        this.layer.setSize(size);
+        this.layer.validate();
+
+        x = Math.max(0, Math.min(x, size.width - extentSize.width));
+        y = Math.max(0, Math.min(y, size.height - extentSize.height));
+        this.viewport.setViewPosition(new Point(x, y));
+    }
+
+    /**
+     * This gets the middle of the viewport.
+     * @return The middle, relative to the viewport.
+     */
+    private Point getViewportCenter() {
+        Dimension extentSize = this.viewport.getExtentSize();
+        return new Point(extentSize.width / 2, extentSize.height / 2);
+    }
+
+    /**
+     * This starts grouping the actions performed on this canvas into one undoable action. The canvas is updated once,
+     * when the transaction is committed, instead of after every action.
+     */
+    public void beginTransaction() {
+        this.deferUpdates();
+        this.actionHistory.beginTransaction();
+    }
+
+    /**
+     * This ends a transaction started with beginTransaction.
+     */
+    public void commitTransaction() {
+        this.actionHistory.commitTransaction();
+        this.resumeUpdates();
+    }
+
+    /**
+     * This holds off updating the canvas until resumeUpdates is called as many times as this.
+     */
+    private void deferUpdates() {
+        this.numDeferredUpdates++;
+    }
+
+    /**
+     * This undoes one call to deferUpdates, updating the canvas if it was asked to update in the meantime.
+     */
+    private void resumeUpdates() {
+        this.numDeferredUpdates--;
+        if (this.numDeferredUpdates == 0 && this.isUpdatePending) {
+            this.updateCanvas();
+        }
+    }
+
+    /**
+     * This updates the rendering panel of this canvas.
+     */
+    private void updateCanvas() {
+        if (this.numDeferredUpdates > 0) {
+            this.isUpdatePending = true;
+            return;
+        }
+
+        this.isUpdatePending = false;
+        this.layerUI.setZoom(this.getZoomLevel());
+        this.updateExtent();
+        this.revalidate();
+        this.repaint();
+    }
+
+    /**
+     * This resizes the rendering panel to cover the diagrams and arrows with a margin around them to drag them into,
+     * along with the part of the canvas in view so it does not scroll away by itself. The canvas has no edges: the
+     * panel grows or shrinks on any side, and coordinates left of or above the origin are negative. When the top-left
+     * corner of the panel moves, the viewport is scrolled by as much so nothing seems to move.
+     */
+    private void updateExtent() {
+        Rectangle extent = this.document.getContentBounds();
+        if (extent.isEmpty()) {
+            extent = new Rectangle(DEFAULT_CANVAS_SIZE);
+        } else {
+            extent.grow(CANVAS_MARGIN, CANVAS_MARGIN);
+        }
+
+        // The view is rounded outwards, so it is kept inside of the panel to stop it from growing the panel.
+        Rectangle viewRect = this.layerUI.getViewRect();
+        viewRect.translate(this.origin.x, this.origin.y);
+        viewRect = viewRect.intersection(new Rectangle(this.origin, this.innerPanel.getPreferredSize()));
+        if (!viewRect.isEmpty()) {
+            extent.add(viewRect);
+        }
+
+        boolean isMoved = extent.x != this.origin.x || extent.y != this.origin.y;
+        if (!isMoved && extent.getSize().equals(this.innerPanel.getPreferredSize())) {
+            return;
+        }
+
+        Point viewPosition = this.viewport.getViewPosition();
+        int shiftX = this.origin.x - extent.x;
+        int shiftY = this.origin.y - extent.y;
+        this.origin.setLocation(extent.x, extent.y);
+        this.innerPanel.setPreferredSize(extent.getSize());
+
+        if (isMoved) {
+            if (this.editor != null) {
+                Diagram diagram = this.editor.getDiagram();
+                this.editor.setLocation(diagram.getX() - this.origin.x, diagram.getY() - this.origin.y);
+            }
+            this.scrollLayerTo(viewPosition.x + (int) Math.round(shiftX * this.zoomLevel),
+                viewPosition.y + (int) Math.round(shiftY * this.zoomLevel));
+        }
+    }
+
+    /**
+     * This adds a diagram to this canvas.
+     * @param diagram The diagram to add.
+     */
+    public void addDiagram(Diagram diagram) {
+        this.document.addDiagram(diagram);
+        this.updateCanvas();
+    }
+
+    /**
+     * This removes a diagram and the arrows attached to it from this canvas.
+     * @param diagram The diagram to remove.
+     */
+    public void removeDiagram(Diagram diagram) {
+        if (this.editor != null && this.editor.getDiagram() == diagram) {
+            this.stopEditing();
+        }
+
+        for (Arrow arrow: new ArrayList<Arrow>(diagram.getArrows())) {
+            this.removeArrow(arrow);
+        }
+
+        this.selectedDiagrams.remove(diagram);
+        this.draggedDiagrams.remove(diagram);
+
+        this.document.removeDiagram(diagram);
+        this.renderer.forgetDiagram(diagram);
+        this.updateCanvas();
+    }
+
+    /**
+     * This adds an arrow to this canvas.
+     * @param arrow The arrow to add.
+     */
+    public void addArrow(Arrow arrow) {
+        Diagram startDiagram = arrow.getStartDiagram();
+        Diagram endDiagram = arrow.getEndDiagram();
+
+        if (startDiagram.hasArrow(arrow) || endDiagram.hasArrow(arrow)) {
+            // An arrow between the two diagrams already exists.
+            return;
+        }
+
+        this.document.addArrow(arrow);
+        startDiagram.addArrow(arrow);
+        endDiagram.addArrow(arrow);
+        this.updateCanvas();
+    }
+
+    /**
+     * This removes an arrow from this canvas.
+     * @param arrow The arrow to remove.
+     */
+    public void removeArrow(Arrow arrow) {
+        Diagram startDiagram = arrow.getStartDiagram();
+        Diagram endDiagram = arrow.getEndDiagram();
+
+        startDiagram.removeArrow(arrow);
+        endDiagram.removeArrow(arrow);
+        this.document.removeArrow(arrow);
+
+        if (this.selectedArrow == arrow) {
+            this.selectedArrow = null;
+        }
+
+        this.updateCanvas();
+    }
+
+    /**
+     * This creates an arrow between two diagrams and adds it to the undo history.
+     * @param startDiagram The diagram at the start end.
+     * @param endDiagram The diagram at the end.
+     * @param stroke The line stroke to use for the arrow.
+     * @param endStyle The end style for the arrow.
+     */
+    private void connectDiagrams(Diagram startDiagram, Diagram endDiagram, Stroke stroke, int endStyle) {
+        Arrow arrow = new Arrow(startDiagram, endDiagram, stroke, endStyle);
+        if (startDiagram.hasArrow(arrow) || endDiagram.hasArrow(arrow)) {
+            return;
+        }
+
+        addArrow(arrow);
+        EditorAction action = new CreateArrowAction(arrow);
+        actionHistory.add(action);
+    }
+
+    /**
+     * This resizes a diagram to fit its text and repaints it.
+     * @param diagram The diagram to resize.
+     */
+    private void resizeDiagramToFit(Diagram diagram) {
+        this.renderer.resizeDiagramToFit(diagram);
+        this.updateCanvas();
+    }
+
+    /**
+     * This moves the outlines of the selected diagrams being dragged to where they would be dropped. The diagrams
+     * themselves, and so their arrows, only follow the outlines once per frame. Until they are dropped, their arrows
+     * are drawn as direct lines instead of being routed around the other diagrams every frame.
+     * @param offsetX The distance dragged along the x-axis since the drag started.
+     * @param offsetY The distance dragged along the y-axis since the drag started.
+     */
+    private void dragSelection(int offsetX, int offsetY) {
+        if (!this.dragTimer.isRunning()) {
+            this.draggedDiagrams.clear();
+            this.draggedDiagrams.addAll(this.selectedDiagrams);
+            this.document.deferRouting();
+            this.dragTimer.start();
+        }
+
+        this.repaintDragOutline();
+        this.dragOffset.setLocation(offsetX, offsetY);
+        this.repaintDragOutline();
+    }
+
+    /**
+     * This moves the diagrams being dragged to their outlines, if they are not there yet, and reroutes their arrows.
+     */
+    private void followDrag() {
+        if (this.draggedDiagrams.isEmpty() || this.appliedDragOffset.equals(this.dragOffset)) {
+            return;
+        }
+
+        Rectangle changedArea = this.getDraggedBounds();
+        Vector change = new Vector(this.dragOffset.x - this.appliedDragOffset.x,
+            this.dragOffset.y - this.appliedDragOffset.y);
+        for (Diagram diagram: this.draggedDiagrams) {
+            diagram.shiftPos(change);
+        }
+        this.appliedDragOffset.setLocation(this.dragOffset);
+
+        // Redraw the arrows after every diagram has moved, so arrows between two of them are only redrawn once. Arrows
+        // that went around the diagrams are redrawn too, wherever they are.
+        changedArea.add(this.getDraggedBounds());
+        Rectangle reroutedArea = this.document.validateArrows();
+        if (reroutedArea != null) {
+            changedArea.add(reroutedArea);
+        }
+        this.repaintArea(changedArea.x, changedArea.y, changedArea.width, changedArea.height);
+    }
+
+    /**
+     * This drops the diagrams being dragged where the mouse was released. They are all moved in one transaction, so
+     * the move is one action in the undo history and the canvas is only updated once.
+     * @param offsetX The distance dragged along the x-axis.
+     * @param offsetY The distance dragged along the y-axis.
+     */
+    private void dropSelection(int offsetX, int offsetY) {
+        ArrayList<Diagram> diagrams = new ArrayList<Diagram>(this.draggedDiagrams);
+
+        // The diagrams may have already followed part of the way while they were dragged.
+        Point draggedOffset = this.stopDragging();
+        if (offsetX == 0 && offsetY == 0 && draggedOffset.x == 0 && draggedOffset.y == 0) {
+            return;
+        }
+
+        Vector changeInPos = new Vector(offsetX, offsetY);
+        Vector remainingChange = new Vector(offsetX - draggedOffset.x, offsetY - draggedOffset.y);
+        this.beginTransaction();
+        for (Diagram diagram: diagrams) {
+            if (remainingChange.getX() != 0 || remainingChange.getY() != 0) {
+                diagram.shiftPos(remainingChange);
+            }
+            this.actionHistory.add(new MoveDiagramAction(diagram, changeInPos));
+        }
+        this.updateCanvas();
+        this.commitTransaction();
+    }
+
+    /**
+     * This stops dragging diagrams. They are left where they last followed their outlines to.
+     * @return The distance the diagrams were moved while they were dragged.
+     */
+    private Point stopDragging() {
+        Point appliedOffset = new Point(this.appliedDragOffset);
+        if (this.dragTimer.isRunning()) {
+            this.dragTimer.stop();
+            this.repaintDragOutline();
+            this.draggedDiagrams.clear();
+            this.dragOffset.setLocation(0, 0);
+            this.appliedDragOffset.setLocation(0, 0);
+
+            // Route the arrows drawn as direct lines during the drag around the diagrams now that they stay put.
+            this.document.resumeRouting();
+            Rectangle reroutedArea = this.document.validateArrows();
+            if (reroutedArea != null) {
+                this.repaintArea(reroutedArea.x, reroutedArea.y, reroutedArea.width, reroutedArea.height);
+            }
+        }
+        return appliedOffset;
+    }
+
+    /**
+     * This gets the area covered by the diagrams being dragged.
+     * @return The bounds of the diagrams, empty if there are none.
+     */
+    private Rectangle getDraggedBounds() {
+        Rectangle bounds = null;
+        for (Diagram diagram: this.draggedDiagrams) {
+            if (bounds == null) {
+                bounds = diagram.getBounds();
+            } else {
+                bounds.add(diagram.getBounds());
+            }
+        }
+        return bounds != null ? bounds : new Rectangle();
+    }
+
+    /**
+     * This gets the area covered by the outlines of the diagrams being dragged.
+     * @return The bounds of the outlines, null if no diagrams are being dragged or they are at their outlines.
+     */
+    private Rectangle getDragOutline() {
+        if (this.draggedDiagrams.isEmpty() || this.appliedDragOffset.equals(this.dragOffset)) {
+            return null;
+        }
+
+        Rectangle outline = this.getDraggedBounds();
+        outline.translate(this.dragOffset.x - this.appliedDragOffset.x, this.dragOffset.y - this.appliedDragOffset.y);
+        return outline;
+    }
+
+    /**
+     * This repaints the part of the canvas covered by the outlines of the diagrams being dragged.
+     */
+    private void repaintDragOutline() {
+        Rectangle outline = this.getDragOutline();
+        if (outline != null) {
+            this.repaintArea(outline.x, outline.y, outline.width + 1, outline.height + 1);
+        }
+    }
+
+    /**
+     * This stretches the marquee between where the mouse was pressed and where it is now.
+     * @param start The point the mouse was pressed at.
+     * @param end The point the mouse is at.
+     */
+    private void dragMarquee(Point start, Point end) {
+        this.repaintMarquee();
+        this.marquee = new Rectangle(start);
+        this.marquee.add(end);
+        this.repaintMarquee();
+    }
+
+    /**
+     * This selects the diagrams entirely inside the marquee and removes the marquee.
+     * @param isAdding True to add them to the selection, false to select only them.
+     */
+    private void selectInMarquee(boolean isAdding) {
+        if (this.marquee == null) {
+            return;
+        }
+
+        if (!isAdding) {
+            this.selectOnly(null);
+        }
+        for (Diagram diagram: this.document.getDiagramsIn(this.marquee)) {
+            if (this.marquee.contains(diagram.getBounds()) && this.selectedDiagrams.add(diagram)) {
+                this.repaintDiagram(diagram);
+            }
+        }
+
+        this.repaintMarquee();
+        this.marquee = null;
+    }
+
+    /**
+     * This repaints the part of the canvas covered by the marquee.
+     */
+    private void repaintMarquee() {
+        if (this.marquee != null) {
+            this.repaintArea(this.marquee.x, this.marquee.y, this.marquee.width + 1, this.marquee.height + 1);
+        }
+    }
+
+    /**
+     * This selects only one diagram, or nothing.
+     * @param diagram The diagram to select, or null to clear the selection.
+     */
+    private void selectOnly(Diagram diagram) {
+        this.selectedArrow = null;
+        if (this.selectedDiagrams.size() == (diagram != null ? 1 : 0) &&
+            (diagram == null || this.selectedDiagrams.contains(diagram))) {
+            return;
+        }
+
+        for (Diagram selectedDiagram: this.selectedDiagrams) {
+            this.repaintDiagram(selectedDiagram);
+        }
+        this.selectedDiagrams.clear();
+
+        if (diagram != null) {
+            this.selectedDiagrams.add(diagram);
+            this.repaintDiagram(diagram);
+        }
+    }
+
+    /**
+     * This adds a diagram to the selection, or removes it if it is already selected.
+     * @param diagram The diagram.
+     * @return True if the diagram is now selected, false if not.
+     */
+    private boolean toggleSelected(Diagram diagram) {
+        this.selectedArrow = null;
+        this.repaintDiagram(diagram);
+        if (this.selectedDiagrams.remove(diagram)) {
+            return false;
+        }
+        this.selectedDiagrams.add(diagram);
+        return true;
+    }
+
+    /**
+     * This selects every diagram on this canvas.
+     */
+    public void selectAll() {
+        this.selectedArrow = null;
+        this.selectedDiagrams.addAll(this.document.getDiagrams());
+        this.innerPanel.repaint();
+    }
+
+    /**
+     * This gets the selected diagrams.
+     * @return The diagrams, in the order they were selected.
+     */
+    public ArrayList<Diagram> getSelectedDiagrams() {
+        return new ArrayList<Diagram>(this.selectedDiagrams);
+    }
+
+    /**
+     * This repaints the part of the canvas covered by a diagram.
+     * @param diagram The diagram, or null to repaint nothing.
+     */
+    private void repaintDiagram(Diagram diagram) {
+        if (diagram != null) {
+            this.repaintArea(diagram.getX(), diagram.getY(), diagram.getWidth(), diagram.getHeight());
+        }
+    }
+
+    /**
+     * This repaints an area of the canvas.
+     * @param x The x-coordinate of the area on the canvas.
+     * @param y The y-coordinate of the area on the canvas.
+     * @param width The width of the area.
+     * @param height The height of the area.
+     */
+    private void repaintArea(int x, int y, int width, int height) {
+        this.innerPanel.repaint(x - this.origin.x, y - this.origin.y, width, height);
+    }
+
+    /**
+     * This materializes the editing components for a diagram so its text can be edited.
+     * @param diagram The diagram to edit.
+     * @param point The point on the canvas that was clicked to start editing.
+     */
+    private void startEditing(Diagram diagram, Point point) {
+        this.stopEditing();
+
+        this.editor = new DiagramView(diagram);
+        this.editor.setSelected(true);
+        this.editor.addMouseListener(CANVAS_MOUSE_LISTENER);
+        this.editor.addFocusListener(DIAGRAM_FOCUS_LISTENER);
+        this.editor.setLocation(diagram.getX() - this.origin.x, diagram.getY() - this.origin.y);
+        this.innerPanel.add(this.editor);
+        this.editor.validate();
+        Point panelPoint = new Point(point.x - this.origin.x, point.y - this.origin.y);
+        this.editor.startEditing(SwingUtilities.convertPoint(this.innerPanel, panelPoint, this.editor));
+        this.repaintDiagram(diagram);
+    }
+
+    /**
+     * This saves the text of the diagram being edited, if any, and removes its editing components.
+     */
+    private void stopEditing() {
+        if (this.editor == null) {
+            return;
+        }
+
+        DiagramView view = this.editor;
+        this.editor = null;
+
+        view.commitText();
+        this.innerPanel.remove(view);
+
+        Diagram diagram = view.getDiagram();
+        this.repaintDiagram(diagram);
+        if (diagram.textChanged()) {
+            EditorAction action = new EditDiagramTextAction(diagram);
+            actionHistory.add(action);
+        }
+    }
+
+    /**
+     * This gets the point on the canvas where a mouse event happened.
+     * @param event The mouse event.
+     * @return The point relative to the canvas.
+     */
+    private Point getCanvasPoint(MouseEvent event) {
+        Point point = SwingUtilities.convertPoint(event.getComponent(), event.getPoint(), this.innerPanel);
+        point.translate(this.origin.x, this.origin.y);
+        return point;
+    }
+
+    /**
+     * This exports the whole of this canvas to a PNG image at the file path specified with an additional .png
+     * extension. The image is made in the background from a copy of the canvas, so editing can go on meanwhile.
+     */
+    public void export() {
+        File outputFile = new File(this.getFilePath() + "." + DiagramExporter.PNG_FORMAT);
+        ExportTask task = new ExportTask(this, this.document.copy(), outputFile, DiagramExporter.PNG_FORMAT, 1);
+        task.start();
+    }
+
+    /**
+     * This arranges the diagrams in layers by what they inherit from. If several diagrams are selected, only they are
+     * arranged, otherwise all of them are. The layout is worked out in the background, and nothing happens if a
+     * layout is already being worked out.
+     */
+    public void arrangeDiagrams() {
+        if (this.layoutTask == null) {
+            this.startLayout(new LayeredLayout(this.document, this.getArrangedIds()));
+        }
+    }
+
+    /**
+     * This arranges the diagrams by letting the arrows between them pull them together while they push each other
+     * apart. If several diagrams are selected, only they are arranged, otherwise all of them are. The layout is worked
+     * out in the background and the diagrams are shown settling, and nothing happens if a layout is already being
+     * worked out.
+     */
+    public void arrangeByLinks() {
+        if (this.layoutTask == null) {
+            this.startLayout(new ForceLayout(this.document, this.getArrangedIds()));
+        }
+    }
+
+    /**
+     * This gets the diagrams a layout should arrange.
+     * @return The ids of the selected diagrams if there are several, otherwise null for all of them.
+     */
+    private ArrayList<Integer> getArrangedIds() {
+        if (this.selectedDiagrams.size() < 2) {
+            return null;
+        }
+
+        ArrayList<Integer> diagramIds = new ArrayList<Integer>();
+        for (Diagram diagram: this.selectedDiagrams) {
+            diagramIds.add(diagram.getId());
+        }
+        return diagramIds;
+    }
+
+    /**
+     * This stops the layout being worked out, if there is one, and puts the diagrams back where they were before it
+     * was shown. It is called before any edit, so the layout never moves diagrams out from under the edit or records
+     * moves from where they used to be.
+     */
+    public void cancelLayout() {
+        if (this.layoutTask == null) {
+            return;
+        }
+
+        this.layoutTask.cancelLayout();
+        this.finishLayout(null);
+    }
+
+    /**
+     * This starts working out a layout in the background.
+     * @param layout The layout.
+     */
+    private void startLayout(DiagramLayout layout) {
+        this.stopEditing();
+        this.layoutTask = new LayoutTask(this, layout);
+        this.layoutTask.execute();
+    }
+
+    /**
+     * This moves the diagrams to where a layout has put them so far, without adding to the undo history. Where each
+     * diagram was before the layout is kept, so the whole layout can be undone in one go once it is done. Until the
+     * layout is done, arrows are drawn as direct lines instead of being routed around the diagrams every frame.
+     * @param positions The position of each diagram by id.
+     */
+    void followLayout(HashMap<Integer, Point> positions) {
+        if (!this.isFollowingLayout) {
+            this.isFollowingLayout = true;
+            this.document.deferRouting();
+        }
+
+        for (Diagram diagram: this.getLaidOutDiagrams(positions)) {
+            if (!this.layoutStartPositions.containsKey(diagram)) {
+                this.layoutStartPositions.put(diagram, new Point(diagram.getX(), diagram.getY()));
+            }
+            moveDiagramTo(diagram, positions.get(diagram.getId()));
+        }
+        this.updateCanvas();
+    }
+
+    /**
+     * This moves the diagrams to where a layout put them. They are all moved in one transaction, so the layout is one
+     * action in the undo history, measured from where the diagrams were before it was shown. Diagrams removed while
+     * the layout was worked out are skipped.
+     * @param positions The new position of each diagram by id, or null if the layout failed, which puts the diagrams
+     *                  back where they were.
+     */
+    void finishLayout(HashMap<Integer, Point> positions) {
+        HashMap<Diagram, Point> startPositions = this.layoutStartPositions;
+        this.layoutStartPositions = new HashMap<Diagram, Point>();
+        this.layoutTask = null;
+        if (this.isFollowingLayout) {
+            this.isFollowingLayout = false;
+            this.document.resumeRouting();
+        }
+
+        if (positions == null) {
+            for (Diagram diagram: startPositions.keySet()) {
+                if (this.document.hasDiagram(diagram)) {
+                    moveDiagramTo(diagram, startPositions.get(diagram));
+                }
+            }
+            this.updateCanvas();
+            return;
+        }
+
+        this.stopEditing();
+        this.beginTransaction();
+        for (Diagram diagram: this.getLaidOutDiagrams(positions)) {
+            Point position = positions.get(diagram.getId());
+            Point startPosition = startPositions.get(diagram);
+            if (startPosition == null) {
+                startPosition = new Point(diagram.getX(), diagram.getY());
+            }
+
+            moveDiagramTo(diagram, position);
+            if (!position.equals(startPosition)) {
+                Vector changeInPos = new Vector(position.x - startPosition.x, position.y - startPosition.y);
+                this.actionHistory.add(new MoveDiagramAction(diagram, changeInPos));
+            }
+        }
+        this.updateCanvas();
+        this.commitTransaction();
+    }
+
+    /**
+     * This gets the diagrams of this canvas that a layout has positions for.
+     * @param positions The position of each diagram by id.
+     * @return The diagrams, from the bottom-most to the top-most.
+     */
+    private ArrayList<Diagram> getLaidOutDiagrams(HashMap<Integer, Point> positions) {
+        ArrayList<Diagram> diagrams = new ArrayList<Diagram>();
+        for (Diagram diagram: this.document.getDiagrams()) {
+            if (positions.containsKey(diagram.getId())) {
+                diagrams.add(diagram);
+            }
+        }
+        return diagrams;
+    }
+
+    /**
+     * This moves a diagram so its top-left corner is at a point.
+     * @param diagram The diagram.
+     * @param position The point.
+     */
+    private static void moveDiagramTo(Diagram diagram, Point position) {
+        if (position.x != diagram.getX() || position.y != diagram.getY()) {
+            diagram.shiftPos(new Vector(position.x - diagram.getX(), position.y - diagram.getY()));
+        }
+    }
+
+    /**
+     * This removes the selected diagrams and/or arrow from this canvas. They are removed in one transaction, so it is
+     * one action in the undo history and the canvas is only updated once.
+     */
+    public void removeSelected() {
+        if (this.selectedArrow == null && this.selectedDiagrams.isEmpty()) {
+            return;
+        }
+        this.cancelLayout();
+
+        this.beginTransaction();
+        if (this.selectedArrow != null) {
+            EditorAction action = new DeleteAction(this.selectedArrow, null);
+            action.redo();
+            this.actionHistory.add(action);
+        }
+
+        for (Diagram diagram: new ArrayList<Diagram>(this.selectedDiagrams)) {
+            EditorAction action = new DeleteAction(null, diagram);
+            action.redo();
+            this.actionHistory.add(action);
+        }
+        this.commitTransaction();
     }
 
     /**
-     * This zooms in on the canvas.
+     * This estimates how much memory a piece of text takes.
+     * @param text The text, or null.
+     * @return The estimated size in bytes.
      */
-    public void zoomIn() {
-        if (this.canZoomIn()) {
-            this.zoomLevelIndex++;
-            this.updateCanvas();
+    private static int estimateSize(String text) {
+        if (text == null) {
+            return 0;
         }
+        return STRING_SIZE + 2 * text.length();
     }
 
     /**
-     * This zooms out on the canvas.
+     * This estimates how much memory a diagram takes.
+     * @param diagram The diagram.
+     * @return The estimated size in bytes.
      */
-    public void zoomOut() {
-        if (this.canZoomOut()) {
-            this.zoomLevelIndex--;
-            this.updateCanvas();
+    private static int estimateSize(Diagram diagram) {
+        int size = DIAGRAM_SIZE + estimateSize(diagram.getTitle());
+        if (diagram instanceof InterfaceDiagram) {
+            InterfaceDiagram interfaceDiagram = (InterfaceDiagram) diagram;
+            for (int i = 0; i < interfaceDiagram.getNumBodies(); i++) {
+                size += estimateSize(interfaceDiagram.getBodyText(i));
+            }
         }
+        return size;
     }
 
     /**
-     * This updates the rendering panel of this canvas.
+     * This writes text that may be null or longer than writeUTF allows.
+     * @param output The stream to write to.
+     * @param text The text, or null.
+     * @throws IOException If the stream fails.
      */
-    private void updateCanvas() {
-        this.layerUI.setZoom(this.getZoomLevel());
-        this.revalidate();
-        this.repaint();
+    private static void writeString(DataOutputStream output, String text) throws IOException {
+        if (text == null) {
+            output.writeInt(-1);
+            return;
+        }
+
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
     }
 
     /**
-     * This adds a diagram to this canvas.
-     * @param diagram The diagram to add.
+     * This reads text written by writeString.
+     * @param input The stream to read from.
+     * @return The text, or null.
+     * @throws IOException If the stream fails.
      */
-    public void addDiagram(Diagram diagram) {
-        diagram.addMouseListener(DIAGRAM_MOUSE_LISTENER);
-        diagram.addFocusListener(DIAGRAM_FOCUS_LISTENER);
-        this.innerPanel.add(diagram);
-        this.updateCanvas();
+    private static String readString(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        if (length == -1) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
     }
 
     /**
-     * This removes a diagram from this canvas.
-     * @param diagram The diagram to remove.
+     * This writes a diagram referred to by an action. The diagram is remembered so that, as long as something else
+     * still refers to it, reading it back gives the same diagram instead of a copy.
+     * @param output The stream to write to.
+     * @param diagram The diagram.
+     * @throws IOException If the stream fails.
      */
-    public void removeDiagram(Diagram diagram) {
-        this.innerPanel.remove(diagram);
-        this.updateCanvas();
+    private void writeDiagram(DataOutputStream output, Diagram diagram) throws IOException {
+        this.pruneWrittenReferences();
+        this.writtenDiagrams.put(diagram.getId(), new WeakReference<Diagram>(diagram));
+
+        StringBuilder record = new StringBuilder();
+        CanvasFile.appendDiagramRecord(record, diagram);
+        record.setLength(record.length() - 1);
+        writeString(output, record.toString());
     }
 
     /**
-     * This adds an arrow to this canvas.
-     * @param arrow The arrow to add.
+     * This reads a diagram written by writeDiagram. It is the diagram on this canvas with the same id if there is one,
+     * otherwise the written diagram if it is still around, otherwise a new diagram made from the record.
+     * @param input The stream to read from.
+     * @return The diagram.
+     * @throws IOException If the stream fails or the record is not properly formatted.
      */
-    public void addArrow(Arrow arrow) {
-        Diagram startDiagram = arrow.getStartDiagram();
-        Diagram endDiagram = arrow.getEndDiagram();
+    private Diagram readDiagram(DataInputStream input) throws IOException {
+        Diagram recordDiagram = CanvasFile.parseDiagramRecord(readString(input));
+        if (recordDiagram == null) {
+            throw new IOException("Improperly formatted diagram record.");
+        }
 
-        if (startDiagram.hasArrow(arrow) || endDiagram.hasArrow(arrow)) {
-            // An arrow between the two diagrams already exists.
-            return;
+        int id = recordDiagram.getId();
+        Diagram diagram = this.document.getDiagram(id);
+        if (diagram != null) {
+            return diagram;
         }
 
-        arrow.addMouseListener(ARROW_MOUSE_LISTENER);
-        this.innerPanel.add(arrow);
-        startDiagram.addArrow(arrow);
-        endDiagram.addArrow(arrow);
-        this.updateCanvas();
+        WeakReference<Diagram> reference = this.writtenDiagrams.get(id);
+        if (reference != null && (diagram = reference.get()) != null) {
+            return diagram;
+        }
+
+        this.pruneWrittenReferences();
+        this.writtenDiagrams.put(id, new WeakReference<Diagram>(recordDiagram));
+        return recordDiagram;
     }
 
     /**
-     * This removes an arrow from this canvas.
-     * @param arrow The arrow to remove.
+     * This writes an arrow referred to by an action, remembering it like writeDiagram does.
+     * @param output The stream to write to.
+     * @param arrow The arrow.
+     * @throws IOException If the stream fails.
      */
-    public void removeArrow(Arrow arrow) {
-        Diagram startDiagram = arrow.getStartDiagram();
-        Diagram endDiagram = arrow.getEndDiagram();
-
-        startDiagram.removeArrow(arrow);
-        endDiagram.removeArrow(arrow);
-        this.innerPanel.remove(arrow);
-        this.updateCanvas();
+    private void writeArrow(DataOutputStream output, Arrow arrow) throws IOException {
+        this.pruneWrittenReferences();
+        this.writtenArrows.put(getArrowKey(arrow), new WeakReference<Arrow>(arrow));
+
+        this.writeDiagram(output, arrow.getStartDiagram());
+        this.writeDiagram(output, arrow.getEndDiagram());
+        output.writeBoolean(arrow.getStroke() == Arrow.DASHED);
+        output.writeInt(arrow.getEndStyle());
     }
 
     /**
-     * This exports this canvas to a JPEG image at the file path specified with an additional .jpg extension.
+     * This reads an arrow written by writeArrow. It is the arrow between the same diagrams if there is one, otherwise
+     * the written arrow if it is still around, otherwise a new arrow.
+     * @param input The stream to read from.
+     * @return The arrow.
+     * @throws IOException If the stream fails.
      */
-    public void export() {
-        BufferedImage image = new BufferedImage(this.getWidth(), this.getHeight(), BufferedImage.TYPE_INT_RGB);
-        Graphics graphics = image.createGraphics();
-        this.paint(graphics);
+    private Arrow readArrow(DataInputStream input) throws IOException {
+        Diagram startDiagram = this.readDiagram(input);
+        Diagram endDiagram = this.readDiagram(input);
+        Stroke stroke = input.readBoolean() ? Arrow.DASHED : Arrow.SOLID;
+        int endStyle = input.readInt();
+
+        Arrow arrow = new Arrow(startDiagram, endDiagram, stroke, endStyle);
+        int index = startDiagram.getArrows().indexOf(arrow);
+        if (index != -1) {
+            return startDiagram.getArrows().get(index);
+        }
 
-        File outputFile = new File(this.getFilePath() + ".jpg");
-        try {
-            ImageIO.write(image, "jpg", outputFile);
-        } catch (IOException exception) {
-            System.err.println("Error exporting image.");
+        long key = getArrowKey(arrow);
+        WeakReference<Arrow> reference = this.writtenArrows.get(key);
+        Arrow writtenArrow;
+        if (reference != null && (writtenArrow = reference.get()) != null && writtenArrow.equals(arrow)) {
+            return writtenArrow;
         }
+
+        this.pruneWrittenReferences();
+        this.writtenArrows.put(key, new WeakReference<Arrow>(arrow));
+        return arrow;
     }
 
     /**
-     * This removes the selected diagram and/or arrow from this canvas.
+     * This forgets the written diagrams and arrows that nothing else refers to anymore, once the maps have grown to
+     * twice their size after the last time. This keeps them from holding an entry for everything ever written while
+     * only going through them now and then.
      */
-    public void removeSelected() {
-        EditorAction action = new DeleteAction(this.selectedArrow, this.selectedDiagram);
-        this.actionHistory.add(action);
+    private void pruneWrittenReferences() {
+        if (this.writtenDiagrams.size() + this.writtenArrows.size() < this.writtenPruneSize) {
+            return;
+        }
 
-        if (this.selectedDiagram != null) {
-            this.removeDiagram(this.selectedDiagram);
+        Iterator<WeakReference<Diagram>> diagramIterator = this.writtenDiagrams.values().iterator();
+        while (diagramIterator.hasNext()) {
+            if (diagramIterator.next().get() == null) {
+                diagramIterator.remove();
+            }
         }
 
-        if (this.selectedArrow != null) {
-            this.removeArrow(this.selectedArrow);
+        Iterator<WeakReference<Arrow>> arrowIterator = this.writtenArrows.values().iterator();
+        while (arrowIterator.hasNext()) {
+            if (arrowIterator.next().get() == null) {
+                arrowIterator.remove();
+            }
         }
+        this.writtenPruneSize = Math.max(MIN_WRITTEN_PRUNE_SIZE,
+            2 * (this.writtenDiagrams.size() + this.writtenArrows.size()));
+    }
+
+    /**
+     * This combines the ids of the diagrams at the ends of an arrow into a key.
+     * @param arrow The arrow.
+     * @return The key.
+     */
+    private static long getArrowKey(Arrow arrow) {
+        return ((long) arrow.getStartDiagram().getId() << 32) | (arrow.getEndDiagram().getId() & 0xffffffffL);
+    }
+
+    /**
+     * This gets the number of times the diagrams and arrows of this canvas have been painted.
+     * @return The number of paints.
+     */
+    public long getRepaintCount() {
+        return this.layerUI.getRepaintCount();
     }
 
     /**
@@ -297,101 +1383,201 @@ public class Canvas extends JScrollPane {
      * @return The zoom level.
      */
     public double getZoomLevel() {
-        return ZOOM_LEVELS[this.zoomLevelIndex];
+        return this.zoomLevel;
     }
 
     /**
-     * This represents the object that handles canvas-specific mouse events.
+     * This represents the panel the diagrams and arrows are painted on.
      */
-    public final MouseAdapter CANVAS_MOUSE_LISTENER = new MouseAdapter() {
+    private class CanvasPanel extends JPanel {
         /**
-         * This handles the createion of new classes and interfaces.
-         * @param event The mouse event.
+         * This paints the arrows and then the diagrams on top of them, then the outlines of the diagrams being dragged
+         * and the marquee. Only the ones inside the clip (the visible part of the viewport) are painted. The diagram
+         * being edited is skipped since its editing components paint it.
+         * @param graphics The graphics to paint on.
          */
         @Override
-        public void mouseClicked(MouseEvent event) {
-            requestFocus();
-            selectedDiagram = null;
-            selectedArrow = null;
-            if (tool.equals(Const.CLASS_TOOL_TYPE)) {
-                Point pos = event.getPoint();
-                selectedDiagram = new ClassDiagram("New Class", pos);
-                addDiagram(selectedDiagram);
+        protected void paintComponent(Graphics graphics) {
+            super.paintComponent(graphics);
+
+            Rectangle clip = graphics.getClipBounds();
+            if (clip == null) {
+                clip = new Rectangle(0, 0, this.getWidth(), this.getHeight());
+            }
+            clip.translate(origin.x, origin.y);
+
+            // Paint in the coordinates of the canvas, which start at the origin instead of the top-left of this panel.
+            Graphics2D g2 = (Graphics2D) graphics.create();
+            g2.translate(-origin.x, -origin.y);
+            for (Arrow arrow: document.getArrowsIn(clip)) {
+                renderer.paintArrow(g2, arrow);
+            }
+
+            for (Diagram diagram: document.getDiagramsIn(clip)) {
+                if (editor == null || editor.getDiagram() != diagram) {
+                    renderer.paintDiagram(g2, diagram, selectedDiagrams.contains(diagram));
+                }
+            }
 
-                CreateDiagramAction action = new CreateDiagramAction(selectedDiagram);
-                actionHistory.add(action);
-            } else if (tool.equals(Const.INTERFACE_TOOL_TYPE)) {
-                Point pos = event.getPoint();
-                selectedDiagram = new InterfaceDiagram("New Interface", pos);
-                addDiagram(selectedDiagram);
+            Rectangle dragOutline = getDragOutline();
+            if (dragOutline != null && dragOutline.intersects(clip)) {
+                int offsetX = dragOffset.x - appliedDragOffset.x;
+                int offsetY = dragOffset.y - appliedDragOffset.y;
+                g2.setColor(GHOST_COLOR);
+                g2.setStroke(GHOST_STROKE);
+                for (Diagram diagram: draggedDiagrams) {
+                    Rectangle outline = diagram.getBounds();
+                    outline.translate(offsetX, offsetY);
+                    if (outline.intersects(clip)) {
+                        g2.drawRect(outline.x, outline.y, outline.width - 1, outline.height - 1);
+                    }
+                }
+            }
 
-                CreateDiagramAction action = new CreateDiagramAction(selectedDiagram);
-                actionHistory.add(action);
+            if (marquee != null && marquee.intersects(clip)) {
+                g2.setColor(MARQUEE_COLOR);
+                g2.fill(marquee);
+                g2.setColor(GHOST_COLOR);
+                g2.setStroke(GHOST_STROKE);
+                g2.drawRect(marquee.x, marquee.y, marquee.width, marquee.height);
             }
+            g2.dispose();
         }
-    };
+    }
 
     /**
-     * This represents the object that handles diagram-specific mouse events.
+     * This represents the object that handles mouse events on the canvas and the diagrams on it.
      */
-    public final MouseAdapter DIAGRAM_MOUSE_LISTENER = new MouseAdapter() {
+    public final MouseAdapter CANVAS_MOUSE_LISTENER = new MouseAdapter() {
         private Point mouseStartPos = new Point();
+        private Diagram pressedDiagram = null;
 
         /**
-         * This handles selecting the current diagram with the mouse.
+         * This handles selecting the diagram under the mouse. With the select tool, shift adds it to or removes it
+         * from the selection, and pressing where there is no diagram starts a marquee. Any layout being worked out
+         * is cancelled first.
+         * @param event The mouse event.
          */
         @Override
         public void mousePressed(MouseEvent event) {
-            Component diagramChild = event.getComponent();
-            selectedDiagram = (Diagram) diagramChild.getParent();
-            selectedArrow = null;
-            diagramChild.requestFocus();
-            if (tool.equals(Const.SELECT_TOOL_TYPE)) {
-                this.mouseStartPos = SwingUtilities.convertPoint(diagramChild, event.getPoint(), innerPanel);
+            cancelLayout();
+            Point pos = getCanvasPoint(event);
+            this.pressedDiagram = document.getDiagramAt(pos);
+            this.mouseStartPos = pos;
+
+            if (this.pressedDiagram != null) {
+                if (event.isShiftDown() && tool.equals(Const.SELECT_TOOL_TYPE)) {
+                    if (!toggleSelected(this.pressedDiagram)) {
+                        this.pressedDiagram = null;
+                        return;
+                    }
+                } else if (!selectedDiagrams.contains(this.pressedDiagram)) {
+                    selectOnly(this.pressedDiagram);
+                }
+                selectedArrow = null;
+                if (editor == null || editor.getDiagram() != this.pressedDiagram) {
+                    requestFocus();
+                }
+            }
+        }
+
+        /**
+         * This shows the selected diagrams being dragged, or stretches the marquee, when using the select tool.
+         * @param event The mouse event.
+         */
+        @Override
+        public void mouseDragged(MouseEvent event) {
+            if (!tool.equals(Const.SELECT_TOOL_TYPE)) {
+                return;
+            }
+
+            Point pos = getCanvasPoint(event);
+            if (this.pressedDiagram != null) {
+                dragSelection(pos.x - this.mouseStartPos.x, pos.y - this.mouseStartPos.y);
+            } else if (SwingUtilities.isLeftMouseButton(event)) {
+                dragMarquee(this.mouseStartPos, pos);
             }
         }
 
         /**
-         * This handles the moving of the selected diagram and drawing arrows.
+         * This handles moving the selected diagrams, selecting the diagrams in the marquee and drawing arrows.
          * @param event The mouse event.
          */
         @Override
         public void mouseReleased(MouseEvent event) {
-            Component diagramChild = event.getComponent();
-            Point mouseEndPos = SwingUtilities.convertPoint(diagramChild, event.getPoint(), innerPanel);
-            Component endDiagram = innerPanel.getComponentAt(mouseEndPos);
+            if (this.pressedDiagram == null) {
+                selectInMarquee(event.isShiftDown());
+                return;
+            }
+
+            Point mouseEndPos = getCanvasPoint(event);
+            Diagram startDiagram = this.pressedDiagram;
+            Diagram endDiagram = document.getDiagramAt(mouseEndPos);
+            this.pressedDiagram = null;
 
             if (tool.equals(Const.SELECT_TOOL_TYPE)) {
-                Vector changeInPos = Vector.difference(new Vector(mouseEndPos), new Vector(this.mouseStartPos));
-                selectedDiagram.shiftPos(changeInPos);
-                EditorAction action = new MoveDiagramAction(selectedDiagram, changeInPos);
-                actionHistory.add(action);
-            } else if (tool.equals(Const.INHERITS_TOOL_TYPE)) {
-                if (endDiagram instanceof Diagram) {
-                    Arrow arrow = new Arrow(selectedDiagram, (Diagram) endDiagram, Arrow.SOLID, Arrow.TRIANGLE_END);
-                    addArrow(arrow);
-                    EditorAction action = new CreateArrowAction(arrow);
-                    actionHistory.add(action);
+                int offsetX = mouseEndPos.x - this.mouseStartPos.x;
+                int offsetY = mouseEndPos.y - this.mouseStartPos.y;
+                if (offsetX == 0 && offsetY == 0 && !event.isShiftDown()) {
+                    // Clicking one of several selected diagrams selects only it.
+                    stopDragging();
+                    selectOnly(startDiagram);
+                    return;
                 }
-            } else if (tool.equals(Const.IMPLEMENTS_TOOL_TYPE)) {
-                if (endDiagram instanceof Diagram) {
-                    Arrow arrow = new Arrow(selectedDiagram, (Diagram) endDiagram, Arrow.DASHED, Arrow.TRIANGLE_END);
-                    addArrow(arrow);
-                    EditorAction action = new CreateArrowAction(arrow);
-                    actionHistory.add(action);
+
+                dragSelection(offsetX, offsetY);
+                dropSelection(offsetX, offsetY);
+            } else if (endDiagram != null) {
+                if (tool.equals(Const.INHERITS_TOOL_TYPE)) {
+                    connectDiagrams(startDiagram, endDiagram, Arrow.SOLID, Arrow.TRIANGLE_END);
+                } else if (tool.equals(Const.IMPLEMENTS_TOOL_TYPE)) {
+                    connectDiagrams(startDiagram, endDiagram, Arrow.DASHED, Arrow.TRIANGLE_END);
+                } else if (tool.equals(Const.AGGREGATE_TOOL_TYPE)) {
+                    connectDiagrams(startDiagram, endDiagram, Arrow.SOLID, Arrow.LINE_DIAMOND_END);
+                } else if (tool.equals(Const.COMPOSED_TOOL_TYPE)) {
+                    connectDiagrams(startDiagram, endDiagram, Arrow.SOLID, Arrow.FILL_DIAMOND_END);
                 }
-            } else if (tool.equals(Const.AGGREGATE_TOOL_TYPE)) {
-                if (endDiagram instanceof Diagram) {
-                    Arrow arrow = new Arrow(selectedDiagram, (Diagram) endDiagram, Arrow.SOLID, Arrow.LINE_DIAMOND_END);
-                    addArrow(arrow);
-                    EditorAction action = new CreateArrowAction(arrow);
-                    actionHistory.add(action);
+            }
+        }
+
+        /**
+         * This handles editing diagrams, selecting arrows and the creation of new classes and interfaces.
+         * @param event The mouse event.
+         */
+        @Override
+        public void mouseClicked(MouseEvent event) {
+            Point pos = getCanvasPoint(event);
+            Diagram diagram = document.getDiagramAt(pos);
+
+            if (diagram != null) {
+                boolean isEditing = editor != null && editor.getDiagram() == diagram;
+                if (event.getClickCount() >= 2 && !isEditing) {
+                    startEditing(diagram, pos);
+                }
+                return;
+            }
+
+            requestFocus();
+            if (event.isShiftDown() && tool.equals(Const.SELECT_TOOL_TYPE)) {
+                return;
+            }
+
+            selectOnly(null);
+            selectedArrow = document.getArrowAt(pos);
+            if (selectedArrow == null) {
+                Diagram newDiagram = null;
+                if (tool.equals(Const.CLASS_TOOL_TYPE)) {
+                    newDiagram = new ClassDiagram("New Class", pos);
+                } else if (tool.equals(Const.INTERFACE_TOOL_TYPE)) {
+                    newDiagram = new InterfaceDiagram("New Interface", pos);
                 }
-            } else if (tool.equals(Const.COMPOSED_TOOL_TYPE)) {
-                if (endDiagram instanceof Diagram) {
-                    Arrow arrow = new Arrow(selectedDiagram, (Diagram) endDiagram, Arrow.SOLID, Arrow.FILL_DIAMOND_END);
-                    addArrow(arrow);
-                    EditorAction action = new CreateArrowAction(arrow);
+
+                if (newDiagram != null) {
+                    selectedDiagrams.add(newDiagram);
+                    addDiagram(newDiagram);
+                    resizeDiagramToFit(newDiagram);
+
+                    CreateDiagramAction action = new CreateDiagramAction(newDiagram);
                     actionHistory.add(action);
                 }
             }
@@ -399,34 +1585,144 @@ public class Canvas extends JScrollPane {
     };
 
     /**
-     * This handles arrow-specific mouse events.
+     * This object writes the actions that do not fit in the undo history's memory budget to disk and reads them back.
      */
-    public final MouseListener ARROW_MOUSE_LISTENER = new MouseAdapter() {
-        /**
-         * This handles selecting the current arrow.
-         * @param event The mouse event.
-         */
+    private final EditorActionCodec ACTION_CODEC = new EditorActionCodec() {
         @Override
-        public void mouseClicked(MouseEvent event) {
-            Arrow arrow = (Arrow) event.getComponent();
-            selectedArrow = arrow;
+        public void write(EditorAction action, DataOutputStream output) throws IOException {
+            if (action instanceof DeleteAction) {
+                output.writeByte(DELETE_ACTION);
+                ((DeleteAction) action).write(output);
+            } else if (action instanceof CreateArrowAction) {
+                output.writeByte(CREATE_ARROW_ACTION);
+                ((CreateArrowAction) action).write(output);
+            } else if (action instanceof CreateDiagramAction) {
+                output.writeByte(CREATE_DIAGRAM_ACTION);
+                ((CreateDiagramAction) action).write(output);
+            } else if (action instanceof MoveDiagramAction) {
+                output.writeByte(MOVE_DIAGRAM_ACTION);
+                ((MoveDiagramAction) action).write(output);
+            } else if (action instanceof EditDiagramTextAction) {
+                output.writeByte(EDIT_DIAGRAM_TEXT_ACTION);
+                ((EditDiagramTextAction) action).write(output);
+            } else if (action instanceof CompoundEditorAction) {
+                output.writeByte(COMPOUND_ACTION);
+                ArrayList<EditorAction> actions = ((CompoundEditorAction) action).getActions();
+                output.writeInt(actions.size());
+                for (EditorAction compoundAction: actions) {
+                    this.write(compoundAction, output);
+                }
+            } else {
+                throw new IOException("Unknown action " + action.getClass().getName() + ".");
+            }
+        }
+
+        @Override
+        public EditorAction read(DataInputStream input) throws IOException {
+            int tag = input.readByte();
+            switch (tag) {
+                case DELETE_ACTION:
+                    return new DeleteAction(input);
+                case CREATE_ARROW_ACTION:
+                    return new CreateArrowAction(input);
+                case CREATE_DIAGRAM_ACTION:
+                    return new CreateDiagramAction(input);
+                case MOVE_DIAGRAM_ACTION:
+                    return new MoveDiagramAction(input);
+                case EDIT_DIAGRAM_TEXT_ACTION:
+                    return new EditDiagramTextAction(input);
+                case COMPOUND_ACTION:
+                    CompoundEditorAction action = new CompoundEditorAction();
+                    int numActions = input.readInt();
+                    for (int i = 0; i < numActions; i++) {
+                        action.add(this.read(input));
+                    }
+                    return action;
+                default:
+                    throw new IOException("Unknown action tag " + tag + ".");
+            }
+        }
+    };
+
+    /**
+     * This zooms in or out smoothly while the mouse wheel is turned with control held down, around the mouse. Until
+     * the wheel stops, a preview is stretched instead of painting the canvas again. Without control held down, the
+     * wheel scrolls the canvas as usual.
+     */
+    private final MouseWheelListener ZOOM_ON_WHEEL = new MouseWheelListener() {
+        @Override
+        public void mouseWheelMoved(MouseWheelEvent event) {
+            if (!event.isControlDown()) {
+                dispatchEvent(SwingUtilities.convertMouseEvent(layer, event, Canvas.this));
+                return;
+            }
+
+            layerUI.startPreview();
+            Point anchor = SwingUtilities.convertPoint(layer, event.getPoint(), viewport);
+            setZoomLevel(zoomLevel * Math.pow(WHEEL_ZOOM_FACTOR, -event.getPreciseWheelRotation()), anchor);
+            zoomSettleTimer.restart();
+        }
+    };
+
+    /**
+     * This moves the diagram being dragged to its outline once per frame.
+     */
+    private final ActionListener FOLLOW_DRAG = new ActionListener() {
+        @Override
+        public void actionPerformed(ActionEvent event) {
+            followDrag();
+        }
+    };
+
+    /**
+     * This paints the canvas again at the new zoom level once the mouse wheel stops.
+     */
+    private final ActionListener SETTLE_ZOOM = new ActionListener() {
+        @Override
+        public void actionPerformed(ActionEvent event) {
+            layerUI.stopPreview();
+            updateCanvas();
+        }
+    };
+
+    /**
+     * This object writes the changes to the document to the journal after every action, undo and redo.
+     */
+    private final ChangeListener JOURNAL_ON_CHANGE = new ChangeListener() {
+        @Override
+        public void stateChanged(ChangeEvent event) {
+            getAutosave().journalChanges();
+        }
+    };
+
+    /**
+     * This object marks the canvas as saved once its file is written, or shows an error if it cannot be.
+     */
+    private final SaveListener SHOW_SAVE_RESULT = new SaveListener() {
+        @Override
+        public void saveFinished(File savedFile, boolean isWritten) {
+            if (isWritten) {
+                isSaved = true;
+            } else {
+                JOptionPane.showMessageDialog(Canvas.this, "Cannot save " + savedFile.getPath() + ".",
+                    Const.SAVE_FILE_COMMAND, JOptionPane.ERROR_MESSAGE);
+            }
         }
     };
 
     /**
-     * This object handles diagram-specific focus events.
+     * This object handles focus events on the components of the diagram being edited.
      */
     public final FocusListener DIAGRAM_FOCUS_LISTENER = new FocusListener() {
         /**
-         * This handles selecting the current diagram and highlighting it.
+         * This handles selecting the diagram being edited.
          * @param event The focus event.
          */
         @Override
         public void focusGained(FocusEvent event) {
-            Component diagramChild = event.getComponent();
-            selectedDiagram = (Diagram) diagramChild.getParent();
-            selectedArrow = null;
-            selectedDiagram.setBorder(BorderFactory.createLineBorder(Color.CYAN, 2));
+            if (editor != null) {
+                selectOnly(editor.getDiagram());
+            }
         }
 
         /**
@@ -435,21 +1731,14 @@ public class Canvas extends JScrollPane {
          */
         @Override
         public void focusLost(FocusEvent event) {
-            Component diagramChild = event.getComponent();
-            Diagram diagram = (Diagram) diagramChild.getParent();
-
             // Part of the diagram lost focus but another part is still enabled.
-            if (diagram.isEnabled()) {
+            if (editor == null || editor.isEnabled()) {
                 return;
             }
 
-            diagram.setBorder(BorderFactory.createLineBorder(Color.BLACK, 1));
-            if (diagram.textChanged()) {
-                EditorAction action = new EditDiagramTextAction(diagram);
-                actionHistory.add(action);
-            }
+            stopEditing();
         }
-        
+
     };
 
     /**
@@ -460,6 +1749,7 @@ public class Canvas extends JScrollPane {
     public class DeleteAction implements EditorAction {
         private Arrow arrow;
         private Diagram diagram;
+        private ArrayList<Arrow> attachedArrows;
 
         /**
          * This constructs a new delete action.
@@ -469,6 +1759,58 @@ public class Canvas extends JScrollPane {
         public DeleteAction(Arrow arrow, Diagram diagram) {
             this.arrow = arrow;
             this.diagram = diagram;
+            this.attachedArrows = new ArrayList<Arrow>();
+
+            if (diagram != null) {
+                this.attachedArrows.addAll(diagram.getArrows());
+            }
+        }
+
+        /**
+         * This reads a delete action written by write.
+         * @param input The stream to read from.
+         * @throws IOException If the stream fails.
+         */
+        public DeleteAction(DataInputStream input) throws IOException {
+            this.arrow = input.readBoolean() ? readArrow(input) : null;
+            this.diagram = input.readBoolean() ? readDiagram(input) : null;
+            this.attachedArrows = new ArrayList<Arrow>();
+
+            int numAttachedArrows = input.readInt();
+            for (int i = 0; i < numAttachedArrows; i++) {
+                this.attachedArrows.add(readArrow(input));
+            }
+        }
+
+        /**
+         * This writes this action so it can be read back with the constructor.
+         * @param output The stream to write to.
+         * @throws IOException If the stream fails.
+         */
+        public void write(DataOutputStream output) throws IOException {
+            output.writeBoolean(this.arrow != null);
+            if (this.arrow != null) {
+                writeArrow(output, this.arrow);
+            }
+
+            output.writeBoolean(this.diagram != null);
+            if (this.diagram != null) {
+                writeDiagram(output, this.diagram);
+            }
+
+            output.writeInt(this.attachedArrows.size());
+            for (Arrow attachedArrow: this.attachedArrows) {
+                writeArrow(output, attachedArrow);
+            }
+        }
+
+        @Override
+        public int getEstimatedSize() {
+            int size = ACTION_SIZE + (this.arrow != null ? ARROW_SIZE : 0) + this.attachedArrows.size() * ARROW_SIZE;
+            if (this.diagram != null) {
+                size += estimateSize(this.diagram);
+            }
+            return size;
         }
 
         @Override
@@ -484,13 +1826,17 @@ public class Canvas extends JScrollPane {
 
         @Override
         public void undo() {
-            if (this.arrow != null) {
-                addArrow(this.arrow);
-            }
-
             if (this.diagram != null) {
                 addDiagram(this.diagram);
             }
+
+            for (Arrow attachedArrow: this.attachedArrows) {
+                addArrow(attachedArrow);
+            }
+
+            if (this.arrow != null) {
+                addArrow(this.arrow);
+            }
         }
     }
 
@@ -510,6 +1856,29 @@ public class Canvas extends JScrollPane {
             this.arrow = arrow;
         }
 
+        /**
+         * This reads an action written by write.
+         * @param input The stream to read from.
+         * @throws IOException If the stream fails.
+         */
+        public CreateArrowAction(DataInputStream input) throws IOException {
+            this.arrow = readArrow(input);
+        }
+
+        /**
+         * This writes this action so it can be read back with the constructor.
+         * @param output The stream to write to.
+         * @throws IOException If the stream fails.
+         */
+        public void write(DataOutputStream output) throws IOException {
+            writeArrow(output, this.arrow);
+        }
+
+        @Override
+        public int getEstimatedSize() {
+            return ACTION_SIZE + ARROW_SIZE;
+        }
+
         @Override
         public void redo() {
             addArrow(this.arrow);
@@ -537,6 +1906,29 @@ public class Canvas extends JScrollPane {
             this.diagram = diagram;
         }
 
+        /**
+         * This reads an action written by write.
+         * @param input The stream to read from.
+         * @throws IOException If the stream fails.
+         */
+        public CreateDiagramAction(DataInputStream input) throws IOException {
+            this.diagram = readDiagram(input);
+        }
+
+        /**
+         * This writes this action so it can be read back with the constructor.
+         * @param output The stream to write to.
+         * @throws IOException If the stream fails.
+         */
+        public void write(DataOutputStream output) throws IOException {
+            writeDiagram(output, this.diagram);
+        }
+
+        @Override
+        public int getEstimatedSize() {
+            return ACTION_SIZE + estimateSize(this.diagram);
+        }
+
         @Override
         public void redo() {
             addDiagram(this.diagram);
@@ -567,14 +1959,52 @@ public class Canvas extends JScrollPane {
             this.diagram = diagram;
         }
 
+        /**
+         * This reads an action written by write.
+         * @param input The stream to read from.
+         * @throws IOException If the stream fails.
+         */
+        public MoveDiagramAction(DataInputStream input) throws IOException {
+            this.diagram = readDiagram(input);
+            this.changeInPos = new Vector(input.readDouble(), input.readDouble());
+        }
+
+        /**
+         * This writes this action so it can be read back with the constructor.
+         * @param output The stream to write to.
+         * @throws IOException If the stream fails.
+         */
+        public void write(DataOutputStream output) throws IOException {
+            writeDiagram(output, this.diagram);
+            output.writeDouble(this.changeInPos.getX());
+            output.writeDouble(this.changeInPos.getY());
+        }
+
+        @Override
+        public int getEstimatedSize() {
+            return 2 * ACTION_SIZE;
+        }
+
+        @Override
+        public boolean merge(EditorAction action) {
+            if (!(action instanceof MoveDiagramAction) || ((MoveDiagramAction) action).diagram != this.diagram) {
+                return false;
+            }
+
+            this.changeInPos = Vector.sum(this.changeInPos, ((MoveDiagramAction) action).changeInPos);
+            return true;
+        }
+
         @Override
         public void redo() {
             this.diagram.shiftPos(this.changeInPos);
+            updateCanvas();
         }
 
         @Override
         public void undo() {
             this.diagram.shiftPos(Vector.scaled(this.changeInPos, -1));
+            updateCanvas();
         }
     }
 
@@ -612,6 +2042,43 @@ public class Canvas extends JScrollPane {
             }
         }
 
+        /**
+         * This reads an action written by write.
+         * @param input The stream to read from.
+         * @throws IOException If the stream fails.
+         */
+        public EditDiagramTextAction(DataInputStream input) throws IOException {
+            this.diagram = readDiagram(input);
+            this.oldTitleText = readString(input);
+            this.newTitleText = readString(input);
+            this.oldMethodText = readString(input);
+            this.newMethodText = readString(input);
+            this.oldPropertiesText = readString(input);
+            this.newPropertiesText = readString(input);
+        }
+
+        /**
+         * This writes this action so it can be read back with the constructor.
+         * @param output The stream to write to.
+         * @throws IOException If the stream fails.
+         */
+        public void write(DataOutputStream output) throws IOException {
+            writeDiagram(output, this.diagram);
+            writeString(output, this.oldTitleText);
+            writeString(output, this.newTitleText);
+            writeString(output, this.oldMethodText);
+            writeString(output, this.newMethodText);
+            writeString(output, this.oldPropertiesText);
+            writeString(output, this.newPropertiesText);
+        }
+
+        @Override
+        public int getEstimatedSize() {
+            return ACTION_SIZE + estimateSize(this.oldTitleText) + estimateSize(this.newTitleText) +
+                estimateSize(this.oldMethodText) + estimateSize(this.newMethodText) +
+                estimateSize(this.oldPropertiesText) + estimateSize(this.newPropertiesText);
+        }
+
         @Override
         public void redo() {
             this.diagram.setTitle(this.newTitleText);
@@ -619,23 +2086,27 @@ public class Canvas extends JScrollPane {
             if (this.diagram instanceof InterfaceDiagram) {
                 ((InterfaceDiagram) this.diagram).setMethodText(this.newMethodText);
             }
-            
+
             if (this.diagram instanceof ClassDiagram) {
                 ((ClassDiagram) this.diagram).setPropertiesText(this.newPropertiesText);
             }
+
+            resizeDiagramToFit(this.diagram);
         }
 
         @Override
         public void undo() {
             this.diagram.setTitle(this.oldTitleText);
-            
+
             if (this.diagram instanceof InterfaceDiagram) {
                 ((InterfaceDiagram) this.diagram).setMethodText(this.oldMethodText);
             }
-            
+
             if (this.diagram instanceof ClassDiagram) {
                 ((ClassDiagram) this.diagram).setPropertiesText(this.oldPropertiesText);
             }
+
+            resizeDiagramToFit(this.diagram);
         }
     }
 }
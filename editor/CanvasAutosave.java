@@ -0,0 +1,607 @@
+package editor;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+
+import diagram.Arrow;
+import diagram.CanvasFile;
+import diagram.CanvasSnapshot;
+import diagram.Diagram;
+import diagram.DiagramDocument;
+
+/**
+ * This class keeps the changes made on a canvas safe on disk without blocking the event dispatch thread. After every
+ * action, only the records of the diagrams and arrows that changed are built on the event dispatch thread. A single
+ * background thread appends them to a journal next to the canvas file and keeps its own copy of the latest record of
+ * each diagram and arrow. Every so often it compacts that copy into an autosave file by writing a temporary file and
+ * renaming it over the old one, then empties the journal. Saving the canvas is done from the same copy on the same
+ * thread, so a large canvas never freezes the editor while it is written.
+ * <p>
+ * After a crash, the canvas is the autosave file (or the canvas file if there is no autosave yet) with the journal
+ * applied on top. Applying a record twice has no effect, so a crash between compacting and emptying the journal is
+ * safe. Every canvas open on the same file has a journal of its own, so each of them can be recovered.
+ * @author Andrew Chu
+ * @version June 2023
+ */
+public class CanvasAutosave {
+    public static final String JOURNAL_SUFFIX = ".journal";
+    public static final String AUTOSAVE_SUFFIX = ".autosave";
+
+    private static final int COMPACT_THRESHOLD = 1000;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Canvas autosave");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    // Only used on the event dispatch thread.
+    private static final HashSet<String> JOURNALS_IN_USE = new HashSet<String>();
+
+    // Only used on the event dispatch thread.
+    private DiagramDocument document;
+    private StringBuilder changes;
+    private int numBatches;
+    private int numSavedBatches;
+
+    // Only used on the writer thread.
+    private String journalPath;
+    private File file;
+    private File baseFile;
+    private File journalFile;
+    private File autosaveFile;
+    private LinkedHashMap<String, String> diagramRecords;
+    private LinkedHashMap<String, String> arrowRecords;
+    private int numJournalRecords;
+
+    /**
+     * This starts writing the changes made to a document. The document should already be tracking its changes, so the
+     * ones made before this was constructed are written with the next batch. Any journal and autosave left for the file
+     * are treated as part of the document, so they should be recovered or discarded first.
+     * @param document The document to record.
+     * @param file The file the document is saved to.
+     * @param isSaved True if the file holds the document as it was before any changes, false if it is a new document.
+     */
+    public CanvasAutosave(DiagramDocument document, File file, boolean isSaved) {
+        this(document, file, isSaved, null);
+    }
+
+    /**
+     * This starts writing the changes made to a document, carrying on from a journal and autosave that were recovered.
+     * @param document The document to record, as it was recovered.
+     * @param file The file the document is saved to.
+     * @param isSaved True if the file holds the document as it was before any changes, false if it is a new document.
+     * @param journalPath The path the recovered journal and autosave are named after, or null to pick a new one.
+     */
+    public CanvasAutosave(DiagramDocument document, File file, boolean isSaved, String journalPath) {
+        this.document = document;
+        this.changes = new StringBuilder();
+        this.numBatches = 0;
+        this.numSavedBatches = isSaved ? 0 : -1;
+
+        if (journalPath != null) {
+            JOURNALS_IN_USE.add(journalPath);
+            this.journalPath = journalPath;
+        } else {
+            this.journalPath = reserveJournalPath(file);
+        }
+
+        this.file = file;
+        this.baseFile = isSaved ? file : null;
+        this.journalFile = new File(this.journalPath + JOURNAL_SUFFIX);
+        this.autosaveFile = new File(this.journalPath + AUTOSAVE_SUFFIX);
+        this.diagramRecords = null;
+        this.arrowRecords = null;
+        this.numJournalRecords = 0;
+
+        if (!isSaved) {
+            WRITER.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (!autosaveFile.exists()) {
+                        loadRecords();
+                        compact();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * This finds a journal or autosave left for a file by an editor that did not exit cleanly. Each canvas that was
+     * open on the file left its own, named after the file or after the file with a number. The ones still being
+     * written by an open canvas do not count.
+     * @param file The canvas file.
+     * @return The path the journal and autosave are named after, without their suffix, or null if there are none.
+     */
+    public static String findRecovery(File file) {
+        File directory = file.getAbsoluteFile().getParentFile();
+        String[] names = directory != null ? directory.list() : null;
+        if (names == null) {
+            return null;
+        }
+
+        ArrayList<Integer> numbers = new ArrayList<Integer>();
+        String prefix = file.getName();
+        for (String name: names) {
+            String journalName;
+            if (name.startsWith(prefix) && name.endsWith(JOURNAL_SUFFIX)) {
+                journalName = name.substring(prefix.length(), name.length() - JOURNAL_SUFFIX.length());
+            } else if (name.startsWith(prefix) && name.endsWith(AUTOSAVE_SUFFIX)) {
+                journalName = name.substring(prefix.length(), name.length() - AUTOSAVE_SUFFIX.length());
+            } else {
+                continue;
+            }
+
+            // The file itself is number 0, the other canvases open on it are numbered from 1.
+            int number = getJournalNumber(journalName);
+            if (number >= 0 && !JOURNALS_IN_USE.contains(getJournalPath(file, number))) {
+                numbers.add(number);
+            }
+        }
+
+        if (numbers.isEmpty()) {
+            return null;
+        }
+        return getJournalPath(file, Collections.min(numbers));
+    }
+
+    /**
+     * This recovers the changes left in a journal and autosave. They are kept, so a new CanvasAutosave given their
+     * path carries on from them.
+     * @param document The document loaded from the file, or an empty one if it was never saved.
+     * @param journalPath The path the journal and autosave are named after, from findRecovery.
+     * @return The recovered document, null if the changes cannot be read.
+     */
+    public static DiagramDocument recover(DiagramDocument document, String journalPath) {
+        File autosaveFile = new File(journalPath + AUTOSAVE_SUFFIX);
+        if (autosaveFile.exists()) {
+            document = CanvasFile.load(autosaveFile);
+            if (document == null) {
+                return null;
+            }
+        }
+
+        File journalFile = new File(journalPath + JOURNAL_SUFFIX);
+        if (journalFile.exists() && !CanvasFile.replay(document, journalFile)) {
+            System.err.println("Canvas journal only partly recovered. [" + journalFile.getPath() + "]");
+        }
+
+        return document;
+    }
+
+    /**
+     * This deletes a journal and autosave left by an editor that did not exit cleanly. They are not found again while
+     * they are being deleted.
+     * @param journalPath The path the journal and autosave are named after, from findRecovery.
+     */
+    public static void discardRecovery(final String journalPath) {
+        JOURNALS_IN_USE.add(journalPath);
+        WRITER.execute(new Runnable() {
+            @Override
+            public void run() {
+                new File(journalPath + JOURNAL_SUFFIX).delete();
+                new File(journalPath + AUTOSAVE_SUFFIX).delete();
+                releaseJournalPath(journalPath);
+            }
+        });
+    }
+
+    /**
+     * This waits for the changes already recorded to be written, then stops the writer thread.
+     * @param timeoutMillis The longest time to wait, in milliseconds.
+     */
+    public static void shutdown(long timeoutMillis) {
+        WRITER.shutdown();
+        try {
+            WRITER.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * This builds the records of the changes made since the last call and hands them to the writer thread.
+     */
+    public void journalChanges() {
+        this.changes.setLength(0);
+        CanvasFile.appendChanges(this.changes, this.document);
+        this.document.clearChanges();
+        if (this.changes.length() == 0) {
+            return;
+        }
+
+        this.numBatches++;
+        final String records = this.changes.toString();
+        WRITER.execute(new Runnable() {
+            @Override
+            public void run() {
+                appendToJournal(records);
+            }
+        });
+    }
+
+    /**
+     * This saves the document to a file on the writer thread, after the changes made so far. Once it is written, the
+     * file is saved to from then on and the journal and autosave are deleted. If it cannot be written, they are kept
+     * as they were.
+     * @param newFile The file to save to. Files with the snapshot extension are saved as binary snapshots.
+     * @param listener The object told on the event dispatch thread whether the file was written.
+     */
+    public void save(final File newFile, final SaveListener listener) {
+        this.journalChanges();
+
+        // The old journal is kept until the writer is done with it, so no other canvas picks the same one meanwhile.
+        final String newJournalPath = reserveJournalPath(newFile);
+        final File newJournalFile = new File(newJournalPath + JOURNAL_SUFFIX);
+        final File newAutosaveFile = new File(newJournalPath + AUTOSAVE_SUFFIX);
+        final int numSavingBatches = this.numBatches;
+
+        WRITER.execute(new Runnable() {
+            @Override
+            public void run() {
+                loadRecords();
+                final boolean isSaved = writeRecords(newFile);
+                if (isSaved) {
+                    journalFile.delete();
+                    autosaveFile.delete();
+                    releaseJournalPath(journalPath);
+                    numJournalRecords = 0;
+                    journalPath = newJournalPath;
+                    file = newFile;
+                    baseFile = newFile;
+                    journalFile = newJournalFile;
+                    autosaveFile = newAutosaveFile;
+                } else {
+                    releaseJournalPath(newJournalPath);
+                }
+
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (isSaved) {
+                            numSavedBatches = numSavingBatches;
+                        }
+                        listener.saveFinished(newFile, isSaved);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * This checks if changes were made to the document since it was last saved, counting a document that was never
+     * saved as changed. A save still being written does not count until it is done.
+     * @return True if there are unsaved changes, false if not.
+     */
+    public boolean hasUnsavedChanges() {
+        return this.numBatches != this.numSavedBatches;
+    }
+
+    /**
+     * This stops recording the document and deletes the journal and autosave, such as when the canvas is reloaded
+     * from its file.
+     */
+    public void discard() {
+        this.document.setTrackingChanges(false);
+        WRITER.execute(new Runnable() {
+            @Override
+            public void run() {
+                journalFile.delete();
+                autosaveFile.delete();
+                releaseJournalPath(journalPath);
+            }
+        });
+    }
+
+    /**
+     * This stops recording the document when its canvas is closed. If it has unsaved changes, they are written to the
+     * journal and kept, so they are offered for recovery when the file is opened again. Otherwise the journal and
+     * autosave are deleted. Either way, another canvas can use the journal once the writer is done with it.
+     */
+    public void close() {
+        this.journalChanges();
+        if (!this.hasUnsavedChanges()) {
+            this.discard();
+            return;
+        }
+
+        this.document.setTrackingChanges(false);
+        WRITER.execute(new Runnable() {
+            @Override
+            public void run() {
+                releaseJournalPath(journalPath);
+            }
+        });
+    }
+
+    /**
+     * This picks the path the journal and autosave of a file are named after. Two new canvases can have the same file,
+     * so each gets its own journal.
+     * @param file The canvas file.
+     * @return The path, without the journal or autosave suffix.
+     */
+    private static String reserveJournalPath(File file) {
+        String journalPath = file.getPath();
+        for (int i = 1; JOURNALS_IN_USE.contains(journalPath); i++) {
+            journalPath = getJournalPath(file, i);
+        }
+
+        JOURNALS_IN_USE.add(journalPath);
+        return journalPath;
+    }
+
+    /**
+     * This lets another canvas use a journal path again. It is called on the writer thread once it is done with the
+     * journal, and the path is released on the event dispatch thread.
+     * @param journalPath The path, without the journal or autosave suffix.
+     */
+    private static void releaseJournalPath(final String journalPath) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                JOURNALS_IN_USE.remove(journalPath);
+            }
+        });
+    }
+
+    /**
+     * This gets the path a journal and autosave of a file are named after.
+     * @param file The canvas file.
+     * @param number 0 for the first canvas open on the file, or the number of another one.
+     * @return The path, without the journal or autosave suffix.
+     */
+    private static String getJournalPath(File file, int number) {
+        return number == 0 ? file.getPath() : file.getPath() + "-" + number;
+    }
+
+    /**
+     * This gets the number of a journal from what follows the canvas file name in its name.
+     * @param journalName The part of the name between the file name and the suffix, such as "" or "-2".
+     * @return The number, 0 for the file itself, or -1 if it is not a journal of the file.
+     */
+    private static int getJournalNumber(String journalName) {
+        if (journalName.isEmpty()) {
+            return 0;
+        } else if (!journalName.matches("-[1-9][0-9]{0,8}")) {
+            return -1;
+        }
+        return Integer.parseInt(journalName.substring(1));
+    }
+
+    /**
+     * This appends records to the journal and to the copy of the document, compacting it if the journal got long.
+     * @param records The records, one per line.
+     */
+    private void appendToJournal(String records) {
+        this.loadRecords();
+
+        try {
+            FileOutputStream output = new FileOutputStream(this.journalFile, true);
+            try {
+                output.write(records.getBytes(StandardCharsets.UTF_8));
+                output.getFD().sync();
+            } finally {
+                output.close();
+            }
+        } catch (IOException exception) {
+            System.err.println("Cannot write canvas journal. [" + this.journalFile.getPath() + "]");
+        }
+
+        int start = 0;
+        int end;
+        while ((end = records.indexOf('\n', start)) != -1) {
+            this.applyRecord(records.substring(start, end));
+            this.numJournalRecords++;
+            start = end + 1;
+        }
+
+        if (this.numJournalRecords >= COMPACT_THRESHOLD) {
+            this.compact();
+        }
+    }
+
+    /**
+     * This writes the copy of the document to the autosave file and empties the journal.
+     */
+    private void compact() {
+        if (this.writeRecords(this.autosaveFile)) {
+            this.journalFile.delete();
+            this.numJournalRecords = 0;
+        }
+    }
+
+    /**
+     * This builds the copy of the document the first time it is needed: the autosave file if there is one, otherwise
+     * the canvas file if it was saved, with the journal applied on top.
+     */
+    private void loadRecords() {
+        if (this.diagramRecords != null) {
+            return;
+        }
+
+        this.diagramRecords = new LinkedHashMap<String, String>();
+        this.arrowRecords = new LinkedHashMap<String, String>();
+
+        if (this.autosaveFile.exists()) {
+            this.readRecords(this.autosaveFile, true);
+        } else if (this.baseFile != null && this.baseFile.exists()) {
+            if (this.baseFile.getName().endsWith("." + CanvasSnapshot.EXTENSION)) {
+                DiagramDocument baseDocument = CanvasSnapshot.load(this.baseFile);
+                if (baseDocument != null) {
+                    this.addRecords(baseDocument);
+                }
+            } else {
+                this.readRecords(this.baseFile, true);
+            }
+        }
+
+        if (this.journalFile.exists()) {
+            this.numJournalRecords = this.readRecords(this.journalFile, false);
+        }
+    }
+
+    /**
+     * This reads records from a file into the copy of the document.
+     * @param recordFile The file to read.
+     * @param hasHeader True if the file starts with a header line.
+     * @return The number of records read.
+     */
+    private int readRecords(File recordFile, boolean hasHeader) {
+        int numRecords = 0;
+        try {
+            BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(recordFile), StandardCharsets.UTF_8));
+            try {
+                if (hasHeader) {
+                    reader.readLine();
+                }
+
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isEmpty()) {
+                        this.applyRecord(line);
+                        numRecords++;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException exception) {
+            System.err.println("Cannot read canvas records. [" + recordFile.getPath() + "]");
+        }
+
+        return numRecords;
+    }
+
+    /**
+     * This adds the records of every diagram and arrow in a document to the copy of the document.
+     * @param recordDocument The document.
+     */
+    private void addRecords(DiagramDocument recordDocument) {
+        StringBuilder line = new StringBuilder();
+        for (Diagram diagram: recordDocument.getDiagrams()) {
+            line.setLength(0);
+            CanvasFile.appendDiagramRecord(line, diagram);
+            this.applyRecord(line.substring(0, line.length() - 1));
+        }
+
+        for (Arrow arrow: recordDocument.getArrows()) {
+            line.setLength(0);
+            CanvasFile.appendArrowRecord(line, arrow);
+            this.applyRecord(line.substring(0, line.length() - 1));
+        }
+    }
+
+    /**
+     * This applies a record to the copy of the document, replacing or removing the earlier record for the same
+     * diagram or arrow.
+     * @param line The record, without its line break.
+     */
+    private void applyRecord(String line) {
+        String key = CanvasFile.getRecordKey(line);
+        LinkedHashMap<String, String> records = key.startsWith("A") ? this.arrowRecords : this.diagramRecords;
+
+        if (CanvasFile.isRemovalRecord(line)) {
+            records.remove(key);
+        } else {
+            // Removing first moves a re-added diagram to the top, like in the document.
+            records.remove(key);
+            records.put(key, line);
+        }
+    }
+
+    /**
+     * This writes the copy of the document to a temporary file, then renames it over a file.
+     * @param targetFile The file to replace.
+     * @return True if it was written, false if there was an error.
+     */
+    private boolean writeRecords(File targetFile) {
+        if (targetFile.getName().endsWith("." + CanvasSnapshot.EXTENSION)) {
+            DiagramDocument recordDocument = this.toDocument();
+            return recordDocument != null && CanvasSnapshot.save(recordDocument, targetFile);
+        }
+
+        File tempFile = new File(targetFile.getPath() + TEMP_SUFFIX);
+        try {
+            FileOutputStream output = new FileOutputStream(tempFile);
+            try {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+                this.writeRecords(writer);
+                writer.flush();
+                output.getFD().sync();
+            } finally {
+                output.close();
+            }
+
+            try {
+                Files.move(tempFile.toPath(), targetFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException exception) {
+                Files.move(tempFile.toPath(), targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException exception) {
+            System.err.println("Cannot write canvas file. [" + targetFile.getPath() + "]");
+            tempFile.delete();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * This writes the copy of the document in the .canvas format.
+     * @param writer The writer to write to.
+     * @throws IOException If the writer fails.
+     */
+    private void writeRecords(Writer writer) throws IOException {
+        writer.write(CanvasFile.getHeader());
+        for (String line: this.diagramRecords.values()) {
+            writer.write(line);
+            writer.write('\n');
+        }
+        for (String line: this.arrowRecords.values()) {
+            writer.write(line);
+            writer.write('\n');
+        }
+    }
+
+    /**
+     * This builds a document from the copy, which is needed to write it as a binary snapshot.
+     * @return The document, null if the copy cannot be read back.
+     */
+    private DiagramDocument toDocument() {
+        StringWriter text = new StringWriter();
+        try {
+            this.writeRecords(text);
+            return CanvasFile.read(new BufferedReader(new StringReader(text.toString())), this.file.getPath());
+        } catch (IOException exception) {
+            return null;
+        }
+    }
+}
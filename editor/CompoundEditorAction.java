@@ -0,0 +1,61 @@
+package editor;
+
+import java.util.ArrayList;
+
+/**
+ * This class represents a group of actions that are undone and redone together as one action.
+ * @author Andrew Chu
+ * @version June 2023
+ */
+public class CompoundEditorAction implements EditorAction {
+    private ArrayList<EditorAction> actions;
+
+    /**
+     * This constructs an empty compound action.
+     */
+    public CompoundEditorAction() {
+        this.actions = new ArrayList<EditorAction>();
+    }
+
+    /**
+     * This adds an action to the end of the group, merging it into the last action if they can be merged.
+     * @param action The action to add.
+     */
+    public void add(EditorAction action) {
+        if (!this.actions.isEmpty() && this.actions.get(this.actions.size() - 1).merge(action)) {
+            return;
+        }
+        this.actions.add(action);
+    }
+
+    /**
+     * This gets the actions in the group, in the order they were performed.
+     * @return The actions.
+     */
+    public ArrayList<EditorAction> getActions() {
+        return this.actions;
+    }
+
+    @Override
+    public int getEstimatedSize() {
+        int size = 0;
+        for (EditorAction action: this.actions) {
+            size += action.getEstimatedSize();
+        }
+        return size;
+    }
+
+    @Override
+    public void redo() {
+        for (EditorAction action: this.actions) {
+            action.redo();
+        }
+    }
+
+    @Override
+    public void undo() {
+        for (int i = this.actions.size() - 1; i >= 0; i--) {
+            this.actions.get(i).undo();
+        }
+    }
+}
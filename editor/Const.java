@@ -31,6 +31,10 @@ public final class Const {
     public static final String UNDO_KEYSTROKE = "ctrl Z";
     public static final String REDO_KEYSTROKE = "ctrl Y";
     public static final String DELETE_KEYSTROKE = "DELETE";
+    public static final String SELECT_ALL_KEYSTROKE = "ctrl A";
+    public static final String ARRANGE_KEYSTROKE = "ctrl L";
+    public static final String ARRANGE_BY_LINKS_KEYSTROKE = "ctrl shift L";
+    public static final String CANCEL_ARRANGE_KEYSTROKE = "ESCAPE";
     public static final String COPY_KEYSTROKE = "ctrl C";
     public static final String PASTE_KEYSTROKE = "ctrl V";
     public static final String ZOOM_IN_KEYSTROKE = "ctrl EQUALS";
@@ -47,12 +51,18 @@ public final class Const {
     public static final String NEW_FILE_COMMAND = "New File";
     public static final String OPEN_FILE_COMMAND = "Open";
     public static final String CLOSE_FILE_COMMAND = "Close";
+    public static final String SAVE_FILE_COMMAND = "Save";
+    public static final String SAVE_AS_COMMAND = "Save As";
     public static final String EXPORT_COMMAND = "Export";
     public static final String EXIT_COMMAND = "Exit";
 
     public static final String UNDO_COMMAND = "Undo";
     public static final String REDO_COMMAND = "Redo";
     public static final String DELETE_COMMAND = "Delete";
+    public static final String SELECT_ALL_COMMAND = "Select All";
+    public static final String ARRANGE_COMMAND = "Arrange Diagrams";
+    public static final String ARRANGE_BY_LINKS_COMMAND = "Arrange by Links";
+    public static final String CANCEL_ARRANGE_COMMAND = "Cancel Arranging";
     public static final String DUPLICATE_COMMAND = "Duplicate";
 
     public static final String ZOOM_IN_COMMAND = "Zoom In";
@@ -17,4 +17,19 @@ public interface EditorAction {
      * @return
      */
     public void undo();
+
+    /**
+     * Estimates how much memory the action takes, including anything it keeps alive that is no longer on the canvas.
+     * @return The estimated size in bytes.
+     */
+    public int getEstimatedSize();
+
+    /**
+     * Tries to merge an action performed right after this one into this one, so they are undone and redone together.
+     * @param action The later action.
+     * @return True if it was merged, false if they are kept as separate actions.
+     */
+    public default boolean merge(EditorAction action) {
+        return false;
+    }
 }
@@ -0,0 +1,30 @@
+package editor;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * This interface represents an object that can write actions out and read them back, so the history can keep older
+ * actions on disk instead of in memory.
+ * @author Andrew Chu
+ * @version June 2023
+ */
+public interface EditorActionCodec {
+    /**
+     * Writes an action.
+     * @param action The action to write.
+     * @param output The stream to write to.
+     * @throws IOException If the action cannot be written.
+     */
+    public void write(EditorAction action, DataOutputStream output) throws IOException;
+
+    /**
+     * Reads an action written by write. It is read back when it is about to be undone or redone, so it should refer to
+     * the diagrams and arrows on the canvas at that time.
+     * @param input The stream to read from.
+     * @return The action.
+     * @throws IOException If the action cannot be read.
+     */
+    public EditorAction read(DataInputStream input) throws IOException;
+}
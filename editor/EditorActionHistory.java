@@ -1,43 +1,130 @@
 package editor;
-import java.util.Stack;
-import java.util.Deque;
-import java.util.LinkedList;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+import utility.DiskStack;
 
 /**
  * This class stores the actions committed on the editor's canvas. It tracks the history of actions and the current action after undoing or redoing actions.
+ * <p>
+ * The history has no limit on the number of actions. The actions around the current one are kept in memory in a ring
+ * buffer, up to an estimated memory budget. When the budget is passed, the actions furthest from the current one are
+ * written to temporary files with the codec and read back when undoing or redoing reaches them. Without a codec, the
+ * oldest actions are forgotten instead.
+ * <p>
+ * An action added soon after the last one is merged into it when the last action allows it, and the actions added
+ * during a transaction are kept as one compound action.
  * @author Andrew Chu
  * @version June 2023
  */
 public class EditorActionHistory {
-    public static final int HISTORY_LENGTH = 10;
+    public static final long DEFAULT_MEMORY_BUDGET = 8L << 20;
+    public static final long MERGE_WINDOW_MILLIS = 1000;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private EditorAction[] actions;
+    private int head;
+    private int numActions;
+    private int numPast;
+    private long memorySize;
+    private long memoryBudget;
+
+    private EditorActionCodec codec;
+    private DiskStack olderActions;
+    private DiskStack newerActions;
 
-    private Deque<EditorAction> past;
-    private Stack<EditorAction> future;
     private EditorAction lastPerformedAction;
+    private long lastAddTime;
+    private CompoundEditorAction transaction;
+    private int transactionDepth;
+    private ArrayList<ChangeListener> changeListeners;
 
     /**
-     * This constructs an empty editor action history.
+     * This constructs an empty editor action history that forgets the oldest actions once it passes the default
+     * memory budget.
      */
     public EditorActionHistory() {
-        this.past = new LinkedList<EditorAction>();
-        this.future = new Stack<EditorAction>();
+        this(null, DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * This constructs an empty editor action history.
+     * @param codec The codec used to keep actions on disk once they do not fit in the memory budget, or null to
+     *              forget them.
+     * @param memoryBudget The estimated number of bytes of actions to keep in memory.
+     */
+    public EditorActionHistory(EditorActionCodec codec, long memoryBudget) {
+        this.actions = new EditorAction[INITIAL_CAPACITY];
+        this.head = 0;
+        this.numActions = 0;
+        this.numPast = 0;
+        this.memorySize = 0;
+        this.memoryBudget = memoryBudget;
+        this.codec = codec;
+        this.olderActions = new DiskStack("lilac-undo");
+        this.newerActions = new DiskStack("lilac-redo");
         this.lastPerformedAction = null;
+        this.lastAddTime = 0;
+        this.transaction = null;
+        this.transactionDepth = 0;
+        this.changeListeners = new ArrayList<ChangeListener>();
     }
 
     /**
-     * This adds an action to the editor history.
+     * This adds an action to the editor history. During a transaction, it is added to the transaction instead.
      * @param action The action to add.
      */
     public void add(EditorAction action) {
-        this.future.clear();
-        this.past.addLast(action);
-        
-        while (this.past.size() > HISTORY_LENGTH) {
-            this.past.removeFirst();
+        if (this.transactionDepth > 0) {
+            this.transaction.add(action);
+            return;
+        }
+
+        // Forget the actions that were undone.
+        for (int i = this.numPast; i < this.numActions; i++) {
+            this.memorySize -= this.get(i).getEstimatedSize();
+            this.actions[this.getIndex(i)] = null;
+        }
+        this.numActions = this.numPast;
+        this.newerActions.clear();
+
+        long time = System.currentTimeMillis();
+        boolean isRecent = time - this.lastAddTime <= MERGE_WINDOW_MILLIS;
+        this.lastAddTime = time;
+
+        if (isRecent && this.numPast > 0) {
+            EditorAction lastAction = this.get(this.numPast - 1);
+            int lastSize = lastAction.getEstimatedSize();
+            if (lastAction.merge(action)) {
+                this.memorySize += lastAction.getEstimatedSize() - lastSize;
+                this.trimToBudget();
+                this.lastPerformedAction = lastAction;
+                this.fireStateChanged();
+                return;
+            }
+        }
+
+        if (this.numActions == this.actions.length) {
+            this.grow();
         }
+        this.actions[this.getIndex(this.numActions)] = action;
+        this.numActions++;
+        this.numPast++;
+        this.memorySize += action.getEstimatedSize();
+        this.trimToBudget();
 
         // Assume the action was already performed.
         this.lastPerformedAction = action;
+        this.fireStateChanged();
     }
 
     /**
@@ -45,20 +132,27 @@ public class EditorActionHistory {
      * @return The action just undone, null if no action.
      */
     public EditorAction undo() {
-        if (!this.canUndo()) { 
+        if (!this.canUndo()) {
+            return null;
+        }
+
+        if (this.numPast == 0 && !this.readOlderAction()) {
             return null;
         }
 
-        EditorAction curAction = this.past.removeLast();
+        EditorAction curAction = this.get(this.numPast - 1);
+        this.numPast--;
+        this.lastAddTime = 0;
         curAction.undo();
-        this.future.push(curAction);
 
-        if (this.past.isEmpty()) {
+        if (this.numPast == 0) {
             this.lastPerformedAction = null;
         } else {
-            this.lastPerformedAction = this.past.peek();
+            this.lastPerformedAction = this.get(this.numPast - 1);
         }
 
+        this.trimToBudget();
+        this.fireStateChanged();
         return curAction;
     }
 
@@ -71,24 +165,266 @@ public class EditorActionHistory {
             return null;
         }
 
-        EditorAction curAction = this.future.pop();
+        if (this.numPast == this.numActions && !this.readNewerAction()) {
+            return null;
+        }
+
+        EditorAction curAction = this.get(this.numPast);
+        this.numPast++;
+        this.lastAddTime = 0;
         curAction.redo();
-        this.past.addLast(curAction);
 
         this.lastPerformedAction = curAction;
 
+        this.trimToBudget();
+        this.fireStateChanged();
         return curAction;
     }
 
     public boolean canUndo() {
-        return !this.past.isEmpty();
+        return this.transactionDepth == 0 && (this.numPast > 0 || !this.olderActions.isEmpty());
     }
 
     public boolean canRedo() {
-        return !this.future.isEmpty();
+        return this.transactionDepth == 0 && (this.numPast < this.numActions || !this.newerActions.isEmpty());
     }
 
     public EditorAction getLastPerformedAction() {
         return this.lastPerformedAction;
     }
+
+    /**
+     * This removes every action from the history.
+     */
+    public void clear() {
+        Arrays.fill(this.actions, null);
+        this.head = 0;
+        this.numActions = 0;
+        this.numPast = 0;
+        this.memorySize = 0;
+        this.olderActions.clear();
+        this.newerActions.clear();
+        this.lastPerformedAction = null;
+        this.lastAddTime = 0;
+        this.transaction = null;
+        this.transactionDepth = 0;
+    }
+
+    /**
+     * This removes every action from the history and deletes the files holding the actions that did not fit in memory.
+     * It is called when the history is no longer needed.
+     */
+    public void close() {
+        this.clear();
+        this.olderActions.close();
+        this.newerActions.close();
+    }
+
+    /**
+     * This starts grouping the actions added into one action, until the transaction is committed. Transactions can be
+     * nested, in which case the actions are grouped until the outermost one is committed.
+     */
+    public void beginTransaction() {
+        if (this.transactionDepth == 0) {
+            this.transaction = new CompoundEditorAction();
+        }
+        this.transactionDepth++;
+    }
+
+    /**
+     * This ends a transaction. Once the outermost transaction ends, the actions added during it are added to the
+     * history as one action.
+     */
+    public void commitTransaction() {
+        if (this.transactionDepth == 0) {
+            throw new IllegalStateException("No transaction to commit.");
+        }
+
+        this.transactionDepth--;
+        if (this.transactionDepth > 0) {
+            return;
+        }
+
+        CompoundEditorAction committedTransaction = this.transaction;
+        this.transaction = null;
+
+        ArrayList<EditorAction> transactionActions = committedTransaction.getActions();
+        if (transactionActions.size() == 1) {
+            this.add(transactionActions.get(0));
+        } else if (transactionActions.size() > 1) {
+            this.add(committedTransaction);
+        }
+    }
+
+    /**
+     * This checks if actions are being grouped into a transaction.
+     * @return True if a transaction is open, false if not.
+     */
+    public boolean isInTransaction() {
+        return this.transactionDepth > 0;
+    }
+
+    /**
+     * This gets the estimated number of bytes used by the actions kept in memory.
+     * @return The estimated size.
+     */
+    public long getMemorySize() {
+        return this.memorySize;
+    }
+
+    /**
+     * This adds a listener that is told after an action is added, undone or redone, once the action has been performed.
+     * @param listener The listener to add.
+     */
+    public void addChangeListener(ChangeListener listener) {
+        this.changeListeners.add(listener);
+    }
+
+    /**
+     * This tells the listeners that the history changed.
+     */
+    private void fireStateChanged() {
+        ChangeEvent event = new ChangeEvent(this);
+        for (ChangeListener listener: this.changeListeners) {
+            listener.stateChanged(event);
+        }
+    }
+
+    /**
+     * This moves actions out of memory until the ones left fit in the memory budget. Actions are taken from whichever
+     * end is further from the current action. The current action and the one after it always stay in memory.
+     */
+    private void trimToBudget() {
+        while (this.memorySize > this.memoryBudget && this.numActions > 2) {
+            boolean isOlderEndFurther = this.numPast > this.numActions - this.numPast;
+
+            if (isOlderEndFurther && this.numPast > 1) {
+                EditorAction action = this.get(0);
+                this.writeAction(action, this.olderActions);
+                this.actions[this.head] = null;
+                this.head = this.getIndex(1);
+                this.numPast--;
+                this.numActions--;
+                this.memorySize -= action.getEstimatedSize();
+            } else if (!isOlderEndFurther && this.numActions - this.numPast > 1) {
+                EditorAction action = this.get(this.numActions - 1);
+                this.writeAction(action, this.newerActions);
+                this.actions[this.getIndex(this.numActions - 1)] = null;
+                this.numActions--;
+                this.memorySize -= action.getEstimatedSize();
+            } else {
+                break;
+            }
+        }
+    }
+
+    /**
+     * This writes an action to the top of a stack on disk. If it cannot be written, the actions beyond it could no
+     * longer be reached, so they are forgotten along with it.
+     * @param action The action to write.
+     * @param stack The stack to write to.
+     */
+    private void writeAction(EditorAction action, DiskStack stack) {
+        if (this.codec == null) {
+            return;
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(bytes);
+            this.codec.write(action, output);
+            output.flush();
+            stack.push(bytes.toByteArray());
+        } catch (IOException exception) {
+            System.err.println("Cannot keep action in the history. [" + exception.getMessage() + "]");
+            stack.clear();
+        }
+    }
+
+    /**
+     * This reads the newest action kept on disk before the ones in memory into the start of the ring buffer.
+     * @return True if it was read, false if it cannot be read and the older actions were forgotten.
+     */
+    private boolean readOlderAction() {
+        EditorAction action = this.readAction(this.olderActions);
+        if (action == null) {
+            return false;
+        }
+
+        if (this.numActions == this.actions.length) {
+            this.grow();
+        }
+        this.head = this.getIndex(this.actions.length - 1);
+        this.actions[this.head] = action;
+        this.numActions++;
+        this.numPast++;
+        this.memorySize += action.getEstimatedSize();
+        return true;
+    }
+
+    /**
+     * This reads the oldest action kept on disk after the ones in memory into the end of the ring buffer.
+     * @return True if it was read, false if it cannot be read and the newer actions were forgotten.
+     */
+    private boolean readNewerAction() {
+        EditorAction action = this.readAction(this.newerActions);
+        if (action == null) {
+            return false;
+        }
+
+        if (this.numActions == this.actions.length) {
+            this.grow();
+        }
+        this.actions[this.getIndex(this.numActions)] = action;
+        this.numActions++;
+        this.memorySize += action.getEstimatedSize();
+        return true;
+    }
+
+    /**
+     * This reads the action on the top of a stack on disk.
+     * @param stack The stack to read from.
+     * @return The action, null if it cannot be read, in which case the stack is cleared.
+     */
+    private EditorAction readAction(DiskStack stack) {
+        try {
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(stack.pop()));
+            return this.codec.read(input);
+        } catch (IOException exception) {
+            System.err.println("Cannot read action from the history. [" + exception.getMessage() + "]");
+            stack.clear();
+            return null;
+        }
+    }
+
+    /**
+     * This gets an action in memory.
+     * @param i The position of the action, counting from the oldest one in memory.
+     * @return The action.
+     */
+    private EditorAction get(int i) {
+        return this.actions[this.getIndex(i)];
+    }
+
+    /**
+     * This gets the index in the ring buffer of an action in memory.
+     * @param i The position of the action, counting from the oldest one in memory.
+     * @return The index in the ring buffer.
+     */
+    private int getIndex(int i) {
+        return (this.head + i) % this.actions.length;
+    }
+
+    /**
+     * This doubles the size of the ring buffer, moving the oldest action to the start.
+     */
+    private void grow() {
+        EditorAction[] grownActions = new EditorAction[this.actions.length * 2];
+        for (int i = 0; i < this.numActions; i++) {
+            grownActions[i] = this.get(i);
+        }
+
+        this.actions = grownActions;
+        this.head = 0;
+    }
 }
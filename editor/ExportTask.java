@@ -0,0 +1,170 @@
+package editor;
+
+import java.awt.Component;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JOptionPane;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+
+import diagram.DiagramDocument;
+import diagram.DiagramExporter;
+import diagram.DiagramRenderer;
+import diagram.ExportMonitor;
+
+/**
+ * This class exports a document in the background so the editor stays responsive. The document should be a copy
+ * that nothing else touches, since it is read off the event dispatch thread. A progress monitor shows how far the
+ * export has gotten and lets it be cancelled.
+ * <p>
+ * Exports run on a small shared pool with a bounded queue, so starting many exports at once cannot pile up work.
+ * @author Andrew Chu
+ * @version June 2023
+ */
+public class ExportTask extends SwingWorker<Boolean, Void> implements ExportMonitor {
+    private static final int MAX_RUNNING_EXPORTS = 2;
+    private static final int MAX_QUEUED_EXPORTS = 4;
+    private static final int CANCEL_CHECK_INTERVAL = 100;
+    private static final int POPUP_DELAY = 250;
+    private static final int PROGRESS_STEPS = 100;
+
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(
+        MAX_RUNNING_EXPORTS, MAX_RUNNING_EXPORTS, 30, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<Runnable>(MAX_QUEUED_EXPORTS), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Lilac export");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            }
+        });
+
+    static {
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private Component parent;
+    private DiagramDocument document;
+    private File file;
+    private String format;
+    private double scale;
+    private ProgressMonitor progressMonitor;
+    private Timer cancelTimer;
+    private volatile boolean isCancelRequested;
+
+    /**
+     * This constructs an export that has not started yet.
+     * @param parent The component the progress and errors are shown over.
+     * @param document The document to export, which must not be used by anything else.
+     * @param file The file to write.
+     * @param format The informal name of the format, such as png, svg or pdf.
+     * @param scale The number of pixels per unit on the canvas, for image formats.
+     */
+    public ExportTask(Component parent, DiagramDocument document, File file, String format, double scale) {
+        this.parent = parent;
+        this.document = document;
+        this.file = file;
+        this.format = format;
+        this.scale = scale;
+        this.isCancelRequested = false;
+    }
+
+    /**
+     * This shows the progress monitor and queues the export. It should be called on the event dispatch thread.
+     * @return True if the export was queued, false if too many exports are already waiting.
+     */
+    public boolean start() {
+        this.progressMonitor = new ProgressMonitor(this.parent, "Exporting " + this.file.getName(), null, 0,
+            PROGRESS_STEPS);
+        this.progressMonitor.setMillisToDecideToPopup(POPUP_DELAY);
+        this.progressMonitor.setMillisToPopup(POPUP_DELAY);
+
+        this.addPropertyChangeListener(new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent event) {
+                if (event.getPropertyName().equals("progress")) {
+                    progressMonitor.setProgress((Integer) event.getNewValue());
+                }
+            }
+        });
+
+        // The monitor's cancel button is only seen by polling it.
+        this.cancelTimer = new Timer(CANCEL_CHECK_INTERVAL, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent event) {
+                if (progressMonitor.isCanceled()) {
+                    isCancelRequested = true;
+                    cancelTimer.stop();
+                }
+            }
+        });
+
+        try {
+            EXECUTOR.execute(this);
+        } catch (RejectedExecutionException exception) {
+            this.progressMonitor.close();
+            JOptionPane.showMessageDialog(this.parent, "Too many exports are running. Try again once they finish.",
+                Const.EXPORT_COMMAND, JOptionPane.WARNING_MESSAGE);
+            return false;
+        }
+
+        this.cancelTimer.start();
+        return true;
+    }
+
+    @Override
+    protected Boolean doInBackground() {
+        if (this.isCancelRequested) {
+            return false;
+        }
+
+        // The renderer's components are only used by this thread.
+        DiagramRenderer renderer = new DiagramRenderer();
+        return DiagramExporter.exportImage(this.document, renderer, this.file, this.format, this.scale, this);
+    }
+
+    @Override
+    protected void done() {
+        this.cancelTimer.stop();
+        this.progressMonitor.close();
+        this.document = null;
+
+        if (this.isCancelRequested) {
+            return;
+        }
+
+        boolean isExported = false;
+        try {
+            isExported = this.get();
+        } catch (InterruptedException | ExecutionException exception) {
+            System.err.println("Error exporting image. [" + exception.getMessage() + "]");
+        }
+
+        if (!isExported) {
+            JOptionPane.showMessageDialog(this.parent, "Cannot export " + this.file.getPath() + ".",
+                Const.EXPORT_COMMAND, JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    @Override
+    public void exportProgressed(double fraction) {
+        this.setProgress((int) Math.min(PROGRESS_STEPS, Math.max(0, fraction * PROGRESS_STEPS)));
+    }
+
+    @Override
+    public boolean isExportCancelled() {
+        return this.isCancelRequested;
+    }
+}
@@ -0,0 +1,85 @@
+package editor;
+
+import java.awt.Point;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.SwingWorker;
+
+import diagram.DiagramLayout;
+import diagram.LayoutMonitor;
+
+/**
+ * This class arranges the diagrams of a canvas in the background so the editor stays responsive while a large
+ * document is laid out. The layout keeps what it needs from the document when it is made, so the document can go on
+ * being edited meanwhile. While the layout is worked out, the canvas moves its diagrams to each position the layout
+ * reports, so they are seen settling, and once it is done the canvas moves them to where they end up.
+ * <p>
+ * If the canvas falls behind the layout, only the latest positions are shown.
+ * @author Andrew Chu
+ * @version June 2023
+ */
+public class LayoutTask extends SwingWorker<HashMap<Integer, Point>, HashMap<Integer, Point>>
+        implements LayoutMonitor {
+    private Canvas canvas;
+    private DiagramLayout layout;
+    private volatile boolean isCancelRequested;
+
+    /**
+     * This constructs a layout that has not started yet. It should be made on the event dispatch thread.
+     * @param canvas The canvas to move the diagrams of as the layout is worked out.
+     * @param layout The layout of the canvas' diagrams.
+     */
+    public LayoutTask(Canvas canvas, DiagramLayout layout) {
+        this.canvas = canvas;
+        this.layout = layout;
+        this.isCancelRequested = false;
+    }
+
+    /**
+     * This stops the layout. The canvas is not told of anything from then on, so it should put the diagrams back
+     * itself. It should be called on the event dispatch thread.
+     */
+    public void cancelLayout() {
+        this.isCancelRequested = true;
+    }
+
+    @Override
+    protected HashMap<Integer, Point> doInBackground() {
+        return this.layout.run(this);
+    }
+
+    @Override
+    public void layoutProgressed(HashMap<Integer, Point> positions) {
+        this.publish(positions);
+    }
+
+    @Override
+    public boolean isLayoutCancelled() {
+        return this.isCancelRequested;
+    }
+
+    @Override
+    protected void process(List<HashMap<Integer, Point>> chunks) {
+        if (!this.isDone() && !this.isCancelRequested) {
+            this.canvas.followLayout(chunks.get(chunks.size() - 1));
+        }
+    }
+
+    @Override
+    protected void done() {
+        this.layout = null;
+        if (this.isCancelRequested) {
+            return;
+        }
+
+        HashMap<Integer, Point> positions = null;
+        try {
+            positions = this.get();
+        } catch (InterruptedException | ExecutionException exception) {
+            System.err.println("Error arranging diagrams. [" + exception.getMessage() + "]");
+        }
+        this.canvas.finishLayout(positions);
+    }
+}
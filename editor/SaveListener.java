@@ -0,0 +1,18 @@
+package editor;
+
+import java.io.File;
+
+/**
+ * This interface represents an object that is told when a canvas has been saved in the background. It is called on
+ * the event dispatch thread.
+ * @author Andrew Chu
+ * @version June 2023
+ */
+public interface SaveListener {
+    /**
+     * Tells whether the save worked.
+     * @param file The file that was saved to.
+     * @param isSaved True if the file was written, false if there was an error.
+     */
+    public void saveFinished(File file, boolean isSaved);
+}
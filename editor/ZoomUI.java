@@ -2,19 +2,34 @@ package editor;
 import java.awt.AWTEvent;
 import java.awt.Component;
 import java.awt.Container;
+import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.event.HierarchyEvent;
 import java.awt.event.MouseEvent;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
 
 import javax.swing.JComponent;
 import javax.swing.JLayer;
+import javax.swing.RepaintManager;
 import javax.swing.SwingUtilities;
 import javax.swing.plaf.LayerUI;
 
 /**
  * This represents a component wrapper for providing a way to zoom in on a component and its children while 
  * keeping the mouse events accurate. It is associated with a JLayer object.
+ * <p>
+ * The JLayer takes up the size of the nested components at the zoom level, so a scroll pane around it scrolls over
+ * all of them. While the zoom level is changing quickly, a preview can be shown instead: a picture of what was visible
+ * when it started, stretched to the current zoom level, so each change only costs copying an image.
+ * <p>
+ * Mouse events do not repaint anything by themselves. The nested components repaint what they change, and a
+ * repaint manager moves those areas to where the components appear on the JLayer at the zoom level.
  * @author Andrew Chu
  * @version June 2023
  */
@@ -24,6 +39,13 @@ public class ZoomUI extends LayerUI<JComponent> {
     private double zoomLevel;
     private JLayer<JComponent> layer;
     private boolean isDispatchingEvent;
+    private BufferedImage previewImage;
+    private Rectangle2D.Double previewArea;
+    private long repaintCount;
+    private Point realPoint;
+    private Point targetPoint;
+    private HashMap<Component, Component> mouseListeningComponents;
+    private HashMap<Component, Component> motionListeningComponents;
 
     /**
      * This constructs a new ZoomUI object.
@@ -32,6 +54,13 @@ public class ZoomUI extends LayerUI<JComponent> {
         super();
         this.isDispatchingEvent = false;
         this.zoomLevel = 1.0;
+        this.previewImage = null;
+        this.previewArea = new Rectangle2D.Double();
+        this.repaintCount = 0;
+        this.realPoint = new Point();
+        this.targetPoint = new Point();
+        this.mouseListeningComponents = new HashMap<Component, Component>();
+        this.motionListeningComponents = new HashMap<Component, Component>();
     }
 
     /**
@@ -43,7 +72,12 @@ public class ZoomUI extends LayerUI<JComponent> {
         super.installUI(component);
 
         this.layer = (JLayer<JComponent>) component;
-        this.layer.setLayerEventMask(AWTEvent.MOUSE_EVENT_MASK | AWTEvent.MOUSE_MOTION_EVENT_MASK);
+        this.layer.setLayerEventMask(AWTEvent.MOUSE_EVENT_MASK | AWTEvent.MOUSE_MOTION_EVENT_MASK
+            | AWTEvent.HIERARCHY_EVENT_MASK);
+
+        if (!(RepaintManager.currentManager(component) instanceof ZoomRepaintManager)) {
+            RepaintManager.setCurrentManager(new ZoomRepaintManager());
+        }
     }
 
     /**
@@ -57,20 +91,24 @@ public class ZoomUI extends LayerUI<JComponent> {
     }
 
     /**
-     * This processes mouse events and makes sure they are appropriate for the zoom level of nested components.
+     * This processes mouse events and makes sure they are appropriate for the zoom level of nested components. When
+     * components are added to or removed from the JLayer, the listening components found for targets are forgotten.
      * @param event The event dispatched to this JLayer.
      * @param layer The JLayer the event was dispatched to.
      */
     @Override
     public void eventDispatched(AWTEvent event, final JLayer<? extends JComponent> layer) {
-        if (event instanceof MouseEvent && !this.isDispatchingEvent) {
+        if (event instanceof HierarchyEvent) {
+            this.mouseListeningComponents.clear();
+            this.motionListeningComponents.clear();
+            super.eventDispatched(event, layer);
+        } else if (event instanceof MouseEvent && !this.isDispatchingEvent) {
             this.isDispatchingEvent = true;
             this.redispatchMouseEvent((MouseEvent) event);
             this.isDispatchingEvent = false;
         } else {
             super.eventDispatched(event, layer);
         }
-        layer.repaint();
     }
 
     /**
@@ -82,18 +120,172 @@ public class ZoomUI extends LayerUI<JComponent> {
     }
 
     /**
-     * This paints the components nested in the JLayer at the appropriate scale level.
+     * This gets the zoom level for the nested components.
+     * @return The zoom scale factor.
+     */
+    public double getZoom() {
+        return this.zoomLevel;
+    }
+
+    /**
+     * This gets the size the JLayer needs to show the nested components at the zoom level.
+     * @param component The wrapped JLayer.
+     * @return The preferred size.
+     */
+    @Override
+    public Dimension getPreferredSize(JComponent component) {
+        Dimension size = super.getPreferredSize(component);
+        if (size == null) {
+            return null;
+        }
+        return new Dimension((int) Math.ceil(size.width * this.zoomLevel), (int) Math.ceil(size.height * this.zoomLevel));
+    }
+
+    /**
+     * This lays out the nested components so that, once scaled by the zoom level, they fill the JLayer.
+     * @param layer The wrapped JLayer.
+     */
+    @Override
+    public void doLayout(JLayer<? extends JComponent> layer) {
+        super.doLayout(layer);
+
+        Component view = layer.getView();
+        if (view != null) {
+            view.setBounds(0, 0, (int) Math.ceil(layer.getWidth() / this.zoomLevel),
+                (int) Math.ceil(layer.getHeight() / this.zoomLevel));
+        }
+    }
+
+    /**
+     * This repaints the part of the JLayer where an area of the nested components appears at the zoom level.
+     * @param area The area, in the coordinates of the nested components.
+     */
+    public void repaintView(Rectangle area) {
+        // Round outwards and pad by a pixel, since scaled edges can spill into the pixel next to them.
+        int x1 = (int) Math.floor(area.x * this.zoomLevel) - 1;
+        int y1 = (int) Math.floor(area.y * this.zoomLevel) - 1;
+        int x2 = (int) Math.ceil((area.x + area.width) * this.zoomLevel) + 1;
+        int y2 = (int) Math.ceil((area.y + area.height) * this.zoomLevel) + 1;
+        this.layer.repaint(x1, y1, x2 - x1, y2 - y1);
+    }
+
+    /**
+     * This gets the number of times the nested components have been painted, so it can be checked that hovering over
+     * the canvas without changing anything paints nothing.
+     * @return The number of paints.
+     */
+    public long getRepaintCount() {
+        return this.repaintCount;
+    }
+
+    /**
+     * This starts showing a picture of what is visible now in place of the nested components, stretched to whatever
+     * the zoom level is changed to, until stopPreview is called.
+     */
+    public void startPreview() {
+        if (this.previewImage != null) {
+            return;
+        }
+
+        Rectangle visibleRect = this.layer.getVisibleRect();
+        if (visibleRect.isEmpty()) {
+            return;
+        }
+
+        BufferedImage image = new BufferedImage(visibleRect.width, visibleRect.height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.translate(-visibleRect.x, -visibleRect.y);
+        graphics.setClip(visibleRect);
+        this.layer.paint(graphics);
+        graphics.dispose();
+
+        this.previewImage = image;
+        this.previewArea.setRect(visibleRect.x / this.zoomLevel, visibleRect.y / this.zoomLevel,
+            visibleRect.width / this.zoomLevel, visibleRect.height / this.zoomLevel);
+    }
+
+    /**
+     * This stops showing the preview, so the nested components are painted again at the zoom level.
+     */
+    public void stopPreview() {
+        if (this.previewImage != null) {
+            this.previewImage.flush();
+            this.previewImage = null;
+            this.layer.repaint();
+        }
+    }
+
+    /**
+     * This checks if a preview is shown in place of the nested components.
+     * @return True if it is, false if not.
+     */
+    public boolean isPreviewing() {
+        return this.previewImage != null;
+    }
+
+    /**
+     * This paints the components nested in the JLayer at the appropriate scale level. Painting is clipped to the part
+     * of the JLayer visible in its viewport so nested components can skip anything outside of it.
      */
     @Override
     public void paint(Graphics graphics, JComponent component) {
+        this.repaintCount++;
+        if (this.previewImage != null) {
+            this.paintPreview(graphics);
+            return;
+        }
+
         Graphics2D g2 = (Graphics2D) graphics.create();
         g2.scale(zoomLevel, zoomLevel);
+
+        Rectangle viewRect = this.getViewRect();
+        if (!viewRect.isEmpty()) {
+            g2.clipRect(viewRect.x, viewRect.y, viewRect.width, viewRect.height);
+        }
+
         this.layer.paint(g2);
         g2.dispose();
     }
 
     /**
-     * This processes a mouse event to occur at the appropriate position for the zoom level.
+     * This paints the preview stretched to the zoom level. Whatever was not visible when the preview started is left
+     * blank.
+     * @param graphics The graphics of the JLayer.
+     */
+    private void paintPreview(Graphics graphics) {
+        Graphics2D g2 = (Graphics2D) graphics.create();
+        Rectangle visibleRect = this.layer.getVisibleRect();
+        g2.setColor(this.layer.getView() != null ? this.layer.getView().getBackground() : this.layer.getBackground());
+        g2.fillRect(visibleRect.x, visibleRect.y, visibleRect.width, visibleRect.height);
+
+        int x1 = (int) Math.round(this.previewArea.x * this.zoomLevel);
+        int y1 = (int) Math.round(this.previewArea.y * this.zoomLevel);
+        int x2 = (int) Math.round((this.previewArea.x + this.previewArea.width) * this.zoomLevel);
+        int y2 = (int) Math.round((this.previewArea.y + this.previewArea.height) * this.zoomLevel);
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2.drawImage(this.previewImage, x1, y1, x2 - x1, y2 - y1, null);
+        g2.dispose();
+    }
+
+    /**
+     * This gets the part of the JLayer visible in its viewport, in the coordinates of the nested components.
+     * @return The visible rectangle at the current zoom level.
+     */
+    public Rectangle getViewRect() {
+        Rectangle visibleRect = this.layer.getVisibleRect();
+
+        // Round outwards so partially visible pixels at the edges still get painted.
+        int x1 = (int) Math.floor(visibleRect.x / this.zoomLevel);
+        int y1 = (int) Math.floor(visibleRect.y / this.zoomLevel);
+        int x2 = (int) Math.ceil((visibleRect.x + visibleRect.width) / this.zoomLevel);
+        int y2 = (int) Math.ceil((visibleRect.y + visibleRect.height) / this.zoomLevel);
+        return new Rectangle(x1, y1, x2 - x1, y2 - y1);
+    }
+
+    /**
+     * This processes a mouse event to occur at the appropriate position for the zoom level. Only the event passed on
+     * is allocated: the points are worked out in scratch objects and the listening components are looked up once per
+     * target.
      * @param originalEvent The mouse event to process.
      */
     private void redispatchMouseEvent(MouseEvent originalEvent) {
@@ -103,7 +295,8 @@ public class ZoomUI extends LayerUI<JComponent> {
             }
             
             // Find the real point and the component that should be pressed.
-            Point realPoint = calculateRealPoint(originalEvent);
+            Point realPoint = this.realPoint;
+            this.calculateRealPoint(originalEvent, realPoint);
             Component realTargetComponent = getRealComponent(realPoint);
             
             if (realTargetComponent != null) {
@@ -153,22 +346,77 @@ public class ZoomUI extends LayerUI<JComponent> {
             return null;
         }
 
-        Point viewPoint = SwingUtilities.convertPoint(this.layer, realPoint, view);
-        return SwingUtilities.getDeepestComponentAt(view, viewPoint.x, viewPoint.y);
+        return getDeepestComponentAt(view, realPoint.x - view.getX(), realPoint.y - view.getY());
+    }
+
+    /**
+     * This gets the deepest visible component at a point, like SwingUtilities.getDeepestComponentAt does, without
+     * copying the list of children of every container on the way down.
+     * @param parent The component to search in.
+     * @param x The x-coordinate of the point, relative to the parent.
+     * @param y The y-coordinate of the point, relative to the parent.
+     * @return The deepest component, null if the point is outside of the parent.
+     */
+    private static Component getDeepestComponentAt(Component parent, int x, int y) {
+        if (!parent.contains(x, y)) {
+            return null;
+        }
+
+        if (parent instanceof Container) {
+            Container container = (Container) parent;
+            int numChildren = container.getComponentCount();
+            for (int i = 0; i < numChildren; i++) {
+                Component child = container.getComponent(i);
+                if (child == null || !child.isVisible()) {
+                    continue;
+                }
+
+                Component deepest = getDeepestComponentAt(child, x - child.getX(), y - child.getY());
+                if (deepest != null && deepest.isVisible()) {
+                    return deepest;
+                }
+            }
+        }
+
+        return parent;
     }
 
     /**
      * This determines the point intended to be clicked relative to the entire JLayer.
      * @param mouseEvent The mouse event that the point comes from.
-     * @return The real point.
+     * @param point The point to store the real point in.
      */
-    private Point calculateRealPoint(MouseEvent mouseEvent) {
-        Point point = mouseEvent.getPoint();
+    private void calculateRealPoint(MouseEvent mouseEvent, Point point) {
+        point.setLocation(mouseEvent.getX(), mouseEvent.getY());
+        if (!this.translateToLayer(mouseEvent.getComponent(), point, 1)) {
+            point.setLocation(SwingUtilities.convertPoint(mouseEvent.getComponent(), mouseEvent.getPoint(), this.layer));
+        }
 
-        point = SwingUtilities.convertPoint(mouseEvent.getComponent(), point, this.layer);
         point.x /= zoomLevel;
         point.y /= zoomLevel;
-        return point;
+    }
+
+    /**
+     * This moves a point between the coordinates of a component and those of the JLayer, when the component is the
+     * JLayer or inside of it.
+     * @param component The component.
+     * @param point The point to move.
+     * @param direction 1 to move it from the component to the JLayer, -1 to move it from the JLayer to the component.
+     * @return True if it was moved, false if the component is not inside of the JLayer and the point is unchanged.
+     */
+    private boolean translateToLayer(Component component, Point point, int direction) {
+        int offsetX = 0;
+        int offsetY = 0;
+        for (Component ancestor = component; ancestor != this.layer; ancestor = ancestor.getParent()) {
+            if (ancestor == null) {
+                return false;
+            }
+            offsetX += ancestor.getX();
+            offsetY += ancestor.getY();
+        }
+
+        point.translate(direction * offsetX, direction * offsetY);
+        return true;
     }
 
     /**
@@ -184,13 +432,21 @@ public class ZoomUI extends LayerUI<JComponent> {
             return null;
         }
 
-        Point newPoint = SwingUtilities.convertPoint(this.layer, realPoint, realComponent);
+        Point newPoint = this.targetPoint;
+        newPoint.setLocation(realPoint);
+        if (!this.translateToLayer(realComponent, newPoint, -1)) {
+            newPoint.setLocation(SwingUtilities.convertPoint(this.layer, realPoint, realComponent));
+        }
+
+        // The pointer is at the same place on the screen, so that is copied instead of looking the component up.
         return new MouseEvent(realComponent,
                 id,
                 mouseEvent.getWhen(),
                 mouseEvent.getModifiers(),
                 newPoint.x,
                 newPoint.y,
+                mouseEvent.getXOnScreen(),
+                mouseEvent.getYOnScreen(),
                 mouseEvent.getClickCount(),
                 mouseEvent.isPopupTrigger(),
                 mouseEvent.getButton());
@@ -220,14 +476,36 @@ public class ZoomUI extends LayerUI<JComponent> {
             case MouseEvent.MOUSE_EXITED:
             case MouseEvent.MOUSE_PRESSED:
             case MouseEvent.MOUSE_RELEASED:
-                return getMouseListeningComponent(parentComponent);
+                return getCachedListeningComponent(parentComponent, this.mouseListeningComponents, false);
             case (MouseEvent.MOUSE_DRAGGED):
             case (MouseEvent.MOUSE_MOVED):
-                return getMouseMotionListeningComponent(parentComponent);
+                return getCachedListeningComponent(parentComponent, this.motionListeningComponents, true);
         }
         return null;
     }
 
+    /**
+     * This looks up the listening component for a target component, finding it the first time the target is seen.
+     * Components that are not listening are cached as well, with a null listening component.
+     * @param component The target component.
+     * @param cache The listening components found so far for each target.
+     * @param isMotion True to look for a component listening for mouse motion events, false for plain ones.
+     * @return The listening component, null if none are found.
+     */
+    private Component getCachedListeningComponent(Component component, HashMap<Component, Component> cache,
+            boolean isMotion) {
+        Component listeningComponent = cache.get(component);
+        if (listeningComponent == null && !cache.containsKey(component)) {
+            if (isMotion) {
+                listeningComponent = getMouseMotionListeningComponent(component);
+            } else {
+                listeningComponent = getMouseListeningComponent(component);
+            }
+            cache.put(component, listeningComponent);
+        }
+        return listeningComponent;
+    }
+
     /**
      * This gets the first child component of a parent component that is listening for plain mouse events.
      * @param parentComponent The parent componet to search in.
@@ -279,4 +557,26 @@ public class ZoomUI extends LayerUI<JComponent> {
                     createNewMouseEvent(originalEvent, lastEnteredRealComponent, realPoint, MouseEvent.MOUSE_ENTERED));
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * This repaint manager moves the areas repainted by components nested in a zooming JLayer to where they appear on
+     * the JLayer, scaled by its zoom level. Without it, they would be repainted at their unzoomed position and size.
+     */
+    private static class ZoomRepaintManager extends RepaintManager {
+        @Override
+        public void addDirtyRegion(JComponent component, int x, int y, int width, int height) {
+            for (Component child = component; child != null; child = child.getParent()) {
+                Container parent = child.getParent();
+                if (parent instanceof JLayer && ((JLayer<?>) parent).getView() == child
+                        && ((JLayer<?>) parent).getUI() instanceof ZoomUI) {
+                    Rectangle area = SwingUtilities.convertRectangle(component, new Rectangle(x, y, width, height), child);
+                    area.translate(child.getX(), child.getY());
+                    ((ZoomUI) ((JLayer<?>) parent).getUI()).repaintView(area);
+                    return;
+                }
+            }
+
+            super.addDirtyRegion(component, x, y, width, height);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package utility;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+/**
+ * This class represents a stack of byte records kept in a temporary file instead of in memory. Only the offset of each
+ * record is kept in memory. The file is created on the first push and deleted when the stack is closed or the program
+ * exits.
+ * @author Andrew Chu
+ * @version June 2023
+ */
+public class DiskStack {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private String prefix;
+    private File file;
+    private RandomAccessFile data;
+    private long[] offsets;
+    private int size;
+
+    /**
+     * This constructs an empty stack.
+     * @param prefix The start of the name of the temporary file.
+     */
+    public DiskStack(String prefix) {
+        this.prefix = prefix;
+        this.file = null;
+        this.data = null;
+        this.offsets = new long[INITIAL_CAPACITY + 1];
+        this.size = 0;
+    }
+
+    /**
+     * This adds a record to the top of the stack.
+     * @param record The record.
+     * @throws IOException If the temporary file cannot be written.
+     */
+    public void push(byte[] record) throws IOException {
+        if (this.data == null) {
+            this.file = File.createTempFile(this.prefix, ".tmp");
+            this.file.deleteOnExit();
+            this.data = new RandomAccessFile(this.file, "rw");
+        }
+
+        if (this.size + 1 == this.offsets.length) {
+            this.offsets = Arrays.copyOf(this.offsets, this.offsets.length * 2);
+        }
+
+        long offset = this.offsets[this.size];
+        this.data.seek(offset);
+        this.data.write(record);
+        this.size++;
+        this.offsets[this.size] = offset + record.length;
+    }
+
+    /**
+     * This removes the record on the top of the stack.
+     * @return The record.
+     * @throws IOException If the temporary file cannot be read.
+     */
+    public byte[] pop() throws IOException {
+        if (this.size == 0) {
+            throw new IllegalStateException("The stack is empty.");
+        }
+
+        long start = this.offsets[this.size - 1];
+        byte[] record = new byte[(int) (this.offsets[this.size] - start)];
+        this.data.seek(start);
+        this.data.readFully(record);
+        this.size--;
+
+        return record;
+    }
+
+    /**
+     * This gets the number of records in the stack.
+     * @return The number of records.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * This checks if the stack has no records.
+     * @return True if it is empty, false if not.
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * This removes every record and deletes the temporary file. The stack can still be used, creating a new file on the
+     * next push.
+     */
+    public void clear() {
+        this.close();
+    }
+
+    /**
+     * This closes and deletes the temporary file, if there is one. Records pushed before are lost, so this should be
+     * called once the stack is no longer needed.
+     */
+    public void close() {
+        this.size = 0;
+        if (this.data != null) {
+            try {
+                this.data.close();
+            } catch (IOException exception) {
+                System.err.println("Cannot close temporary file. [" + this.file.getPath() + "]");
+            }
+            if (!this.file.delete()) {
+                System.err.println("Cannot delete temporary file. [" + this.file.getPath() + "]");
+            }
+            this.data = null;
+            this.file = null;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package utility;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * This class writes an RGB PNG image one row at a time, so an image never has to be held in memory as a whole. The
+ * compressed rows are split into IDAT chunks of a fixed size as they are written.
+ * @author Andrew Chu
+ * @version June 2023
+ */
+public class PngWriter {
+    private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' };
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final int BIT_DEPTH = 8;
+    private static final int COLOR_TYPE_RGB = 2;
+    private static final int FILTER_SUB = 1;
+    private static final int BYTES_PER_PIXEL = 3;
+
+    private DataOutputStream output;
+    private ChunkBuffer dataBuffer;
+    private DeflaterOutputStream data;
+    private Deflater deflater;
+    private int width;
+    private int height;
+    private int numRowsWritten;
+    private boolean isClosed;
+    private byte[] row;
+
+    /**
+     * This starts a new image by writing its header.
+     * @param output The stream to write the image to. It is closed when the image is closed.
+     * @param width The width of the image in pixels.
+     * @param height The height of the image in pixels.
+     * @throws IOException If the stream fails.
+     */
+    public PngWriter(OutputStream output, int width, int height) throws IOException {
+        this.output = new DataOutputStream(output);
+        this.width = width;
+        this.height = height;
+        this.numRowsWritten = 0;
+        this.isClosed = false;
+        this.row = new byte[1 + width * BYTES_PER_PIXEL];
+
+        this.output.write(SIGNATURE);
+        ChunkBuffer header = new ChunkBuffer("IHDR");
+        DataOutputStream headerData = new DataOutputStream(header);
+        headerData.writeInt(width);
+        headerData.writeInt(height);
+        headerData.writeByte(BIT_DEPTH);
+        headerData.writeByte(COLOR_TYPE_RGB);
+        headerData.writeByte(0); // Deflate compression.
+        headerData.writeByte(0); // Adaptive filtering.
+        headerData.writeByte(0); // No interlacing.
+        header.writeChunk();
+
+        this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        this.dataBuffer = new ChunkBuffer("IDAT");
+        this.data = new DeflaterOutputStream(this.dataBuffer, this.deflater, CHUNK_SIZE);
+    }
+
+    /**
+     * This writes the next row of the image, from top to bottom.
+     * @param pixels The pixels, packed as RGB ints like in BufferedImage.TYPE_INT_RGB.
+     * @param offset The index of the first pixel of the row.
+     * @throws IOException If the stream fails.
+     */
+    public void writeRow(int[] pixels, int offset) throws IOException {
+        if (this.numRowsWritten == this.height) {
+            throw new IllegalStateException("Every row was already written.");
+        }
+
+        // Diagrams are mostly flat colour, which the sub filter turns into runs of zeros that compress well.
+        this.row[0] = FILTER_SUB;
+        int previous = 0;
+        for (int x = 0, i = 1; x < this.width; x++, i += BYTES_PER_PIXEL) {
+            int pixel = pixels[offset + x];
+            this.row[i] = (byte) ((pixel >> 16) - (previous >> 16));
+            this.row[i + 1] = (byte) ((pixel >> 8) - (previous >> 8));
+            this.row[i + 2] = (byte) (pixel - previous);
+            previous = pixel;
+        }
+
+        this.data.write(this.row);
+        this.numRowsWritten++;
+    }
+
+    /**
+     * This finishes the image and closes the stream. It does nothing if the image was already closed or aborted.
+     * @throws IOException If the stream fails or not every row was written.
+     */
+    public void close() throws IOException {
+        if (this.isClosed) {
+            return;
+        }
+        this.isClosed = true;
+
+        try {
+            if (this.numRowsWritten != this.height) {
+                throw new IOException("Only " + this.numRowsWritten + " of " + this.height + " rows were written.");
+            }
+
+            this.data.finish();
+            this.dataBuffer.writeChunk();
+            new ChunkBuffer("IEND").writeChunk();
+            this.output.flush();
+        } finally {
+            this.deflater.end();
+            this.output.close();
+        }
+    }
+
+    /**
+     * This stops writing the image and closes the stream, leaving an unfinished image behind.
+     * @throws IOException If the stream fails to close.
+     */
+    public void abort() throws IOException {
+        if (this.isClosed) {
+            return;
+        }
+        this.isClosed = true;
+
+        this.deflater.end();
+        this.output.close();
+    }
+
+    /**
+     * This class collects the data of a chunk and writes it out as a chunk once it is full or when asked to.
+     */
+    private class ChunkBuffer extends OutputStream {
+        private byte[] type;
+        private byte[] buffer;
+        private int size;
+        private CRC32 crc;
+
+        /**
+         * This constructs an empty chunk buffer.
+         * @param type The four letter type of the chunks.
+         */
+        public ChunkBuffer(String type) {
+            this.type = type.getBytes(StandardCharsets.US_ASCII);
+            this.buffer = new byte[CHUNK_SIZE];
+            this.size = 0;
+            this.crc = new CRC32();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (this.size == this.buffer.length) {
+                this.writeChunk();
+            }
+            this.buffer[this.size++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (this.size == this.buffer.length) {
+                    this.writeChunk();
+                }
+
+                int numCopied = Math.min(length, this.buffer.length - this.size);
+                System.arraycopy(bytes, offset, this.buffer, this.size, numCopied);
+                this.size += numCopied;
+                offset += numCopied;
+                length -= numCopied;
+            }
+        }
+
+        /**
+         * This writes the data collected so far as a chunk and empties the buffer.
+         * @throws IOException If the stream fails.
+         */
+        public void writeChunk() throws IOException {
+            this.crc.reset();
+            this.crc.update(this.type);
+            this.crc.update(this.buffer, 0, this.size);
+
+            output.writeInt(this.size);
+            output.write(this.type);
+            output.write(this.buffer, 0, this.size);
+            output.writeInt((int) this.crc.getValue());
+            this.size = 0;
+        }
+    }
+}
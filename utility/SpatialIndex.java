@@ -0,0 +1,228 @@
+package utility;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.TreeMap;
+
+/**
+ * This class represents a uniform grid that indexes objects by the area they cover. It is used to find the objects
+ * at a point or inside an area by only checking the grid cells that overlap it instead of every object.
+ * <p>
+ * The index also counts the objects in each column and row of the grid, so the cells covered by all of them are known
+ * without checking every object. The counts only change when an object moves into different cells.
+ * @author Andrew Chu
+ * @version June 2023
+ */
+public class SpatialIndex<T> {
+    public static final int DEFAULT_CELL_SIZE = 256;
+
+    private int cellSize;
+    private HashMap<Long, ArrayList<T>> cells;
+    private TreeMap<Integer, Integer> columnCounts;
+    private TreeMap<Integer, Integer> rowCounts;
+
+    /**
+     * This constructs an empty index with the default cell size.
+     */
+    public SpatialIndex() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * This constructs an empty index.
+     * @param cellSize The width and height of each grid cell.
+     */
+    public SpatialIndex(int cellSize) {
+        this.cellSize = cellSize;
+        this.cells = new HashMap<Long, ArrayList<T>>();
+        this.columnCounts = new TreeMap<Integer, Integer>();
+        this.rowCounts = new TreeMap<Integer, Integer>();
+    }
+
+    /**
+     * This adds an object to every cell its area overlaps.
+     * @param item The object to add.
+     * @param bounds The area covered by the object.
+     */
+    public void insert(T item, Rectangle bounds) {
+        int minCellX = this.getCell(bounds.x);
+        int minCellY = this.getCell(bounds.y);
+        int maxCellX = this.getCell(bounds.x + bounds.width);
+        int maxCellY = this.getCell(bounds.y + bounds.height);
+        countCells(this.columnCounts, minCellX, maxCellX, 1);
+        countCells(this.rowCounts, minCellY, maxCellY, 1);
+
+        for (int cellX = minCellX; cellX <= maxCellX; cellX++) {
+            for (int cellY = minCellY; cellY <= maxCellY; cellY++) {
+                Long key = getKey(cellX, cellY);
+                ArrayList<T> cell = this.cells.get(key);
+                if (cell == null) {
+                    cell = new ArrayList<T>(4);
+                    this.cells.put(key, cell);
+                }
+                cell.add(item);
+            }
+        }
+    }
+
+    /**
+     * This removes an object from every cell its area overlaps.
+     * @param item The object to remove.
+     * @param bounds The area the object covered when it was added.
+     */
+    public void remove(T item, Rectangle bounds) {
+        int minCellX = this.getCell(bounds.x);
+        int minCellY = this.getCell(bounds.y);
+        int maxCellX = this.getCell(bounds.x + bounds.width);
+        int maxCellY = this.getCell(bounds.y + bounds.height);
+        countCells(this.columnCounts, minCellX, maxCellX, -1);
+        countCells(this.rowCounts, minCellY, maxCellY, -1);
+
+        for (int cellX = minCellX; cellX <= maxCellX; cellX++) {
+            for (int cellY = minCellY; cellY <= maxCellY; cellY++) {
+                Long key = getKey(cellX, cellY);
+                ArrayList<T> cell = this.cells.get(key);
+                if (cell != null) {
+                    cell.remove(item);
+                    if (cell.isEmpty()) {
+                        this.cells.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * This moves an object in the index after the area it covers changed. Nothing is done if it still overlaps the
+     * same cells.
+     * @param item The object to move.
+     * @param oldBounds The area the object used to cover.
+     * @param newBounds The area the object covers now.
+     */
+    public void update(T item, Rectangle oldBounds, Rectangle newBounds) {
+        boolean isSameCells = this.getCell(oldBounds.x) == this.getCell(newBounds.x) &&
+            this.getCell(oldBounds.y) == this.getCell(newBounds.y) &&
+            this.getCell(oldBounds.x + oldBounds.width) == this.getCell(newBounds.x + newBounds.width) &&
+            this.getCell(oldBounds.y + oldBounds.height) == this.getCell(newBounds.y + newBounds.height);
+
+        if (!isSameCells) {
+            this.remove(item, oldBounds);
+            this.insert(item, newBounds);
+        }
+    }
+
+    /**
+     * This gets the objects in the cell containing a point. They may not actually contain the point.
+     * @param point The point to check.
+     * @return The objects that may contain the point.
+     */
+    public ArrayList<T> query(Point point) {
+        ArrayList<T> cell = this.cells.get(getKey(this.getCell(point.x), this.getCell(point.y)));
+        if (cell == null) {
+            return new ArrayList<T>();
+        }
+        return new ArrayList<T>(cell);
+    }
+
+    /**
+     * This gets the objects in the cells overlapping an area. They may not actually overlap the area.
+     * @param area The area to check.
+     * @return The objects that may overlap the area, without duplicates.
+     */
+    public HashSet<T> query(Rectangle area) {
+        HashSet<T> results = new HashSet<T>();
+
+        int minCellX = this.getCell(area.x);
+        int minCellY = this.getCell(area.y);
+        int maxCellX = this.getCell(area.x + area.width);
+        int maxCellY = this.getCell(area.y + area.height);
+
+        for (int cellX = minCellX; cellX <= maxCellX; cellX++) {
+            for (int cellY = minCellY; cellY <= maxCellY; cellY++) {
+                ArrayList<T> cell = this.cells.get(getKey(cellX, cellY));
+                if (cell != null) {
+                    results.addAll(cell);
+                }
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * This removes every object from the index.
+     */
+    public void clear() {
+        this.cells.clear();
+        this.columnCounts.clear();
+        this.rowCounts.clear();
+    }
+
+    /**
+     * This gets the area of the grid cells in the columns and rows that hold objects. Every object in the index is
+     * inside of it, and the ones at its edges are in the outermost cells.
+     * @return The area, null if the index is empty.
+     */
+    public Rectangle getCellBounds() {
+        if (this.columnCounts.isEmpty()) {
+            return null;
+        }
+
+        int minCellX = this.columnCounts.firstKey();
+        int minCellY = this.rowCounts.firstKey();
+        int numColumns = this.columnCounts.lastKey() - minCellX + 1;
+        int numRows = this.rowCounts.lastKey() - minCellY + 1;
+        return new Rectangle(minCellX * this.cellSize, minCellY * this.cellSize, numColumns * this.cellSize,
+            numRows * this.cellSize);
+    }
+
+    /**
+     * This gets the width and height of each grid cell.
+     * @return The cell size.
+     */
+    public int getCellSize() {
+        return this.cellSize;
+    }
+
+    /**
+     * This changes the number of objects in a range of columns or rows, forgetting the ones left with none.
+     * @param counts The number of objects in each column or row.
+     * @param minCell The first column or row.
+     * @param maxCell The last column or row.
+     * @param change The change in the number of objects.
+     */
+    private static void countCells(TreeMap<Integer, Integer> counts, int minCell, int maxCell, int change) {
+        for (int cell = minCell; cell <= maxCell; cell++) {
+            Integer count = counts.get(cell);
+            int newCount = (count != null ? count : 0) + change;
+            if (newCount > 0) {
+                counts.put(cell, newCount);
+            } else {
+                counts.remove(cell);
+            }
+        }
+    }
+
+    /**
+     * This gets the cell a coordinate falls in. Negative coordinates are supported.
+     * @param coordinate The x or y coordinate.
+     * @return The column or row of the cell.
+     */
+    private int getCell(int coordinate) {
+        return Math.floorDiv(coordinate, this.cellSize);
+    }
+
+    /**
+     * This combines the column and row of a cell into a single key. The row is mixed with the column so the hash code
+     * of the key, which XORs its two halves, does not collide for every cell on the same diagonal.
+     * @param cellX The column of the cell.
+     * @param cellY The row of the cell.
+     * @return The key.
+     */
+    private static Long getKey(int cellX, int cellY) {
+        return ((long) cellX << 32) | ((cellY ^ (cellX * 0x9e3779b9)) & 0xffffffffL);
+    }
+}
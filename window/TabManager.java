@@ -47,11 +47,22 @@ public class TabManager extends JTabbedPane {
         }
     }
 
+    @Override
+    public void remove(Component component) {
+        int index = this.indexOfComponent(component);
+        if (index != -1) {
+            this.remove(index);
+        } else {
+            super.remove(component);
+        }
+    }
+
     @Override
     public void remove(int index) {
         Canvas canvas = (Canvas) this.getComponentAt(index);
         String tabName = ((CloseableTab) this.getTabComponentAt(index)).getName();
         super.remove(index);
+        canvas.close();
 
         Pattern duplicateNamePattern = Pattern.compile("\\((\\d+)\\)$");
         Matcher matcher = duplicateNamePattern.matcher(tabName);